@@ -36,6 +36,7 @@ import com.google.idea.blaze.base.command.BlazeCommandName;
 import com.google.idea.blaze.base.command.BlazeFlags;
 import com.google.idea.blaze.base.command.ExperimentalShowArtifactsLineProcessor;
 import com.google.idea.blaze.base.command.info.BlazeInfo;
+import com.google.idea.blaze.base.command.info.BlazeInfoCache;
 import com.google.idea.blaze.base.issueparser.IssueOutputLineProcessor;
 import com.google.idea.blaze.base.metrics.Action;
 import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
@@ -339,8 +340,8 @@ class BlazeApkBuildStepInstantRun implements BlazeApkBuildStep {
   }
 
   private String getExecutionRoot(BlazeContext context, WorkspaceRoot workspaceRoot) {
-    ListenableFuture<String> execRootFuture = BlazeInfo.getInstance().runBlazeInfo(
-      context, Blaze.getBuildSystem(project),
+    ListenableFuture<String> execRootFuture = BlazeInfoCache.getInstance(project).getBlazeInfo(
+      context,
       workspaceRoot,
       buildFlags,
       BlazeInfo.EXECUTION_ROOT_KEY
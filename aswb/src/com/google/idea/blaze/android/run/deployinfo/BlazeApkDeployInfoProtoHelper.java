@@ -23,9 +23,9 @@ import com.google.idea.blaze.android.manifest.ManifestParser;
 import com.google.idea.blaze.base.async.process.LineProcessingOutputStream;
 import com.google.idea.blaze.base.command.ExperimentalShowArtifactsLineProcessor;
 import com.google.idea.blaze.base.command.info.BlazeInfo;
+import com.google.idea.blaze.base.command.info.BlazeInfoCache;
 import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
 import com.google.idea.blaze.base.scope.BlazeContext;
-import com.google.idea.blaze.base.settings.Blaze;
 import com.google.repackaged.devtools.build.lib.rules.android.deployinfo.AndroidDeployInfoOuterClass;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
@@ -88,8 +88,8 @@ public class BlazeApkDeployInfoProtoHelper {
 
   @Nullable
   private String getExecutionRoot(BlazeContext context) {
-    ListenableFuture<String> execRootFuture = BlazeInfo.getInstance().runBlazeInfo(
-      context, Blaze.getBuildSystem(project),
+    ListenableFuture<String> execRootFuture = BlazeInfoCache.getInstance(project).getBlazeInfo(
+      context,
       workspaceRoot,
       buildFlags,
       BlazeInfo.EXECUTION_ROOT_KEY
@@ -17,7 +17,6 @@ package com.google.idea.blaze.android.sync;
 
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.idea.blaze.android.cppapi.NdkSupport;
 import com.google.idea.blaze.android.projectview.AndroidSdkPlatformSection;
@@ -64,6 +63,7 @@ import org.jetbrains.android.sdk.AndroidSdkUtils;
 import javax.annotation.Nullable;
 import java.io.File;
 import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -112,7 +112,7 @@ public class BlazeAndroidSyncPlugin extends BlazeSyncPlugin.Adapter {
                               BlazeRoots blazeRoots,
                               @Nullable WorkingSet workingSet,
                               WorkspacePathResolver workspacePathResolver,
-                              ImmutableMap<Label, RuleIdeInfo> ruleMap,
+                              Map<Label, RuleIdeInfo> ruleMap,
                               @Deprecated @Nullable File androidPlatformDirectory,
                               SyncState.Builder syncStateBuilder,
                               @Nullable SyncState previousSyncState) {
@@ -44,6 +44,7 @@ import java.io.File;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -58,7 +59,7 @@ public final class BlazeAndroidWorkspaceImporter {
   private final Project project;
   private final BlazeContext context;
   private final WorkspaceRoot workspaceRoot;
-  private final ImmutableMap<Label, RuleIdeInfo> ruleMap;
+  private final Map<Label, RuleIdeInfo> ruleMap;
   private final ProjectViewRuleImportFilter importFilter;
   private final boolean discardAndroidBinaryResourceJar;
 
@@ -68,6 +69,15 @@ public final class BlazeAndroidWorkspaceImporter {
     WorkspaceRoot workspaceRoot,
     ProjectViewSet projectViewSet,
     ImmutableMap<Label, RuleIdeInfo> ruleMap) {
+    this(project, context, workspaceRoot, projectViewSet, (Map<Label, RuleIdeInfo>)ruleMap);
+  }
+
+  public BlazeAndroidWorkspaceImporter(
+    Project project,
+    BlazeContext context,
+    WorkspaceRoot workspaceRoot,
+    ProjectViewSet projectViewSet,
+    Map<Label, RuleIdeInfo> ruleMap) {
     this.project = project;
     this.context = context;
     this.workspaceRoot = workspaceRoot;
@@ -137,12 +147,12 @@ public final class BlazeAndroidWorkspaceImporter {
           builder.addAllResources(nonGeneratedResources);
 
           TransitiveResourceMap.TransitiveResourceInfo transitiveResourceInfo = transitiveResourceMap.get(rule.label);
-          for (ArtifactLocation artifactLocation : transitiveResourceInfo.transitiveResources) {
+          for (ArtifactLocation artifactLocation : transitiveResourceInfo.getTransitiveResources()) {
             if (!artifactLocation.isGenerated()) {
               builder.addTransitiveResource(artifactLocation);
             }
           }
-          for (Label resourceDependency : transitiveResourceInfo.transitiveResourceRules) {
+          for (Label resourceDependency : transitiveResourceInfo.getTransitiveResourceRules()) {
             if (!resourceDependency.equals(rule.label)) {
               builder.addTransitiveResourceDependency(resourceDependency);
             }
@@ -20,6 +20,8 @@ import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
 import com.google.idea.blaze.base.model.primitives.Label;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Map;
+
 /**
  * Transitive aggregator for RuleIdeInfo.
  */
@@ -28,6 +30,10 @@ public abstract class RuleIdeInfoTransitiveAggregator<T> extends TransitiveAggre
     super(ruleMap);
   }
 
+  protected RuleIdeInfoTransitiveAggregator(@NotNull Map<Label, RuleIdeInfo> ruleMap) {
+    super(ruleMap);
+  }
+
   @Override
   protected Iterable<Label> getDependencies(@NotNull RuleIdeInfo ruleIdeInfo) {
     return ruleIdeInfo.dependencies;
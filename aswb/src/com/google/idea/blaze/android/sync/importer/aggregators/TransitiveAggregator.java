@@ -15,23 +15,80 @@
  */
 package com.google.idea.blaze.android.sync.importer.aggregators;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
 import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.rulemaps.TargetGraph;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Peforms a transitive reduction on the rule
+ *
+ * <p>Rules are visited in topological order, so every dependency is reduced before its dependents
+ * and deep dependency chains don't grow the stack. The rules of a dependency cycle share one value,
+ * reduced from all of them and everything the cycle depends on. Values are reduced into one
+ * another rather than copied, so implementations that share structure between a rule and its
+ * dependencies (e.g. persistent collections) stay close to linear in memory.
  */
 public abstract class TransitiveAggregator<Rule, T> {
-  private Map<Label, T> labelToResult;
+  private final Map<Label, T> labelToResult;
 
   protected TransitiveAggregator(@NotNull Map<Label, Rule> ruleMap) {
-    this.labelToResult = Maps.newHashMap();
-    for (Label label : ruleMap.keySet()) {
-      aggregate(label, ruleMap);
+    List<Label> labels = Lists.newArrayList(ruleMap.keySet());
+    Map<Label, Integer> ids = Maps.newHashMapWithExpectedSize(labels.size());
+    for (int id = 0; id < labels.size(); ++id) {
+      ids.put(labels.get(id), id);
+    }
+
+    List<Rule> rules = Lists.newArrayListWithCapacity(labels.size());
+    List<int[]> dependencyIds = Lists.newArrayListWithCapacity(labels.size());
+    for (Label label : labels) {
+      Rule rule = ruleMap.get(label);
+      rules.add(rule);
+      dependencyIds.add(getDependencyIds(rule, ids));
+    }
+
+    // Rules on a common dependency cycle see the same closure, so each cycle is reduced as one unit
+    TargetGraph targetGraph = TargetGraph.create(labels, dependencyIds);
+    int[] componentIds = targetGraph.componentIds();
+    int[] order = TargetGraph.topologicalOrder(componentIds);
+    Object[] results = new Object[labels.size()];
+    for (int start = 0, end; start < order.length; start = end) {
+      int componentId = componentIds[order[start]];
+      end = start + 1;
+      while (end < order.length && componentIds[order[end]] == componentId) {
+        ++end;
+      }
+
+      T result = createForRule(rules.get(order[start]));
+      for (int i = start + 1; i < end; ++i) {
+        result = reduce(result, createForRule(rules.get(order[i])));
+      }
+      for (int i = start; i < end; ++i) {
+        for (int dependencyId : dependencyIds.get(order[i])) {
+          if (componentIds[dependencyId] != componentId) {
+            @SuppressWarnings("unchecked")
+            T dependencyResult = (T)results[dependencyId];
+            result = reduce(result, dependencyResult);
+          }
+        }
+      }
+      for (int i = start; i < end; ++i) {
+        results[order[i]] = result;
+      }
+    }
+
+    this.labelToResult = Maps.newHashMapWithExpectedSize(labels.size());
+    for (int id = 0; id < labels.size(); ++id) {
+      @SuppressWarnings("unchecked")
+      T result = (T)results[id];
+      labelToResult.put(labels.get(id), result);
     }
   }
 
@@ -41,31 +98,18 @@ public abstract class TransitiveAggregator<Rule, T> {
     return result != null ? result : defaultValue;
   }
 
-  @Nullable
-  private T aggregate(
-    @NotNull Label label,
-    @NotNull Map<Label, Rule> ruleMap) {
-    T result = labelToResult.get(label);
-    if (result != null) {
-      return result;
-    }
-
-    Rule rule = ruleMap.get(label);
-    if (rule == null) {
-      return null;
-    }
-
-    result = createForRule(rule);
-
+  /**
+   * The ids of the rule's dependencies that are in the rule map, in order and without duplicates.
+   */
+  private int[] getDependencyIds(@NotNull Rule rule, @NotNull Map<Label, Integer> ids) {
+    Set<Integer> result = Sets.newLinkedHashSet();
     for (Label depLabel : getDependencies(rule)) {
-      T depResult = aggregate(depLabel, ruleMap);
-      if (depResult != null) {
-        result = reduce(result, depResult);
+      Integer id = ids.get(depLabel);
+      if (id != null) {
+        result.add(id);
       }
     }
-
-    labelToResult.put(label, result);
-    return result;
+    return Ints.toArray(result);
   }
 
   protected abstract Iterable<Label> getDependencies(@NotNull Rule rule);
@@ -77,7 +121,8 @@ public abstract class TransitiveAggregator<Rule, T> {
   protected abstract T createForRule(@NotNull Rule rule);
 
   /**
-   * Reduces two values, sum + new value. May mutate value in place.
+   * Reduces two values, sum + new value. May mutate value in place, but must not mutate the
+   * dependency value, which is also the value of the dependency itself.
    */
   @NotNull
   protected abstract T reduce(@NotNull T value, @NotNull T dependencyValue);
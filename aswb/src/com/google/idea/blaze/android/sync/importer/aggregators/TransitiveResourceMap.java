@@ -16,15 +16,18 @@
 package com.google.idea.blaze.android.sync.importer.aggregators;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
 import com.google.idea.blaze.base.ideinfo.AndroidRuleIdeInfo;
 import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
 import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.util.PersistentMap;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -32,15 +35,38 @@ import java.util.Set;
  */
 public class TransitiveResourceMap extends RuleIdeInfoTransitiveAggregator<TransitiveResourceMap.TransitiveResourceInfo> {
   public static class TransitiveResourceInfo {
-    public static final TransitiveResourceInfo NO_RESOURCES = new TransitiveResourceInfo();
-    public final Set<ArtifactLocation> transitiveResources = Sets.newHashSet();
-    public final Set<Label> transitiveResourceRules = Sets.newHashSet();
+    public static final TransitiveResourceInfo NO_RESOURCES = new TransitiveResourceInfo(PersistentMap.of());
+
+    /**
+     * The resources of each resource rule in the transitive closure. Immutable, and shares its
+     * structure with the infos of the rule's dependencies.
+     */
+    private final PersistentMap<Label, Collection<ArtifactLocation>> resourcesByRule;
+
+    private TransitiveResourceInfo(PersistentMap<Label, Collection<ArtifactLocation>> resourcesByRule) {
+      this.resourcesByRule = resourcesByRule;
+    }
+
+    public Set<Label> getTransitiveResourceRules() {
+      return resourcesByRule.keySet();
+    }
+
+    /**
+     * May contain a resource more than once if several rules list it.
+     */
+    public Iterable<ArtifactLocation> getTransitiveResources() {
+      return Iterables.concat(resourcesByRule.values());
+    }
   }
 
   public TransitiveResourceMap(@NotNull ImmutableMap<Label, RuleIdeInfo> ruleMap) {
     super(ruleMap);
   }
 
+  public TransitiveResourceMap(@NotNull Map<Label, RuleIdeInfo> ruleMap) {
+    super(ruleMap);
+  }
+
   @Override
   protected Iterable<Label> getDependencies(@NotNull RuleIdeInfo ruleIdeInfo) {
     AndroidRuleIdeInfo androidRuleIdeInfo = ruleIdeInfo.androidRuleIdeInfo;
@@ -60,24 +86,29 @@ public class TransitiveResourceMap extends RuleIdeInfoTransitiveAggregator<Trans
   @NotNull
   @Override
   protected TransitiveResourceInfo createForRule(@NotNull RuleIdeInfo ruleIdeInfo) {
-    TransitiveResourceInfo result = new TransitiveResourceInfo();
     AndroidRuleIdeInfo androidRuleIdeInfo = ruleIdeInfo.androidRuleIdeInfo;
     if (androidRuleIdeInfo == null) {
-      return result;
+      return TransitiveResourceInfo.NO_RESOURCES;
     }
     if (androidRuleIdeInfo.legacyResources != null) {
-      return result;
+      return TransitiveResourceInfo.NO_RESOURCES;
     }
-    result.transitiveResources.addAll(androidRuleIdeInfo.resources);
-    result.transitiveResourceRules.add(ruleIdeInfo.label);
-    return result;
+    return new TransitiveResourceInfo(
+      PersistentMap.<Label, Collection<ArtifactLocation>>of().plus(ruleIdeInfo.label, androidRuleIdeInfo.resources));
   }
 
   @NotNull
   @Override
   protected TransitiveResourceInfo reduce(@NotNull TransitiveResourceInfo value, @NotNull TransitiveResourceInfo dependencyValue) {
-    value.transitiveResources.addAll(dependencyValue.transitiveResources);
-    value.transitiveResourceRules.addAll(dependencyValue.transitiveResourceRules);
-    return value;
+    // Add the smaller closure to the larger one, which keeps sharing most of its structure
+    TransitiveResourceInfo larger = value.resourcesByRule.size() >= dependencyValue.resourcesByRule.size() ? value : dependencyValue;
+    TransitiveResourceInfo smaller = larger == value ? dependencyValue : value;
+    if (smaller.resourcesByRule.isEmpty()) {
+      return larger;
+    }
+    PersistentMap<Label, Collection<ArtifactLocation>> union = larger.resourcesByRule.toBuilder()
+      .putAll(smaller.resourcesByRule)
+      .build();
+    return union.size() == larger.resourcesByRule.size() ? larger : new TransitiveResourceInfo(union);
   }
 }
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.android.sync.importer.aggregators;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.idea.blaze.base.ideinfo.AndroidRuleIdeInfo;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
+import com.google.idea.blaze.base.ideinfo.RuleMapBuilder;
+import com.google.idea.blaze.base.model.primitives.Label;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link TransitiveResourceMap}.
+ */
+@RunWith(JUnit4.class)
+public class TransitiveResourceMapTest {
+  @Test
+  public void testResourcesOfDiamondAreCollectedOnce() {
+    // //app -> //a -> //c, //app -> //b -> //c
+    ImmutableMap<Label, RuleIdeInfo> ruleMap = RuleMapBuilder.builder()
+      .addRule(androidRule("//app:app").addDependency("//a:a").addDependency("//b:b"))
+      .addRule(androidRule("//a:a").addDependency("//c:c"))
+      .addRule(androidRule("//b:b").addDependency("//c:c"))
+      .addRule(androidRule("//c:c"))
+      .build();
+
+    TransitiveResourceMap.TransitiveResourceInfo info = new TransitiveResourceMap(ruleMap).get(new Label("//app:app"));
+
+    assertThat(info.getTransitiveResourceRules()).containsExactly(
+      new Label("//app:app"), new Label("//a:a"), new Label("//b:b"), new Label("//c:c"));
+    assertThat(ImmutableList.copyOf(info.getTransitiveResources())).containsExactly(
+      resource("app"), resource("a"), resource("b"), resource("c"));
+  }
+
+  @Test
+  public void testLegacyResourcesComeFromTheResourceRule() {
+    ImmutableMap<Label, RuleIdeInfo> ruleMap = RuleMapBuilder.builder()
+      .addRule(RuleIdeInfo.builder()
+                 .setLabel("//lib:lib")
+                 .setKind("android_library")
+                 .setAndroidInfo(AndroidRuleIdeInfo.builder()
+                                   .addResource(resource("lib"))
+                                   .setGenerateResourceClass(true)
+                                   .setLegacyResources(new Label("//lib:resources"))))
+      .addRule(androidRule("//lib:resources"))
+      .build();
+
+    TransitiveResourceMap.TransitiveResourceInfo info = new TransitiveResourceMap(ruleMap).get(new Label("//lib:lib"));
+
+    assertThat(info.getTransitiveResourceRules()).containsExactly(new Label("//lib:resources"));
+    assertThat(ImmutableList.copyOf(info.getTransitiveResources())).containsExactly(resource("resources"));
+  }
+
+  @Test
+  public void testRulesWithoutResourcesShareTheirDependencysInfo() {
+    ImmutableMap<Label, RuleIdeInfo> ruleMap = RuleMapBuilder.builder()
+      .addRule(RuleIdeInfo.builder().setLabel("//java:lib").setKind("java_library").addDependency("//res:res"))
+      .addRule(androidRule("//res:res"))
+      .build();
+
+    TransitiveResourceMap transitiveResourceMap = new TransitiveResourceMap(ruleMap);
+
+    assertThat(transitiveResourceMap.get(new Label("//java:lib"))).isSameAs(transitiveResourceMap.get(new Label("//res:res")));
+    assertThat(transitiveResourceMap.get(new Label("//missing:missing")))
+      .isSameAs(TransitiveResourceMap.TransitiveResourceInfo.NO_RESOURCES);
+  }
+
+  @Test
+  public void testDependentOfCycleSeesEverythingBelowIt() {
+    // //d -> //a <-> //b -> //c, with //d listed first so it doesn't come after the cycle by id
+    ImmutableMap<Label, RuleIdeInfo> ruleMap = RuleMapBuilder.builder()
+      .addRule(androidRule("//d:d").addDependency("//a:a"))
+      .addRule(androidRule("//a:a").addDependency("//b:b"))
+      .addRule(androidRule("//b:b").addDependency("//a:a").addDependency("//c:c"))
+      .addRule(androidRule("//c:c"))
+      .build();
+
+    TransitiveResourceMap transitiveResourceMap = new TransitiveResourceMap(ruleMap);
+
+    assertThat(transitiveResourceMap.get(new Label("//d:d")).getTransitiveResourceRules()).containsExactly(
+      new Label("//d:d"), new Label("//a:a"), new Label("//b:b"), new Label("//c:c"));
+    assertThat(transitiveResourceMap.get(new Label("//a:a")).getTransitiveResourceRules()).containsExactly(
+      new Label("//a:a"), new Label("//b:b"), new Label("//c:c"));
+    assertThat(transitiveResourceMap.get(new Label("//b:b"))).isSameAs(transitiveResourceMap.get(new Label("//a:a")));
+    assertThat(transitiveResourceMap.get(new Label("//c:c")).getTransitiveResourceRules()).containsExactly(new Label("//c:c"));
+  }
+
+  @Test
+  public void testDependencyClosuresAreNotGrownByTheirDependents() {
+    // Each closure is built from its dependency's, which must keep only its own resources
+    int length = 2000;
+    RuleMapBuilder builder = RuleMapBuilder.builder().addRule(androidRule("//r:r0"));
+    for (int i = 1; i < length; ++i) {
+      builder.addRule(androidRule("//r:r" + i).addDependency("//r:r" + (i - 1)));
+    }
+
+    TransitiveResourceMap transitiveResourceMap = new TransitiveResourceMap(builder.build());
+
+    for (int i = 0; i < length; ++i) {
+      assertThat(transitiveResourceMap.get(new Label("//r:r" + i)).getTransitiveResourceRules()).hasSize(i + 1);
+    }
+  }
+
+  @Test
+  public void testLongDependencyChain() {
+    // Deep enough to overflow the stack of a recursive traversal
+    int length = 100000;
+    RuleMapBuilder builder = RuleMapBuilder.builder().addRule(androidRule("//r:r0"));
+    for (int i = 1; i < length; ++i) {
+      builder.addRule(androidRule("//r:r" + i).addDependency("//r:r" + (i - 1)));
+    }
+
+    TransitiveResourceMap transitiveResourceMap = new TransitiveResourceMap(builder.build());
+
+    assertThat(transitiveResourceMap.get(new Label("//r:r" + (length - 1))).getTransitiveResourceRules()).hasSize(length);
+    assertThat(transitiveResourceMap.get(new Label("//r:r0")).getTransitiveResourceRules()).containsExactly(new Label("//r:r0"));
+  }
+
+  private static RuleIdeInfo.Builder androidRule(String label) {
+    String name = new Label(label).ruleName().toString();
+    return RuleIdeInfo.builder()
+      .setLabel(label)
+      .setKind("android_library")
+      .setAndroidInfo(AndroidRuleIdeInfo.builder()
+                        .addResource(resource(name))
+                        .setGenerateResourceClass(true));
+  }
+
+  private static ArtifactLocation resource(String name) {
+    return ArtifactLocation.builder()
+      .setRootPath("/root")
+      .setRelativePath(name + "/res")
+      .setIsSource(true)
+      .build();
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.benchmarks;
+
+import com.google.idea.blaze.base.TestUtils;
+import com.google.idea.blaze.base.async.executor.BlazeExecutor;
+import com.google.idea.blaze.base.async.executor.BlazeExecutorImpl;
+import com.google.idea.blaze.base.experiments.ExperimentService;
+import com.google.idea.blaze.base.experiments.MockExperimentService;
+import com.intellij.mock.MockProject;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.extensions.Extensions;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import org.picocontainer.MutablePicoContainer;
+
+/**
+ * A mock application and project to run plugin code in outside the IDE.
+ *
+ * <p>Mirrors the setup of {@code BlazeTestCase}, but registers the real executor so parallel
+ * stages run the way they do in production.
+ */
+final class BenchmarkFixture {
+  private final Disposable disposable = () -> {};
+  private final MutablePicoContainer applicationContainer;
+  private final MutablePicoContainer projectContainer;
+  final Project project;
+
+  BenchmarkFixture() {
+    TestUtils.createMockApplication(disposable);
+    applicationContainer = (MutablePicoContainer)ApplicationManager.getApplication().getPicoContainer();
+    MockProject mockProject = TestUtils.mockProject(applicationContainer, disposable);
+    Extensions.cleanRootArea(disposable);
+    projectContainer = mockProject.getPicoContainer();
+    project = mockProject;
+
+    registerApplicationService(ExperimentService.class, new MockExperimentService());
+    registerApplicationService(BlazeExecutor.class, new BlazeExecutorImpl());
+  }
+
+  <T> BenchmarkFixture registerApplicationService(Class<T> klass, T instance) {
+    applicationContainer.registerComponentInstance(klass.getName(), instance);
+    return this;
+  }
+
+  <T> BenchmarkFixture registerProjectService(Class<T> klass, T instance) {
+    projectContainer.registerComponentInstance(klass.getName(), instance);
+    return this;
+  }
+
+  void dispose() {
+    BlazeExecutor.getInstance().getExecutor().shutdownNow();
+    Disposer.dispose(disposable);
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.model.primitives.WorkspacePath;
+import com.google.idea.blaze.base.projectview.section.sections.DirectoryEntry;
+import com.google.idea.blaze.base.settings.Blaze.BuildSystem;
+import com.google.idea.blaze.base.sync.projectview.ImportRoots;
+import com.google.idea.blaze.base.sync.synthetic.SyntheticMonorepo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks every label of a synthetic workspace against project view directories.
+ *
+ * <p>Package directories are spread evenly over the include and exclude lists, so each lookup has
+ * to consider both. {@link #linearImportAsSource} is the previous implementation, which compares
+ * every label against every directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class ImportRootsBenchmark {
+  @Param({"10000", "100000"})
+  int ruleCount;
+
+  @Param({"10", "100", "1000"})
+  int directoryCount;
+
+  private ImportRoots importRoots;
+  private List<Label> labels;
+
+  @Setup
+  public void setup() {
+    int packageCount = ruleCount / 10;
+    SyntheticMonorepo monorepo = SyntheticMonorepo.builder()
+      .setPackageCount(packageCount)
+      .build(new File("/synthetic"));
+    ImportRoots.Builder builder = ImportRoots.builder(monorepo.getWorkspaceRoot(), BuildSystem.Blaze);
+    int step = Math.max(1, packageCount / directoryCount);
+    for (int pkg = 0; pkg < packageCount; pkg += step) {
+      WorkspacePath directory = new WorkspacePath(monorepo.packagePath(pkg));
+      builder.add(pkg % (4 * step) == 0 ? DirectoryEntry.exclude(directory) : DirectoryEntry.include(directory));
+    }
+    importRoots = builder.build();
+
+    ImmutableList.Builder<Label> labels = ImmutableList.builder();
+    for (SyntheticMonorepo.Target target : monorepo.getTargets()) {
+      labels.add(target.label);
+    }
+    this.labels = labels.build();
+  }
+
+  @Benchmark
+  public int importAsSource() {
+    int count = 0;
+    for (Label label : labels) {
+      if (importRoots.importAsSource(label)) {
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  @Benchmark
+  public int linearImportAsSource() {
+    int count = 0;
+    for (Label label : labels) {
+      boolean included = false;
+      boolean excluded = false;
+      for (WorkspacePath workspacePath : importRoots.rootDirectories()) {
+        included = included || matchesLabel(workspacePath, label);
+      }
+      for (WorkspacePath workspacePath : importRoots.excludeDirectories()) {
+        excluded = excluded || matchesLabel(workspacePath, label);
+      }
+      if (included && !excluded) {
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  private static boolean matchesLabel(WorkspacePath workspacePath, Label label) {
+    if (workspacePath.isWorkspaceRoot()) {
+      return true;
+    }
+    String moduleLabelStr = label.toString();
+    int packagePrefixLength = "//".length();
+    int nextCharIndex = workspacePath.relativePath().length() + packagePrefixLength;
+    if (moduleLabelStr.startsWith(workspacePath.relativePath(), packagePrefixLength)
+        && moduleLabelStr.length() >= nextCharIndex) {
+      char c = moduleLabelStr.charAt(nextCharIndex);
+      return c == '/' || c == ':';
+    }
+    return false;
+  }
+}
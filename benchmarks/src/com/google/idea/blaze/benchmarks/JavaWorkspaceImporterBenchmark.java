@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
+import com.google.idea.blaze.base.io.FileAttributeProvider;
+import com.google.idea.blaze.base.io.InputStreamProvider;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.model.primitives.WorkspacePath;
+import com.google.idea.blaze.base.prefetch.MockPrefetchService;
+import com.google.idea.blaze.base.prefetch.PrefetchService;
+import com.google.idea.blaze.base.projectview.ProjectView;
+import com.google.idea.blaze.base.projectview.ProjectViewSet;
+import com.google.idea.blaze.base.projectview.section.ListSection;
+import com.google.idea.blaze.base.projectview.section.sections.DirectoryEntry;
+import com.google.idea.blaze.base.projectview.section.sections.DirectorySection;
+import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.settings.Blaze.BuildSystem;
+import com.google.idea.blaze.base.settings.BlazeImportSettings;
+import com.google.idea.blaze.base.settings.BlazeImportSettingsManager;
+import com.google.idea.blaze.base.sync.synthetic.SyntheticMonorepo;
+import com.google.idea.blaze.java.sync.importer.BlazeJavaWorkspaceImporter;
+import com.google.idea.blaze.java.sync.model.BlazeJavaImportResult;
+import com.google.idea.blaze.java.sync.source.JavaPackageCache;
+import com.google.idea.blaze.java.sync.source.JavaSourcePackageReader;
+import com.google.idea.blaze.java.sync.source.PackageManifestReader;
+import com.google.repackaged.devtools.build.lib.view.proto.Deps;
+import com.intellij.openapi.util.io.FileUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Imports a synthetic workspace, with the first half of its directories in the project view and
+ * the rest pulled in as libraries through jdeps.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class JavaWorkspaceImporterBenchmark {
+  @Param({"1000", "10000"})
+  int ruleCount;
+
+  @Param({"4"})
+  int fanOut;
+
+  private BenchmarkFixture fixture;
+  private SyntheticMonorepo monorepo;
+  private ProjectViewSet projectViewSet;
+  private ImmutableMap<Label, RuleIdeInfo> ruleMap;
+  private Map<Label, List<String>> jdeps;
+  private JavaPackageCache packageCache;
+
+  @Setup
+  public void setup() throws IOException {
+    fixture = new BenchmarkFixture()
+      .registerApplicationService(InputStreamProvider.class, FileInputStream::new)
+      .registerApplicationService(FileAttributeProvider.class, new FileAttributeProvider())
+      .registerApplicationService(JavaSourcePackageReader.class, new JavaSourcePackageReader())
+      .registerApplicationService(PackageManifestReader.class, new PackageManifestReader())
+      .registerApplicationService(PrefetchService.class, new MockPrefetchService());
+
+    monorepo = SyntheticMonorepo.builder()
+      .setPackageCount(ruleCount / 10)
+      .setFanOut(fanOut)
+      .build(Files.createTempDirectory("synthetic").toFile());
+    monorepo.writeWorkspace();
+
+    fixture.registerProjectService(BlazeImportSettingsManager.class, new BlazeImportSettingsManager(fixture.project));
+    BlazeImportSettingsManager.getInstance(fixture.project).setImportSettings(new BlazeImportSettings(
+      monorepo.getWorkspaceRoot().directory().getPath(), "benchmark", "", "", "", BuildSystem.Blaze));
+
+    List<WorkspacePath> rootDirectories = monorepo.getRootDirectories();
+    ListSection.Builder<DirectoryEntry> directories = ListSection.builder(DirectorySection.KEY);
+    for (WorkspacePath directory : rootDirectories.subList(0, (rootDirectories.size() + 1) / 2)) {
+      directories.add(DirectoryEntry.include(directory));
+    }
+    projectViewSet = ProjectViewSet.builder().add(ProjectView.builder().put(directories).build()).build();
+
+    ruleMap = monorepo.createRuleMap();
+    jdeps = Maps.newHashMap();
+    for (SyntheticMonorepo.Target target : monorepo.getTargets()) {
+      ImmutableList.Builder<String> jars = ImmutableList.builder();
+      for (Deps.Dependency dependency : monorepo.createJdeps(target).getDependencyList()) {
+        jars.add(dependency.getPath());
+      }
+      jdeps.put(target.label, jars.build());
+    }
+
+    JavaPackageCache.Builder packageCache = JavaPackageCache.builder(null);
+    importWorkspace(packageCache);
+    this.packageCache = packageCache.build();
+  }
+
+  @TearDown
+  public void tearDown() {
+    fixture.dispose();
+    FileUtil.delete(monorepo.getRootDirectory());
+  }
+
+  @Benchmark
+  public BlazeJavaImportResult importWorkspace() {
+    return importWorkspace(JavaPackageCache.builder(packageCache));
+  }
+
+  private BlazeJavaImportResult importWorkspace(JavaPackageCache.Builder packageCache) {
+    BlazeJavaWorkspaceImporter importer = new BlazeJavaWorkspaceImporter(
+      fixture.project,
+      monorepo.getWorkspaceRoot(),
+      projectViewSet,
+      ruleMap,
+      jdeps::get,
+      null,
+      monorepo.getArtifactLocationDecoder(),
+      packageCache
+    );
+    return importer.importWorkspace(new BlazeContext());
+  }
+}
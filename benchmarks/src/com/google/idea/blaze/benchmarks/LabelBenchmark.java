@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.benchmarks;
+
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.sync.synthetic.SyntheticMonorepo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates labels from strings, as every sync does for each rule and dependency.
+ *
+ * <p>Run with {@code -prof gc} to compare the allocation per label of interned and plain
+ * labels. The strings are fresh copies, as they would be when read from aspect output.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class LabelBenchmark {
+  @Param({"10000", "100000"})
+  int labelCount;
+
+  private String[] labelStrings;
+  private Label[] labels;
+
+  @Setup
+  public void setup() {
+    List<SyntheticMonorepo.Target> targets = SyntheticMonorepo.builder()
+      .setPackageCount((labelCount + 9) / 10)
+      .build(new File("/synthetic"))
+      .getTargets();
+    labelStrings = new String[labelCount];
+    labels = new Label[labelCount];
+    for (int i = 0; i < labelCount; ++i) {
+      Label label = targets.get(i).label;
+      labelStrings[i] = new String(label.toString().toCharArray());
+      labels[i] = label;
+    }
+  }
+
+  @Benchmark
+  public void createInterned(Blackhole blackhole) {
+    for (String labelString : labelStrings) {
+      blackhole.consume(Label.create(labelString));
+    }
+  }
+
+  @Benchmark
+  public void createUninterned(Blackhole blackhole) {
+    for (String labelString : labelStrings) {
+      blackhole.consume(new Label(labelString));
+    }
+  }
+
+  @Benchmark
+  public void parsePackageAndRuleName(Blackhole blackhole) {
+    for (Label label : labels) {
+      blackhole.consume(label.blazePackage());
+      blackhole.consume(label.ruleName());
+    }
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.benchmarks;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.sync.synthetic.SyntheticMonorepo;
+import com.google.idea.blaze.base.util.PersistentMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the handful of rule changes a typical incremental sync sees to a large rule map, and
+ * compares the result with the previous version.
+ *
+ * <p>{@code copyImmutableMap} is the full copy every sync used to make, for reference.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class PersistentMapBenchmark {
+  @Param({"100000"})
+  int ruleCount;
+
+  @Param({"20"})
+  int changeCount;
+
+  private ImmutableMap<Label, RuleIdeInfo> immutableRuleMap;
+  private PersistentMap<Label, RuleIdeInfo> ruleMap;
+  private PersistentMap<Label, RuleIdeInfo> changedRuleMap;
+  // Half of the changes replace a rule, the other half remove one
+  private List<Label> replacedLabels;
+  private List<RuleIdeInfo> replacementRules;
+  private List<Label> removedLabels;
+
+  @Setup
+  public void setup() {
+    immutableRuleMap = SyntheticMonorepo.builder()
+      .setPackageCount((ruleCount + 9) / 10)
+      .setTargetsPerPackage(10)
+      .build(new File("/synthetic"))
+      .createRuleMap();
+    ruleMap = PersistentMap.copyOf(immutableRuleMap);
+
+    List<RuleIdeInfo> rules = Lists.newArrayList(immutableRuleMap.values());
+    int stride = rules.size() / changeCount;
+    replacedLabels = Lists.newArrayList();
+    replacementRules = Lists.newArrayList();
+    removedLabels = Lists.newArrayList();
+    for (int i = 0; i < changeCount; ++i) {
+      RuleIdeInfo rule = rules.get(i * stride);
+      if (i % 2 == 0) {
+        replacedLabels.add(rule.label);
+        // Any other rule will do, it only has to be unequal to the original
+        replacementRules.add(rules.get(i * stride + 1));
+      }
+      else {
+        removedLabels.add(rule.label);
+      }
+    }
+    changedRuleMap = applyWithBuilder();
+  }
+
+  @Benchmark
+  public PersistentMap<Label, RuleIdeInfo> plus() {
+    PersistentMap<Label, RuleIdeInfo> result = ruleMap;
+    for (int i = 0; i < replacedLabels.size(); ++i) {
+      result = result.plus(replacedLabels.get(i), replacementRules.get(i));
+    }
+    return result;
+  }
+
+  @Benchmark
+  public PersistentMap<Label, RuleIdeInfo> minus() {
+    PersistentMap<Label, RuleIdeInfo> result = ruleMap;
+    for (Label label : removedLabels) {
+      result = result.minus(label);
+    }
+    return result;
+  }
+
+  @Benchmark
+  public PersistentMap<Label, RuleIdeInfo> builder() {
+    return applyWithBuilder();
+  }
+
+  @Benchmark
+  public int diff() {
+    int[] differences = new int[1];
+    PersistentMap.diff(ruleMap, changedRuleMap, new PersistentMap.DifferenceVisitor<Label, RuleIdeInfo>() {
+      @Override
+      public void added(Label key, RuleIdeInfo value) {
+        differences[0]++;
+      }
+
+      @Override
+      public void removed(Label key, RuleIdeInfo value) {
+        differences[0]++;
+      }
+
+      @Override
+      public void changed(Label key, RuleIdeInfo before, RuleIdeInfo after) {
+        differences[0]++;
+      }
+    });
+    return differences[0];
+  }
+
+  @Benchmark
+  public ImmutableMap<Label, RuleIdeInfo> copyImmutableMap() {
+    Map<Label, RuleIdeInfo> result = Maps.newLinkedHashMap(immutableRuleMap);
+    for (int i = 0; i < replacedLabels.size(); ++i) {
+      result.put(replacedLabels.get(i), replacementRules.get(i));
+    }
+    for (Label label : removedLabels) {
+      result.remove(label);
+    }
+    return ImmutableMap.copyOf(result);
+  }
+
+  private PersistentMap<Label, RuleIdeInfo> applyWithBuilder() {
+    PersistentMap.Builder<Label, RuleIdeInfo> builder = ruleMap.toBuilder();
+    for (int i = 0; i < replacedLabels.size(); ++i) {
+      builder.put(replacedLabels.get(i), replacementRules.get(i));
+    }
+    for (Label label : removedLabels) {
+      builder.remove(label);
+    }
+    return builder.build();
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.benchmarks;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.idea.blaze.base.ideinfo.CToolchainIdeInfo;
+import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.rulemaps.CToolchainLookupMap;
+import com.google.idea.blaze.base.rulemaps.TargetGraph;
+import com.google.idea.blaze.base.sync.synthetic.SyntheticMonorepo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the reverse dependency structures of a synthetic rule map, and the C toolchain lookup
+ * map that is propagated over them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class ReverseDependencyBenchmark {
+  @Param({"1000", "10000", "100000"})
+  int ruleCount;
+
+  @Param({"4", "16"})
+  int fanOut;
+
+  private BenchmarkFixture fixture;
+  private ImmutableMap<Label, RuleIdeInfo> ruleMap;
+  private TargetGraph targetGraph;
+
+  @Setup
+  public void setup() {
+    fixture = new BenchmarkFixture();
+    ruleMap = SyntheticMonorepo.builder()
+      .setPackageCount(ruleCount / 10)
+      .setFanOut(fanOut)
+      .build(new File("/synthetic"))
+      .createRuleMap();
+    targetGraph = TargetGraph.create(ruleMap);
+  }
+
+  @TearDown
+  public void tearDown() {
+    fixture.dispose();
+  }
+
+  @Benchmark
+  public ImmutableMultimap<Label, Label> createRdepsMap() {
+    return ReverseDependencyMap.createRdepsMap(ruleMap);
+  }
+
+  @Benchmark
+  public TargetGraph createTargetGraph() {
+    return TargetGraph.create(ruleMap);
+  }
+
+  @Benchmark
+  public ImmutableMap<Label, CToolchainIdeInfo> createToolchainLookupMap() {
+    return CToolchainLookupMap.create(ruleMap, targetGraph);
+  }
+}
@@ -13,17 +13,22 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package com.google.idea.blaze.base.rulemaps;
+package com.google.idea.blaze.benchmarks;
 
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Iterables;
 import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
 import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.rulemaps.TargetGraph;
 
 import java.util.Map;
 
-public class ReverseDependencyMap {
-  public static ImmutableMultimap<Label, Label> createRdepsMap(Map<Label, RuleIdeInfo> ruleMap) {
+/**
+ * The reverse dependency multimap the sync used to build before {@link TargetGraph}, kept as a
+ * baseline for {@link ReverseDependencyBenchmark}.
+ */
+class ReverseDependencyMap {
+  static ImmutableMultimap<Label, Label> createRdepsMap(Map<Label, RuleIdeInfo> ruleMap) {
     ImmutableMultimap.Builder<Label, Label> builder = ImmutableMultimap.builder();
     for (Map.Entry<Label, RuleIdeInfo> entry : ruleMap.entrySet()) {
       Label label = entry.getKey();
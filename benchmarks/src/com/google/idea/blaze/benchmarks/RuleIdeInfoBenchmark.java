@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.benchmarks;
+
+import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
+import com.google.idea.blaze.base.sync.aspects.IdeInfoFromProtobuf;
+import com.google.idea.blaze.base.sync.projectview.WorkspaceLanguageSettings;
+import com.google.idea.blaze.base.sync.synthetic.SyntheticMonorepo;
+import com.google.repackaged.devtools.build.lib.ideinfo.androidstudio.AndroidStudioIdeInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts the aspect output of a synthetic workspace into rule infos.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class RuleIdeInfoBenchmark {
+  @Param({"1000", "10000", "100000"})
+  int ruleCount;
+
+  @Param({"4"})
+  int fanOut;
+
+  private BenchmarkFixture fixture;
+  private SyntheticMonorepo monorepo;
+  private WorkspaceLanguageSettings languageSettings;
+  private List<AndroidStudioIdeInfo.RuleIdeInfo> messages;
+
+  @Setup
+  public void setup() {
+    fixture = new BenchmarkFixture();
+    monorepo = SyntheticMonorepo.builder()
+      .setPackageCount(ruleCount / 10)
+      .setFanOut(fanOut)
+      .build(new File("/synthetic"));
+    languageSettings = monorepo.getLanguageSettings();
+    messages = monorepo.createRuleProtos();
+  }
+
+  @TearDown
+  public void tearDown() {
+    fixture.dispose();
+  }
+
+  @Benchmark
+  public void makeRuleIdeInfo(Blackhole blackhole) {
+    for (AndroidStudioIdeInfo.RuleIdeInfo message : messages) {
+      RuleIdeInfo rule = IdeInfoFromProtobuf.makeRuleIdeInfo(languageSettings, monorepo.getArtifactLocationDecoder(), message);
+      blackhole.consume(rule);
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.model.SyncState;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.rulemaps.TargetGraph;
+import com.google.idea.blaze.base.sync.data.BlazeProjectDataStore;
+import com.google.idea.blaze.base.sync.data.SyncStateCodec;
+import com.google.idea.blaze.base.sync.synthetic.SyntheticMonorepo;
+import com.google.idea.blaze.base.sync.workspace.WorkspacePathResolverImpl;
+import com.google.idea.blaze.base.util.SerializationUtil;
+import com.intellij.openapi.util.io.FileUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves and loads the project data of a synthetic workspace with {@link BlazeProjectDataStore}, as
+ * the project data manager does after every sync and on project open.
+ *
+ * <p>Loading maps the rule index and decodes rules on demand, so {@code loadAndScan} also reads
+ * every rule, as the first full pass over the rule map after opening a project does. The
+ * {@code legacy} benchmarks save and load the same data with java serialization, as earlier
+ * versions of the plugin did, for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SerializationBenchmark {
+  @Param({"1000", "10000", "100000"})
+  int ruleCount;
+
+  // Project data is compressed by default
+  private static final boolean COMPRESS = true;
+  private static final List<SyncStateCodec> CODECS = ImmutableList.of();
+
+  private BenchmarkFixture fixture;
+  private BlazeProjectData projectData;
+  private File directory;
+  private File savedFile;
+  private File scratchFile;
+  private File legacyFile;
+
+  @Setup
+  public void setup() throws IOException {
+    fixture = new BenchmarkFixture();
+    SyntheticMonorepo monorepo = SyntheticMonorepo.builder()
+      .setPackageCount(ruleCount / 10)
+      .build(new File("/synthetic"));
+    ImmutableMap<Label, RuleIdeInfo> ruleMap = monorepo.createRuleMap();
+    projectData = new BlazeProjectData(
+      0L,
+      ruleMap,
+      monorepo.getBlazeRoots(),
+      null,
+      new WorkspacePathResolverImpl(monorepo.getWorkspaceRoot()),
+      monorepo.getLanguageSettings(),
+      new SyncState.Builder().build(),
+      TargetGraph.create(ruleMap)
+    );
+    directory = Files.createTempDirectory("serialization").toFile();
+    savedFile = new File(directory, "saved.dat");
+    scratchFile = new File(directory, "scratch.dat");
+    legacyFile = new File(directory, "legacy.dat");
+    BlazeProjectDataStore.save(savedFile, projectData, CODECS, COMPRESS);
+    SerializationUtil.saveToDisk(legacyFile, projectData);
+  }
+
+  @TearDown
+  public void tearDown() {
+    fixture.dispose();
+    FileUtil.delete(directory);
+  }
+
+  @Benchmark
+  public File save() throws IOException {
+    BlazeProjectDataStore.save(scratchFile, projectData, CODECS, COMPRESS);
+    return scratchFile;
+  }
+
+  @Benchmark
+  public BlazeProjectData load() throws IOException {
+    return BlazeProjectDataStore.load(savedFile, CODECS, ImmutableList.of(getClass().getClassLoader()));
+  }
+
+  @Benchmark
+  public void loadAndScan(Blackhole blackhole) throws IOException {
+    BlazeProjectData loaded = BlazeProjectDataStore.load(savedFile, CODECS, ImmutableList.of(getClass().getClassLoader()));
+    for (RuleIdeInfo rule : loaded.ruleMap.values()) {
+      blackhole.consume(rule);
+    }
+  }
+
+  @Benchmark
+  public File legacySave() throws IOException {
+    SerializationUtil.saveToDisk(scratchFile, projectData);
+    return scratchFile;
+  }
+
+  @Benchmark
+  public BlazeProjectData legacyLoad() throws IOException {
+    return BlazeProjectDataStore.loadLegacy(legacyFile, ImmutableList.of(getClass().getClassLoader()));
+  }
+}
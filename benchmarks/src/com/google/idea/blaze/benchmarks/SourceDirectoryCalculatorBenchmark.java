@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
+import com.google.idea.blaze.base.io.FileAttributeProvider;
+import com.google.idea.blaze.base.io.InputStreamProvider;
+import com.google.idea.blaze.base.prefetch.MockPrefetchService;
+import com.google.idea.blaze.base.prefetch.PrefetchService;
+import com.google.idea.blaze.base.projectview.ProjectViewSet;
+import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.sync.projectview.SourceTestConfig;
+import com.google.idea.blaze.base.sync.synthetic.SyntheticMonorepo;
+import com.google.idea.blaze.java.sync.model.BlazeContentEntry;
+import com.google.idea.blaze.java.sync.source.JavaPackageCache;
+import com.google.idea.blaze.java.sync.source.JavaSourcePackageReader;
+import com.google.idea.blaze.java.sync.source.PackageManifestReader;
+import com.google.idea.blaze.java.sync.source.SourceArtifact;
+import com.google.idea.blaze.java.sync.source.SourceDirectoryCalculator;
+import com.intellij.openapi.util.io.FileUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calculates the content entries of a synthetic workspace written to a temporary directory.
+ *
+ * <p>The cold variant reads the package declaration of every source file, the warm one starts
+ * from the package cache of a previous sync.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SourceDirectoryCalculatorBenchmark {
+  @Param({"1000", "10000"})
+  int ruleCount;
+
+  private BenchmarkFixture fixture;
+  private SyntheticMonorepo monorepo;
+  private SourceTestConfig sourceTestConfig;
+  private List<SourceArtifact> sources;
+  private JavaPackageCache packageCache;
+
+  @Setup
+  public void setup() throws IOException {
+    fixture = new BenchmarkFixture()
+      .registerApplicationService(InputStreamProvider.class, FileInputStream::new)
+      .registerApplicationService(FileAttributeProvider.class, new FileAttributeProvider())
+      .registerApplicationService(JavaSourcePackageReader.class, new JavaSourcePackageReader())
+      .registerApplicationService(PackageManifestReader.class, new PackageManifestReader())
+      .registerApplicationService(PrefetchService.class, new MockPrefetchService());
+
+    monorepo = SyntheticMonorepo.builder()
+      .setPackageCount(ruleCount / 10)
+      .build(Files.createTempDirectory("synthetic").toFile());
+    monorepo.writeWorkspace();
+    sourceTestConfig = new SourceTestConfig(ProjectViewSet.builder().build());
+
+    ImmutableList.Builder<SourceArtifact> sources = ImmutableList.builder();
+    for (RuleIdeInfo rule : monorepo.createRuleMap().values()) {
+      for (ArtifactLocation source : rule.sources) {
+        sources.add(new SourceArtifact(rule.label, source));
+      }
+    }
+    this.sources = sources.build();
+
+    JavaPackageCache.Builder packageCache = JavaPackageCache.builder(null);
+    calculateContentEntries(new SourceDirectoryCalculator(packageCache));
+    this.packageCache = packageCache.build();
+  }
+
+  @TearDown
+  public void tearDown() {
+    fixture.dispose();
+    FileUtil.delete(monorepo.getRootDirectory());
+  }
+
+  @Benchmark
+  public ImmutableList<BlazeContentEntry> coldPackageCache() {
+    return calculateContentEntries(new SourceDirectoryCalculator());
+  }
+
+  @Benchmark
+  public ImmutableList<BlazeContentEntry> warmPackageCache() {
+    return calculateContentEntries(new SourceDirectoryCalculator(JavaPackageCache.builder(packageCache)));
+  }
+
+  private ImmutableList<BlazeContentEntry> calculateContentEntries(SourceDirectoryCalculator calculator) {
+    return calculator.calculateContentEntries(
+      new BlazeContext(),
+      monorepo.getWorkspaceRoot(),
+      sourceTestConfig,
+      monorepo.getArtifactLocationDecoder(),
+      monorepo.getRootDirectories(),
+      sources,
+      ImmutableMap.of()
+    );
+  }
+}
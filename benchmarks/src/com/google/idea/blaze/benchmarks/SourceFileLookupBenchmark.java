@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.rulemaps.PreferredTargetMap;
+import com.google.idea.blaze.base.sync.synthetic.SyntheticMonorepo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the target every source file of a C++ workspace is resolved in, as CLion asks the C
+ * configuration resolver for each file it resolves or highlights.
+ *
+ * <p>{@code lookupBySorting} sorts the file's targets on every call, {@code lookupInIndex} reads
+ * the choice from the {@link PreferredTargetMap} built once per sync by {@code createIndex}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class SourceFileLookupBenchmark {
+  @Param({"10000", "100000"})
+  int sourceFileCount;
+
+  private ImmutableMap<Label, ImmutableList<ArtifactLocation>> sourcesByTarget;
+  private ImmutableMultimap<File, Label> targetsBySourceFile;
+  private ImmutableMap<File, Label> preferredTargets;
+  private File[] sourceFiles;
+
+  @Setup
+  public void setup() {
+    // Every C++ target has a source and a header
+    ImmutableMap<Label, RuleIdeInfo> ruleMap = SyntheticMonorepo.builder()
+      .setPackageCount((sourceFileCount + 19) / 20)
+      .setTargetsPerPackage(10)
+      .setLanguageMix(0, 1, 0)
+      .build(new File("/synthetic"))
+      .createRuleMap();
+
+    ImmutableMap.Builder<Label, ImmutableList<ArtifactLocation>> sourcesByTarget = ImmutableMap.builder();
+    ImmutableMultimap.Builder<File, Label> targetsBySourceFile = ImmutableMultimap.builder();
+    List<File> sourceFiles = Lists.newArrayList();
+    for (RuleIdeInfo rule : ruleMap.values()) {
+      if (rule.cRuleIdeInfo == null) {
+        continue;
+      }
+      sourcesByTarget.put(rule.label, rule.cRuleIdeInfo.sources);
+      for (ArtifactLocation source : rule.cRuleIdeInfo.sources) {
+        targetsBySourceFile.put(source.getFile(), rule.label);
+        // Fresh files, as CLion hands us a new one for every lookup
+        sourceFiles.add(new File(source.getFile().getPath()));
+      }
+    }
+    this.sourcesByTarget = sourcesByTarget.build();
+    this.targetsBySourceFile = targetsBySourceFile.build();
+    this.preferredTargets = PreferredTargetMap.create(this.sourcesByTarget);
+    this.sourceFiles = sourceFiles.toArray(new File[sourceFiles.size()]);
+  }
+
+  @Benchmark
+  public ImmutableMap<File, Label> createIndex() {
+    return PreferredTargetMap.create(sourcesByTarget);
+  }
+
+  @Benchmark
+  public void lookupBySorting(Blackhole blackhole) {
+    for (File sourceFile : sourceFiles) {
+      List<Label> targets = Lists.newArrayList(targetsBySourceFile.get(sourceFile));
+      targets.sort((o1, o2) -> o1.toString().compareTo(o2.toString()));
+      blackhole.consume(Iterables.getFirst(targets, null));
+    }
+  }
+
+  @Benchmark
+  public void lookupInIndex(Blackhole blackhole) {
+    for (File sourceFile : sourceFiles) {
+      blackhole.consume(preferredTargets.get(sourceFile));
+    }
+  }
+}
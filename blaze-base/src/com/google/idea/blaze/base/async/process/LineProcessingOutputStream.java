@@ -20,10 +20,18 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 /**
- * An base output stream which marshals output into newline-delimited segments for processing.
+ * An base output stream which marshals output into newline-delimited segments for processing.<p>
+ * Output is decoded as UTF-8. Each byte is scanned once, so the cost is linear in the size of the
+ * output however long the lines are.
  */
 public final class LineProcessingOutputStream extends OutputStream {
 
@@ -34,56 +42,121 @@ public final class LineProcessingOutputStream extends OutputStream {
      * @return Whether line processing should continue
      */
     boolean processLine(@NotNull String line);
+
+    /**
+     * Called once when the stream is closed. Any lines still being processed must be finished
+     * before this returns.
+     */
+    default void close() {
+    }
   }
 
+  private static final int BUFFER_SIZE = 8192;
+
+  /**
+   * Lines longer than this are not worth keeping the whole of: the builder is replaced rather than
+   * reused, so one giant line doesn't pin its buffer for the lifetime of the stream.
+   */
+  private static final int MAX_RETAINED_LINE_CAPACITY = 64 * 1024;
+
+  private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+    .onMalformedInput(CodingErrorAction.REPLACE)
+    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  private final ByteBuffer byteBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+  private final CharBuffer charBuffer = CharBuffer.allocate(BUFFER_SIZE);
   @NotNull
-  private final StringBuffer stringBuffer = new StringBuffer();
+  private StringBuilder line = new StringBuilder();
+  private boolean lastCharWasCarriageReturn;
   private volatile boolean closed;
   @NotNull
   private final List<LineProcessor> lineProcessors;
+  private final int maxLineLength;
 
-  LineProcessingOutputStream(@NotNull LineProcessor... lineProcessors) {
+  LineProcessingOutputStream(int maxLineLength, @NotNull LineProcessor... lineProcessors) {
+    this.maxLineLength = maxLineLength;
     this.lineProcessors = Lists.newArrayList(lineProcessors);
   }
 
   public static LineProcessingOutputStream of(@NotNull LineProcessor... lineProcessors) {
-    return new LineProcessingOutputStream(lineProcessors);
+    return new LineProcessingOutputStream(Integer.MAX_VALUE, lineProcessors);
+  }
+
+  /**
+   * Returns a stream which truncates lines to at most {@code maxLineLength} characters. The rest
+   * of an over-long line is dropped.
+   */
+  public static LineProcessingOutputStream of(int maxLineLength, @NotNull LineProcessor... lineProcessors) {
+    if (maxLineLength <= 0) {
+      throw new IllegalArgumentException("Invalid max line length: " + maxLineLength);
+    }
+    return new LineProcessingOutputStream(maxLineLength, lineProcessors);
   }
 
   @Override
   public synchronized void write(byte[] b, int off, int len) {
-    if (!closed) {
-      String text = new String(b, off, len);
-      stringBuffer.append(text);
-
-      while (true) {
-        int lineBreakIndex = -1;
-        int lineBreakLength = 0;
-        for (int i = 0; i < stringBuffer.length(); ++i) {
-          char c = stringBuffer.charAt(i);
-          if (c == '\r' || c == '\n') {
-            lineBreakIndex = i;
-            lineBreakLength = 1;
-            if (c == '\r' && (i + 1) < stringBuffer.length() && stringBuffer.charAt(i + 1) == '\n') {
-              ++lineBreakLength;
-            }
-            break;
-          }
-        }
-
-        if (lineBreakIndex == -1) {
-          return;
-        }
-
-        String line = stringBuffer.substring(0, lineBreakIndex);
-
-        stringBuffer.delete(0, lineBreakIndex + lineBreakLength);
-
-        for (LineProcessor lineProcessor : lineProcessors) {
-          if (!lineProcessor.processLine(line)) {
-            break;
-          }
-        }
+    if (closed) {
+      return;
+    }
+    while (len > 0) {
+      int chunk = Math.min(len, byteBuffer.remaining());
+      byteBuffer.put(b, off, chunk);
+      off += chunk;
+      len -= chunk;
+
+      byteBuffer.flip();
+      CoderResult result;
+      do {
+        // An incomplete multi-byte sequence at the end is left in the byte buffer for the next write
+        result = decoder.decode(byteBuffer, charBuffer, false);
+        charBuffer.flip();
+        processChars(charBuffer.array(), charBuffer.arrayOffset() + charBuffer.position(), charBuffer.remaining());
+        charBuffer.clear();
+      }
+      while (result.isOverflow());
+      byteBuffer.compact();
+    }
+  }
+
+  private void processChars(char[] chars, int start, int length) {
+    int end = start + length;
+    int lineStart = start;
+    for (int i = start; i < end; ++i) {
+      char c = chars[i];
+      if (c != '\r' && c != '\n') {
+        continue;
+      }
+      boolean secondHalfOfCrLf = c == '\n' && lastCharWasCarriageReturn && i == lineStart && line.length() == 0;
+      lastCharWasCarriageReturn = c == '\r';
+      if (!secondHalfOfCrLf) {
+        appendToLine(chars, lineStart, i - lineStart);
+        processLine();
+      }
+      lineStart = i + 1;
+    }
+    if (lineStart < end) {
+      lastCharWasCarriageReturn = false;
+      appendToLine(chars, lineStart, end - lineStart);
+    }
+  }
+
+  private void appendToLine(char[] chars, int start, int length) {
+    int available = maxLineLength - line.length();
+    if (available > 0) {
+      line.append(chars, start, Math.min(length, available));
+    }
+  }
+
+  private void processLine() {
+    String text = line.toString();
+    if (line.capacity() > MAX_RETAINED_LINE_CAPACITY) {
+      line = new StringBuilder();
+    }
+    else {
+      line.setLength(0);
+    }
+    for (LineProcessor lineProcessor : lineProcessors) {
+      if (!lineProcessor.processLine(text)) {
+        break;
       }
     }
   }
@@ -95,7 +168,15 @@ public final class LineProcessingOutputStream extends OutputStream {
 
   @Override
   public void close() throws IOException {
-    closed = true;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    for (LineProcessor lineProcessor : lineProcessors) {
+      lineProcessor.close();
+    }
     super.close();
   }
 }
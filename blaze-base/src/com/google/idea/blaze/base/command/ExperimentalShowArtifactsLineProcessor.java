@@ -20,6 +20,7 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Collects the output of --experimental_show_artifacts
@@ -28,13 +29,21 @@ public class ExperimentalShowArtifactsLineProcessor implements LineProcessingOut
   private static final String OUTPUT_START = "Build artifacts:";
   private static final String OUTPUT_MARKER = ">>>";
 
-  final List<File> fileList;
+  private final Consumer<File> consumer;
   private final String fileType;
   boolean insideBuildResult = false;
 
   public ExperimentalShowArtifactsLineProcessor(List<File> fileList,
                                                 String fileType) {
-    this.fileList = fileList;
+    this(fileList::add, fileType);
+  }
+
+  /**
+   * Hands each matching artifact to the consumer as soon as its line is processed.
+   */
+  public ExperimentalShowArtifactsLineProcessor(Consumer<File> consumer,
+                                                String fileType) {
+    this.consumer = consumer;
     this.fileType = fileType;
   }
 
@@ -50,7 +59,7 @@ public class ExperimentalShowArtifactsLineProcessor implements LineProcessingOut
       if (insideBuildResult) {
         String fileName = line.substring(OUTPUT_MARKER.length());
         if (fileName.endsWith(fileType)) {
-          fileList.add(new File(fileName));
+          consumer.accept(new File(fileName));
         }
       }
     }
@@ -15,7 +15,12 @@
  */
 package com.google.idea.blaze.base.command.info;
 
+import com.google.common.base.Function;
+import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
 import com.google.idea.blaze.base.scope.BlazeContext;
@@ -23,6 +28,7 @@ import com.google.idea.blaze.base.settings.Blaze.BuildSystem;
 import com.intellij.openapi.components.ServiceManager;
 
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -96,4 +102,28 @@ public abstract class BlazeInfo {
     BuildSystem buildSystem,
     WorkspaceRoot workspaceRoot,
     List<String> blazeFlags);
+
+  /**
+   * Fetches several keys with a single blaze info call.
+   *
+   * @param blazeFlags The blaze flags that will be passed to Blaze.
+   * @param keys The keys passed to blaze info
+   * @return The blaze info values of the specified keys
+   */
+  public ListenableFuture<ImmutableMap<String, String>> runBlazeInfo(
+    @Nullable BlazeContext context,
+    BuildSystem buildSystem,
+    WorkspaceRoot workspaceRoot,
+    List<String> blazeFlags,
+    Collection<String> keys) {
+    ImmutableSet<String> keySet = ImmutableSet.copyOf(keys);
+    return Futures.transform(
+      runBlazeInfo(context, buildSystem, workspaceRoot, blazeFlags),
+      new Function<ImmutableMap<String, String>, ImmutableMap<String, String>>() {
+        @Override
+        public ImmutableMap<String, String> apply(ImmutableMap<String, String> values) {
+          return ImmutableMap.copyOf(Maps.filterKeys(values, Predicates.in(keySet)));
+        }
+      });
+  }
 }
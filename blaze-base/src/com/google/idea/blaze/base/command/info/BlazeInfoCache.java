@@ -0,0 +1,319 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.command.info;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.idea.blaze.base.io.FileAttributeProvider;
+import com.google.idea.blaze.base.io.FileStat;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.model.SyncState;
+import com.google.idea.blaze.base.model.primitives.WorkspacePath;
+import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
+import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.settings.Blaze;
+import com.google.idea.blaze.base.settings.Blaze.BuildSystem;
+import com.google.idea.blaze.base.settings.BlazeUserSettings;
+import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.io.File;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Project-level cache of blaze info results.<p>
+ * All the keys the plugin needs are fetched with a single blaze info call. Results are saved with
+ * the sync state, so they survive restarts, and are reused until the blaze binary, the blaze flags,
+ * the rc files or the pinned bazel version change (or a full sync is requested).
+ */
+public class BlazeInfoCache {
+  private static final int MAX_ENTRIES = 8;
+
+  private final Project project;
+  private final Object lock = new Object();
+  /** Null until first use, when it's restored from the last sync. */
+  @Nullable private State state;
+
+  public static BlazeInfoCache getInstance(Project project) {
+    return ServiceManager.getService(project, BlazeInfoCache.class);
+  }
+
+  public BlazeInfoCache(Project project) {
+    this.project = project;
+  }
+
+  /**
+   * The keys fetched by {@link #getBlazeInfo}.
+   */
+  public static ImmutableList<String> cachedKeys(BuildSystem buildSystem) {
+    return ImmutableList.of(
+      BlazeInfo.EXECUTION_ROOT_KEY,
+      BlazeInfo.PACKAGE_PATH_KEY,
+      BlazeInfo.blazeBinKey(buildSystem),
+      BlazeInfo.blazeGenfilesKey(buildSystem));
+  }
+
+  /**
+   * Returns the values of all of {@link #cachedKeys}, running blaze info only if there's no
+   * up-to-date cached result.
+   */
+  public ListenableFuture<ImmutableMap<String, String>> getBlazeInfo(@Nullable BlazeContext context,
+                                                                     WorkspaceRoot workspaceRoot,
+                                                                     List<String> blazeFlags) {
+    BuildSystem buildSystem = Blaze.getBuildSystem(project);
+    Key key = Key.create(buildSystem, workspaceRoot, blazeFlags);
+    ImmutableMap<String, String> cached = getState().entries.get(key);
+    if (cached != null) {
+      return Futures.immediateFuture(cached);
+    }
+    ListenableFuture<ImmutableMap<String, String>> future =
+      BlazeInfo.getInstance().runBlazeInfo(context, buildSystem, workspaceRoot, blazeFlags, cachedKeys(buildSystem));
+    return Futures.transform(future, new Function<ImmutableMap<String, String>, ImmutableMap<String, String>>() {
+      @Override
+      public ImmutableMap<String, String> apply(ImmutableMap<String, String> values) {
+        put(key, values);
+        return values;
+      }
+    });
+  }
+
+  /**
+   * Returns the value of a single blaze info key. Keys other than {@link #cachedKeys} aren't
+   * cached.
+   */
+  public ListenableFuture<String> getBlazeInfo(@Nullable BlazeContext context,
+                                               WorkspaceRoot workspaceRoot,
+                                               List<String> blazeFlags,
+                                               String key) {
+    BuildSystem buildSystem = Blaze.getBuildSystem(project);
+    if (!cachedKeys(buildSystem).contains(key)) {
+      return BlazeInfo.getInstance().runBlazeInfo(context, buildSystem, workspaceRoot, blazeFlags, key);
+    }
+    return Futures.transform(getBlazeInfo(context, workspaceRoot, blazeFlags), new Function<ImmutableMap<String, String>, String>() {
+      @Nullable
+      @Override
+      public String apply(ImmutableMap<String, String> values) {
+        return values.get(key);
+      }
+    });
+  }
+
+  /**
+   * Drops all cached results.
+   */
+  public void invalidate() {
+    synchronized (lock) {
+      state = new State(ImmutableMap.of());
+    }
+  }
+
+  /**
+   * Saves the cached results with the sync state, so they're available after a restart.
+   */
+  public void addToSyncState(SyncState.Builder syncStateBuilder) {
+    syncStateBuilder.put(State.class, getState());
+  }
+
+  private State getState() {
+    synchronized (lock) {
+      if (state == null) {
+        BlazeProjectData blazeProjectData = BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
+        State savedState = blazeProjectData != null ? blazeProjectData.syncState.get(State.class) : null;
+        state = savedState != null ? savedState : new State(ImmutableMap.of());
+      }
+      return state;
+    }
+  }
+
+  private void put(Key key, ImmutableMap<String, String> values) {
+    synchronized (lock) {
+      // Most recent first, dropping the oldest entries beyond the limit
+      ImmutableMap.Builder<Key, ImmutableMap<String, String>> entries = ImmutableMap.builder();
+      entries.put(key, values);
+      int count = 1;
+      for (Map.Entry<Key, ImmutableMap<String, String>> entry : getState().entries.entrySet()) {
+        if (count == MAX_ENTRIES) {
+          break;
+        }
+        if (!entry.getKey().equals(key)) {
+          entries.put(entry);
+          ++count;
+        }
+      }
+      state = new State(entries.build());
+    }
+  }
+
+  /**
+   * The cached results, as saved in the sync state.
+   */
+  @Immutable
+  static final class State implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final ImmutableMap<Key, ImmutableMap<String, String>> entries;
+
+    State(ImmutableMap<Key, ImmutableMap<String, String>> entries) {
+      this.entries = entries;
+    }
+  }
+
+  /**
+   * Everything blaze info results depend on: a result is only reused if none of this has changed.
+   */
+  @Immutable
+  @VisibleForTesting
+  static final class Key implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final BuildSystem buildSystem;
+    final String workspaceRoot;
+    final ImmutableList<String> blazeFlags;
+    /** Path and {@link FileStat} of the binary, each rc file and the bazel version file. */
+    final ImmutableList<String> fileStamps;
+
+    Key(BuildSystem buildSystem, String workspaceRoot, ImmutableList<String> blazeFlags, ImmutableList<String> fileStamps) {
+      this.buildSystem = buildSystem;
+      this.workspaceRoot = workspaceRoot;
+      this.blazeFlags = blazeFlags;
+      this.fileStamps = fileStamps;
+    }
+
+    static Key create(BuildSystem buildSystem, WorkspaceRoot workspaceRoot, List<String> blazeFlags) {
+      ImmutableList.Builder<String> fileStamps = ImmutableList.builder();
+      String binaryPath = getBinaryPath(buildSystem);
+      fileStamps.add(stamp(binaryPath != null ? resolveBinary(binaryPath) : null));
+      for (File configFile : getConfigFiles(buildSystem, workspaceRoot, blazeFlags)) {
+        fileStamps.add(stamp(configFile));
+      }
+      return new Key(buildSystem, workspaceRoot.toString(), ImmutableList.copyOf(blazeFlags), fileStamps.build());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return buildSystem == other.buildSystem
+             && workspaceRoot.equals(other.workspaceRoot)
+             && blazeFlags.equals(other.blazeFlags)
+             && fileStamps.equals(other.fileStamps);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(buildSystem, workspaceRoot, blazeFlags, fileStamps);
+    }
+  }
+
+  @Nullable
+  private static String getBinaryPath(BuildSystem buildSystem) {
+    BlazeUserSettings settings = BlazeUserSettings.getInstance();
+    return buildSystem == BuildSystem.Bazel ? settings.getBazelBinaryPath() : settings.getBlazeBinaryPath();
+  }
+
+  /**
+   * Finds the binary blaze will actually run, so a new version installed on the PATH is noticed.
+   */
+  private static File resolveBinary(String binaryPath) {
+    File binary = new File(binaryPath);
+    if (binary.isAbsolute() || binaryPath.contains(File.separator)) {
+      return binary;
+    }
+    String path = System.getenv("PATH");
+    if (path != null) {
+      FileAttributeProvider fileAttributeProvider = FileAttributeProvider.getInstance();
+      for (String directory : path.split(File.pathSeparator)) {
+        File candidate = new File(directory, binaryPath);
+        if (fileAttributeProvider.isFile(candidate)) {
+          return candidate;
+        }
+      }
+    }
+    return binary;
+  }
+
+  private static ImmutableList<File> getConfigFiles(BuildSystem buildSystem, WorkspaceRoot workspaceRoot, List<String> blazeFlags) {
+    File home = new File(System.getProperty("user.home"));
+    ImmutableList.Builder<File> result = ImmutableList.builder();
+    switch (buildSystem) {
+      case Bazel:
+        result.add(
+          workspaceRoot.fileForPath(new WorkspacePath("WORKSPACE")),
+          new File(workspaceRoot.directory(), ".bazelversion"),
+          new File("/etc/bazel.bazelrc"),
+          new File(workspaceRoot.directory(), ".bazelrc"),
+          new File(workspaceRoot.directory(), "tools/bazel.rc"),
+          new File(home, ".bazelrc"));
+        break;
+      case Blaze:
+        result.add(
+          new File(workspaceRoot.directory(), ".blazerc"),
+          new File(home, ".blazerc"));
+        break;
+      default:
+        throw new IllegalArgumentException("Unrecognized build system: " + buildSystem);
+    }
+    result.addAll(getRcFlagFiles(buildSystem, workspaceRoot, blazeFlags));
+    return result.build();
+  }
+
+  /**
+   * The rc files named by --bazelrc (or --blazerc) flags, in either the "--flag=path" or the
+   * "--flag path" form. Relative paths are resolved against the workspace root, where blaze runs.
+   */
+  @VisibleForTesting
+  static ImmutableList<File> getRcFlagFiles(BuildSystem buildSystem, WorkspaceRoot workspaceRoot, List<String> blazeFlags) {
+    String flag = buildSystem == BuildSystem.Bazel ? "--bazelrc" : "--blazerc";
+    ImmutableList.Builder<File> result = ImmutableList.builder();
+    for (int i = 0; i < blazeFlags.size(); ++i) {
+      String blazeFlag = blazeFlags.get(i);
+      String path = null;
+      if (blazeFlag.startsWith(flag + "=")) {
+        path = blazeFlag.substring(flag.length() + 1);
+      } else if (blazeFlag.equals(flag) && i + 1 < blazeFlags.size()) {
+        path = blazeFlags.get(++i);
+      }
+      if (path != null && !path.isEmpty()) {
+        File file = new File(path);
+        result.add(file.isAbsolute() ? file : new File(workspaceRoot.directory(), path));
+      }
+    }
+    return result.build();
+  }
+
+  private static String stamp(@Nullable File file) {
+    if (file == null) {
+      return "";
+    }
+    FileStat stat = FileAttributeProvider.getInstance().getFileStat(file);
+    return stat != null ? file.getPath() + ":" + stat.modifiedTime + ":" + stat.size + ":" + stat.fileKey : file.getPath() + ":missing";
+  }
+}
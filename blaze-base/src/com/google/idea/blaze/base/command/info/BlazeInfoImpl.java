@@ -15,6 +15,7 @@
  */
 package com.google.idea.blaze.base.command.info;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.idea.blaze.base.async.executor.BlazeExecutor;
@@ -28,6 +29,7 @@ import com.intellij.openapi.diagnostic.Logger;
 
 import javax.annotation.Nullable;
 import java.io.ByteArrayOutputStream;
+import java.util.Collection;
 import java.util.List;
 
 public class BlazeInfoImpl extends BlazeInfo {
@@ -39,7 +41,7 @@ public class BlazeInfoImpl extends BlazeInfo {
                                                WorkspaceRoot workspaceRoot,
                                                List<String> blazeFlags,
                                                String key) {
-    return BlazeExecutor.getInstance().submit(() -> runBlazeInfo(buildSystem, workspaceRoot, key, blazeFlags, context).toString().trim());
+    return BlazeExecutor.getInstance().submit(() -> runBlazeInfo(buildSystem, workspaceRoot, ImmutableList.of(key), blazeFlags, context).toString().trim());
   }
 
   @Override
@@ -48,7 +50,7 @@ public class BlazeInfoImpl extends BlazeInfo {
                                                        WorkspaceRoot workspaceRoot,
                                                        List<String> blazeFlags,
                                                        String key) {
-    return BlazeExecutor.getInstance().submit(() -> runBlazeInfo(buildSystem, workspaceRoot, key, blazeFlags, context).toByteArray());
+    return BlazeExecutor.getInstance().submit(() -> runBlazeInfo(buildSystem, workspaceRoot, ImmutableList.of(key), blazeFlags, context).toByteArray());
   }
 
   @Override
@@ -57,7 +59,24 @@ public class BlazeInfoImpl extends BlazeInfo {
                                                                      WorkspaceRoot workspaceRoot,
                                                                      List<String> blazeFlags) {
     return BlazeExecutor.getInstance().submit(() -> {
-      String blazeInfoString = runBlazeInfo(buildSystem, workspaceRoot, null /* key */, blazeFlags, context).toString().trim();
+      String blazeInfoString = runBlazeInfo(buildSystem, workspaceRoot, ImmutableList.of() /* keys */, blazeFlags, context).toString().trim();
+      return parseBlazeInfoResult(blazeInfoString);
+    });
+  }
+
+  @Override
+  public ListenableFuture<ImmutableMap<String, String>> runBlazeInfo(@Nullable BlazeContext context,
+                                                                     BuildSystem buildSystem,
+                                                                     WorkspaceRoot workspaceRoot,
+                                                                     List<String> blazeFlags,
+                                                                     Collection<String> keys) {
+    ImmutableList<String> keyList = ImmutableList.copyOf(keys);
+    return BlazeExecutor.getInstance().submit(() -> {
+      String blazeInfoString = runBlazeInfo(buildSystem, workspaceRoot, keyList, blazeFlags, context).toString().trim();
+      // With a single key, blaze info prints only the value
+      if (keyList.size() == 1) {
+        return ImmutableMap.of(keyList.get(0), blazeInfoString);
+      }
       return parseBlazeInfoResult(blazeInfoString);
     });
   }
@@ -65,13 +84,11 @@ public class BlazeInfoImpl extends BlazeInfo {
   private static ByteArrayOutputStream runBlazeInfo(
     BuildSystem buildSystem,
     WorkspaceRoot workspaceRoot,
-    @Nullable String key,
+    List<String> keys,
     List<String> blazeFlags,
     @Nullable BlazeContext context) throws BlazeInfoException {
     BlazeCommand.Builder builder = BlazeCommand.builder(buildSystem, BlazeCommandName.INFO);
-    if (key != null) {
-      builder.addBlazeFlags(key);
-    }
+    builder.addBlazeFlags(keys);
     BlazeCommand command = builder.addBlazeFlags(blazeFlags).build();
     ByteArrayOutputStream stdout = new ByteArrayOutputStream();
     ByteArrayOutputStream stderr = new ByteArrayOutputStream();
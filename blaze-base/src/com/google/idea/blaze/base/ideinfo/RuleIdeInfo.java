@@ -120,7 +120,7 @@ public final class RuleIdeInfo implements Serializable {
     private JavaToolchainIdeInfo javaToolchainIdeInfo;
 
     public Builder setLabel(String label) {
-      return setLabel(new Label(label));
+      return setLabel(Label.create(label));
     }
     public Builder setLabel(Label label) {
       this.label = label;
@@ -186,14 +186,14 @@ public final class RuleIdeInfo implements Serializable {
       return this;
     }
     public Builder addDependency(String s) {
-      return addDependency(new Label(s));
+      return addDependency(Label.create(s));
     }
     public Builder addDependency(Label label) {
       this.dependencies.add(label);
       return this;
     }
     public Builder addRuntimeDep(String s) {
-      return addRuntimeDep(new Label(s));
+      return addRuntimeDep(Label.create(s));
     }
     public Builder addRuntimeDep(Label label) {
       this.runtimeDeps.add(label);
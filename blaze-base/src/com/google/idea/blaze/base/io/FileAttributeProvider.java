@@ -15,9 +15,15 @@
  */
 package com.google.idea.blaze.base.io;
 
+import com.google.common.hash.Hashing;
 import com.intellij.openapi.components.ServiceManager;
 
+import javax.annotation.Nullable;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.attribute.BasicFileAttributes;
 
 /**
  * Simple file system checks (existence, isDirectory)
@@ -44,4 +50,28 @@ public class FileAttributeProvider {
     return file.lastModified();
   }
 
+  /**
+   * Reads the modification time, size and identity of a file in one call.
+   *
+   * @return null if the file does not exist or cannot be read
+   */
+  @Nullable
+  public FileStat getFileStat(File file) {
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+      Object fileKey = attributes.fileKey();
+      return new FileStat(attributes.lastModifiedTime().toMillis(), attributes.size(), fileKey != null ? fileKey.hashCode() : 0);
+    }
+    catch (IOException | InvalidPathException e) {
+      return null;
+    }
+  }
+
+  /**
+   * A fast, non-cryptographic hash of the file contents.
+   */
+  public long getContentHash(File file) throws IOException {
+    return com.google.common.io.Files.asByteSource(file).hash(Hashing.murmur3_128()).asLong();
+  }
+
 }
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.io;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The attributes of a file that are read with a single stat call.
+ */
+@Immutable
+public final class FileStat {
+  public final long modifiedTime;
+  public final long size;
+  /**
+   * Hash of the file system's identity for the file (device and inode on unix), or 0 if the file
+   * system has none. A file that is replaced rather than rewritten gets a new identity.
+   */
+  public final int fileKey;
+
+  public FileStat(long modifiedTime, long size, int fileKey) {
+    this.modifiedTime = modifiedTime;
+    this.size = size;
+    this.fileKey = fileKey;
+  }
+}
@@ -16,6 +16,7 @@
 package com.google.idea.blaze.base.issueparser;
 
 import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.idea.blaze.base.model.primitives.TargetExpression;
 import com.google.idea.blaze.base.model.primitives.WorkspacePath;
@@ -74,14 +75,33 @@ public class BlazeIssueParser {
   interface Parser {
     @NotNull
     ParseResult parse(@NotNull String currentLine, @NotNull List<String> previousLines);
+
+    /**
+     * Literal strings, at least one of which must occur in the first line of any issue this parser
+     * matches. Lines containing none of them are never passed to the parser. If empty, the parser
+     * sees every line.
+     */
+    @NotNull
+    default ImmutableList<String> keywords() {
+      return ImmutableList.of();
+    }
   }
 
   static abstract class SingleLineParser implements Parser {
     @NotNull
     Pattern pattern;
+    @NotNull
+    private final ImmutableList<String> keywords;
 
-    SingleLineParser(@NotNull String regex) {
+    SingleLineParser(@NotNull String regex, @NotNull String... keywords) {
       pattern = Pattern.compile(regex);
+      this.keywords = ImmutableList.copyOf(keywords);
+    }
+
+    @NotNull
+    @Override
+    public ImmutableList<String> keywords() {
+      return keywords;
     }
 
     @Override
@@ -107,7 +127,7 @@ public class BlazeIssueParser {
     private final WorkspaceRoot workspaceRoot;
 
     public CompileParser(@NotNull WorkspaceRoot workspaceRoot) {
-      super("(.*?):([0-9]+):([0-9]+:)? (error|warning): (.*)");
+      super("(.*?):([0-9]+):([0-9]+:)? (error|warning): (.*)", ": error: ", ": warning: ");
       this.workspaceRoot = workspaceRoot;
     }
 
@@ -144,6 +164,12 @@ public class BlazeIssueParser {
   static class TracebackParser implements Parser {
     private static final Pattern PATTERN = Pattern.compile("(ERROR): (.*?):([0-9]+):([0-9]+): (Traceback \\(most recent call last\\):)");
 
+    @NotNull
+    @Override
+    public ImmutableList<String> keywords() {
+      return ImmutableList.of("Traceback (most recent call last):");
+    }
+
     @NotNull
     @Override
     public ParseResult parse(@NotNull String currentLine, @NotNull List<String> previousLines) {
@@ -179,7 +205,7 @@ public class BlazeIssueParser {
 
   static class BuildParser extends SingleLineParser {
     BuildParser() {
-      super("(ERROR): (.*?):([0-9]+):([0-9]+): (.*)");
+      super("(ERROR): (.*?):([0-9]+):([0-9]+): (.*)", "ERROR: ");
     }
 
     @Override
@@ -193,7 +219,7 @@ public class BlazeIssueParser {
 
   static class LinelessBuildParser extends SingleLineParser {
     LinelessBuildParser() {
-      super("(ERROR): (.*?):char offsets [0-9]+--[0-9]+: (.*)");
+      super("(ERROR): (.*?):char offsets [0-9]+--[0-9]+: (.*)", ":char offsets ");
     }
 
     @Override
@@ -210,7 +236,7 @@ public class BlazeIssueParser {
 
     ProjectViewLabelParser(
       @Nullable ProjectViewSet projectViewSet) {
-      super("no such target '(.*)': target .*? not declared in package .*? defined by");
+      super("no such target '(.*)': target .*? not declared in package .*? defined by", "no such target '");
       this.projectViewSet = projectViewSet;
     }
 
@@ -239,8 +265,9 @@ public class BlazeIssueParser {
 
     InvalidTargetProjectViewPackageParser(
       @Nullable ProjectViewSet projectViewSet,
-      String regex) {
-      super(regex);
+      String regex,
+      String keyword) {
+      super(regex, keyword);
       this.projectViewSet = projectViewSet;
     }
 
@@ -279,11 +306,43 @@ public class BlazeIssueParser {
     return null;
   }
 
+  /**
+   * Counts of how often each parser was consulted, for tuning the prefilter.
+   */
+  public static final class ParserStats {
+    public final String parser;
+    /** Lines which produced an issue. */
+    public final long hits;
+    /** Lines passed to the parser which didn't produce an issue. */
+    public final long misses;
+    /** Lines the prefilter ruled out without running the parser. */
+    public final long skipped;
+
+    ParserStats(String parser, long hits, long misses, long skipped) {
+      this.parser = parser;
+      this.hits = hits;
+      this.misses = misses;
+      this.skipped = skipped;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s: %d hits, %d misses, %d skipped", parser, hits, misses, skipped);
+    }
+  }
+
   @NotNull private List<Parser> parsers = Lists.newArrayList();
   /** The parser that requested more lines of input during the last call to {@link #parseIssue(String)}. */
   @Nullable private Parser multilineMatchingParser;
   @NotNull private List<String> multilineMatchResult = new ArrayList<>();
 
+  @NotNull private final KeywordMatcher keywordMatcher;
+  /** Parsers with no keywords, which see every line. */
+  private final long unfilteredParsers;
+  private final long[] hits;
+  private final long[] misses;
+  private final long[] skipped;
+
   public BlazeIssueParser(
     @Nullable Project project,
     @NotNull WorkspaceRoot workspaceRoot) {
@@ -295,32 +354,57 @@ public class BlazeIssueParser {
     parsers.add(new BuildParser());
     parsers.add(new LinelessBuildParser());
     parsers.add(new ProjectViewLabelParser(projectViewSet));
-    parsers.add(new InvalidTargetProjectViewPackageParser(projectViewSet, "no such package '(.*)': BUILD file not found on package path"));
-    parsers.add(new InvalidTargetProjectViewPackageParser(projectViewSet, "no targets found beneath '(.*)'"));
-    parsers.add(new InvalidTargetProjectViewPackageParser(projectViewSet, "ERROR: invalid target format '(.*)'"));
+    parsers.add(new InvalidTargetProjectViewPackageParser(projectViewSet, "no such package '(.*)': BUILD file not found on package path", "no such package '"));
+    parsers.add(new InvalidTargetProjectViewPackageParser(projectViewSet, "no targets found beneath '(.*)'", "no targets found beneath '"));
+    parsers.add(new InvalidTargetProjectViewPackageParser(projectViewSet, "ERROR: invalid target format '(.*)'", "ERROR: invalid target format '"));
+
+    List<ImmutableList<String>> keywords = Lists.newArrayListWithCapacity(parsers.size());
+    long unfiltered = 0;
+    for (int i = 0; i < parsers.size(); ++i) {
+      ImmutableList<String> parserKeywords = parsers.get(i).keywords();
+      keywords.add(parserKeywords);
+      if (parserKeywords.isEmpty()) {
+        unfiltered |= 1L << i;
+      }
+    }
+    keywordMatcher = new KeywordMatcher(keywords);
+    unfilteredParsers = unfiltered;
+    hits = new long[parsers.size()];
+    misses = new long[parsers.size()];
+    skipped = new long[parsers.size()];
   }
 
 
   @Nullable
   public IssueOutput parseIssue(String line) {
 
-    List<Parser> parsers = this.parsers;
     if (multilineMatchingParser != null) {
-      parsers = Lists.newArrayList(multilineMatchingParser);
+      Parser parser = multilineMatchingParser;
+      ParseResult issue = parser.parse(line, multilineMatchResult);
+      if (issue.needsMoreInput) {
+        multilineMatchResult.add(line);
+        return null;
+      }
+      multilineMatchingParser = null;
+      multilineMatchResult = new ArrayList<>();
+      recordResult(parsers.indexOf(parser), issue);
+      return issue.output;
     }
 
-    for (Parser parser : parsers) {
+    long candidates = keywordMatcher.match(line) | unfilteredParsers;
+    for (int i = 0; i < parsers.size(); ++i) {
+      if ((candidates & (1L << i)) == 0) {
+        ++skipped[i];
+        continue;
+      }
+      Parser parser = parsers.get(i);
       ParseResult issue = parser.parse(line, multilineMatchResult);
       if (issue.needsMoreInput) {
         multilineMatchingParser = parser;
         multilineMatchResult.add(line);
         return null;
       }
-      else {
-        multilineMatchingParser = null;
-        multilineMatchResult = new ArrayList<>();
-      }
-
+      recordResult(i, issue);
       if (issue.output != null) {
         return issue.output;
       }
@@ -328,4 +412,25 @@ public class BlazeIssueParser {
 
     return null;
   }
+
+  private void recordResult(int parserIndex, ParseResult result) {
+    if (result.output != null) {
+      ++hits[parserIndex];
+    }
+    else {
+      ++misses[parserIndex];
+    }
+  }
+
+  /**
+   * Returns, for each parser in the order they're tried, how many lines it has matched.
+   */
+  @NotNull
+  public ImmutableList<ParserStats> getParserStats() {
+    ImmutableList.Builder<ParserStats> stats = ImmutableList.builder();
+    for (int i = 0; i < parsers.size(); ++i) {
+      stats.add(new ParserStats(parsers.get(i).getClass().getSimpleName(), hits[i], misses[i], skipped[i]));
+    }
+    return stats.build();
+  }
 }
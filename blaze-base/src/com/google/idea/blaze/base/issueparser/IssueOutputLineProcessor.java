@@ -15,41 +15,100 @@
  */
 package com.google.idea.blaze.base.issueparser;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.idea.blaze.base.async.process.LineProcessingOutputStream;
 import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
 import com.google.idea.blaze.base.scope.BlazeContext;
 import com.google.idea.blaze.base.scope.output.IssueOutput;
 import com.google.idea.blaze.base.scope.output.PrintOutput;
 import com.google.idea.blaze.base.scope.output.PrintOutput.OutputType;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Forwards output to PrintOutputs, colored by whether or not
  * an issue is found per-line.
  * <p/>
  * Also creates IssueOutput if issues are found.
+ * <p/>
+ * Lines are parsed on a pooled thread, in batches of whatever has accumulated since the last
+ * batch, so issue parsing doesn't hold up the thread reading the process output.
  */
 public class IssueOutputLineProcessor
   implements LineProcessingOutputStream.LineProcessor {
 
+  private static final Logger LOG = Logger.getInstance(IssueOutputLineProcessor.class);
+
   @NotNull
   private final BlazeContext context;
 
   @NotNull
   private final BlazeIssueParser blazeIssueParser;
 
+  @NotNull
+  private final Executor executor;
+
+  private final Queue<String> pendingLines = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
   public IssueOutputLineProcessor(
     @Nullable Project project,
     @NotNull BlazeContext context,
     @NotNull WorkspaceRoot workspaceRoot) {
+    this(project, context, workspaceRoot, PooledThreadExecutor.INSTANCE);
+  }
+
+  @VisibleForTesting
+  IssueOutputLineProcessor(
+    @Nullable Project project,
+    @NotNull BlazeContext context,
+    @NotNull WorkspaceRoot workspaceRoot,
+    @NotNull Executor executor) {
     this.context = context;
     this.blazeIssueParser = new BlazeIssueParser(project, workspaceRoot);
+    this.executor = executor;
   }
 
   @Override
   public boolean processLine(@NotNull String line) {
+    pendingLines.add(line);
+    if (drainScheduled.compareAndSet(false, true)) {
+      executor.execute(() -> {
+        // Cleared first, so lines queued from now on schedule another batch
+        drainScheduled.set(false);
+        drainPendingLines();
+      });
+    }
+    return true;
+  }
+
+  @Override
+  public void close() {
+    drainPendingLines();
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Issue parser stats: " + blazeIssueParser.getParserStats());
+    }
+  }
+
+  /**
+   * Synchronized so batches are processed one at a time, in order.
+   */
+  private synchronized void drainPendingLines() {
+    String line;
+    while ((line = pendingLines.poll()) != null) {
+      parseLine(line);
+    }
+  }
+
+  private void parseLine(@NotNull String line) {
     IssueOutput issue = blazeIssueParser.parseIssue(line);
     if (issue != null) {
       if (issue.getCategory() == IssueOutput.Category.ERROR) {
@@ -62,6 +121,5 @@ public class IssueOutputLineProcessor
                             ? OutputType.NORMAL : OutputType.ERROR;
 
     context.output(new PrintOutput(line, outputType));
-    return true;
   }
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.issueparser;
+
+import com.google.common.collect.Lists;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Finds which groups of keywords occur in a line in a single pass, using an Aho-Corasick automaton.
+ * Keywords must be ASCII; there may be at most 64 groups.
+ */
+final class KeywordMatcher {
+  private static final int ALPHABET_SIZE = 128;
+
+  /** Complete transition table, indexed by state * ALPHABET_SIZE + char. */
+  private final int[] transitions;
+  /** For each state, the groups with a keyword ending at that point in the input. */
+  private final long[] outputs;
+
+  /**
+   * @param keywordGroups for each group, the keywords any of which identify the group
+   */
+  KeywordMatcher(List<? extends Collection<String>> keywordGroups) {
+    checkArgument(keywordGroups.size() <= Long.SIZE, "Too many keyword groups: %s", keywordGroups.size());
+
+    // Build the trie, with -1 for missing edges.
+    List<int[]> trie = Lists.newArrayList();
+    List<Long> trieOutputs = Lists.newArrayList();
+    trie.add(newState());
+    trieOutputs.add(0L);
+    for (int group = 0; group < keywordGroups.size(); ++group) {
+      for (String keyword : keywordGroups.get(group)) {
+        checkArgument(!keyword.isEmpty(), "Empty keyword");
+        int state = 0;
+        for (int i = 0; i < keyword.length(); ++i) {
+          char c = keyword.charAt(i);
+          checkArgument(c < ALPHABET_SIZE, "Non-ASCII keyword: %s", keyword);
+          if (trie.get(state)[c] == -1) {
+            trie.get(state)[c] = trie.size();
+            trie.add(newState());
+            trieOutputs.add(0L);
+          }
+          state = trie.get(state)[c];
+        }
+        trieOutputs.set(state, trieOutputs.get(state) | (1L << group));
+      }
+    }
+
+    // Breadth-first, fill in missing edges from each state's failure link, and inherit its outputs.
+    int stateCount = trie.size();
+    transitions = new int[stateCount * ALPHABET_SIZE];
+    outputs = new long[stateCount];
+    int[] failure = new int[stateCount];
+    Queue<Integer> queue = new ArrayDeque<>();
+    for (int c = 0; c < ALPHABET_SIZE; ++c) {
+      int child = trie.get(0)[c];
+      if (child == -1) {
+        transitions[c] = 0;
+      }
+      else {
+        transitions[c] = child;
+        failure[child] = 0;
+        queue.add(child);
+      }
+    }
+    outputs[0] = trieOutputs.get(0);
+    while (!queue.isEmpty()) {
+      int state = queue.remove();
+      outputs[state] = trieOutputs.get(state) | outputs[failure[state]];
+      for (int c = 0; c < ALPHABET_SIZE; ++c) {
+        int child = trie.get(state)[c];
+        int fallback = transitions[failure[state] * ALPHABET_SIZE + c];
+        if (child == -1) {
+          transitions[state * ALPHABET_SIZE + c] = fallback;
+        }
+        else {
+          transitions[state * ALPHABET_SIZE + c] = child;
+          failure[child] = fallback;
+          queue.add(child);
+        }
+      }
+    }
+  }
+
+  private static int[] newState() {
+    int[] edges = new int[ALPHABET_SIZE];
+    Arrays.fill(edges, -1);
+    return edges;
+  }
+
+  /**
+   * Returns a bit mask of the groups with at least one keyword occurring in {@code text}.
+   */
+  long match(CharSequence text) {
+    long matched = 0;
+    int state = 0;
+    for (int i = 0; i < text.length(); ++i) {
+      char c = text.charAt(i);
+      // No keyword contains a non-ASCII char, so any match is broken by one.
+      state = c < ALPHABET_SIZE ? transitions[state * ALPHABET_SIZE + c] : 0;
+      matched |= outputs[state];
+    }
+    return matched;
+  }
+}
@@ -48,7 +48,7 @@ public class LabelRuleLookupElement extends BuildLookupElement {
     List<BuildLookupElement> lookups = Lists.newArrayList();
     // TODO: Handle rules generated via functions? (e.g. via blaze sync)
     BuildLanguageSpec spec = BuildLanguageSpecProvider.getInstance().getLanguageSpec(file.getProject());
-    for (FuncallExpression target : file.findChildrenByClass(FuncallExpression.class)) {
+    for (FuncallExpression target : file.getRules()) {
       String targetName = target.getName();
       if (targetName == null || Objects.equals(target.getName(), excluded) || !targetName.startsWith(ruleFragment)) {
         continue;
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.globbing;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches glob results per blaze package, evaluated against the VFS.<p>
+ * Entries for a package are dropped whenever a file is created, deleted, moved or renamed anywhere
+ * beneath it (which also covers subpackages appearing or disappearing). Content changes don't
+ * affect glob results, so they're ignored.<p>
+ * Each event only looks up the packages on its own path, plus the packages beneath it when a
+ * directory moved or went away, so invalidation doesn't scale with the number of cached packages.
+ */
+public class GlobCache {
+
+  private static final int MAX_PACKAGES = 1000;
+
+  public static GlobCache getInstance() {
+    return ServiceManager.getService(GlobCache.class);
+  }
+
+  private final Cache<String, ConcurrentMap<GlobKey, ImmutableList<VirtualFile>>> cache =
+    CacheBuilder.newBuilder().maximumSize(MAX_PACKAGES).build();
+
+  public GlobCache() {
+    ApplicationManager.getApplication().getMessageBus().connect().subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener.Adapter() {
+      @Override
+      public void after(List<? extends VFileEvent> events) {
+        invalidate(events);
+      }
+    });
+  }
+
+  /**
+   * Returns the files in the package rooted at {@code packageDir} matching the glob, sorted by
+   * path. Subpackages are not traversed.
+   *
+   * @throws IllegalArgumentException if any pattern is invalid
+   */
+  public ImmutableList<VirtualFile> glob(VirtualFile packageDir,
+                                         List<String> includes,
+                                         List<String> excludes,
+                                         boolean excludeDirectories) {
+    GlobKey key = new GlobKey(includes, excludes, excludeDirectories);
+    ConcurrentMap<GlobKey, ImmutableList<VirtualFile>> packageGlobs = getPackageGlobs(packageDir.getPath());
+    ImmutableList<VirtualFile> files = packageGlobs.get(key);
+    if (files == null || !allValid(files)) {
+      files = VirtualFileGlob.glob(packageDir, key.includes, key.excludes, excludeDirectories, dir -> isInPackage(packageDir, dir));
+      packageGlobs.put(key, files);
+    }
+    return files;
+  }
+
+  private ConcurrentMap<GlobKey, ImmutableList<VirtualFile>> getPackageGlobs(String packagePath) {
+    ConcurrentMap<GlobKey, ImmutableList<VirtualFile>> packageGlobs = cache.getIfPresent(packagePath);
+    if (packageGlobs == null) {
+      packageGlobs = Maps.newConcurrentMap();
+      ConcurrentMap<GlobKey, ImmutableList<VirtualFile>> existing = cache.asMap().putIfAbsent(packagePath, packageGlobs);
+      if (existing != null) {
+        packageGlobs = existing;
+      }
+    }
+    return packageGlobs;
+  }
+
+  private static boolean isInPackage(VirtualFile packageDir, VirtualFile dir) {
+    if (dir.equals(packageDir)) {
+      return true;
+    }
+    VirtualFile buildFile = dir.findChild("BUILD");
+    return buildFile == null || buildFile.isDirectory();
+  }
+
+  private static boolean allValid(List<VirtualFile> files) {
+    for (VirtualFile file : files) {
+      if (!file.isValid()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void invalidate(List<? extends VFileEvent> events) {
+    if (cache.size() == 0) {
+      return;
+    }
+    Set<String> paths = Sets.newHashSet();
+    Set<String> directoryPaths = Sets.newHashSet();
+    for (VFileEvent event : events) {
+      if (event instanceof VFileContentChangeEvent) {
+        continue;
+      }
+      VirtualFile file = event.getFile();
+      boolean isDirectory = file != null && file.isDirectory();
+      if (event instanceof VFilePropertyChangeEvent) {
+        VFilePropertyChangeEvent propertyChange = (VFilePropertyChangeEvent) event;
+        if (!VirtualFile.PROP_NAME.equals(propertyChange.getPropertyName())) {
+          continue;
+        }
+        // By now the event's path is the new one, so rebuild the old one from the parent
+        VirtualFile parent = file != null ? file.getParent() : null;
+        if (parent != null) {
+          addPath(parent.getPath() + "/" + propertyChange.getOldValue(), isDirectory, paths, directoryPaths);
+        }
+      }
+      addPath(event.getPath(), isDirectory, paths, directoryPaths);
+      if (event instanceof VFileMoveEvent) {
+        // The event's path is the new one too; the file also left its old package
+        VFileMoveEvent move = (VFileMoveEvent) event;
+        String oldParentPath = move.getOldParent().getPath();
+        addPath(oldParentPath, false, paths, directoryPaths);
+        addPath(oldParentPath + "/" + move.getFile().getName(), isDirectory, paths, directoryPaths);
+        addPath(move.getNewParent().getPath(), false, paths, directoryPaths);
+      }
+    }
+
+    // packages containing a changed file
+    for (String path : paths) {
+      for (String ancestor = path; ancestor != null; ancestor = parentPath(ancestor)) {
+        cache.invalidate(ancestor);
+      }
+    }
+    // packages beneath a changed directory
+    if (!directoryPaths.isEmpty()) {
+      Set<String> toRemove = Sets.newHashSet();
+      for (String packagePath : cache.asMap().keySet()) {
+        for (String ancestor = parentPath(packagePath); ancestor != null; ancestor = parentPath(ancestor)) {
+          if (directoryPaths.contains(ancestor)) {
+            toRemove.add(packagePath);
+            break;
+          }
+        }
+      }
+      cache.invalidateAll(toRemove);
+    }
+  }
+
+  private static void addPath(String path, boolean isDirectory, Set<String> paths, Set<String> directoryPaths) {
+    paths.add(path);
+    if (isDirectory) {
+      directoryPaths.add(path);
+    }
+  }
+
+  @Nullable
+  private static String parentPath(String path) {
+    int index = path.lastIndexOf('/');
+    if (index < 0 || path.length() == 1) {
+      return null;
+    }
+    return index > 0 ? path.substring(0, index) : "/";
+  }
+
+  private static final class GlobKey {
+    final ImmutableList<String> includes;
+    final ImmutableList<String> excludes;
+    final boolean excludeDirectories;
+
+    GlobKey(List<String> includes, List<String> excludes, boolean excludeDirectories) {
+      this.includes = ImmutableList.copyOf(includes);
+      this.excludes = ImmutableList.copyOf(excludes);
+      this.excludeDirectories = excludeDirectories;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof GlobKey)) {
+        return false;
+      }
+      GlobKey other = (GlobKey) o;
+      return excludeDirectories == other.excludeDirectories
+             && includes.equals(other.includes)
+             && excludes.equals(other.excludes);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(includes, excludes, excludeDirectories);
+    }
+  }
+}
@@ -99,7 +99,7 @@ public final class UnixGlob {
    *
    * @return list of segment arrays
    */
-  private static List<String[]> checkAndSplitPatterns(Collection<String> patterns) {
+  static List<String[]> checkAndSplitPatterns(Collection<String> patterns) {
     List<String[]> list = Lists.newArrayListWithCapacity(patterns.size());
     for (String pattern : patterns) {
       String error = GlobPatternValidator.validate(pattern);
@@ -112,14 +112,13 @@ public final class UnixGlob {
     return list;
   }
 
-  private static boolean excludedOnMatch(File path,
-                                         List<String[]> excludePatterns,
-                                         int idx,
-                                         Cache<String, Pattern> cache) {
+  static boolean excludedOnMatch(String name,
+                                 List<String[]> excludePatterns,
+                                 int idx,
+                                 Cache<String, Pattern> cache) {
     for (String[] excludePattern : excludePatterns) {
-      String text = path.getName();
       if (idx == excludePattern.length
-          && matches(excludePattern[idx - 1], text, cache)) {
+          && matches(excludePattern[idx - 1], name, cache)) {
         return true;
       }
     }
@@ -128,13 +127,13 @@ public final class UnixGlob {
 
   /**
    * Returns the exclude patterns in {@code excludePatterns} which could
-   * apply to the children of {@code base}
+   * apply to the children of the directory named {@code baseName}
    *
    * @param idx index into {@code excludePatterns} for the part of the pattern
-   *        which might match {@code base}
+   *        which might match {@code baseName}
    */
-  private static List<String[]> getRelevantExcludes(
-    final File base,
+  static List<String[]> getRelevantExcludes(
+    final String baseName,
     List<String[]> excludePatterns,
     final int idx,
     final Cache<String, Pattern> cache) {
@@ -144,7 +143,7 @@ public final class UnixGlob {
     }
     List<String[]> list = new ArrayList<>();
     for (String[] patterns : excludePatterns) {
-      if (excludePatternMatches(patterns, idx, base, cache)) {
+      if (excludePatternMatches(patterns, idx, baseName, cache)) {
         list.add(patterns);
       }
     }
@@ -157,13 +156,12 @@ public final class UnixGlob {
    */
   private static boolean excludePatternMatches(String[] patterns,
                                                int idx,
-                                               File base,
+                                               String baseName,
                                                Cache<String, Pattern> cache) {
     if (idx == 0) {
       return true;
     }
-    String text = base.getName();
-    return patterns.length > idx && matches(patterns[idx - 1], text, cache);
+    return patterns.length > idx && matches(patterns[idx - 1], baseName, cache);
   }
 
   /**
@@ -614,7 +612,7 @@ public final class UnixGlob {
 
       if (idx == patternParts.length) { // Base case.
         if (!(excludeDirectories && baseIsDirectory) &&
-            !excludedOnMatch(base, excludePatterns, excludeIdx, cache)) {
+            !excludedOnMatch(base.getName(), excludePatterns, excludeIdx, cache)) {
           results.add(base);
         }
         return;
@@ -625,7 +623,7 @@ public final class UnixGlob {
         return;
       }
 
-      List<String[]> relevantExcludes = getRelevantExcludes(base, excludePatterns, excludeIdx, cache);
+      List<String[]> relevantExcludes = getRelevantExcludes(base.getName(), excludePatterns, excludeIdx, cache);
       final String pattern = patternParts[idx];
 
       // ** is special: it can match nothing at all.
@@ -670,7 +668,7 @@ public final class UnixGlob {
           } else {
             // Instead of using an async call, just repeat the base case above.
             if (idx + 1 == patternParts.length &&
-                !excludedOnMatch(child, relevantExcludes, excludeIdx + 1, cache)) {
+                !excludedOnMatch(child.getName(), relevantExcludes, excludeIdx + 1, cache)) {
               results.add(child);
             }
           }
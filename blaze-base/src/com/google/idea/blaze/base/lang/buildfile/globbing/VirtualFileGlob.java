@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.globbing;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.vfs.VirtualFile;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Evaluates globs against IntelliJ's VFS rather than the file system, with the same semantics as
+ * {@link UnixGlob}. Children already loaded into the VFS are not re-read from disk.
+ */
+public final class VirtualFileGlob {
+
+  private final boolean excludeDirectories;
+  private final Predicate<VirtualFile> dirPred;
+  private final Set<VirtualFile> results = Sets.newHashSet();
+  private final Cache<String, Pattern> cache = CacheBuilder.newBuilder().build();
+
+  private VirtualFileGlob(boolean excludeDirectories, Predicate<VirtualFile> dirPred) {
+    this.excludeDirectories = excludeDirectories;
+    this.dirPred = dirPred;
+  }
+
+  /**
+   * Returns the files under {@code base} matching any of {@code patterns} but none of
+   * {@code excludePatterns}, sorted by path. Directories are traversed if and only if they match
+   * {@code dirPred}, which is also called for {@code base}.
+   *
+   * @throws IllegalArgumentException if any pattern is invalid
+   */
+  public static ImmutableList<VirtualFile> glob(VirtualFile base,
+                                                Collection<String> patterns,
+                                                Collection<String> excludePatterns,
+                                                boolean excludeDirectories,
+                                                Predicate<VirtualFile> dirPred) {
+    if (!base.isValid() || patterns.isEmpty()) {
+      return ImmutableList.of();
+    }
+    List<String[]> splitPatterns = UnixGlob.checkAndSplitPatterns(patterns);
+    List<String[]> splitExcludes = UnixGlob.checkAndSplitPatterns(excludePatterns);
+
+    VirtualFileGlob visitor = new VirtualFileGlob(excludeDirectories, dirPred);
+    for (String[] splitPattern : splitPatterns) {
+      visitor.glob(base, splitPattern, 0, splitExcludes, 0);
+    }
+    return Ordering.<String>natural().onResultOf(VirtualFile::getPath).immutableSortedCopy(visitor.results);
+  }
+
+  /**
+   * See UnixGlob.GlobVisitor#reallyGlob.
+   */
+  private void glob(VirtualFile base,
+                    String[] patternParts,
+                    int idx,
+                    List<String[]> excludePatterns,
+                    int excludeIdx) {
+    ProgressManager.checkCanceled();
+    boolean baseIsDirectory = base.isDirectory();
+    if (baseIsDirectory && !dirPred.test(base)) {
+      return;
+    }
+
+    if (idx == patternParts.length) {
+      if (!(excludeDirectories && baseIsDirectory) &&
+          !UnixGlob.excludedOnMatch(base.getName(), excludePatterns, excludeIdx, cache)) {
+        results.add(base);
+      }
+      return;
+    }
+
+    if (!baseIsDirectory) {
+      return;
+    }
+
+    List<String[]> relevantExcludes = UnixGlob.getRelevantExcludes(base.getName(), excludePatterns, excludeIdx, cache);
+    String pattern = patternParts[idx];
+
+    // ** can match nothing at all
+    if ("**".equals(pattern)) {
+      glob(base, patternParts, idx + 1, excludePatterns, excludeIdx);
+    }
+
+    if (!pattern.contains("*") && !pattern.contains("?")) {
+      VirtualFile child = base.findChild(pattern);
+      if (child != null) {
+        glob(child, patternParts, idx + 1, relevantExcludes, excludeIdx + 1);
+      }
+      return;
+    }
+
+    for (VirtualFile child : base.getChildren()) {
+      boolean childIsDir = child.isDirectory();
+      if ("**".equals(pattern) && childIsDir) {
+        // Recurse without shifting the pattern.
+        glob(child, patternParts, idx, relevantExcludes, excludeIdx + 1);
+      }
+      if (UnixGlob.matches(pattern, child.getName(), cache)) {
+        if (childIsDir) {
+          glob(child, patternParts, idx + 1, relevantExcludes, excludeIdx + 1);
+        } else if (idx + 1 == patternParts.length &&
+                   !UnixGlob.excludedOnMatch(child.getName(), relevantExcludes, excludeIdx + 1, cache)) {
+          results.add(child);
+        }
+      }
+    }
+  }
+}
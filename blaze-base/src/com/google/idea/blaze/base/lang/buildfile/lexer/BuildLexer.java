@@ -17,12 +17,14 @@ package com.google.idea.blaze.base.lang.buildfile.lexer;
 
 import com.google.idea.blaze.base.lang.buildfile.lexer.BuildLexerBase.LexerMode;
 import com.intellij.lexer.LexerBase;
-
-import java.util.Iterator;
-import java.util.List;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
 
 /**
- * Implementation of LexerBase using BuildLexerBase to tokenize the input.
+ * Implementation of LexerBase using BuildLexerBase to tokenize the input.<p>
+ * Tokens are produced on demand, and each token's state is the paren depth before it, so the IDE
+ * can restart lexing from any token (e.g. when re-highlighting after an edit) without re-lexing
+ * from the start of the file.
  */
 public class BuildLexer extends LexerBase {
 
@@ -31,9 +33,10 @@ public class BuildLexer extends LexerBase {
   private int offsetEnd;
   private int offsetStart;
   private CharSequence buffer;
-  private Iterator<Token> tokens;
+  private BuildLexerBase lexer;
   private Token currentToken;
   private int currentState;
+  private boolean checkTokens;
 
   public BuildLexer(LexerMode mode) {
     this.mode = mode;
@@ -45,37 +48,35 @@ public class BuildLexer extends LexerBase {
     this.offsetEnd = endOffset;
     this.offsetStart = startOffset;
 
-    BuildLexerBase lexer = new BuildLexerBase(charSequence.subSequence(startOffset, endOffset), initialState, mode);
-    checkNoCharactersMissing(charSequence.subSequence(startOffset, endOffset).length(), lexer.getTokens());
-    tokens = lexer.getTokens().iterator();
+    lexer = BuildLexerBase.createLazy(charSequence.subSequence(startOffset, endOffset), initialState, mode);
+    checkTokens = isDebugMode();
     currentToken = null;
-    if (tokens.hasNext()) {
-      currentToken = tokens.next();
-    }
-    currentState = lexer.getOpenParenStackDepth();
+    advance();
+  }
+
+  private static boolean isDebugMode() {
+    Application application = ApplicationManager.getApplication();
+    return application != null && application.isUnitTestMode();
   }
 
   /**
-   * Temporary debugging code. We need to tokenize every character in the input string.
+   * Debugging code, only run in tests. We need to tokenize every character in the input string.
    */
-  private void checkNoCharactersMissing(int totalLength, List<Token> tokens) {
-    if (!tokens.isEmpty() && tokens.get(tokens.size() - 1).right != totalLength) {
-      String error = String.format("Lengths don't match: %s instead of %s",
-        tokens.get(tokens.size() - 1).right,
-        totalLength);
-      throw new RuntimeException(error);
-    }
-    int start = 0;
-    for (int i = 0; i < tokens.size(); i++) {
-      Token token = tokens.get(i);
-      if (token.left != start) {
-        throw new RuntimeException("Gap/inconsistency at: " + start);
+  private void checkNoCharactersMissing(Token previous, Token next) {
+    int expectedStart = previous != null ? previous.right : 0;
+    if (next == null) {
+      int totalLength = offsetEnd - offsetStart;
+      if (previous != null && expectedStart != totalLength) {
+        String error = String.format("Lengths don't match: %s instead of %s", expectedStart, totalLength);
+        throw new RuntimeException(error);
       }
-      start = token.right;
+      return;
+    }
+    if (next.left != expectedStart) {
+      throw new RuntimeException("Gap/inconsistency at: " + expectedStart);
     }
   }
 
-
   @Override
   public int getState() {
     return currentState;
@@ -107,10 +108,16 @@ public class BuildLexer extends LexerBase {
 
   @Override
   public void advance() {
-    if (tokens.hasNext()) {
-      currentToken = tokens.next();
+    Token previous = currentToken;
+    currentToken = lexer.nextToken();
+    if (currentToken != null) {
+      currentState = lexer.getTokenState();
     } else {
-      currentToken = null;
+      // past the end: report the state the next range would start in
+      currentState = lexer.getOpenParenStackDepth();
+    }
+    if (checkTokens) {
+      checkNoCharactersMissing(previous, currentToken);
     }
   }
 
@@ -61,11 +61,16 @@ public class BuildLexerBase {
   private final LexerMode mode;
 
   // Input buffer and position
-  private final char[] buffer;
+  private final CharSequence buffer;
   private int pos;
 
   private final List<Token> tokens;
 
+  // Only used when tokenizing lazily: the next token to return from 'tokens', and the paren depth
+  // at the start of the tokenizer step which produced it.
+  private int nextTokenIndex = 0;
+  private int tokenState = 0;
+
   // The number of unclosed open-parens ("(", '{', '[') at the current point in
   // the stream. Whitespace is handled differently when this is nonzero.
   private int openParenStackDepth = 0;
@@ -81,15 +86,26 @@ public class BuildLexerBase {
    * InputBuffer. Any errors during lexing are reported on "handler".
    */
   public BuildLexerBase(CharSequence input, int initialStackDepth, LexerMode mode) {
-    this.buffer = input.toString().toCharArray();
+    this(input, initialStackDepth, mode, false);
+    tokenize();
+  }
+
+  /**
+   * Constructs a lexer which tokenizes its input on demand, via {@link #nextToken}.
+   */
+  static BuildLexerBase createLazy(CharSequence input, int initialStackDepth, LexerMode mode) {
+    return new BuildLexerBase(input, initialStackDepth, mode, true);
+  }
+
+  private BuildLexerBase(CharSequence input, int initialStackDepth, LexerMode mode, boolean lazy) {
+    this.buffer = input;
     // Empirical measurements show roughly 1 token per 8 characters in buffer.
-    this.tokens = Lists.newArrayListWithExpectedSize(buffer.length / 8);
+    this.tokens = lazy ? Lists.newArrayList() : Lists.newArrayListWithExpectedSize(buffer.length() / 8);
     this.pos = 0;
     this.openParenStackDepth = initialStackDepth;
     this.mode = mode;
 
     indentStack.push(0);
-    tokenize();
   }
 
   /**
@@ -115,6 +131,32 @@ public class BuildLexerBase {
     return tokens;
   }
 
+  /**
+   * Returns the next token of a lazily-constructed lexer, tokenizing only as far as required, or
+   * null at the end of the input.
+   */
+  @Nullable
+  Token nextToken() {
+    while (nextTokenIndex == tokens.size()) {
+      if (pos >= buffer.length()) {
+        return null;
+      }
+      tokens.clear();
+      nextTokenIndex = 0;
+      tokenState = openParenStackDepth;
+      tokenizeNext();
+    }
+    return tokens.get(nextTokenIndex++);
+  }
+
+  /**
+   * The number of unclosed open-parens before the last token returned by {@link #nextToken}.
+   * Lexing restarted at that token with this depth produces the same tokens.
+   */
+  int getTokenState() {
+    return tokenState;
+  }
+
   private void popParen() {
     if (openParenStackDepth == 0) {
       error("indentation error");
@@ -162,8 +204,8 @@ public class BuildLexerBase {
 
   private void newlineInsideExpression() {
     int oldPos = pos - 1;
-    while (pos < buffer.length) {
-      switch (buffer[pos]) {
+    while (pos < buffer.length()) {
+      switch (buffer.charAt(pos)) {
         case ' ': case '\t': case '\r':
           pos++;
           break;
@@ -191,8 +233,8 @@ public class BuildLexerBase {
 
     // we're in a stmt: suck up space at beginning of next line
     int indentLen = 0;
-    while (pos < buffer.length) {
-      char c = buffer[pos];
+    while (pos < buffer.length()) {
+      char c = buffer.charAt(pos);
       if (c == ' ') {
         indentLen++;
         pos++;
@@ -207,8 +249,8 @@ public class BuildLexerBase {
           addToken(TokenKind.WHITESPACE, oldPos, pos);
           oldPos = pos;
         }
-        while (pos < buffer.length && c != '\n') {
-          c = buffer[pos++];
+        while (pos < buffer.length() && c != '\n') {
+          c = buffer.charAt(pos++);
         }
         addToken(TokenKind.COMMENT, oldPos, pos - 1, bufferSlice(oldPos, pos - 1));
         oldPos = pos - 1;
@@ -221,7 +263,7 @@ public class BuildLexerBase {
     if (oldPos != pos) {
       addToken(TokenKind.WHITESPACE, oldPos, pos);
     }
-    if (pos == buffer.length) {
+    if (pos == buffer.length()) {
       indentLen = 0;
     } // trailing space on last line
 
@@ -248,8 +290,8 @@ public class BuildLexerBase {
    */
   private void addWhitespace() {
     int oldPos = pos - 1;
-    while (pos < buffer.length) {
-      switch (buffer[pos]) {
+    while (pos < buffer.length()) {
+      switch (buffer.charAt(pos)) {
         case ' ': case '\t': case '\r':
           pos++;
           break;
@@ -266,7 +308,7 @@ public class BuildLexerBase {
    * delimiter (3 x quot), and advances 'pos' by two if so.
    */
   private boolean skipTripleQuote(char quot) {
-    if (pos + 1 < buffer.length && buffer[pos] == quot && buffer[pos + 1] == quot) {
+    if (pos + 1 < buffer.length() && buffer.charAt(pos) == quot && buffer.charAt(pos + 1) == quot) {
       pos += 2;
       return true;
     } else {
@@ -286,8 +328,8 @@ public class BuildLexerBase {
 
     // more expensive second choice that expands escaped into a buffer
     StringBuilder literal = new StringBuilder();
-    while (pos < buffer.length) {
-      char c = buffer[pos];
+    while (pos < buffer.length()) {
+      char c = buffer.charAt(pos);
       pos++;
       switch (c) {
         case '\n':
@@ -301,7 +343,7 @@ public class BuildLexerBase {
             return;
           }
         case '\\':
-          if (pos == buffer.length) {
+          if (pos == buffer.length()) {
             error("unterminated string literal at eof", oldPos, pos);
             addToken(TokenKind.STRING, oldPos, pos, literal.toString());
             return;
@@ -310,11 +352,11 @@ public class BuildLexerBase {
             // Insert \ and the following character.
             // As in Python, it means that a raw string can never end with a single \.
             literal.append('\\');
-            literal.append(buffer[pos]);
+            literal.append(buffer.charAt(pos));
             pos++;
             break;
           }
-          c = buffer[pos];
+          c = buffer.charAt(pos);
           pos++;
           switch (c) {
             case '\n':
@@ -341,13 +383,13 @@ public class BuildLexerBase {
             case '0': case '1': case '2': case '3':
             case '4': case '5': case '6': case '7': { // octal escape
               int octal = c - '0';
-              if (pos < buffer.length) {
-                c = buffer[pos];
+              if (pos < buffer.length()) {
+                c = buffer.charAt(pos);
                 if (c >= '0' && c <= '7') {
                   pos++;
                   octal = (octal << 3) | (c - '0');
-                  if (pos < buffer.length) {
-                    c = buffer[pos];
+                  if (pos < buffer.length()) {
+                    c = buffer.charAt(pos);
                     if (c >= '0' && c <= '7') {
                       pos++;
                       octal = (octal << 3) | (c - '0');
@@ -411,8 +453,8 @@ public class BuildLexerBase {
     }
 
     // first quick optimistic scan for a simple non-escaped string
-    while (pos < buffer.length) {
-      char c = buffer[pos++];
+    while (pos < buffer.length()) {
+      char c = buffer.charAt(pos++);
       switch (c) {
         case '\n':
           error("unterminated string literal at eol", oldPos, pos);
@@ -460,8 +502,8 @@ public class BuildLexerBase {
 
   private String scanIdentifier() {
     int oldPos = pos - 1;
-    while (pos < buffer.length) {
-      switch (buffer[pos]) {
+    while (pos < buffer.length()) {
+      switch (buffer.charAt(pos)) {
         case '_':
         case 'a': case 'b': case 'c': case 'd': case 'e': case 'f':
         case 'g': case 'h': case 'i': case 'j': case 'k': case 'l':
@@ -502,8 +544,8 @@ public class BuildLexerBase {
 
   private String scanInteger() {
     int oldPos = pos - 1;
-    while (pos < buffer.length) {
-      char c = buffer[pos];
+    while (pos < buffer.length()) {
+      char c = buffer.charAt(pos);
       switch (c) {
         case 'X': case 'x':
         case 'a': case 'A':
@@ -564,11 +606,11 @@ public class BuildLexerBase {
    * @return true if it tokenized an operator
    */
   private boolean tokenizeTwoChars() {
-    if (pos + 2 >= buffer.length) {
+    if (pos + 2 >= buffer.length()) {
       return false;
     }
-    char c1 = buffer[pos];
-    char c2 = buffer[pos + 1];
+    char c1 = buffer.charAt(pos);
+    char c2 = buffer.charAt(pos + 1);
     TokenKind tok = null;
     if (c2 == '=') {
       tok = EQUAL_TOKENS.get(c1);
@@ -587,158 +629,166 @@ public class BuildLexerBase {
    * the constructor.
    */
   private void tokenize() {
-    while (pos < buffer.length) {
-      if (tokenizeTwoChars()) {
-        pos += 2;
-        continue;
+    while (pos < buffer.length()) {
+      tokenizeNext();
+    }
+  }
+
+  /**
+   * Tokenizes the next lexical element, which may produce several tokens (e.g. a newline followed
+   * by indentation).
+   */
+  private void tokenizeNext() {
+    if (tokenizeTwoChars()) {
+      pos += 2;
+      return;
+    }
+    char c = buffer.charAt(pos);
+    pos++;
+    switch (c) {
+      case '{': {
+        addToken(TokenKind.LBRACE, pos - 1, pos);
+        openParenStackDepth++;
+        break;
       }
-      char c = buffer[pos];
-      pos++;
-      switch (c) {
-        case '{': {
-          addToken(TokenKind.LBRACE, pos - 1, pos);
-          openParenStackDepth++;
-          break;
-        }
-        case '}': {
-          addToken(TokenKind.RBRACE, pos - 1, pos);
-          popParen();
-          break;
-        }
-        case '(': {
-          addToken(TokenKind.LPAREN, pos - 1, pos);
-          openParenStackDepth++;
-          break;
-        }
-        case ')': {
-          addToken(TokenKind.RPAREN, pos - 1, pos);
-          popParen();
-          break;
-        }
-        case '[': {
-          addToken(TokenKind.LBRACKET, pos - 1, pos);
-          openParenStackDepth++;
-          break;
-        }
-        case ']': {
-          addToken(TokenKind.RBRACKET, pos - 1, pos);
-          popParen();
-          break;
-        }
-        case '>': {
-          addToken(TokenKind.GREATER, pos - 1, pos);
-          break;
-        }
-        case '<': {
-          addToken(TokenKind.LESS, pos - 1, pos);
-          break;
-        }
-        case ':': {
-          addToken(TokenKind.COLON, pos - 1, pos);
-          break;
-        }
-        case ',': {
-          addToken(TokenKind.COMMA, pos - 1, pos);
-          break;
-        }
-        case '+': {
-          addToken(TokenKind.PLUS, pos - 1, pos);
-          break;
-        }
-        case '-': {
-          addToken(TokenKind.MINUS, pos - 1, pos);
-          break;
-        }
-        case '|': {
-          addToken(TokenKind.PIPE, pos - 1, pos);
-          break;
-        }
-        case '=': {
-          addToken(TokenKind.EQUALS, pos - 1, pos);
-          break;
-        }
-        case '%': {
-          addToken(TokenKind.PERCENT, pos - 1, pos);
-          break;
-        }
-        case '/': {
-          addToken(TokenKind.SLASH, pos - 1, pos);
-          break;
-        }
-        case ';': {
-          addToken(TokenKind.SEMI, pos - 1, pos);
-          break;
-        }
-        case '.': {
-          addToken(TokenKind.DOT, pos - 1, pos);
-          break;
-        }
-        case '*': {
-          addToken(TokenKind.STAR, pos - 1, pos);
-          break;
-        }
-        case ' ':
-        case '\t':
-        case '\r': {
-          addWhitespace();
-          break;
+      case '}': {
+        addToken(TokenKind.RBRACE, pos - 1, pos);
+        popParen();
+        break;
+      }
+      case '(': {
+        addToken(TokenKind.LPAREN, pos - 1, pos);
+        openParenStackDepth++;
+        break;
+      }
+      case ')': {
+        addToken(TokenKind.RPAREN, pos - 1, pos);
+        popParen();
+        break;
+      }
+      case '[': {
+        addToken(TokenKind.LBRACKET, pos - 1, pos);
+        openParenStackDepth++;
+        break;
+      }
+      case ']': {
+        addToken(TokenKind.RBRACKET, pos - 1, pos);
+        popParen();
+        break;
+      }
+      case '>': {
+        addToken(TokenKind.GREATER, pos - 1, pos);
+        break;
+      }
+      case '<': {
+        addToken(TokenKind.LESS, pos - 1, pos);
+        break;
+      }
+      case ':': {
+        addToken(TokenKind.COLON, pos - 1, pos);
+        break;
+      }
+      case ',': {
+        addToken(TokenKind.COMMA, pos - 1, pos);
+        break;
+      }
+      case '+': {
+        addToken(TokenKind.PLUS, pos - 1, pos);
+        break;
+      }
+      case '-': {
+        addToken(TokenKind.MINUS, pos - 1, pos);
+        break;
+      }
+      case '|': {
+        addToken(TokenKind.PIPE, pos - 1, pos);
+        break;
+      }
+      case '=': {
+        addToken(TokenKind.EQUALS, pos - 1, pos);
+        break;
+      }
+      case '%': {
+        addToken(TokenKind.PERCENT, pos - 1, pos);
+        break;
+      }
+      case '/': {
+        addToken(TokenKind.SLASH, pos - 1, pos);
+        break;
+      }
+      case ';': {
+        addToken(TokenKind.SEMI, pos - 1, pos);
+        break;
+      }
+      case '.': {
+        addToken(TokenKind.DOT, pos - 1, pos);
+        break;
+      }
+      case '*': {
+        addToken(TokenKind.STAR, pos - 1, pos);
+        break;
+      }
+      case ' ':
+      case '\t':
+      case '\r': {
+        addWhitespace();
+        break;
+      }
+      case '\\': {
+        // Backslash character is valid only at the end of a line (or in a string)
+        if (pos + 1 < buffer.length() && buffer.charAt(pos) == '\n') {
+          // treat end of line backslash and newline char as whitespace (they're ignored by the parser)
+          pos++;
+          addToken(TokenKind.WHITESPACE, pos - 2, pos, Character.toString(c));
+        } else {
+          addToken(TokenKind.ILLEGAL, pos - 1, pos, Character.toString(c));
         }
-        case '\\': {
-          // Backslash character is valid only at the end of a line (or in a string)
-          if (pos + 1 < buffer.length && buffer[pos] == '\n') {
-            // treat end of line backslash and newline char as whitespace (they're ignored by the parser)
-            pos++;
-            addToken(TokenKind.WHITESPACE, pos - 2, pos, Character.toString(c));
+        break;
+      }
+      case '\n': {
+        newline();
+        break;
+      }
+      case '#': {
+        int oldPos = pos - 1;
+        while (pos < buffer.length()) {
+          c = buffer.charAt(pos);
+          if (c == '\n') {
+            break;
           } else {
-            addToken(TokenKind.ILLEGAL, pos - 1, pos, Character.toString(c));
-          }
-          break;
-        }
-        case '\n': {
-          newline();
-          break;
-        }
-        case '#': {
-          int oldPos = pos - 1;
-          while (pos < buffer.length) {
-            c = buffer[pos];
-            if (c == '\n') {
-              break;
-            } else {
-              pos++;
-            }
+            pos++;
           }
-          addToken(TokenKind.COMMENT, oldPos, pos, bufferSlice(oldPos, pos));
-          break;
         }
-        case '\'':
-        case '\"': {
-          addStringLiteral(c, false);
+        addToken(TokenKind.COMMENT, oldPos, pos, bufferSlice(oldPos, pos));
+        break;
+      }
+      case '\'':
+      case '\"': {
+        addStringLiteral(c, false);
+        break;
+      }
+      default: {
+        // detect raw strings, e.g. r"str"
+        if (c == 'r' && pos < buffer.length()
+            && (buffer.charAt(pos) == '\'' || buffer.charAt(pos) == '\"')) {
+          c = buffer.charAt(pos);
+          pos++;
+          addStringLiteral(c, true);
           break;
         }
-        default: {
-          // detect raw strings, e.g. r"str"
-          if (c == 'r' && pos < buffer.length
-              && (buffer[pos] == '\'' || buffer[pos] == '\"')) {
-            c = buffer[pos];
-            pos++;
-            addStringLiteral(c, true);
-            break;
-          }
 
-          if (Character.isDigit(c)) {
-            addInteger();
-          } else if (Character.isJavaIdentifierStart(c) && c != '$') {
-            addIdentifierOrKeyword();
-          } else {
-            // Some characters in Python are not recognized in Blaze syntax (e.g. '!')
-            addToken(TokenKind.ILLEGAL, pos - 1, pos, Character.toString(c));
-            error("invalid character: '" + c + "'");
-          }
-          break;
-        } // default
-      } // switch
-    } // while
+        if (Character.isDigit(c)) {
+          addInteger();
+        } else if (Character.isJavaIdentifierStart(c) && c != '$') {
+          addIdentifierOrKeyword();
+        } else {
+          // Some characters in Python are not recognized in Blaze syntax (e.g. '!')
+          addToken(TokenKind.ILLEGAL, pos - 1, pos, Character.toString(c));
+          error("invalid character: '" + c + "'");
+        }
+        break;
+      } // default
+    } // switch
   }
 
   /**
@@ -749,7 +799,7 @@ public class BuildLexerBase {
    * @return the text at offset start with length end - start
    */
   private String bufferSlice(int start, int end) {
-    return new String(this.buffer, start, end - start);
+    return buffer.subSequence(start, end).toString();
   }
 
 }
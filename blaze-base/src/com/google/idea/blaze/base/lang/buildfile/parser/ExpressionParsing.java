@@ -18,10 +18,10 @@ package com.google.idea.blaze.base.lang.buildfile.parser;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.idea.blaze.base.lang.buildfile.lexer.TokenKind;
-import com.google.idea.blaze.base.lang.buildfile.psi.BuildElementType;
 import com.google.idea.blaze.base.lang.buildfile.psi.BuildElementTypes;
 import com.intellij.lang.PsiBuilder;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.psi.tree.IElementType;
 
 import java.util.EnumSet;
 import java.util.List;
@@ -343,7 +343,7 @@ public class ExpressionParsing extends Parsing {
     mark.done(BuildElementTypes.ARGUMENT_LIST);
   }
 
-  private BuildElementType getFuncallExpressionType(String functionName) {
+  private IElementType getFuncallExpressionType(String functionName) {
     if ("glob".equals(functionName)) {
       return BuildElementTypes.GLOB_EXPRESSION;
     }
@@ -22,13 +22,13 @@ import com.google.idea.blaze.base.lang.buildfile.search.BlazePackage;
 import com.google.idea.blaze.base.lang.buildfile.search.ResolveUtil;
 import com.google.idea.blaze.base.model.primitives.WorkspacePath;
 import com.intellij.extapi.psi.PsiFileBase;
-import com.intellij.lang.ASTNode;
 import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.FileViewProvider;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiNamedElement;
-import com.intellij.psi.tree.TokenSet;
+import com.intellij.psi.stubs.StubElement;
+import com.intellij.util.ArrayUtil;
 import com.intellij.util.PathUtil;
 import com.intellij.util.Processor;
 import icons.BlazeIcons;
@@ -36,6 +36,7 @@ import icons.BlazeIcons;
 import javax.annotation.Nullable;
 import javax.swing.*;
 import java.io.File;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -126,12 +127,26 @@ public class BuildFile extends PsiFileBase implements BuildElement {
     return packagePath != null ? packagePath.relativePath() : null;
   }
 
+  /**
+   * Top-level rules, i.e. function calls with a "name" keyword argument.
+   * Read from the stub tree when the AST isn't loaded.
+   */
+  public FuncallExpression[] getRules() {
+    StubElement<?> stub = getStub();
+    if (stub != null) {
+      return stub.getChildrenByType(BuildElementTypes.FUNCALL_EXPRESSION, FuncallExpression.EMPTY_ARRAY);
+    }
+    return Arrays.stream(findChildrenByClass(FuncallExpression.class))
+      .filter(expr -> expr.getNameArgumentValue() != null)
+      .toArray(FuncallExpression[]::new);
+  }
+
   /**
    * Finds a top-level rule with a "name" keyword argument with the given value.
    */
   @Nullable
   public FuncallExpression findRule(String name) {
-    for (FuncallExpression expr : findChildrenByClass(FuncallExpression.class)) {
+    for (FuncallExpression expr : getRules()) {
       String ruleName = expr.getNameArgumentValue();
       if (name.equals(ruleName)) {
         return expr;
@@ -145,13 +160,13 @@ public class BuildFile extends PsiFileBase implements BuildElement {
    */
   @Nullable
   public String[] getImportedPaths() {
-    ASTNode[] loadStatements = getNode().getChildren(TokenSet.create(BuildElementTypes.LOAD_STATEMENT));
+    LoadStatement[] loadStatements = getLoadStatements();
     if (loadStatements.length == 0) {
       return null;
     }
     List<String> importedPaths = Lists.newArrayListWithCapacity(loadStatements.length);
-    for (int i = 0; i < loadStatements.length; i++) {
-      String path = ((LoadStatement) loadStatements[i].getPsi()).getImportedPath();
+    for (LoadStatement loadStatement : loadStatements) {
+      String path = loadStatement.getImportedPath();
       if (path != null) {
         importedPaths.add(path);
       }
@@ -176,7 +191,10 @@ public class BuildFile extends PsiFileBase implements BuildElement {
 
   @Nullable
   public FunctionStatement findLoadedFunction(String name) {
-    for (LoadStatement loadStatement : findChildrenByClass(LoadStatement.class)) {
+    for (LoadStatement loadStatement : getLoadStatements()) {
+      if (!ArrayUtil.contains(name, loadStatement.getImportedSymbolNames())) {
+        continue;
+      }
       for (StringLiteral importedFunctionNode : loadStatement.getImportedSymbolElements()) {
         if (name.equals(importedFunctionNode.getStringContents())) {
           PsiElement element = importedFunctionNode.getReferencedElement();
@@ -246,9 +264,21 @@ public class BuildFile extends PsiFileBase implements BuildElement {
   }
 
   public FunctionStatement[] getFunctionDeclarations() {
+    StubElement<?> stub = getStub();
+    if (stub != null) {
+      return stub.getChildrenByType(BuildElementTypes.FUNCTION_STATEMENT, FunctionStatement.EMPTY_ARRAY);
+    }
     return findChildrenByClass(FunctionStatement.class);
   }
 
+  public LoadStatement[] getLoadStatements() {
+    StubElement<?> stub = getStub();
+    if (stub != null) {
+      return stub.getChildrenByType(BuildElementTypes.LOAD_STATEMENT, LoadStatement.EMPTY_ARRAY);
+    }
+    return findChildrenByClass(LoadStatement.class);
+  }
+
   @Override
   public Icon getIcon(int flags) {
     return BlazeIcons.BuildFile;
@@ -17,6 +17,7 @@ package com.google.idea.blaze.base.lang.buildfile.psi;
 
 import com.google.idea.blaze.base.lang.buildfile.language.semantics.BuildLanguageSpec;
 import com.google.idea.blaze.base.lang.buildfile.language.semantics.BuildLanguageSpecProvider;
+import com.google.idea.blaze.base.lang.buildfile.psi.stubs.FuncallExpressionStub;
 import com.google.idea.blaze.base.lang.buildfile.psi.util.PsiUtils;
 import com.google.idea.blaze.base.lang.buildfile.references.FuncallReference;
 import com.google.idea.blaze.base.lang.buildfile.references.LabelUtils;
@@ -36,12 +37,18 @@ import javax.swing.*;
  * PSI element for an function call.<br>
  * Could be a top-level rule, Skylark function reference, or general some other python function call
  */
-public class FuncallExpression extends BuildElementImpl implements Expression, PsiNameIdentifierOwner {
+public class FuncallExpression extends StubBasedBuildElement<FuncallExpressionStub> implements Expression, PsiNameIdentifierOwner {
+
+  public static final FuncallExpression[] EMPTY_ARRAY = new FuncallExpression[0];
 
   public FuncallExpression(ASTNode astNode) {
     super(astNode);
   }
 
+  public FuncallExpression(FuncallExpressionStub stub) {
+    super(stub, BuildElementTypes.FUNCALL_EXPRESSION);
+  }
+
   @Override
   protected void acceptVisitor(BuildElementVisitor visitor) {
     visitor.visitFuncallExpression(this);
@@ -52,6 +59,10 @@ public class FuncallExpression extends BuildElementImpl implements Expression, P
    */
   @Nullable
   public String getFunctionName() {
+    FuncallExpressionStub stub = getStub();
+    if (stub != null) {
+      return stub.getFunctionName();
+    }
     ASTNode node = getFunctionNameNode();
     return node != null ? node.getText() : null;
   }
@@ -101,6 +112,10 @@ public class FuncallExpression extends BuildElementImpl implements Expression, P
    * Top-level funcalls are almost always BUILD rules.
    */
   public boolean isTopLevel() {
+    if (getStub() != null) {
+      // only top-level rules are stubbed
+      return true;
+    }
     ASTNode parent = getNode().getTreeParent();
     return parent == null || parent.getElementType() == BuildElementTypes.BUILD_FILE;
   }
@@ -155,6 +170,10 @@ public class FuncallExpression extends BuildElementImpl implements Expression, P
    */
   @Nullable
   public String getNameArgumentValue() {
+    FuncallExpressionStub stub = getStub();
+    if (stub != null) {
+      return stub.getNameArgumentValue();
+    }
     StringLiteral node = getNameArgumentValueNode();
     return node != null ? node.getStringContents() : null;
   }
@@ -15,7 +15,12 @@
  */
 package com.google.idea.blaze.base.lang.buildfile.psi;
 
+import com.google.idea.blaze.base.lang.buildfile.lexer.BuildToken;
+import com.google.idea.blaze.base.lang.buildfile.psi.stubs.FunctionStatementStub;
+import com.google.idea.blaze.base.lang.buildfile.psi.util.PsiUtils;
 import com.intellij.lang.ASTNode;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiNameIdentifierOwner;
 import com.intellij.util.PlatformIcons;
 import org.jetbrains.annotations.Nullable;
 
@@ -24,17 +29,63 @@ import javax.swing.*;
 /**
  * PSI element for a function definition statement.
  */
-public class FunctionStatement extends NamedBuildElement implements Statement, StatementListContainer {
+public class FunctionStatement extends StubBasedBuildElement<FunctionStatementStub>
+  implements Statement, StatementListContainer, PsiNameIdentifierOwner {
+
+  public static final FunctionStatement[] EMPTY_ARRAY = new FunctionStatement[0];
 
   public FunctionStatement(ASTNode astNode) {
     super(astNode);
   }
 
+  public FunctionStatement(FunctionStatementStub stub) {
+    super(stub, BuildElementTypes.FUNCTION_STATEMENT);
+  }
+
   @Override
   protected void acceptVisitor(BuildElementVisitor visitor) {
     visitor.visitFunctionStatement(this);
   }
 
+  @Nullable
+  public ASTNode getNameNode() {
+    return getNode().findChildByType(BuildToken.IDENTIFIER);
+  }
+
+  @Override
+  @Nullable
+  public String getName() {
+    FunctionStatementStub stub = getStub();
+    if (stub != null) {
+      return stub.getName();
+    }
+    ASTNode node = getNameNode();
+    return node != null ? node.getText() : null;
+  }
+
+  @Override
+  @Nullable
+  public PsiElement getNameIdentifier() {
+    final ASTNode nameNode = getNameNode();
+    return nameNode != null ? nameNode.getPsi() : null;
+  }
+
+  @Override
+  public PsiElement setName(String name) {
+    final ASTNode nameElement = PsiUtils.createNewName(getProject(), name);
+    final ASTNode nameNode = getNameNode();
+    if (nameNode != null) {
+      getNode().replaceChild(nameNode, nameElement);
+    }
+    return this;
+  }
+
+  @Override
+  public int getTextOffset() {
+    final ASTNode name = getNameNode();
+    return name != null ? name.getStartOffset() : super.getTextOffset();
+  }
+
   @Nullable
   @Override
   public Icon getIcon(int flags) {
@@ -56,4 +107,9 @@ public class FunctionStatement extends NamedBuildElement implements Statement, S
     return nonNullName() + getParameterList().getPresentableText();
   }
 
-}
\ No newline at end of file
+  @Override
+  public String toString() {
+    return super.toString() + "('" + getName() + "')";
+  }
+
+}
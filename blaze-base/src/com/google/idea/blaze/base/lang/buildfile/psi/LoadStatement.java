@@ -15,6 +15,7 @@
  */
 package com.google.idea.blaze.base.lang.buildfile.psi;
 
+import com.google.idea.blaze.base.lang.buildfile.psi.stubs.LoadStatementStub;
 import com.google.idea.blaze.base.lang.buildfile.references.LabelUtils;
 import com.intellij.lang.ASTNode;
 import com.intellij.util.PlatformIcons;
@@ -26,12 +27,18 @@ import java.util.Arrays;
 /**
  * PSI element for a load statement.
  */
-public class LoadStatement extends BuildElementImpl implements Statement {
+public class LoadStatement extends StubBasedBuildElement<LoadStatementStub> implements Statement {
+
+  public static final LoadStatement[] EMPTY_ARRAY = new LoadStatement[0];
 
   public LoadStatement(ASTNode astNode) {
     super(astNode);
   }
 
+  public LoadStatement(LoadStatementStub stub) {
+    super(stub, BuildElementTypes.LOAD_STATEMENT);
+  }
+
   @Override
   protected void acceptVisitor(BuildElementVisitor visitor) {
     visitor.visitLoadStatement(this);
@@ -49,6 +56,10 @@ public class LoadStatement extends BuildElementImpl implements Statement {
 
   @Nullable
   public String getImportedPath() {
+    LoadStatementStub stub = getStub();
+    if (stub != null) {
+      return stub.getImportedPath();
+    }
     ASTNode firstString = getImportNode();
     return firstString != null ? StringLiteral.parseStringContents(firstString.getText()) : null;
   }
@@ -73,6 +84,10 @@ public class LoadStatement extends BuildElementImpl implements Statement {
   }
 
   public String[] getImportedSymbolNames() {
+    LoadStatementStub stub = getStub();
+    if (stub != null) {
+      return stub.getImportedSymbolNames();
+    }
     return Arrays.stream(getImportedSymbolElements())
       .map(StringLiteral::getStringContents)
       .toArray(String[]::new);
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.psi.stubs;
+
+import com.google.idea.blaze.base.lang.buildfile.psi.FuncallExpression;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.stubs.StringStubIndexExtension;
+import com.intellij.psi.stubs.StubIndex;
+import com.intellij.psi.stubs.StubIndexKey;
+
+import java.util.Collection;
+
+/**
+ * Indexes top-level rules by the value of their 'name' argument.<br>
+ * To find rules in a given package, restrict the scope to that package
+ * (see {@link com.google.idea.blaze.base.lang.buildfile.search.BlazePackage#getSearchScope}).
+ */
+public class BuildRuleNameIndex extends StringStubIndexExtension<FuncallExpression> {
+
+  public static final StubIndexKey<String, FuncallExpression> KEY = StubIndexKey.createIndexKey("BUILD.rule.name");
+
+  public static Collection<FuncallExpression> find(Project project, String ruleName, GlobalSearchScope scope) {
+    return StubIndex.getElements(KEY, ruleName, project, scope, FuncallExpression.class);
+  }
+
+  public static Collection<String> getAllRuleNames(Project project) {
+    return StubIndex.getInstance().getAllKeys(KEY, project);
+  }
+
+  @Override
+  public StubIndexKey<String, FuncallExpression> getKey() {
+    return KEY;
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.psi.stubs;
+
+import com.google.idea.blaze.base.lang.buildfile.psi.FuncallExpression;
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.stubs.IndexSink;
+import com.intellij.psi.stubs.StubElement;
+import com.intellij.psi.stubs.StubInputStream;
+import com.intellij.psi.stubs.StubOutputStream;
+import com.intellij.util.io.StringRef;
+
+import java.io.IOException;
+
+/**
+ * Element type for function calls. Only top-level calls with a string 'name' argument (i.e. rules)
+ * get a stub; other calls are only visible once the AST is loaded.
+ */
+public class FuncallExpressionElementType extends BuildStubElementType<FuncallExpressionStub, FuncallExpression> {
+
+  public FuncallExpressionElementType() {
+    super("function_call");
+  }
+
+  @Override
+  public FuncallExpression createElement(ASTNode node) {
+    return new FuncallExpression(node);
+  }
+
+  @Override
+  public FuncallExpression createPsi(FuncallExpressionStub stub) {
+    return new FuncallExpression(stub);
+  }
+
+  @Override
+  public FuncallExpressionStub createStub(FuncallExpression psi, StubElement parentStub) {
+    return new FuncallExpressionStub(parentStub, psi.getFunctionName(), psi.getNameArgumentValue());
+  }
+
+  @Override
+  public boolean shouldCreateStub(ASTNode node) {
+    return super.shouldCreateStub(node) && ((FuncallExpression) node.getPsi()).getNameArgumentValue() != null;
+  }
+
+  @Override
+  public void serialize(FuncallExpressionStub stub, StubOutputStream dataStream) throws IOException {
+    dataStream.writeName(stub.getFunctionName());
+    dataStream.writeName(stub.getNameArgumentValue());
+  }
+
+  @Override
+  public FuncallExpressionStub deserialize(StubInputStream dataStream, StubElement parentStub) throws IOException {
+    String functionName = StringRef.toString(dataStream.readName());
+    String nameArgumentValue = StringRef.toString(dataStream.readName());
+    return new FuncallExpressionStub(parentStub, functionName, nameArgumentValue);
+  }
+
+  @Override
+  public void indexStub(FuncallExpressionStub stub, IndexSink sink) {
+    sink.occurrence(BuildRuleNameIndex.KEY, stub.getNameArgumentValue());
+  }
+}
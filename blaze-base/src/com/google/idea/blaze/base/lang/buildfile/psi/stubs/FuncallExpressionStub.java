@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.psi.stubs;
+
+import com.google.idea.blaze.base.lang.buildfile.psi.BuildElementTypes;
+import com.google.idea.blaze.base.lang.buildfile.psi.FuncallExpression;
+import com.intellij.psi.stubs.StubBase;
+import com.intellij.psi.stubs.StubElement;
+
+import javax.annotation.Nullable;
+
+/**
+ * Stub for a top-level rule invocation, i.e. a function call with a 'name' argument.
+ */
+public class FuncallExpressionStub extends StubBase<FuncallExpression> {
+
+  @Nullable private final String functionName;
+  private final String nameArgumentValue;
+
+  public FuncallExpressionStub(StubElement parent, @Nullable String functionName, String nameArgumentValue) {
+    super(parent, BuildElementTypes.FUNCALL_EXPRESSION);
+    this.functionName = functionName;
+    this.nameArgumentValue = nameArgumentValue;
+  }
+
+  @Nullable
+  public String getFunctionName() {
+    return functionName;
+  }
+
+  public String getNameArgumentValue() {
+    return nameArgumentValue;
+  }
+}
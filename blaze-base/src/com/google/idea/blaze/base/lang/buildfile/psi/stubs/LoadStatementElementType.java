@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.psi.stubs;
+
+import com.google.idea.blaze.base.lang.buildfile.psi.LoadStatement;
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.stubs.StubElement;
+import com.intellij.psi.stubs.StubInputStream;
+import com.intellij.psi.stubs.StubOutputStream;
+import com.intellij.util.io.StringRef;
+
+import java.io.IOException;
+
+/**
+ * Element type for 'load' statements.
+ */
+public class LoadStatementElementType extends BuildStubElementType<LoadStatementStub, LoadStatement> {
+
+  public LoadStatementElementType() {
+    super("load");
+  }
+
+  @Override
+  public LoadStatement createElement(ASTNode node) {
+    return new LoadStatement(node);
+  }
+
+  @Override
+  public LoadStatement createPsi(LoadStatementStub stub) {
+    return new LoadStatement(stub);
+  }
+
+  @Override
+  public LoadStatementStub createStub(LoadStatement psi, StubElement parentStub) {
+    return new LoadStatementStub(parentStub, psi.getImportedPath(), psi.getImportedSymbolNames());
+  }
+
+  @Override
+  public void serialize(LoadStatementStub stub, StubOutputStream dataStream) throws IOException {
+    dataStream.writeName(stub.getImportedPath());
+    String[] symbols = stub.getImportedSymbolNames();
+    dataStream.writeVarInt(symbols.length);
+    for (String symbol : symbols) {
+      dataStream.writeName(symbol);
+    }
+  }
+
+  @Override
+  public LoadStatementStub deserialize(StubInputStream dataStream, StubElement parentStub) throws IOException {
+    String importedPath = StringRef.toString(dataStream.readName());
+    String[] symbols = new String[dataStream.readVarInt()];
+    for (int i = 0; i < symbols.length; i++) {
+      symbols[i] = StringRef.toString(dataStream.readName());
+    }
+    return new LoadStatementStub(parentStub, importedPath, symbols);
+  }
+}
@@ -17,19 +17,18 @@ package com.google.idea.blaze.base.lang.buildfile.references;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
-import com.google.idea.blaze.base.io.FileAttributeProvider;
+import com.google.idea.blaze.base.lang.buildfile.globbing.GlobCache;
 import com.google.idea.blaze.base.lang.buildfile.globbing.UnixGlob;
 import com.google.idea.blaze.base.lang.buildfile.psi.*;
 import com.google.idea.blaze.base.lang.buildfile.psi.util.PsiUtils;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.*;
 import com.intellij.psi.impl.source.resolve.reference.impl.PsiPolyVariantCachingReference;
 import com.intellij.util.IncorrectOperationException;
 
-import java.io.File;
 import java.util.List;
-import java.util.function.Predicate;
 
 /**
  * References from a glob to a list of files contained in the same blaze package.
@@ -94,7 +93,8 @@ public class GlobReference extends PsiPolyVariantCachingReference {
 
   @Override
   protected ResolveResult[] resolveInner(boolean incompleteCode, PsiFile containingFile) {
-    File containingDirectory = ((BuildFile) containingFile).getFile().getParentFile();
+    VirtualFile buildFile = containingFile.getOriginalFile().getVirtualFile();
+    VirtualFile containingDirectory = buildFile != null ? buildFile.getParent() : null;
     if (containingDirectory == null) {
       return ResolveResult.EMPTY_ARRAY;
     }
@@ -106,37 +106,22 @@ public class GlobReference extends PsiPolyVariantCachingReference {
     }
 
     try {
-      List<File> files = UnixGlob.forPath(containingDirectory)
-        .addPatterns(includes)
-        .addExcludes(excludes)
-        .setExcludeDirectories(directoriesExcluded)
-        .setDirectoryFilter(directoryFilter(containingDirectory.getPath()))
-        .glob();
+      List<VirtualFile> files = GlobCache.getInstance().glob(containingDirectory, includes, excludes, directoriesExcluded);
+      PsiManager manager = containingFile.getManager();
       List<ResolveResult> results = Lists.newArrayListWithCapacity(files.size());
-      for (File file : files) {
-        PsiFileSystemItem psiFile = BuildReferenceManager.getInstance(element.getProject()).resolveFile(file);
+      for (VirtualFile file : files) {
+        PsiFileSystemItem psiFile = file.isDirectory() ? manager.findDirectory(file) : manager.findFile(file);
         if (psiFile != null) {
           results.add(new PsiElementResolveResult(psiFile));
         }
       }
       return results.toArray(ResolveResult.EMPTY_ARRAY);
 
-    } catch (Exception e) {
+    } catch (IllegalArgumentException e) {
       return ResolveResult.EMPTY_ARRAY;
     }
   }
 
-  private static Predicate<File> directoryFilter(String base) {
-    return file -> {
-      if (base.equals(file.getPath())) {
-        return true;
-      }
-      File child = new File(file, "BUILD");
-      FileAttributeProvider attributeProvider = FileAttributeProvider.getInstance();
-      return !attributeProvider.exists(child) || attributeProvider.isDirectory(child);
-    };
-  }
-
   private static List<String> resolveListContents(Expression expr) {
     if (expr == null) {
       return ImmutableList.of();
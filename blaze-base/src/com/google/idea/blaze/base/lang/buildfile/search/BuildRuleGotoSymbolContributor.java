@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.search;
+
+import com.google.idea.blaze.base.lang.buildfile.psi.FuncallExpression;
+import com.google.idea.blaze.base.lang.buildfile.psi.stubs.BuildRuleNameIndex;
+import com.intellij.navigation.ChooseByNameContributor;
+import com.intellij.navigation.NavigationItem;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.ArrayUtil;
+
+import java.util.Collection;
+
+/**
+ * Makes BUILD rules available in 'Go to Symbol', by rule name. Served from the stub index, so
+ * BUILD files are not parsed.
+ */
+public class BuildRuleGotoSymbolContributor implements ChooseByNameContributor {
+
+  @Override
+  public String[] getNames(Project project, boolean includeNonProjectItems) {
+    return ArrayUtil.toStringArray(BuildRuleNameIndex.getAllRuleNames(project));
+  }
+
+  @Override
+  public NavigationItem[] getItemsByName(String name, String pattern, Project project, boolean includeNonProjectItems) {
+    GlobalSearchScope scope = includeNonProjectItems
+                              ? GlobalSearchScope.allScope(project)
+                              : GlobalSearchScope.projectScope(project);
+    Collection<FuncallExpression> rules = BuildRuleNameIndex.find(project, name, scope);
+    return rules.toArray(new NavigationItem[rules.size()]);
+  }
+}
@@ -16,7 +16,6 @@
 package com.google.idea.blaze.base.lang.buildfile.sync;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.idea.blaze.base.command.info.BlazeInfo;
 import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
@@ -42,6 +41,7 @@ import com.intellij.openapi.project.Project;
 
 import javax.annotation.Nullable;
 import java.io.File;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -60,7 +60,7 @@ public class BuildLangSyncPlugin extends BlazeSyncPlugin.Adapter {
                               BlazeRoots blazeRoots,
                               @Nullable WorkingSet workingSet,
                               WorkspacePathResolver workspacePathResolver,
-                              ImmutableMap<Label, RuleIdeInfo> ruleMap,
+                              Map<Label, RuleIdeInfo> ruleMap,
                               @Deprecated @Nullable File androidPlatformDirectory,
                               SyncState.Builder syncStateBuilder,
                               @Nullable SyncState previousSyncState) {
@@ -15,10 +15,9 @@
  */
 package com.google.idea.blaze.base.model;
 
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableMultimap;
 import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
 import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.rulemaps.TargetGraph;
 import com.google.idea.blaze.base.sync.projectview.WorkspaceLanguageSettings;
 import com.google.idea.blaze.base.sync.workspace.BlazeRoots;
 import com.google.idea.blaze.base.sync.workspace.WorkingSet;
@@ -27,33 +26,38 @@ import com.google.idea.blaze.base.sync.workspace.WorkspacePathResolver;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 import java.io.Serializable;
+import java.util.Map;
 
 /**
  * The top-level object serialized to cache.
  */
 @Immutable
 public class BlazeProjectData implements Serializable {
+  // Only legacy caches are java-serialized. Kept at the version they were written with, so they can be migrated.
   private static final long serialVersionUID = 18L;
 
   public final long syncTime;
-  public final ImmutableMap<Label, RuleIdeInfo> ruleMap;
+  /**
+   * May be loaded lazily from disk. Prefer point lookups over scanning the values.
+   */
+  public final Map<Label, RuleIdeInfo> ruleMap;
   public final BlazeRoots blazeRoots;
   @Nullable
   public final WorkingSet workingSet;
   public final WorkspacePathResolver workspacePathResolver;
   public final WorkspaceLanguageSettings workspaceLanguageSettings;
   public final SyncState syncState;
-  public final ImmutableMultimap<Label, Label> reverseDependencies;
+  public final TargetGraph targetGraph;
 
   public BlazeProjectData(
     long syncTime,
-    ImmutableMap<Label, RuleIdeInfo> ruleMap,
+    Map<Label, RuleIdeInfo> ruleMap,
     BlazeRoots blazeRoots,
     @Nullable WorkingSet workingSet,
     WorkspacePathResolver workspacePathResolver,
     WorkspaceLanguageSettings workspaceLangaugeSettings,
     SyncState syncState,
-    ImmutableMultimap<Label, Label> reverseDependencies
+    TargetGraph targetGraph
   ) {
     this.syncTime = syncTime;
     this.ruleMap = ruleMap;
@@ -62,6 +66,6 @@ public class BlazeProjectData implements Serializable {
     this.workspacePathResolver = workspacePathResolver;
     this.workspaceLanguageSettings = workspaceLangaugeSettings;
     this.syncState = syncState;
-    this.reverseDependencies = reverseDependencies;
+    this.targetGraph = targetGraph;
   }
 }
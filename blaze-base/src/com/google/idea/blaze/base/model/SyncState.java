@@ -19,7 +19,6 @@ import com.google.common.collect.ImmutableMap;
 
 import javax.annotation.Nullable;
 import java.io.Serializable;
-import java.util.Map;
 
 /**
  * Used to save arbitrary state with the sync task.
@@ -34,10 +33,23 @@ public class SyncState implements Serializable {
     return (T) syncStateMap.get(klass.getName());
   }
 
+  /**
+   * Returns every part of the sync state, keyed by the name of the class it was stored under.
+   */
+  public ImmutableMap<String, Serializable> getParts() {
+    return syncStateMap;
+  }
+
   public static class Builder {
-    ImmutableMap.Builder<Class, Serializable> syncStateMap = ImmutableMap.builder();
+    ImmutableMap.Builder<String, Serializable> syncStateMap = ImmutableMap.builder();
     public <K extends Serializable, V extends K> Builder put(Class<K> klass, V instance) {
-      syncStateMap.put(klass, instance);
+      return put(klass.getName(), instance);
+    }
+    /**
+     * Puts a part under an explicit class name. Used when restoring sync state from disk.
+     */
+    public Builder put(String className, Serializable instance) {
+      syncStateMap.put(className, instance);
       return this;
     }
     public SyncState build() {
@@ -45,11 +57,7 @@ public class SyncState implements Serializable {
     }
   }
 
-  SyncState(ImmutableMap<Class, Serializable> syncStateMap) {
-    ImmutableMap.Builder<String, Serializable> extraProjectSyncStateMap = ImmutableMap.builder();
-    for (Map.Entry<Class, Serializable> entry : syncStateMap.entrySet()) {
-      extraProjectSyncStateMap.put(entry.getKey().getName(), entry.getValue());
-    }
-    this.syncStateMap = extraProjectSyncStateMap.build();
+  SyncState(ImmutableMap<String, Serializable> syncStateMap) {
+    this.syncStateMap = syncStateMap;
   }
 }
@@ -16,17 +16,23 @@
 package com.google.idea.blaze.base.model.primitives;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
 import com.google.idea.blaze.base.ui.BlazeValidationError;
 import com.intellij.openapi.diagnostic.Logger;
 
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
+import java.io.ObjectStreamException;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Wrapper around a string for a blaze label (//package:rule).
+ *
+ * <p>Labels from {@link #create} are interned, so the same label read from many rules is held
+ * once. The package and rule name are split off on first use and kept.
  */
 @Immutable
 public final class Label extends TargetExpression {
@@ -36,17 +42,51 @@ public final class Label extends TargetExpression {
 
   public static final long serialVersionUID = 2L;
 
+  /**
+   * Keyed by the label's own string, values are dropped once no longer referenced elsewhere.
+   */
+  private static final ConcurrentMap<String, Label> INTERNED_LABELS = new MapMaker().weakValues().makeMap();
+
+  // Derived from the label string on first use. Racy, but every thread computes an equal value.
+  @Nullable private transient WorkspacePath blazePackage;
+  @Nullable private transient RuleName ruleName;
+
+  /**
+   * Returns the shared instance for the given label, creating it if necessary.
+   *
+   * @throws IllegalArgumentException if this is not a valid label
+   */
+  public static Label create(String label) {
+    Label interned = INTERNED_LABELS.get(label);
+    if (interned != null) {
+      return interned;
+    }
+    return intern(new Label(label));
+  }
+
   /**
    * Silently returns null if this is not a valid Label
    */
   @Nullable
   public static Label createIfValid(String label) {
+    Label interned = INTERNED_LABELS.get(label);
+    if (interned != null) {
+      return interned;
+    }
     if (validate(label)) {
-      return new Label(label);
+      return intern(new Label(label));
     }
     return null;
   }
 
+  private static Label intern(Label label) {
+    Label existing = INTERNED_LABELS.putIfAbsent(label.toString(), label);
+    return existing != null ? existing : label;
+  }
+
+  /**
+   * Prefer {@link #create}, which shares instances.
+   */
   public Label(String label) {
     super(label);
     List<BlazeValidationError> errors = Lists.newArrayList();
@@ -59,6 +99,8 @@ public final class Label extends TargetExpression {
     WorkspacePath packageName,
     RuleName newRuleName) {
     this("//" + packageName.toString() + ":" + newRuleName.toString());
+    this.blazePackage = packageName;
+    this.ruleName = newRuleName;
   }
 
   public static boolean validate(String label) {
@@ -97,11 +139,16 @@ public final class Label extends TargetExpression {
    * @return the rule name
    */
   public RuleName ruleName() {
-    String labelStr = toString();
-    int colonLocation = labelStr.lastIndexOf(':');
-    int ruleNameStart = colonLocation + 1;
-    String ruleNameStr = labelStr.substring(ruleNameStart);
-    return RuleName.create(ruleNameStr);
+    RuleName ruleName = this.ruleName;
+    if (ruleName == null) {
+      String labelStr = toString();
+      int colonLocation = labelStr.lastIndexOf(':');
+      int ruleNameStart = colonLocation + 1;
+      String ruleNameStr = labelStr.substring(ruleNameStart);
+      ruleName = RuleName.create(ruleNameStr);
+      this.ruleName = ruleName;
+    }
+    return ruleName;
   }
 
   /**
@@ -109,11 +156,16 @@ public final class Label extends TargetExpression {
    * package is //j/c/g/a/apps/docs:release, it returns j/c/g/a/apps/docs.
    */
   public WorkspacePath blazePackage() {
-    String labelStr = toString();
-    int startIndex = labelStr.indexOf("//") + "//".length();
-    int colonIndex = labelStr.lastIndexOf(':');
-    LOG.assertTrue(colonIndex >= 0);
-    return new WorkspacePath(labelStr.substring(startIndex, colonIndex));
+    WorkspacePath blazePackage = this.blazePackage;
+    if (blazePackage == null) {
+      String labelStr = toString();
+      int startIndex = labelStr.indexOf("//") + "//".length();
+      int colonIndex = labelStr.lastIndexOf(':');
+      LOG.assertTrue(colonIndex >= 0);
+      blazePackage = new WorkspacePath(labelStr.substring(startIndex, colonIndex));
+      this.blazePackage = blazePackage;
+    }
+    return blazePackage;
   }
 
   public static boolean validatePackagePath(String path) {
@@ -150,4 +202,10 @@ public final class Label extends TargetExpression {
     return true;
   }
 
+  /**
+   * Deserialized labels are replaced by the shared instance.
+   */
+  private Object readResolve() throws ObjectStreamException {
+    return create(toString());
+  }
 }
@@ -34,7 +34,7 @@ public class TargetExpression implements Serializable, Comparable<TargetExpressi
    */
   public static TargetExpression fromString(String expression) {
     return Label.validate(expression)
-           ? new Label(expression)
+           ? Label.create(expression)
            : new TargetExpression(expression);
   }
 
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.rulemaps;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+import com.google.idea.blaze.base.ideinfo.CToolchainIdeInfo;
+import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.sync.data.ProjectDataCache;
+import com.intellij.openapi.diagnostic.Logger;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The C toolchain of each target that (transitively) depends on a cc_toolchain.
+ */
+public final class CToolchainLookupMap {
+  private static final Logger LOG = Logger.getInstance(CToolchainLookupMap.class);
+
+  // Walks the whole rule graph; a workspace update that sees the same project data again reuses it
+  private static final ProjectDataCache<ImmutableMap<Label, CToolchainIdeInfo>> LOOKUP_MAPS =
+    new ProjectDataCache<>(projectData -> create(projectData.ruleMap, projectData.targetGraph));
+
+  private CToolchainLookupMap() {
+  }
+
+  /**
+   * Returns the toolchain lookup map of the given project data, computing it on first use.
+   */
+  public static ImmutableMap<Label, CToolchainIdeInfo> get(BlazeProjectData blazeProjectData) {
+    return LOOKUP_MAPS.get(blazeProjectData);
+  }
+
+  /**
+   * Pushes each toolchain to its reverse dependencies with a single traversal of the target graph,
+   * so every target and edge is visited once however many toolchains there are.
+   */
+  public static ImmutableMap<Label, CToolchainIdeInfo> create(Map<Label, RuleIdeInfo> ruleMap, TargetGraph targetGraph) {
+    CToolchainIdeInfo[] lookupTable = new CToolchainIdeInfo[targetGraph.size()];
+    List<Integer> seeds = Lists.newArrayList();
+    for (Map.Entry<Label, RuleIdeInfo> entry : ruleMap.entrySet()) {
+      CToolchainIdeInfo toolchainInfo = entry.getValue().cToolchainIdeInfo;
+      int id = toolchainInfo != null ? targetGraph.getId(entry.getKey()) : -1;
+      if (id >= 0) {
+        seeds.add(id);
+        lookupTable[id] = toolchainInfo;
+      }
+    }
+    int[] seedIds = Ints.toArray(seeds);
+
+    targetGraph.propagate(seedIds, TargetGraph.Direction.REVERSE_DEPENDENCIES, (from, to) -> {
+      CToolchainIdeInfo toolchainInfo = lookupTable[from];
+      CToolchainIdeInfo previousValue = lookupTable[to];
+      // Don't propagate the toolchain twice.
+      if (previousValue == null) {
+        lookupTable[to] = toolchainInfo;
+        return true;
+      }
+      // We should never see a label depend on two different toolchains.
+      LOG.assertTrue(previousValue == toolchainInfo || previousValue.equals(toolchainInfo));
+      return false;
+    });
+
+    // The toolchains themselves aren't part of the map
+    for (int id : seedIds) {
+      lookupTable[id] = null;
+    }
+    ImmutableMap.Builder<Label, CToolchainIdeInfo> result = ImmutableMap.builder();
+    for (int id = 0; id < lookupTable.length; ++id) {
+      if (lookupTable[id] != null) {
+        result.put(targetGraph.getLabel(id), lookupTable[id]);
+      }
+    }
+    return result.build();
+  }
+}
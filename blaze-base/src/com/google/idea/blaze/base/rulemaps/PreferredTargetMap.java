@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.rulemaps;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.model.primitives.Label;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Picks one target for every source file, for features that can only show a file in the context
+ * of a single target.
+ *
+ * <p>If a file is in several targets, the one whose label sorts first wins, so the choice is stable
+ * between syncs. Computing this once per sync keeps the per-file lookup to a single hash lookup.
+ */
+public final class PreferredTargetMap {
+  private PreferredTargetMap() {
+  }
+
+  public static ImmutableMap<File, Label> create(Map<Label, ? extends Collection<ArtifactLocation>> sourcesByTarget) {
+    Map<File, Label> result = Maps.newHashMapWithExpectedSize(sourcesByTarget.size() * 2);
+    for (Map.Entry<Label, ? extends Collection<ArtifactLocation>> entry : sourcesByTarget.entrySet()) {
+      Label label = entry.getKey();
+      for (ArtifactLocation source : entry.getValue()) {
+        File file = source.getFile();
+        Label existing = result.putIfAbsent(file, label);
+        if (existing != null && label.toString().compareTo(existing.toString()) < 0) {
+          result.put(file, label);
+        }
+      }
+    }
+    return ImmutableMap.copyOf(result);
+  }
+}
@@ -0,0 +1,461 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.rulemaps;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
+import com.google.idea.blaze.base.model.primitives.Label;
+
+import javax.annotation.concurrent.Immutable;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Dependency graph between the rules of a project.
+ *
+ * <p>Each rule gets a dense int id, in rule map iteration order. Forward and reverse edges are
+ * stored as offset/target arrays (compressed sparse rows), so walking the graph needs no hash
+ * lookups past the starting labels. Only edges between rules in the graph are kept, and each edge
+ * is kept once even if a rule lists the dependency as both a compile-time and runtime dependency.
+ */
+@Immutable
+public final class TargetGraph implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  public static final TargetGraph EMPTY = new TargetGraph(new Label[0], new int[1], new int[0]);
+
+  public enum Direction {
+    DEPENDENCIES,
+    REVERSE_DEPENDENCIES,
+  }
+
+  /**
+   * Called once for each target reached by a traversal.
+   */
+  public interface Visitor {
+    /**
+     * @return whether to continue the traversal past this target
+     */
+    boolean visit(int id);
+  }
+
+  /**
+   * Called for each edge followed by {@link #propagate}.
+   */
+  public interface EdgeVisitor {
+    /**
+     * @return whether to continue the traversal past {@code to}. Ignored if {@code to} has already
+     * been reached.
+     */
+    boolean visit(int from, int to);
+  }
+
+  private final Label[] labels;
+  /** Open-addressed hash table of id + 1, 0 for empty slots. */
+  private final int[] index;
+  private final int[] dependencyOffsets;
+  private final int[] dependencies;
+  private final int[] reverseDependencyOffsets;
+  private final int[] reverseDependencies;
+
+  private TargetGraph(Label[] labels, int[] dependencyOffsets, int[] dependencies) {
+    this.labels = labels;
+    this.index = buildIndex(labels);
+    this.dependencyOffsets = dependencyOffsets;
+    this.dependencies = dependencies;
+
+    int size = labels.length;
+    int[] reverseDependencyOffsets = new int[size + 1];
+    for (int dependency : dependencies) {
+      reverseDependencyOffsets[dependency + 1]++;
+    }
+    for (int id = 0; id < size; ++id) {
+      reverseDependencyOffsets[id + 1] += reverseDependencyOffsets[id];
+    }
+    int[] next = Arrays.copyOf(reverseDependencyOffsets, size);
+    int[] reverseDependencies = new int[dependencies.length];
+    // Filled in id order, so reverse dependencies are listed in rule map order
+    for (int id = 0; id < size; ++id) {
+      for (int i = dependencyOffsets[id]; i < dependencyOffsets[id + 1]; ++i) {
+        reverseDependencies[next[dependencies[i]]++] = id;
+      }
+    }
+    this.reverseDependencyOffsets = reverseDependencyOffsets;
+    this.reverseDependencies = reverseDependencies;
+  }
+
+  /**
+   * Builds the graph of the given rules. Dependencies are resolved in parallel.
+   */
+  public static TargetGraph create(Map<Label, RuleIdeInfo> ruleMap) {
+    Label[] labels = ruleMap.keySet().toArray(new Label[ruleMap.size()]);
+    int[] index = buildIndex(labels);
+
+    int[][] dependencyIds = new int[labels.length][];
+    IntStream.range(0, labels.length).parallel().forEach(id -> {
+      RuleIdeInfo rule = ruleMap.get(labels[id]);
+      int[] ids = new int[rule.dependencies.size() + rule.runtimeDeps.size()];
+      int count = 0;
+      for (Label dependency : rule.dependencies) {
+        count = addDependency(labels, index, dependency, ids, count);
+      }
+      for (Label dependency : rule.runtimeDeps) {
+        count = addDependency(labels, index, dependency, ids, count);
+      }
+      dependencyIds[id] = removeDuplicates(ids, count);
+    });
+
+    int[] dependencyOffsets = new int[labels.length + 1];
+    for (int id = 0; id < labels.length; ++id) {
+      dependencyOffsets[id + 1] = dependencyOffsets[id] + dependencyIds[id].length;
+    }
+    int[] dependencies = new int[dependencyOffsets[labels.length]];
+    for (int id = 0; id < labels.length; ++id) {
+      System.arraycopy(dependencyIds[id], 0, dependencies, dependencyOffsets[id], dependencyIds[id].length);
+    }
+    return new TargetGraph(labels, dependencyOffsets, dependencies);
+  }
+
+  /**
+   * Rebuilds a graph from its labels and forward edges, as returned by {@link #getLabel} and
+   * {@link #getDependencyIds}.
+   */
+  public static TargetGraph create(List<Label> labels, List<int[]> dependencyIds) {
+    Preconditions.checkArgument(labels.size() == dependencyIds.size());
+    int size = labels.size();
+    int[] dependencyOffsets = new int[size + 1];
+    for (int id = 0; id < size; ++id) {
+      dependencyOffsets[id + 1] = dependencyOffsets[id] + dependencyIds.get(id).length;
+    }
+    int[] dependencies = new int[dependencyOffsets[size]];
+    for (int id = 0; id < size; ++id) {
+      int[] ids = dependencyIds.get(id);
+      for (int dependency : ids) {
+        Preconditions.checkArgument(dependency >= 0 && dependency < size, "Dependency id out of range: %s", dependency);
+      }
+      System.arraycopy(ids, 0, dependencies, dependencyOffsets[id], ids.length);
+    }
+    return new TargetGraph(labels.toArray(new Label[size]), dependencyOffsets, dependencies);
+  }
+
+  public int size() {
+    return labels.length;
+  }
+
+  public int edgeCount() {
+    return dependencies.length;
+  }
+
+  /**
+   * @return the id of the given target, or -1 if it is not in the graph
+   */
+  public int getId(Label label) {
+    int mask = index.length - 1;
+    for (int slot = spread(label.hashCode()) & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+      int id = index[slot] - 1;
+      if (labels[id].equals(label)) {
+        return id;
+      }
+    }
+    return -1;
+  }
+
+  public boolean contains(Label label) {
+    return getId(label) >= 0;
+  }
+
+  public Label getLabel(int id) {
+    return labels[id];
+  }
+
+  public int[] getDependencyIds(int id) {
+    return Arrays.copyOfRange(dependencies, dependencyOffsets[id], dependencyOffsets[id + 1]);
+  }
+
+  public int[] getReverseDependencyIds(int id) {
+    return Arrays.copyOfRange(reverseDependencies, reverseDependencyOffsets[id], reverseDependencyOffsets[id + 1]);
+  }
+
+  public ImmutableList<Label> getDependencies(Label label) {
+    return toLabels(label, dependencyOffsets, dependencies);
+  }
+
+  public ImmutableList<Label> getReverseDependencies(Label label) {
+    return toLabels(label, reverseDependencyOffsets, reverseDependencies);
+  }
+
+  /**
+   * Visits the given targets and everything reachable from them in breadth-first order. Each
+   * target is visited at most once. Roots not in the graph are ignored.
+   */
+  public void breadthFirst(Collection<Label> roots, Direction direction, Visitor visitor) {
+    int[] offsets = direction == Direction.DEPENDENCIES ? dependencyOffsets : reverseDependencyOffsets;
+    int[] edges = direction == Direction.DEPENDENCIES ? dependencies : reverseDependencies;
+    BitSet seen = new BitSet(labels.length);
+    int[] queue = new int[labels.length];
+    int head = 0;
+    int tail = 0;
+    for (Label root : roots) {
+      int id = getId(root);
+      if (id >= 0 && !seen.get(id)) {
+        seen.set(id);
+        queue[tail++] = id;
+      }
+    }
+    while (head < tail) {
+      int id = queue[head++];
+      if (!visitor.visit(id)) {
+        continue;
+      }
+      for (int i = offsets[id]; i < offsets[id + 1]; ++i) {
+        int next = edges[i];
+        if (!seen.get(next)) {
+          seen.set(next);
+          queue[tail++] = next;
+        }
+      }
+    }
+  }
+
+  /**
+   * Breadth-first traversal from all the given targets at once, calling the visitor for every edge
+   * out of a reached target, including edges to targets reached before. Each target is expanded at
+   * most once, so values can be pushed from the roots to everything reachable in linear time.
+   */
+  public void propagate(int[] rootIds, Direction direction, EdgeVisitor visitor) {
+    int[] offsets = direction == Direction.DEPENDENCIES ? dependencyOffsets : reverseDependencyOffsets;
+    int[] edges = direction == Direction.DEPENDENCIES ? dependencies : reverseDependencies;
+    BitSet seen = new BitSet(labels.length);
+    int[] queue = new int[labels.length];
+    int head = 0;
+    int tail = 0;
+    for (int id : rootIds) {
+      if (!seen.get(id)) {
+        seen.set(id);
+        queue[tail++] = id;
+      }
+    }
+    while (head < tail) {
+      int id = queue[head++];
+      for (int i = offsets[id]; i < offsets[id + 1]; ++i) {
+        int next = edges[i];
+        if (visitor.visit(id, next) && !seen.get(next)) {
+          seen.set(next);
+          queue[tail++] = next;
+        }
+      }
+    }
+  }
+
+  /**
+   * The given targets and everything reachable from them, in breadth-first order.
+   */
+  public ImmutableList<Label> closure(Collection<Label> roots, Direction direction) {
+    ImmutableList.Builder<Label> result = ImmutableList.builder();
+    breadthFirst(roots, direction, id -> {
+      result.add(labels[id]);
+      return true;
+    });
+    return result.build();
+  }
+
+  /**
+   * The strongly connected component of each target, i.e. targets on a common dependency cycle share
+   * a component. Components are numbered from 0, each one after all the components it depends on.
+   */
+  public int[] componentIds() {
+    // Tarjan's algorithm, with an explicit call stack so deep dependency chains don't overflow
+    int size = labels.length;
+    int[] componentIds = new int[size];
+    int[] visitOrder = new int[size];
+    int[] lowLink = new int[size];
+    int[] nextEdge = new int[size];
+    int[] callStack = new int[size];
+    int[] componentStack = new int[size];
+    BitSet onComponentStack = new BitSet(size);
+    int nextVisit = 1;
+    int componentStackSize = 0;
+    int componentCount = 0;
+    for (int root = 0; root < size; ++root) {
+      if (visitOrder[root] != 0) {
+        continue;
+      }
+      int depth = 0;
+      callStack[depth++] = root;
+      visitOrder[root] = lowLink[root] = nextVisit++;
+      nextEdge[root] = dependencyOffsets[root];
+      componentStack[componentStackSize++] = root;
+      onComponentStack.set(root);
+      while (depth > 0) {
+        int id = callStack[depth - 1];
+        if (nextEdge[id] < dependencyOffsets[id + 1]) {
+          int dependency = dependencies[nextEdge[id]++];
+          if (visitOrder[dependency] == 0) {
+            callStack[depth++] = dependency;
+            visitOrder[dependency] = lowLink[dependency] = nextVisit++;
+            nextEdge[dependency] = dependencyOffsets[dependency];
+            componentStack[componentStackSize++] = dependency;
+            onComponentStack.set(dependency);
+          } else if (onComponentStack.get(dependency)) {
+            lowLink[id] = Math.min(lowLink[id], visitOrder[dependency]);
+          }
+          continue;
+        }
+        --depth;
+        if (depth > 0) {
+          int parent = callStack[depth - 1];
+          lowLink[parent] = Math.min(lowLink[parent], lowLink[id]);
+        }
+        if (lowLink[id] == visitOrder[id]) {
+          int member;
+          do {
+            member = componentStack[--componentStackSize];
+            onComponentStack.clear(member);
+            componentIds[member] = componentCount;
+          }
+          while (member != id);
+          ++componentCount;
+        }
+      }
+    }
+    return componentIds;
+  }
+
+  /**
+   * All target ids, each one after all of its dependencies. Targets on a dependency cycle are next
+   * to each other, in id order, after everything the cycle depends on.
+   */
+  public int[] topologicalOrder() {
+    return topologicalOrder(componentIds());
+  }
+
+  /**
+   * Sorts target ids by the given {@link #componentIds}, keeping id order within a component.
+   */
+  public static int[] topologicalOrder(int[] componentIds) {
+    int componentCount = 0;
+    for (int componentId : componentIds) {
+      componentCount = Math.max(componentCount, componentId + 1);
+    }
+    int[] starts = new int[componentCount + 1];
+    for (int componentId : componentIds) {
+      ++starts[componentId + 1];
+    }
+    for (int i = 0; i < componentCount; ++i) {
+      starts[i + 1] += starts[i];
+    }
+    int[] order = new int[componentIds.length];
+    for (int id = 0; id < componentIds.length; ++id) {
+      order[starts[componentIds[id]]++] = id;
+    }
+    return order;
+  }
+
+  private ImmutableList<Label> toLabels(Label label, int[] offsets, int[] edges) {
+    int id = getId(label);
+    if (id < 0) {
+      return ImmutableList.of();
+    }
+    ImmutableList.Builder<Label> result = ImmutableList.builder();
+    for (int i = offsets[id]; i < offsets[id + 1]; ++i) {
+      result.add(labels[edges[i]]);
+    }
+    return result.build();
+  }
+
+  private static int addDependency(Label[] labels, int[] index, Label dependency, int[] ids, int count) {
+    int mask = index.length - 1;
+    for (int slot = spread(dependency.hashCode()) & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+      int id = index[slot] - 1;
+      if (labels[id].equals(dependency)) {
+        ids[count] = id;
+        return count + 1;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Drops repeated ids, keeping the first occurrence of each.
+   */
+  private static int[] removeDuplicates(int[] ids, int count) {
+    int[] sorted = Arrays.copyOf(ids, count);
+    Arrays.sort(sorted);
+    boolean hasDuplicates = false;
+    for (int i = 1; i < count; ++i) {
+      if (sorted[i] == sorted[i - 1]) {
+        hasDuplicates = true;
+        break;
+      }
+    }
+    if (!hasDuplicates) {
+      return count == ids.length ? ids : Arrays.copyOf(ids, count);
+    }
+    BitSet seen = new BitSet();
+    int unique = 0;
+    for (int i = 0; i < count; ++i) {
+      if (!seen.get(ids[i])) {
+        seen.set(ids[i]);
+        ids[unique++] = ids[i];
+      }
+    }
+    return Arrays.copyOf(ids, unique);
+  }
+
+  private static int[] buildIndex(Label[] labels) {
+    int capacity = Integer.highestOneBit(Math.max(labels.length, 1) * 2 - 1) << 1;
+    int[] index = new int[capacity];
+    int mask = capacity - 1;
+    for (int id = 0; id < labels.length; ++id) {
+      int slot = spread(labels[id].hashCode()) & mask;
+      while (index[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      index[slot] = id + 1;
+    }
+    return index;
+  }
+
+  private static int spread(int hash) {
+    int h = hash * 0x9e3779b9;
+    return h ^ (h >>> 16);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof TargetGraph)) {
+      return false;
+    }
+    TargetGraph that = (TargetGraph)o;
+    return Arrays.equals(labels, that.labels)
+           && Arrays.equals(dependencyOffsets, that.dependencyOffsets)
+           && Arrays.equals(dependencies, that.dependencies);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Arrays.hashCode(labels) + Arrays.hashCode(dependencies);
+  }
+}
@@ -42,4 +42,14 @@ public final class LineProcessingProcessAdapter extends ProcessAdapter {
       }
     }
   }
+
+  @Override
+  public void processTerminated(ProcessEvent event) {
+    try {
+      myOutputStream.close();
+    }
+    catch (IOException e) {
+      // Ignore -- cannot happen
+    }
+  }
 }
@@ -20,7 +20,9 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
 import com.google.idea.blaze.base.model.primitives.Kind;
+import com.google.idea.blaze.base.model.primitives.LanguageClass;
 import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.model.primitives.WorkspacePath;
 import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.project.Project;
 
@@ -38,6 +40,10 @@ public abstract class RuleFinder {
 
   @Nullable
   public RuleIdeInfo ruleForTarget(Project project, final Label target) {
+    RuleIndex ruleIndex = getRuleIndex(project);
+    if (ruleIndex != null) {
+      return ruleIndex.get(target);
+    }
     return findRule(project, input -> input.label.equals(target));
   }
 
@@ -48,9 +54,29 @@ public abstract class RuleFinder {
 
   public ImmutableList<RuleIdeInfo> rulesOfKinds(
     Project project, final List<Kind> kinds) {
+    RuleIndex ruleIndex = getRuleIndex(project);
+    if (ruleIndex != null) {
+      return ruleIndex.rulesOfKinds(kinds);
+    }
     return ImmutableList.copyOf(findRules(project, input -> input.kindIsOneOf(kinds)));
   }
 
+  public ImmutableList<RuleIdeInfo> rulesOfLanguage(Project project, LanguageClass languageClass) {
+    RuleIndex ruleIndex = getRuleIndex(project);
+    if (ruleIndex != null) {
+      return ruleIndex.rulesOfLanguage(languageClass);
+    }
+    return ImmutableList.copyOf(findRules(project, input -> input.kind.getLanguageClass() == languageClass));
+  }
+
+  public ImmutableList<RuleIdeInfo> rulesInPackage(Project project, WorkspacePath blazePackage) {
+    RuleIndex ruleIndex = getRuleIndex(project);
+    if (ruleIndex != null) {
+      return ruleIndex.rulesInPackage(blazePackage);
+    }
+    return ImmutableList.copyOf(findRules(project, input -> input.label.blazePackage().equals(blazePackage)));
+  }
+
   @Nullable
   public RuleIdeInfo firstRuleOfKinds(Project project, Kind... kinds) {
     return Iterables.getFirst(rulesOfKinds(project, kinds), null);
@@ -73,5 +99,17 @@ public abstract class RuleFinder {
     return Iterables.getFirst(findRules(project, predicate), null);
   }
 
+  /**
+   * Scans every rule of the project. Prefer the indexed queries above where they fit.
+   */
   public abstract List<RuleIdeInfo> findRules(Project project, Predicate<RuleIdeInfo> predicate);
+
+  /**
+   * Returns the index the queries above are answered from, or null to answer them with
+   * {@link #findRules}.
+   */
+  @Nullable
+  protected RuleIndex getRuleIndex(Project project) {
+    return null;
+  }
 }
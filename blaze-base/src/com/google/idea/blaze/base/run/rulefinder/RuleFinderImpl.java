@@ -19,16 +19,24 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
 import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
 import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.projectview.ProjectViewSet;
+import com.google.idea.blaze.base.settings.BlazeImportSettings;
+import com.google.idea.blaze.base.sync.SyncListener;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
+import com.google.idea.blaze.base.sync.data.ProjectDataCache;
 import com.intellij.openapi.project.Project;
 import org.jetbrains.annotations.NotNull;
 
+import javax.annotation.Nullable;
 import java.util.List;
 
 /**
  * Implementation of RuleFinder.
  */
 class RuleFinderImpl extends RuleFinder {
+  // Built at the end of each sync by BuildRuleIndex, so queries don't pay for it
+  private final ProjectDataCache<RuleIndex> ruleIndices = new ProjectDataCache<>(projectData -> new RuleIndex(projectData.ruleMap));
+
   @Override
   public List<RuleIdeInfo> findRules(@NotNull Project project, @NotNull Predicate<RuleIdeInfo> predicate) {
     BlazeProjectData projectData = BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
@@ -44,4 +52,31 @@ class RuleFinderImpl extends RuleFinder {
     }
     return resultList.build();
   }
+
+  @Override
+  @Nullable
+  protected RuleIndex getRuleIndex(Project project) {
+    BlazeProjectData projectData = BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
+    return projectData != null ? getRuleIndex(projectData) : null;
+  }
+
+  RuleIndex getRuleIndex(BlazeProjectData projectData) {
+    return ruleIndices.get(projectData);
+  }
+
+  /**
+   * Builds the index for the new project data at the end of sync, rather than on the first query.
+   */
+  static class BuildRuleIndex extends SyncListener.Adapter {
+    @Override
+    public void onSyncComplete(Project project,
+                               BlazeImportSettings importSettings,
+                               ProjectViewSet projectViewSet,
+                               BlazeProjectData blazeProjectData) {
+      RuleFinder ruleFinder = RuleFinder.getInstance();
+      if (ruleFinder instanceof RuleFinderImpl) {
+        ((RuleFinderImpl) ruleFinder).getRuleIndex(blazeProjectData).ensureIndexed();
+      }
+    }
+  }
 }
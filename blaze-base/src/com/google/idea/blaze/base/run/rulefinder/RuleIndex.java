@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.run.rulefinder;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
+import com.google.common.primitives.Ints;
+import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
+import com.google.idea.blaze.base.model.primitives.Kind;
+import com.google.idea.blaze.base.model.primitives.LanguageClass;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.model.primitives.WorkspacePath;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Secondary indices over a rule map, so that rule queries cost time in proportion to their result
+ * rather than to the size of the workspace.
+ *
+ * <p>Label lookups go straight to the rule map. The kind, language and package indices are built
+ * together on first use, which reads every rule once. The indices hold labels only and results are
+ * resolved through the rule map, so a lazily loaded rule map still decides which rules stay in
+ * memory. Results are in rule map order.
+ */
+public final class RuleIndex {
+  private static final int[] NO_RULES = new int[0];
+
+  private final Map<Label, RuleIdeInfo> ruleMap;
+  @Nullable private volatile Indices indices;
+
+  private static final class Indices {
+    final Label[] labels;
+    // Positions in labels, ascending
+    final ImmutableMap<Kind, int[]> byKind;
+    final ImmutableMap<LanguageClass, int[]> byLanguage;
+    final ImmutableMap<WorkspacePath, int[]> byPackage;
+
+    Indices(Map<Label, RuleIdeInfo> ruleMap) {
+      labels = new Label[ruleMap.size()];
+      ListMultimap<Kind, Integer> byKind = ArrayListMultimap.create();
+      ListMultimap<LanguageClass, Integer> byLanguage = ArrayListMultimap.create();
+      ListMultimap<WorkspacePath, Integer> byPackage = ArrayListMultimap.create();
+      int i = 0;
+      for (Map.Entry<Label, RuleIdeInfo> entry : ruleMap.entrySet()) {
+        RuleIdeInfo rule = entry.getValue();
+        labels[i] = entry.getKey();
+        byKind.put(rule.kind, i);
+        byLanguage.put(rule.kind.getLanguageClass(), i);
+        byPackage.put(rule.label.blazePackage(), i);
+        ++i;
+      }
+      this.byKind = toArrays(byKind);
+      this.byLanguage = toArrays(byLanguage);
+      this.byPackage = toArrays(byPackage);
+    }
+
+    private static <K> ImmutableMap<K, int[]> toArrays(ListMultimap<K, Integer> multimap) {
+      ImmutableMap.Builder<K, int[]> result = ImmutableMap.builder();
+      for (Map.Entry<K, Collection<Integer>> entry : multimap.asMap().entrySet()) {
+        result.put(entry.getKey(), Ints.toArray(entry.getValue()));
+      }
+      return result.build();
+    }
+
+  }
+
+  public RuleIndex(Map<Label, RuleIdeInfo> ruleMap) {
+    this.ruleMap = ruleMap;
+  }
+
+  @Nullable
+  public RuleIdeInfo get(Label label) {
+    return ruleMap.get(label);
+  }
+
+  public ImmutableList<RuleIdeInfo> rulesOfKinds(Collection<Kind> kinds) {
+    Indices indices = getIndices();
+    kinds = ImmutableSet.copyOf(kinds);
+    if (kinds.size() == 1) {
+      return rulesAt(indices, indices.byKind.getOrDefault(kinds.iterator().next(), NO_RULES));
+    }
+    int[][] positions = new int[kinds.size()][];
+    int i = 0;
+    for (Kind kind : kinds) {
+      positions[i++] = indices.byKind.getOrDefault(kind, NO_RULES);
+    }
+    int[] merged = Ints.concat(positions);
+    Arrays.sort(merged);
+    return rulesAt(indices, merged);
+  }
+
+  public ImmutableList<RuleIdeInfo> rulesOfLanguage(LanguageClass languageClass) {
+    Indices indices = getIndices();
+    return rulesAt(indices, indices.byLanguage.getOrDefault(languageClass, NO_RULES));
+  }
+
+  public ImmutableList<RuleIdeInfo> rulesInPackage(WorkspacePath blazePackage) {
+    Indices indices = getIndices();
+    return rulesAt(indices, indices.byPackage.getOrDefault(blazePackage, NO_RULES));
+  }
+
+  private ImmutableList<RuleIdeInfo> rulesAt(Indices indices, int[] positions) {
+    ImmutableList.Builder<RuleIdeInfo> result = ImmutableList.builder();
+    for (int position : positions) {
+      RuleIdeInfo rule = ruleMap.get(indices.labels[position]);
+      if (rule != null) {
+        result.add(rule);
+      }
+    }
+    return result.build();
+  }
+
+  /**
+   * Builds the kind, language and package indices now rather than on the first query.
+   */
+  public void ensureIndexed() {
+    getIndices();
+  }
+
+  private Indices getIndices() {
+    Indices indices = this.indices;
+    if (indices == null) {
+      synchronized (this) {
+        indices = this.indices;
+        if (indices == null) {
+          indices = new Indices(ruleMap);
+          this.indices = indices;
+        }
+      }
+    }
+    return indices;
+  }
+}
@@ -25,23 +25,32 @@ import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.model.primitives.Kind;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.google.idea.blaze.base.projectview.ProjectViewSet;
+import com.google.idea.blaze.base.rulemaps.TargetGraph;
 import com.google.idea.blaze.base.run.TestRuleFinder;
 import com.google.idea.blaze.base.settings.BlazeImportSettings;
 import com.google.idea.blaze.base.sync.SyncListener;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
+import com.google.idea.blaze.base.util.PersistentMap;
 import com.intellij.openapi.project.Project;
 
 import javax.annotation.Nullable;
 import java.io.File;
 import java.util.Collection;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Used to locate tests from source files for things like right-clicks.
  *
  * It's essentially a map from source file -> reachable test rules.
+ *
+ * The map is filled in lazily, one source directory at a time, and is carried across syncs.
+ * After a sync only directories whose sources can reach a changed rule are recomputed. The
+ * directories that stay valid are picked when the sync completes, so the previous map doesn't
+ * outlive it.
  */
 public class TestRuleFinderImpl implements TestRuleFinder {
 
@@ -51,72 +60,222 @@ public class TestRuleFinderImpl implements TestRuleFinder {
   private final Project project;
   @Nullable
   private TestMap testMap;
+  // Directories of the map from before the last sync that are still valid, used to seed the next one
+  @Nullable
+  private Map<File, ImmutableMap<File, ImmutableList<TestTarget>>> carriedOverDirectories;
+
+  /**
+   * A test rule reachable from a source file, with its size.
+   */
+  static class TestTarget {
+    final Label label;
+    @Nullable final TestIdeInfo.TestSize testSize;
+
+    TestTarget(Label label, @Nullable TestIdeInfo.TestSize testSize) {
+      this.label = label;
+      this.testSize = testSize;
+    }
+
+    boolean matchesTestSize(@Nullable TestIdeInfo.TestSize testSize) {
+      return testSize == null || this.testSize == null || this.testSize == testSize;
+    }
+  }
 
   static class TestMap {
-    private final Project project;
+    private final Map<Label, RuleIdeInfo> ruleMap;
+    private final TargetGraph targetGraph;
     private final Multimap<File, Label> rootsMap;
-    private final ImmutableMap<Label, RuleIdeInfo> ruleMap;
+    private final Multimap<File, File> sourcesByDirectory;
+    // Directory -> (source file -> reachable test rules in BFS order)
+    private final ConcurrentMap<File, ImmutableMap<File, ImmutableList<TestTarget>>> testTargetsByDirectory =
+      Maps.newConcurrentMap();
 
-    TestMap(Project project, ImmutableMap<Label, RuleIdeInfo> ruleMap) {
-      this.project = project;
-      this.rootsMap = createRootsMap(ruleMap.values());
+    TestMap(Map<Label, RuleIdeInfo> ruleMap, TargetGraph targetGraph) {
+      this(ruleMap, targetGraph, null);
+    }
+
+    /**
+     * @param carriedOverDirectories directory results of the previous map that are still valid, see
+     *                               {@link #carryOver}
+     */
+    TestMap(Map<Label, RuleIdeInfo> ruleMap,
+            TargetGraph targetGraph,
+            @Nullable Map<File, ImmutableMap<File, ImmutableList<TestTarget>>> carriedOverDirectories) {
       this.ruleMap = ruleMap;
+      this.targetGraph = targetGraph;
+      this.rootsMap = createRootsMap(ruleMap.values());
+      this.sourcesByDirectory = ArrayListMultimap.create();
+      for (File sourceFile : rootsMap.keySet()) {
+        sourcesByDirectory.put(directoryOf(sourceFile), sourceFile);
+      }
+      if (carriedOverDirectories != null) {
+        testTargetsByDirectory.putAll(carriedOverDirectories);
+      }
     }
 
     public Collection<Label> testTargetsForSourceFile(File sourceFile,
                                                       @Nullable TestIdeInfo.TestSize testSize) {
-      BlazeProjectData blazeProjectData = BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
-      if (blazeProjectData != null) {
-        if (!USE_TEST_SIZE.getValue()) {
-          testSize = null;
-        }
-        // If testSize == null then do a pass preferring small
-        // Some test runners will assume no size annotation == small and filter on that, others will not
-        else if (testSize == null) {
-          Collection<Label> smallResults = testTargetsForSourceFile(
-            blazeProjectData.reverseDependencies,
-            sourceFile,
-            TestIdeInfo.DEFAULT_NON_ANNOTATED_TEST_SIZE);
-
-          if (!smallResults.isEmpty()) {
-            return smallResults;
-          }
+      if (!USE_TEST_SIZE.getValue()) {
+        testSize = null;
+      }
+      // If testSize == null then do a pass preferring small
+      // Some test runners will assume no size annotation == small and filter on that, others will not
+      else if (testSize == null) {
+        Collection<Label> smallResults = findTestTargets(sourceFile, TestIdeInfo.DEFAULT_NON_ANNOTATED_TEST_SIZE);
+        if (!smallResults.isEmpty()) {
+          return smallResults;
         }
-
-        return testTargetsForSourceFile(blazeProjectData.reverseDependencies, sourceFile, testSize);
       }
-      return ImmutableList.of();
+      return findTestTargets(sourceFile, testSize);
     }
 
     @VisibleForTesting
-    Collection<Label> testTargetsForSourceFile(ImmutableMultimap<Label, Label> rdepsMap,
-                                               File sourceFile,
-                                               @Nullable TestIdeInfo.TestSize testSize) {
+    Collection<Label> findTestTargets(File sourceFile, @Nullable TestIdeInfo.TestSize testSize) {
       List<Label> result = Lists.newArrayList();
-      Collection<Label> roots = rootsMap.get(sourceFile);
+      for (TestTarget testTarget : getTestTargets(sourceFile)) {
+        if (testTarget.matchesTestSize(testSize)) {
+          result.add(testTarget.label);
+        }
+      }
+      return result;
+    }
+
+    @VisibleForTesting
+    boolean isDirectoryIndexed(File directory) {
+      return testTargetsByDirectory.containsKey(directory);
+    }
 
-      Queue<Label> todo = Queues.newArrayDeque();
-      for (Label label : roots) {
-        todo.add(label);
+    private ImmutableList<TestTarget> getTestTargets(File sourceFile) {
+      if (!rootsMap.containsKey(sourceFile)) {
+        return ImmutableList.of();
       }
-      Set<Label> seen = Sets.newHashSet();
-      while (!todo.isEmpty()) {
-        Label label = todo.remove();
-        if (!seen.add(label)) {
-          continue;
-        }
+      ImmutableMap<File, ImmutableList<TestTarget>> directoryTargets =
+        testTargetsByDirectory.computeIfAbsent(directoryOf(sourceFile), this::indexDirectory);
+      ImmutableList<TestTarget> testTargets = directoryTargets.get(sourceFile);
+      return testTargets != null ? testTargets : ImmutableList.of();
+    }
 
+    private ImmutableMap<File, ImmutableList<TestTarget>> indexDirectory(File directory) {
+      ImmutableMap.Builder<File, ImmutableList<TestTarget>> result = ImmutableMap.builder();
+      for (File sourceFile : sourcesByDirectory.get(directory)) {
+        result.put(sourceFile, computeTestTargets(rootsMap.get(sourceFile)));
+      }
+      return result.build();
+    }
+
+    private ImmutableList<TestTarget> computeTestTargets(Collection<Label> roots) {
+      ImmutableList.Builder<TestTarget> result = ImmutableList.builder();
+      targetGraph.breadthFirst(roots, TargetGraph.Direction.REVERSE_DEPENDENCIES, id -> {
+        Label label = targetGraph.getLabel(id);
         RuleIdeInfo rule = ruleMap.get(label);
-        if (isTestRule(rule) && matchesTestSize(rule, testSize)) {
-          result.add(label);
+        if (isTestRule(rule)) {
+          result.add(new TestTarget(label, TestIdeInfo.getTestSize(rule)));
+        }
+        return true;
+      });
+      return result.build();
+    }
+
+    /**
+     * Returns the directories of this map whose results cannot change with the next sync's rules.
+     *
+     * <p>A source file's entry depends on every rule reachable from its roots through reverse
+     * dependencies. That set can only change if one of its members changed, or gained or lost a
+     * reverse dependency, in which case it is a dependency of a changed rule. So an entry is stale
+     * iff a changed rule, or a dependency of one, transitively depends on one of its roots.
+     */
+    @SuppressWarnings("unchecked")
+    Map<File, ImmutableMap<File, ImmutableList<TestTarget>>> carryOver(Map<Label, RuleIdeInfo> newRuleMap) {
+      Set<Label> dirty = Sets.newHashSet();
+      Set<File> changedSources = Sets.newHashSet();
+      if (ruleMap instanceof PersistentMap && newRuleMap instanceof PersistentMap) {
+        // Consecutive syncs share most of the persistent rule map, so this only visits the changes
+        PersistentMap.diff(
+          (PersistentMap<Label, RuleIdeInfo>)ruleMap,
+          (PersistentMap<Label, RuleIdeInfo>)newRuleMap,
+          new PersistentMap.DifferenceVisitor<Label, RuleIdeInfo>() {
+            @Override
+            public void added(Label label, RuleIdeInfo rule) {
+              markChanged(rule, dirty, changedSources);
+            }
+
+            @Override
+            public void removed(Label label, RuleIdeInfo rule) {
+              markChanged(rule, dirty, changedSources);
+            }
+
+            @Override
+            public void changed(Label label, RuleIdeInfo oldRule, RuleIdeInfo newRule) {
+              if (!hasSameTestInputs(oldRule, newRule)) {
+                markChanged(oldRule, dirty, changedSources);
+                markChanged(newRule, dirty, changedSources);
+              }
+            }
+          });
+      }
+      else {
+        for (Map.Entry<Label, RuleIdeInfo> entry : newRuleMap.entrySet()) {
+          RuleIdeInfo oldRule = ruleMap.get(entry.getKey());
+          RuleIdeInfo newRule = entry.getValue();
+          if (oldRule == null || !hasSameTestInputs(oldRule, newRule)) {
+            markChanged(newRule, dirty, changedSources);
+            if (oldRule != null) {
+              markChanged(oldRule, dirty, changedSources);
+            }
+          }
+        }
+        for (Map.Entry<Label, RuleIdeInfo> entry : ruleMap.entrySet()) {
+          if (!newRuleMap.containsKey(entry.getKey())) {
+            markChanged(entry.getValue(), dirty, changedSources);
+          }
+        }
+      }
+
+      Set<Label> affected = Sets.newHashSet(targetGraph.closure(dirty, TargetGraph.Direction.DEPENDENCIES));
+      Set<File> staleDirectories = Sets.newHashSet();
+      for (File sourceFile : changedSources) {
+        staleDirectories.add(directoryOf(sourceFile));
+      }
+      for (Map.Entry<File, Label> entry : rootsMap.entries()) {
+        if (affected.contains(entry.getValue())) {
+          staleDirectories.add(directoryOf(entry.getKey()));
         }
-        for (Label rdep : rdepsMap.get(label)) {
-          todo.add(rdep);
+      }
+
+      Map<File, ImmutableMap<File, ImmutableList<TestTarget>>> result = Maps.newHashMap();
+      for (Map.Entry<File, ImmutableMap<File, ImmutableList<TestTarget>>> entry : testTargetsByDirectory.entrySet()) {
+        if (!staleDirectories.contains(entry.getKey())) {
+          result.put(entry.getKey(), entry.getValue());
         }
       }
       return result;
     }
 
+    private static void markChanged(RuleIdeInfo rule, Set<Label> dirty, Set<File> changedSources) {
+      dirty.add(rule.label);
+      dirty.addAll(rule.dependencies);
+      dirty.addAll(rule.runtimeDeps);
+      for (ArtifactLocation source : rule.sources) {
+        changedSources.add(source.getFile());
+      }
+    }
+
+    /**
+     * Whether two versions of a rule are interchangeable as far as the test map is concerned.
+     */
+    private static boolean hasSameTestInputs(RuleIdeInfo oldRule, RuleIdeInfo newRule) {
+      return oldRule.kind == newRule.kind
+             && Iterables.elementsEqual(oldRule.dependencies, newRule.dependencies)
+             && Iterables.elementsEqual(oldRule.runtimeDeps, newRule.runtimeDeps)
+             && Iterables.elementsEqual(oldRule.sources, newRule.sources)
+             && Objects.equals(TestIdeInfo.getTestSize(oldRule), TestIdeInfo.getTestSize(newRule));
+    }
+
+    private static File directoryOf(File sourceFile) {
+      File directory = sourceFile.getParentFile();
+      return directory != null ? directory : sourceFile;
+    }
+
     static Multimap<File, Label> createRootsMap(Collection<RuleIdeInfo> rules) {
       Multimap<File, Label> result = ArrayListMultimap.create();
       for (RuleIdeInfo ruleIdeInfo : rules) {
@@ -137,17 +296,6 @@ public class TestRuleFinderImpl implements TestRuleFinder {
     }
   }
 
-  private static boolean matchesTestSize(RuleIdeInfo rule, @Nullable TestIdeInfo.TestSize testSize) {
-    if (testSize == null) {
-      return true;
-    }
-    TestIdeInfo.TestSize ruleTestSize = TestIdeInfo.getTestSize(rule);
-    if (ruleTestSize == null) {
-      return true;
-    }
-    return ruleTestSize == testSize;
-  }
-
   public TestRuleFinderImpl(Project project) {
     this.project = project;
   }
@@ -174,21 +322,25 @@ public class TestRuleFinderImpl implements TestRuleFinder {
     if (blazeProjectData == null) {
       return null;
     }
-    return new TestMap(project, blazeProjectData.ruleMap);
+    TestMap result = new TestMap(blazeProjectData.ruleMap, blazeProjectData.targetGraph, carriedOverDirectories);
+    carriedOverDirectories = null;
+    return result;
   }
 
-  private synchronized void clearMapData() {
-    this.testMap = null;
+  private synchronized void invalidateMapData(BlazeProjectData blazeProjectData) {
+    // Results carried over from before an earlier sync can't be checked anymore, so they are dropped
+    carriedOverDirectories = testMap != null ? testMap.carryOver(blazeProjectData.ruleMap) : null;
+    testMap = null;
   }
 
-  static class ClearTestMap extends SyncListener.Adapter {
+  static class InvalidateTestMap extends SyncListener.Adapter {
     @Override
     public void onSyncComplete(Project project,
                                BlazeImportSettings importSettings,
                                ProjectViewSet projectViewSet,
                                BlazeProjectData blazeProjectData) {
       TestRuleFinder testRuleFinder = TestRuleFinder.getInstance(project);
-      ((TestRuleFinderImpl) testRuleFinder).clearMapData();
+      ((TestRuleFinderImpl) testRuleFinder).invalidateMapData(blazeProjectData);
     }
   }
 }
@@ -42,6 +42,7 @@ import com.intellij.openapi.roots.ModifiableRootModel;
 import javax.annotation.Nullable;
 import java.io.File;
 import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -123,6 +124,41 @@ public interface BlazeSyncPlugin {
     @Nullable SyncState previousSyncState
   );
 
+  /**
+   * Called by the sync with the rule map it shares with the project data, which is immutable but
+   * not an {@link ImmutableMap}. By default the rule map is copied and passed on to the
+   * {@link ImmutableMap} variant. Override this one instead to avoid the copy.
+   */
+  default void updateSyncState(
+    Project project,
+    BlazeContext context,
+    WorkspaceRoot workspaceRoot,
+    ProjectViewSet projectViewSet,
+    WorkspaceLanguageSettings workspaceLanguageSettings,
+    BlazeRoots blazeRoots,
+    @Nullable WorkingSet workingSet,
+    WorkspacePathResolver workspacePathResolver,
+    Map<Label, RuleIdeInfo> ruleMap,
+    @Deprecated @Nullable File androidPlatformDirectory,
+    SyncState.Builder syncStateBuilder,
+    @Nullable SyncState previousSyncState
+  ) {
+    updateSyncState(
+      project,
+      context,
+      workspaceRoot,
+      projectViewSet,
+      workspaceLanguageSettings,
+      blazeRoots,
+      workingSet,
+      workspacePathResolver,
+      ImmutableMap.copyOf(ruleMap),
+      androidPlatformDirectory,
+      syncStateBuilder,
+      previousSyncState
+    );
+  }
+
   /**
    * Updates the sdk.
    */
@@ -16,8 +16,6 @@
 package com.google.idea.blaze.base.sync;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -25,6 +23,7 @@ import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.idea.blaze.base.async.AsyncUtil;
 import com.google.idea.blaze.base.async.FutureUtil;
 import com.google.idea.blaze.base.async.executor.BlazeExecutor;
+import com.google.idea.blaze.base.command.info.BlazeInfoCache;
 import com.google.idea.blaze.base.experiments.ExperimentScope;
 import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
 import com.google.idea.blaze.base.metrics.Action;
@@ -38,7 +37,7 @@ import com.google.idea.blaze.base.projectview.ProjectViewManager;
 import com.google.idea.blaze.base.projectview.ProjectViewSet;
 import com.google.idea.blaze.base.projectview.ProjectViewVerifier;
 import com.google.idea.blaze.base.projectview.section.sections.TargetSection;
-import com.google.idea.blaze.base.rulemaps.ReverseDependencyMap;
+import com.google.idea.blaze.base.rulemaps.TargetGraph;
 import com.google.idea.blaze.base.scope.BlazeContext;
 import com.google.idea.blaze.base.scope.Scope;
 import com.google.idea.blaze.base.scope.output.IssueOutput;
@@ -80,6 +79,7 @@ import java.io.File;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 
@@ -194,6 +194,9 @@ final class BlazeSyncTask implements Progressive {
       return false;
     }
 
+    if (syncParams.syncMode == SyncMode.FULL) {
+      BlazeInfoCache.getInstance(project).invalidate();
+    }
     ListeningExecutorService executor = BlazeExecutor.getInstance().getExecutor();
     ListenableFuture<BlazeRoots> blazeRootsFuture = BlazeRoots.compute(project, workspaceRoot, context);
     ListenableFuture<WorkingSet> workingSetFuture = vcsHandler.getWorkingSet(project, workspaceRoot, executor);
@@ -248,6 +251,7 @@ final class BlazeSyncTask implements Progressive {
     boolean ideResolveErrors = false;
     if (syncParams.syncMode != SyncMode.RESTORE_EPHEMERAL_STATE || oldBlazeProjectData == null) {
       SyncState.Builder syncStateBuilder = new SyncState.Builder();
+      BlazeInfoCache.getInstance(project).addToSyncState(syncStateBuilder);
       SyncState previousSyncState = oldBlazeProjectData != null ? oldBlazeProjectData.syncState : null;
       List<TargetExpression> allTargets = projectViewSet.listItems(TargetSection.KEY);
       if (expandSyncToWorkingSet && workingSet != null) {
@@ -280,10 +284,10 @@ final class BlazeSyncTask implements Progressive {
         }
         return false;
       }
-      ImmutableMap<Label, RuleIdeInfo> ruleMap = ideQueryResult.ruleMap;
+      Map<Label, RuleIdeInfo> ruleMap = ideQueryResult.ruleMap;
 
-      ListenableFuture<ImmutableMultimap<Label, Label>> reverseDependenciesFuture =
-        BlazeExecutor.getInstance().submit(() -> ReverseDependencyMap.createRdepsMap(ruleMap));
+      ListenableFuture<TargetGraph> targetGraphFuture =
+        BlazeExecutor.getInstance().submit(() -> TargetGraph.create(ruleMap));
 
       boolean doBuild = syncPluginRequiresBuild || (syncParams.doBuild || oldBlazeProjectData == null);
       if (doBuild) {
@@ -317,12 +321,12 @@ final class BlazeSyncTask implements Progressive {
         }
       });
 
-      ImmutableMultimap<Label, Label> reverseDependencies = FutureUtil.waitForFuture(context, reverseDependenciesFuture)
-        .timed("ReverseDependencies")
-        .onError("Failed to compute reverse dependency map")
+      TargetGraph targetGraph = FutureUtil.waitForFuture(context, targetGraphFuture)
+        .timed("TargetGraph")
+        .onError("Failed to compute target graph")
         .run()
         .result();
-      if (reverseDependencies == null) {
+      if (targetGraph == null) {
         return false;
       }
 
@@ -334,7 +338,7 @@ final class BlazeSyncTask implements Progressive {
         workspacePathResolver,
         workspaceLanguageSettings,
         syncStateBuilder.build(),
-        reverseDependencies
+        targetGraph
       );
     } else {
       // Restore project based on old blaze project data
@@ -31,6 +31,7 @@ import com.intellij.openapi.project.Project;
 import javax.annotation.Nullable;
 import java.io.File;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Indirection between ide_build_info and aspect style IDE info.
@@ -42,7 +43,8 @@ public abstract class BlazeIdeInterface {
   }
 
   public static class IdeResult {
-    public final ImmutableMap<Label, RuleIdeInfo> ruleMap;
+    /** Immutable, and usually shared with the sync state rather than copied. */
+    public final Map<Label, RuleIdeInfo> ruleMap;
     @Deprecated
     @Nullable
     public final File androidPlatformDirectory;
@@ -53,6 +55,14 @@ public abstract class BlazeIdeInterface {
       this.ruleMap = ruleMap;
       this.androidPlatformDirectory = androidPlatformDirectory;
     }
+
+    public IdeResult(
+      Map<Label, RuleIdeInfo> ruleMap,
+      @Nullable File androidPlatformDirectory) {
+
+      this.ruleMap = ruleMap;
+      this.androidPlatformDirectory = androidPlatformDirectory;
+    }
   }
 
   @Nullable
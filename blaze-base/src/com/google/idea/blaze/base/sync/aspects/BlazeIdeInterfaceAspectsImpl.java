@@ -49,21 +49,26 @@ import com.google.idea.blaze.base.scope.scopes.LoggedTimingScope;
 import com.google.idea.blaze.base.scope.scopes.TimingScope;
 import com.google.idea.blaze.base.settings.Blaze;
 import com.google.idea.blaze.base.settings.Blaze.BuildSystem;
+import com.google.idea.blaze.base.sync.data.ProjectDataInput;
+import com.google.idea.blaze.base.sync.data.ProjectDataOutput;
+import com.google.idea.blaze.base.sync.data.SyncStateCodec;
 import com.google.idea.blaze.base.sync.filediff.FileDiffService;
 import com.google.idea.blaze.base.sync.projectview.WorkspaceLanguageSettings;
 import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
+import com.google.idea.blaze.base.util.PersistentMap;
 import com.google.repackaged.devtools.build.lib.ideinfo.androidstudio.AndroidStudioIdeInfo;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 
 import javax.annotation.Nullable;
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.Semaphore;
 
 /**
  * Implementation of BlazeIdeInterface based on aspects.
@@ -74,17 +79,69 @@ public class BlazeIdeInterfaceAspectsImpl extends BlazeIdeInterface {
   private static final Label ANDROID_SDK_TARGET = new Label("//third_party/java/android/android_sdk_linux:android");
   private static final FileDiffService fileDiffService = new FileDiffService();
   private static final BoolExperiment USE_SKYLARK_ASPECT = new BoolExperiment("use.skylark.aspect", false);
+  private static final BoolExperiment PIPELINE_ASPECT_OUTPUT = new BoolExperiment("pipeline.aspect.output", true);
 
   static class State implements Serializable {
     private static final long serialVersionUID = 10L;
-    ImmutableMap<Label, RuleIdeInfo> ruleMap;
+    // Persistent maps after a sync, so the next sync only pays for what changed
+    Map<Label, RuleIdeInfo> ruleMap;
     File androidPlatformDirectory;
     FileDiffService.State fileState = null;
-    Map<File, Label> fileToLabel = Maps.newHashMap();
+    Map<File, Label> fileToLabel = PersistentMap.of();
     WorkspaceLanguageSettings workspaceLanguageSettings;
     String aspectStrategyName;
   }
 
+  /**
+   * Binary encoding of {@link State}. The rule map is normally shared with the project data.
+   */
+  public static class StateCodec extends SyncStateCodec<State> {
+    public StateCodec() {
+      super(State.class);
+    }
+
+    @Override
+    public int getVersion() {
+      return 3;
+    }
+
+    @Override
+    public void write(ProjectDataOutput out, State state) throws IOException {
+      out.writeRuleMap(state.ruleMap);
+      out.writeFile(state.androidPlatformDirectory);
+      out.writeBoolean(state.fileState != null);
+      if (state.fileState != null) {
+        state.fileState.write(out);
+      }
+      out.writeVarInt(state.fileToLabel.size());
+      for (Map.Entry<File, Label> entry : state.fileToLabel.entrySet()) {
+        out.writeFile(entry.getKey());
+        out.writeLabel(entry.getValue());
+      }
+      out.writeSerializable(state.workspaceLanguageSettings);
+      out.writeString(state.aspectStrategyName);
+    }
+
+    @Override
+    public State read(ProjectDataInput in) throws IOException {
+      State state = new State();
+      state.ruleMap = in.readRuleMap();
+      state.androidPlatformDirectory = in.readFile();
+      if (in.readBoolean()) {
+        state.fileState = FileDiffService.State.read(in);
+      }
+      int fileToLabelSize = in.readVarInt();
+      PersistentMap.Builder<File, Label> fileToLabel = PersistentMap.builder();
+      for (int i = 0; i < fileToLabelSize; ++i) {
+        fileToLabel.put(in.readFile(), in.readLabel());
+      }
+      state.fileToLabel = fileToLabel.build();
+      state.workspaceLanguageSettings = (WorkspaceLanguageSettings)in.readSerializable();
+      state.aspectStrategyName = in.readString();
+      return state;
+    }
+  }
+
   @Nullable
   @Override
   public IdeResult updateBlazeIdeState(Project project,
@@ -110,8 +167,19 @@ public class BlazeIdeInterfaceAspectsImpl extends BlazeIdeInterface {
       prevState = null;
     }
 
-    List<File> fileList = getIdeInfo(project, context, workspaceRoot, projectViewSet, targets, aspectStrategy, requiresAndroidSdk);
+    AspectOutputPipeline pipeline = PIPELINE_ASPECT_OUTPUT.getValue()
+                                    ? new AspectOutputPipeline(
+                                      prevState != null ? prevState.fileState : null,
+                                      workspaceLanguageSettings,
+                                      artifactLocationDecoder,
+                                      aspectStrategy)
+                                    : null;
+    List<File> fileList = getIdeInfo(project, context, workspaceRoot, projectViewSet, targets, aspectStrategy, requiresAndroidSdk,
+                                     pipeline);
     if (!context.shouldContinue()) {
+      if (pipeline != null) {
+        pipeline.cancel();
+      }
       return null;
     }
 
@@ -121,11 +189,18 @@ public class BlazeIdeInterfaceAspectsImpl extends BlazeIdeInterface {
       prevState != null ? prevState.fileState : null,
       fileList,
       updatedFiles,
-      removedFiles
+      removedFiles,
+      pipeline != null ? pipeline.getDiffResults() : ImmutableMap.of()
     );
     if (fileState == null) {
+      if (pipeline != null) {
+        pipeline.cancel();
+      }
       return null;
     }
+    Map<File, ListenableFuture<RuleIdeInfoOrSdkInfo>> pipelinedFiles = pipeline != null
+                                                                       ? pipeline.getStartedFiles()
+                                                                       : ImmutableMap.of();
 
     context.output(new PrintOutput(String.format(
       "Total rules: %d, new/changed: %d, removed: %d",
@@ -134,11 +209,21 @@ public class BlazeIdeInterfaceAspectsImpl extends BlazeIdeInterface {
       removedFiles.size()
     )));
 
-    ListenableFuture<?> prefetchFuture = PrefetchService.getInstance().prefetchFiles(updatedFiles, true);
+    // Files already being read by the pipeline don't need a prefetch
+    List<File> filesToPrefetch = Lists.newArrayList();
+    for (File file : updatedFiles) {
+      if (!pipelinedFiles.containsKey(file)) {
+        filesToPrefetch.add(file);
+      }
+    }
+    ListenableFuture<?> prefetchFuture = PrefetchService.getInstance().prefetchFiles(filesToPrefetch, true);
     if (!FutureUtil.waitForFuture(context, prefetchFuture)
       .timed("FetchAspectOutput")
       .run()
       .success()) {
+      if (pipeline != null) {
+        pipeline.cancel();
+      }
       return null;
     }
 
@@ -150,7 +235,8 @@ public class BlazeIdeInterfaceAspectsImpl extends BlazeIdeInterface {
       artifactLocationDecoder,
       aspectStrategy,
       updatedFiles,
-      removedFiles
+      removedFiles,
+      pipelinedFiles
     );
     if (state == null) {
       return null;
@@ -160,6 +246,7 @@ public class BlazeIdeInterfaceAspectsImpl extends BlazeIdeInterface {
       return null;
     }
     syncStateBuilder.put(State.class, state);
+    // The state's persistent map is immutable, so the project data can share it without a copy
     return new IdeResult(state.ruleMap, state.androidPlatformDirectory);
   }
 
@@ -169,7 +256,8 @@ public class BlazeIdeInterfaceAspectsImpl extends BlazeIdeInterface {
                                        ProjectViewSet projectViewSet,
                                        List<TargetExpression> targets,
                                        AspectStrategy aspectStrategy,
-                                       boolean addAndroidSdkTarget) {
+                                       boolean addAndroidSdkTarget,
+                                       @Nullable AspectOutputPipeline pipeline) {
     return Scope.push(parentContext, context -> {
       context.push(new TimingScope("ExecuteBlazeCommand"));
 
@@ -190,7 +278,14 @@ public class BlazeIdeInterfaceAspectsImpl extends BlazeIdeInterface {
       int retVal = ExternalTask.builder(workspaceRoot, blazeCommandBuilder.build())
         .context(context)
         .stderr(LineProcessingOutputStream.of(
-          new ExperimentalShowArtifactsLineProcessor(result, aspectStrategy.getAspectOutputFileExtension()),
+          new ExperimentalShowArtifactsLineProcessor(
+            file -> {
+              result.add(file);
+              if (pipeline != null) {
+                pipeline.accept(file);
+              }
+            },
+            aspectStrategy.getAspectOutputFileExtension()),
           new IssueOutputLineProcessor(project, context, workspaceRoot)
         ))
         .build()
@@ -206,10 +301,123 @@ public class BlazeIdeInterfaceAspectsImpl extends BlazeIdeInterface {
 
   private static class RuleIdeInfoOrSdkInfo {
     public File file;
+    public long fileSize;
     public RuleIdeInfo ruleIdeInfo;
     public File androidPlatformDirectory;
   }
 
+  /**
+   * Starts reading aspect output files as soon as the build reports them, overlapping the parse
+   * with the rest of the build output. Files that are unchanged since the previous sync are skipped.
+   *
+   * <p>The number of files in flight is bounded. When the bound is reached, the output processing
+   * thread waits, which in turn applies back pressure to the build output.
+   */
+  private static class AspectOutputPipeline {
+    private static final int MAX_PENDING_FILES = 256;
+
+    @Nullable private final FileDiffService.State prevFileState;
+    private final WorkspaceLanguageSettings workspaceLanguageSettings;
+    private final ArtifactLocationDecoder artifactLocationDecoder;
+    private final AspectStrategy aspectStrategy;
+    private final Semaphore pendingFiles = new Semaphore(MAX_PENDING_FILES);
+    private final Map<File, ListenableFuture<RuleIdeInfoOrSdkInfo>> startedFiles = Maps.newConcurrentMap();
+    private final Map<File, FileDiffService.DiffResult> diffResults = Maps.newConcurrentMap();
+
+    AspectOutputPipeline(@Nullable FileDiffService.State prevFileState,
+                         WorkspaceLanguageSettings workspaceLanguageSettings,
+                         ArtifactLocationDecoder artifactLocationDecoder,
+                         AspectStrategy aspectStrategy) {
+      this.prevFileState = prevFileState;
+      this.workspaceLanguageSettings = workspaceLanguageSettings;
+      this.artifactLocationDecoder = artifactLocationDecoder;
+      this.aspectStrategy = aspectStrategy;
+    }
+
+    void accept(File file) {
+      try {
+        pendingFiles.acquire();
+      }
+      catch (InterruptedException e) {
+        // Leave the file to the regular, non-pipelined path
+        Thread.currentThread().interrupt();
+        return;
+      }
+      ListenableFuture<RuleIdeInfoOrSdkInfo> future = submit(() -> {
+        try {
+          FileDiffService.DiffResult diffResult = fileDiffService.diff(prevFileState, file);
+          diffResults.put(file, diffResult);
+          if (!diffResult.isChanged()) {
+            return null;
+          }
+          return readAspectFile(file, workspaceLanguageSettings, artifactLocationDecoder, aspectStrategy);
+        }
+        finally {
+          pendingFiles.release();
+        }
+      });
+      startedFiles.put(file, future);
+    }
+
+    /**
+     * Futures for every file the pipeline has started reading. The result is null for files that
+     * were unchanged when they were checked.
+     */
+    Map<File, ListenableFuture<RuleIdeInfoOrSdkInfo>> getStartedFiles() {
+      return startedFiles;
+    }
+
+    /**
+     * Waits for the started files and returns how each compared with the previous file state, so
+     * the files don't need to be stat-ed again. Reading the changed files is waited for as well,
+     * which the rule map update has to do anyway.
+     */
+    Map<File, FileDiffService.DiffResult> getDiffResults() {
+      try {
+        Futures.successfulAsList(startedFiles.values()).get();
+      }
+      catch (InterruptedException e) {
+        // Files without a result yet are stat-ed again
+        Thread.currentThread().interrupt();
+      }
+      catch (ExecutionException e) {
+        LOG.warn(e);
+      }
+      return diffResults;
+    }
+
+    void cancel() {
+      for (ListenableFuture<RuleIdeInfoOrSdkInfo> future : startedFiles.values()) {
+        future.cancel(false);
+      }
+    }
+  }
+
+  private static RuleIdeInfoOrSdkInfo readAspectFile(File file,
+                                                     WorkspaceLanguageSettings workspaceLanguageSettings,
+                                                     ArtifactLocationDecoder artifactLocationDecoder,
+                                                     AspectStrategy aspectStrategy) throws IOException {
+    RuleIdeInfoOrSdkInfo ruleIdeInfoOrSdkInfo = new RuleIdeInfoOrSdkInfo();
+    ruleIdeInfoOrSdkInfo.file = file;
+    ruleIdeInfoOrSdkInfo.fileSize = file.length();
+
+    AndroidStudioIdeInfo.RuleIdeInfo ruleProto = aspectStrategy.readAspectFile(file);
+    if (ruleProto.getLabel().equals(ANDROID_SDK_TARGET.toString())) {
+      ruleIdeInfoOrSdkInfo.androidPlatformDirectory = getAndroidPlatformDirectoryFromAndroidTarget(
+        ruleProto,
+        artifactLocationDecoder
+      );
+    }
+    else {
+      ruleIdeInfoOrSdkInfo.ruleIdeInfo = IdeInfoFromProtobuf.makeRuleIdeInfo(
+        workspaceLanguageSettings,
+        artifactLocationDecoder,
+        ruleProto
+      );
+    }
+    return ruleIdeInfoOrSdkInfo;
+  }
+
   @Nullable
   static State updateState(BlazeContext parentContext,
                            @Nullable State prevState,
@@ -218,7 +426,8 @@ public class BlazeIdeInterfaceAspectsImpl extends BlazeIdeInterface {
                            ArtifactLocationDecoder artifactLocationDecoder,
                            AspectStrategy aspectStrategy,
                            List<File> newFiles,
-                           List<File> removedFiles) {
+                           List<File> removedFiles,
+                           Map<File, ListenableFuture<RuleIdeInfoOrSdkInfo>> pipelinedFiles) {
     Result<State> result = Scope.push(parentContext, (ScopedFunction<Result<State>>)context -> {
       context.push(new TimingScope("UpdateRuleMap"));
 
@@ -227,56 +436,46 @@ public class BlazeIdeInterfaceAspectsImpl extends BlazeIdeInterface {
       state.workspaceLanguageSettings = workspaceLanguageSettings;
       state.aspectStrategyName = aspectStrategy.getName();
 
-      Map<Label, RuleIdeInfo> ruleMap = Maps.newHashMap();
+      // Start from the previous maps, only the changed entries are copied
+      PersistentMap.Builder<Label, RuleIdeInfo> ruleMap = PersistentMap.builder();
+      PersistentMap.Builder<File, Label> fileToLabel = PersistentMap.builder();
       Map<Label, RuleIdeInfo> updatedRules = Maps.newHashMap();
       if (prevState != null) {
-        ruleMap.putAll(prevState.ruleMap);
+        ruleMap = PersistentMap.copyOf(prevState.ruleMap).toBuilder();
+        fileToLabel = PersistentMap.copyOf(prevState.fileToLabel).toBuilder();
         state.androidPlatformDirectory = prevState.androidPlatformDirectory;
-        state.fileToLabel.putAll(prevState.fileToLabel);
       }
 
       // Update removed
       for (File removedFile : removedFiles) {
-        Label label = state.fileToLabel.remove(removedFile);
+        Label label = fileToLabel.get(removedFile);
         if (label != null) {
+          fileToLabel.remove(removedFile);
           ruleMap.remove(label);
         }
       }
 
-      AtomicLong totalSizeLoaded = new AtomicLong(0);
-
-      // Read protos from any new files
+      // Read protos from any new files, reusing the ones the pipeline has already read
       List<ListenableFuture<RuleIdeInfoOrSdkInfo>> futures = Lists.newArrayList();
       for (File file : newFiles) {
-        futures.add(submit(() -> {
-          RuleIdeInfoOrSdkInfo ruleIdeInfoOrSdkInfo = new RuleIdeInfoOrSdkInfo();
-          ruleIdeInfoOrSdkInfo.file = file;
-
-          totalSizeLoaded.addAndGet(file.length());
-
-          AndroidStudioIdeInfo.RuleIdeInfo ruleProto = aspectStrategy.readAspectFile(file);
-          if (ruleProto.getLabel().equals(ANDROID_SDK_TARGET.toString())) {
-            ruleIdeInfoOrSdkInfo.androidPlatformDirectory = getAndroidPlatformDirectoryFromAndroidTarget(
-              ruleProto,
-              artifactLocationDecoder
-            );
-          }
-          else {
-            ruleIdeInfoOrSdkInfo.ruleIdeInfo = IdeInfoFromProtobuf.makeRuleIdeInfo(
-              workspaceLanguageSettings,
-              artifactLocationDecoder,
-              ruleProto
-            );
-          }
-          return ruleIdeInfoOrSdkInfo;
-        }
-        ));
+        ListenableFuture<RuleIdeInfoOrSdkInfo> pipelined = pipelinedFiles.get(file);
+        futures.add(pipelined != null
+                    ? pipelined
+                    : submit(() -> readAspectFile(file, workspaceLanguageSettings, artifactLocationDecoder, aspectStrategy)));
       }
 
       // Update state with result from proto files
       int duplicateRuleLabels = 0;
+      long totalSizeLoaded = 0;
       try {
-        for (RuleIdeInfoOrSdkInfo ruleIdeInfoOrSdkInfo : Futures.allAsList(futures).get()) {
+        List<RuleIdeInfoOrSdkInfo> results = Futures.allAsList(futures).get();
+        for (int i = 0; i < results.size(); ++i) {
+          RuleIdeInfoOrSdkInfo ruleIdeInfoOrSdkInfo = results.get(i);
+          if (ruleIdeInfoOrSdkInfo == null) {
+            // The pipeline found the file unchanged, but its stat didn't reach the diff in time
+            ruleIdeInfoOrSdkInfo = readAspectFile(newFiles.get(i), workspaceLanguageSettings, artifactLocationDecoder, aspectStrategy);
+          }
+          totalSizeLoaded += ruleIdeInfoOrSdkInfo.fileSize;
           if (ruleIdeInfoOrSdkInfo.androidPlatformDirectory != null) {
             state.androidPlatformDirectory = ruleIdeInfoOrSdkInfo.androidPlatformDirectory;
           } else if (ruleIdeInfoOrSdkInfo.ruleIdeInfo != null) {
@@ -285,7 +484,7 @@ public class BlazeIdeInterfaceAspectsImpl extends BlazeIdeInterface {
 
             RuleIdeInfo previousRule = updatedRules.putIfAbsent(label, ruleIdeInfoOrSdkInfo.ruleIdeInfo);
             if (previousRule == null) {
-              state.fileToLabel.put(file, label);
+              fileToLabel.put(file, label);
             } else {
               duplicateRuleLabels++;
             }
@@ -296,13 +495,13 @@ public class BlazeIdeInterfaceAspectsImpl extends BlazeIdeInterface {
         Thread.currentThread().interrupt();
         return Result.error(null);
       }
-      catch (ExecutionException e) {
+      catch (ExecutionException | IOException e) {
         return Result.error(e);
       }
       ruleMap.putAll(updatedRules);
 
       context.output(new PrintOutput(String.format(
-        "Loaded %d aspect files, total size %dkB", newFiles.size(), totalSizeLoaded.get() / 1024
+        "Loaded %d aspect files, total size %dkB", newFiles.size(), totalSizeLoaded / 1024
       )));
       if (duplicateRuleLabels > 0) {
         context.output(new PerformanceWarning(String.format(
@@ -313,7 +512,8 @@ public class BlazeIdeInterfaceAspectsImpl extends BlazeIdeInterface {
         )));
       }
 
-      state.ruleMap = ImmutableMap.copyOf(ruleMap);
+      state.ruleMap = ruleMap.build();
+      state.fileToLabel = fileToLabel.build();
       return Result.of(state);
     });
 
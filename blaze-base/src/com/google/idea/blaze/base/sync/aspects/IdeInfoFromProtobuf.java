@@ -49,7 +49,7 @@ public class IdeInfoFromProtobuf {
       return null;
     }
 
-    Label label = new Label(message.getLabel());
+    Label label = Label.create(message.getLabel());
     ArtifactLocation buildFile = getBuildFile(decoder, message);
 
     Collection<Label> dependencies = makeLabelListFromProtobuf(message.getDependenciesList());
@@ -190,7 +190,7 @@ public class IdeInfoFromProtobuf {
       androidRuleIdeInfo.hasIdlJar() ? makeLibraryArtifact(decoder, androidRuleIdeInfo.getIdlJar()) : null,
       androidRuleIdeInfo.hasResourceJar() ? makeLibraryArtifact(decoder, androidRuleIdeInfo.getResourceJar()) : null,
       androidRuleIdeInfo.getHasIdlSources(),
-      !Strings.isNullOrEmpty(androidRuleIdeInfo.getLegacyResources()) ? new Label(androidRuleIdeInfo.getLegacyResources()) : null
+      !Strings.isNullOrEmpty(androidRuleIdeInfo.getLegacyResources()) ? Label.create(androidRuleIdeInfo.getLegacyResources()) : null
     );
   }
 
@@ -309,7 +309,7 @@ public class IdeInfoFromProtobuf {
   private static Collection<Label> makeLabelListFromProtobuf(ProtocolStringList dependenciesList) {
     ImmutableList.Builder<Label> dependenciesBuilder = ImmutableList.builder();
     for (String dependencyLabel : dependenciesList) {
-      dependenciesBuilder.add(new Label(dependencyLabel));
+      dependenciesBuilder.add(Label.create(dependencyLabel));
     }
     return dependenciesBuilder.build();
   }
@@ -27,7 +27,11 @@ import java.io.File;
  * Defines where we store our blaze project data.
  */
 public class BlazeDataStorage {
+  /**
+   * Legacy java-serialized project data. Migrated to {@link #PROJECT_DATA_FILE_NAME} on first load.
+   */
   public static final String CACHE_FILE_NAME = "cache.dat";
+  public static final String PROJECT_DATA_FILE_NAME = "project.dat";
 
   @NotNull
   public static File getProjectCacheDir(
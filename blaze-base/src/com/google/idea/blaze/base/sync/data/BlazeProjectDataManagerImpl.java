@@ -17,6 +17,7 @@ package com.google.idea.blaze.base.sync.data;
 
 import com.google.common.collect.Lists;
 import com.google.idea.blaze.base.async.executor.BlazeExecutor;
+import com.google.idea.blaze.base.experiments.BoolExperiment;
 import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.scope.BlazeContext;
 import com.google.idea.blaze.base.scope.output.StatusOutput;
@@ -24,7 +25,6 @@ import com.google.idea.blaze.base.settings.BlazeImportSettings;
 import com.google.idea.blaze.base.settings.BlazeImportSettingsManager;
 import com.google.idea.blaze.base.sync.BlazeSyncPlugin;
 import com.google.idea.blaze.base.sync.projectstructure.ModuleEditorProvider;
-import com.google.idea.blaze.base.util.SerializationUtil;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
@@ -32,6 +32,7 @@ import com.intellij.openapi.project.Project;
 import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -40,6 +41,7 @@ import java.util.List;
 public class BlazeProjectDataManagerImpl implements BlazeProjectDataManager {
 
   private static final Logger LOG = Logger.getInstance(BlazeProjectDataManagerImpl.class.getName());
+  private static final BoolExperiment COMPRESS_PROJECT_DATA = new BoolExperiment("compress.project.data", true);
 
   private final Project project;
 
@@ -90,8 +92,6 @@ public class BlazeProjectDataManagerImpl implements BlazeProjectDataManager {
     BlazeImportSettings importSettings) {
     BlazeProjectData blazeProjectData = null;
     try {
-      File file = getCacheFile(project, importSettings);
-
       List<ClassLoader> classLoaders = Lists.newArrayList();
       for (BlazeSyncPlugin syncPlugin : BlazeSyncPlugin.EP_NAME.getExtensions()) {
         classLoaders.add(syncPlugin.getClass().getClassLoader());
@@ -99,7 +99,17 @@ public class BlazeProjectDataManagerImpl implements BlazeProjectDataManager {
       classLoaders.add(getClass().getClassLoader());
       classLoaders.add(Thread.currentThread().getContextClassLoader());
 
-      blazeProjectData = (BlazeProjectData)SerializationUtil.loadFromDisk(file, classLoaders);
+      File file = getCacheFile(project, importSettings);
+      if (file.exists()) {
+        blazeProjectData = BlazeProjectDataStore.load(file, getSyncStateCodecs(), classLoaders);
+      }
+      else {
+        blazeProjectData = BlazeProjectDataStore.loadLegacy(getLegacyCacheFile(project, importSettings), classLoaders);
+        if (blazeProjectData != null) {
+          // Migrate to the binary format, the legacy file is removed once that succeeds
+          saveProject(importSettings, blazeProjectData);
+        }
+      }
     }
     catch (IOException e) {
       String buildSystemName = importSettings.getBuildSystem().getLowerCaseName();
@@ -121,7 +131,11 @@ public class BlazeProjectDataManagerImpl implements BlazeProjectDataManager {
       BlazeExecutor.submitTask(project, "Saving sync data...", (ProgressIndicator indicator) -> {
         try {
           File file = getCacheFile(project, importSettings);
-          SerializationUtil.saveToDisk(file, blazeProjectData);
+          BlazeProjectDataStore.save(file, blazeProjectData, getSyncStateCodecs(), COMPRESS_PROJECT_DATA.getValue());
+          File legacyFile = getLegacyCacheFile(project, importSettings);
+          if (legacyFile.exists() && !legacyFile.delete()) {
+            LOG.warn("Could not delete legacy cache file: " + legacyFile);
+          }
         }
         catch (IOException e) {
           LOG.error("Could not save cache data file to disk. Please resync project. Error: " + e.getMessage());
@@ -130,7 +144,15 @@ public class BlazeProjectDataManagerImpl implements BlazeProjectDataManager {
     }
   }
 
+  private static List<SyncStateCodec> getSyncStateCodecs() {
+    return Arrays.asList(SyncStateCodec.EP_NAME.getExtensions());
+  }
+
   private static File getCacheFile(Project project, BlazeImportSettings importSettings) {
+    return new File(BlazeDataStorage.getProjectCacheDir(project, importSettings), BlazeDataStorage.PROJECT_DATA_FILE_NAME);
+  }
+
+  private static File getLegacyCacheFile(Project project, BlazeImportSettings importSettings) {
     return new File(BlazeDataStorage.getProjectCacheDir(project, importSettings), BlazeDataStorage.CACHE_FILE_NAME);
   }
 
@@ -0,0 +1,482 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.data;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.model.SyncState;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.rulemaps.TargetGraph;
+import com.google.idea.blaze.base.sync.projectview.WorkspaceLanguageSettings;
+import com.google.idea.blaze.base.sync.workspace.BlazeRoots;
+import com.google.idea.blaze.base.sync.workspace.WorkingSet;
+import com.google.idea.blaze.base.sync.workspace.WorkspacePathResolver;
+import com.google.idea.blaze.base.util.SerializationUtil;
+import com.intellij.openapi.diagnostic.Logger;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Versioned binary storage for {@link BlazeProjectData}.
+ *
+ * <p>The file is a header followed by a sequence of length-prefixed, independently decodable
+ * sections. The rule map, target graph and every sync state part with a registered
+ * {@link SyncStateCodec} use a compact encoding with string and label tables. Everything else falls
+ * back to java serialization inside its section. Sync state sections that cannot be decoded are
+ * dropped, which only forces that part to be recomputed on the next sync.
+ *
+ * <p>When saved to a file, the rule map goes to a separate {@link RuleMapIndex} next to it and is
+ * loaded lazily from there. The project data file only records which index it was saved with.
+ */
+public final class BlazeProjectDataStore {
+  private static final Logger LOG = Logger.getInstance(BlazeProjectDataStore.class);
+
+  private static final int MAGIC = 0x425a5044; // "BZPD"
+  static final int FORMAT_VERSION = 3;
+
+  private static final int FLAG_COMPRESSED = 1;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final String HEADER_SECTION = "header";
+  private static final String RULE_MAP_SECTION = "ruleMap";
+  private static final String TARGET_GRAPH_SECTION = "targetGraph";
+  private static final String ENVIRONMENT_SECTION = "environment";
+  private static final String SYNC_STATE_SECTION_PREFIX = "syncState:";
+  private static final String END_SECTION = "";
+  private static final String RULE_INDEX_SUFFIX = ".rules";
+
+  private BlazeProjectDataStore() {
+  }
+
+  public static void save(File file,
+                          BlazeProjectData projectData,
+                          Collection<SyncStateCodec> codecs,
+                          boolean compress) throws IOException {
+    File parent = file.getParentFile();
+    if (!parent.exists() && !parent.mkdirs()) {
+      throw new IOException("Could not create directory: " + parent);
+    }
+    // Write to a temp file first so a crash never leaves a truncated cache behind
+    File tempFile = new File(parent, file.getName() + ".tmp");
+
+    // Every save gets a fresh index file. The previous one may still be mapped by a loaded rule map.
+    long ruleIndexToken = ThreadLocalRandom.current().nextLong();
+    File ruleIndexFile = getRuleIndexFile(file, ruleIndexToken);
+    RuleMapIndex.write(tempFile, projectData.ruleMap, ruleIndexToken);
+    Files.move(tempFile.toPath(), ruleIndexFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+    try (OutputStream out = new FileOutputStream(tempFile)) {
+      write(out, projectData, codecs, compress, ruleIndexToken);
+    }
+    Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    deleteStaleRuleIndexFiles(file, ruleIndexFile);
+  }
+
+  @Nullable
+  public static BlazeProjectData load(File file,
+                                      Collection<SyncStateCodec> codecs,
+                                      Iterable<ClassLoader> classLoaders) throws IOException {
+    if (!file.exists()) {
+      return null;
+    }
+    try (InputStream in = new FileInputStream(file)) {
+      return read(in, codecs, classLoaders, file);
+    }
+  }
+
+  /**
+   * Reads project data java-serialized by earlier versions of the plugin. Those didn't store a
+   * target graph, so it's rebuilt from the rule map.
+   */
+  @Nullable
+  public static BlazeProjectData loadLegacy(File file, Iterable<ClassLoader> classLoaders) throws IOException {
+    BlazeProjectData projectData;
+    try {
+      projectData = (BlazeProjectData)SerializationUtil.loadFromDisk(file, classLoaders);
+    }
+    catch (ClassCastException e) {
+      throw new IOException(e);
+    }
+    if (projectData == null || projectData.targetGraph != null) {
+      return projectData;
+    }
+    return new BlazeProjectData(
+      projectData.syncTime,
+      projectData.ruleMap,
+      projectData.blazeRoots,
+      projectData.workingSet,
+      projectData.workspacePathResolver,
+      projectData.workspaceLanguageSettings,
+      projectData.syncState,
+      TargetGraph.create(projectData.ruleMap));
+  }
+
+  static File getRuleIndexFile(File file, long ruleIndexToken) {
+    return new File(file.getParentFile(), file.getName() + "." + Long.toHexString(ruleIndexToken) + RULE_INDEX_SUFFIX);
+  }
+
+  private static void deleteStaleRuleIndexFiles(File file, File currentRuleIndexFile) {
+    String prefix = file.getName() + ".";
+    File[] siblings = file.getParentFile().listFiles();
+    if (siblings == null) {
+      return;
+    }
+    for (File sibling : siblings) {
+      String name = sibling.getName();
+      if (name.startsWith(prefix) && name.endsWith(RULE_INDEX_SUFFIX) && !sibling.equals(currentRuleIndexFile)) {
+        // May fail while the old index is still mapped, it will be retried on the next save
+        if (!sibling.delete()) {
+          LOG.info("Could not delete stale rule index " + sibling);
+        }
+      }
+    }
+  }
+
+  static void write(OutputStream rawOut,
+                    BlazeProjectData projectData,
+                    Collection<SyncStateCodec> codecs,
+                    boolean compress) throws IOException {
+    write(rawOut, projectData, codecs, compress, null);
+  }
+
+  /**
+   * @param ruleIndexToken if set, the rule map has been written to the matching rule index file
+   *                       and is not repeated here
+   */
+  static void write(OutputStream rawOut,
+                    BlazeProjectData projectData,
+                    Collection<SyncStateCodec> codecs,
+                    boolean compress,
+                    @Nullable Long ruleIndexToken) throws IOException {
+    DataOutputStream header = new DataOutputStream(rawOut);
+    header.writeInt(MAGIC);
+    header.writeInt(FORMAT_VERSION);
+    header.writeByte(compress ? FLAG_COMPRESSED : 0);
+    header.flush();
+
+    Deflater deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+    try {
+      OutputStream bodyStream = deflater != null
+                                ? new DeflaterOutputStream(rawOut, deflater, BUFFER_SIZE)
+                                : rawOut;
+      DataOutputStream body = new DataOutputStream(new BufferedOutputStream(bodyStream, BUFFER_SIZE));
+      SectionWriter sections = new SectionWriter(body);
+
+      ProjectDataOutput out = sections.begin();
+      out.writeLong(projectData.syncTime);
+      sections.end(HEADER_SECTION);
+
+      out = sections.begin();
+      out.writeBoolean(ruleIndexToken != null);
+      if (ruleIndexToken != null) {
+        out.writeLong(ruleIndexToken);
+      }
+      else {
+        out.writeRuleMap(projectData.ruleMap);
+      }
+      sections.end(RULE_MAP_SECTION);
+      // Sync state parts usually hold on to the same rule map, don't write it twice
+      sections.shareRuleMap(projectData.ruleMap);
+
+      out = sections.begin();
+      writeTargetGraph(out, projectData.targetGraph);
+      sections.end(TARGET_GRAPH_SECTION);
+
+      out = sections.begin();
+      out.writeSerializable(projectData.blazeRoots);
+      out.writeSerializable(projectData.workingSet);
+      out.writeSerializable(projectData.workspacePathResolver);
+      out.writeSerializable(projectData.workspaceLanguageSettings);
+      sections.end(ENVIRONMENT_SECTION);
+
+      Map<String, SyncStateCodec> codecMap = codecsByClassName(codecs);
+      for (Map.Entry<String, Serializable> entry : projectData.syncState.getParts().entrySet()) {
+        SyncStateCodec codec = codecMap.get(entry.getKey());
+        out = sections.begin();
+        out.writeBoolean(codec != null);
+        if (codec != null) {
+          out.writeVarInt(codec.getVersion());
+          codec.writeUnchecked(out, entry.getValue());
+        }
+        else {
+          out.writeSerializable(entry.getValue());
+        }
+        sections.end(SYNC_STATE_SECTION_PREFIX + entry.getKey());
+      }
+
+      body.writeUTF(END_SECTION);
+      body.flush();
+      if (bodyStream instanceof DeflaterOutputStream) {
+        ((DeflaterOutputStream)bodyStream).finish();
+      }
+    }
+    finally {
+      if (deflater != null) {
+        deflater.end();
+      }
+    }
+  }
+
+  static BlazeProjectData read(InputStream rawIn,
+                               Collection<SyncStateCodec> codecs,
+                               Iterable<ClassLoader> classLoaders) throws IOException {
+    return read(rawIn, codecs, classLoaders, null);
+  }
+
+  /**
+   * @param file the file being read, used to locate its rule index
+   */
+  static BlazeProjectData read(InputStream rawIn,
+                               Collection<SyncStateCodec> codecs,
+                               Iterable<ClassLoader> classLoaders,
+                               @Nullable File file) throws IOException {
+    DataInputStream header = new DataInputStream(rawIn);
+    if (header.readInt() != MAGIC) {
+      throw new IOException("Not a project data file");
+    }
+    int version = header.readInt();
+    if (version != FORMAT_VERSION) {
+      throw new IOException("Unsupported project data format version: " + version);
+    }
+    int flags = header.readUnsignedByte();
+    Inflater inflater = (flags & FLAG_COMPRESSED) != 0 ? new Inflater() : null;
+    try {
+      InputStream bodyStream = inflater != null
+                               ? new InflaterInputStream(rawIn, inflater, BUFFER_SIZE)
+                               : rawIn;
+      return readSections(new DataInputStream(new BufferedInputStream(bodyStream, BUFFER_SIZE)), codecs, classLoaders, file);
+    }
+    finally {
+      if (inflater != null) {
+        inflater.end();
+      }
+    }
+  }
+
+  private static BlazeProjectData readSections(DataInputStream body,
+                                               Collection<SyncStateCodec> codecs,
+                                               Iterable<ClassLoader> classLoaders,
+                                               @Nullable File file) throws IOException {
+    Map<String, SyncStateCodec> codecMap = codecsByClassName(codecs);
+
+    Long syncTime = null;
+    Map<Label, RuleIdeInfo> ruleMap = null;
+    TargetGraph targetGraph = null;
+    BlazeRoots blazeRoots = null;
+    WorkingSet workingSet = null;
+    WorkspacePathResolver workspacePathResolver = null;
+    WorkspaceLanguageSettings workspaceLanguageSettings = null;
+    boolean hasEnvironment = false;
+    SyncState.Builder syncState = new SyncState.Builder();
+
+    while (true) {
+      String sectionName = body.readUTF();
+      if (sectionName.equals(END_SECTION)) {
+        break;
+      }
+      byte[] bytes = new byte[body.readInt()];
+      body.readFully(bytes);
+      ProjectDataInput in = new ProjectDataInput(new ByteArrayInputStream(bytes), classLoaders, ruleMap);
+
+      if (sectionName.equals(HEADER_SECTION)) {
+        syncTime = in.readLong();
+      }
+      else if (sectionName.equals(RULE_MAP_SECTION)) {
+        boolean hasRuleIndex = in.readBoolean();
+        if (hasRuleIndex) {
+          long ruleIndexToken = in.readLong();
+          if (file == null) {
+            throw new IOException("Project data refers to a rule index but was not read from a file");
+          }
+          ruleMap = RuleMapIndex.open(getRuleIndexFile(file, ruleIndexToken), ruleIndexToken);
+        }
+        else {
+          ruleMap = in.readRuleMap();
+        }
+      }
+      else if (sectionName.equals(TARGET_GRAPH_SECTION)) {
+        targetGraph = readTargetGraph(in);
+      }
+      else if (sectionName.equals(ENVIRONMENT_SECTION)) {
+        try {
+          blazeRoots = (BlazeRoots)in.readSerializable();
+          workingSet = (WorkingSet)in.readSerializable();
+          workspacePathResolver = (WorkspacePathResolver)in.readSerializable();
+          workspaceLanguageSettings = (WorkspaceLanguageSettings)in.readSerializable();
+        }
+        catch (ClassCastException e) {
+          throw new IOException(e);
+        }
+        hasEnvironment = true;
+      }
+      else if (sectionName.startsWith(SYNC_STATE_SECTION_PREFIX)) {
+        String className = sectionName.substring(SYNC_STATE_SECTION_PREFIX.length());
+        Serializable part = readSyncStatePart(in, className, codecMap.get(className));
+        if (part != null) {
+          syncState.put(className, part);
+        }
+      }
+      else {
+        LOG.info("Skipping unknown project data section: " + sectionName);
+      }
+    }
+
+    if (syncTime == null || ruleMap == null || targetGraph == null || !hasEnvironment) {
+      throw new IOException("Project data file is missing required sections");
+    }
+    return new BlazeProjectData(
+      syncTime,
+      ruleMap,
+      blazeRoots,
+      workingSet,
+      workspacePathResolver,
+      workspaceLanguageSettings,
+      syncState.build(),
+      targetGraph
+    );
+  }
+
+  @Nullable
+  private static Serializable readSyncStatePart(ProjectDataInput in,
+                                                String className,
+                                                @Nullable SyncStateCodec codec) throws IOException {
+    boolean hasCodec = in.readBoolean();
+    if (!hasCodec) {
+      try {
+        return in.readSerializable();
+      }
+      catch (IOException e) {
+        LOG.info("Dropping unreadable sync state part " + className, e);
+        return null;
+      }
+    }
+    int version = in.readVarInt();
+    if (codec == null || codec.getVersion() != version) {
+      LOG.info("Dropping sync state part with no matching codec: " + className);
+      return null;
+    }
+    // Each part is its own section, so a codec failing on bad data only loses that part
+    try {
+      return codec.read(in);
+    }
+    catch (IOException | RuntimeException e) {
+      LOG.info("Dropping unreadable sync state part " + className, e);
+      return null;
+    }
+  }
+
+  private static void writeTargetGraph(ProjectDataOutput out, TargetGraph targetGraph) throws IOException {
+    out.writeVarInt(targetGraph.size());
+    for (int id = 0; id < targetGraph.size(); ++id) {
+      out.writeLabel(targetGraph.getLabel(id));
+    }
+    for (int id = 0; id < targetGraph.size(); ++id) {
+      int[] dependencyIds = targetGraph.getDependencyIds(id);
+      out.writeVarInt(dependencyIds.length);
+      for (int dependencyId : dependencyIds) {
+        out.writeVarInt(dependencyId);
+      }
+    }
+  }
+
+  private static TargetGraph readTargetGraph(ProjectDataInput in) throws IOException {
+    int size = in.readVarInt();
+    List<Label> labels = Lists.newArrayListWithCapacity(size);
+    for (int i = 0; i < size; ++i) {
+      Label label = in.readLabel();
+      if (label == null) {
+        throw new IOException("Unexpected null label");
+      }
+      labels.add(label);
+    }
+    List<int[]> dependencyIds = Lists.newArrayListWithCapacity(size);
+    for (int i = 0; i < size; ++i) {
+      int[] ids = new int[in.readVarInt()];
+      for (int j = 0; j < ids.length; ++j) {
+        ids[j] = in.readVarInt();
+        if (ids[j] >= size) {
+          throw new IOException("Malformed target graph");
+        }
+      }
+      dependencyIds.add(ids);
+    }
+    return TargetGraph.create(labels, dependencyIds);
+  }
+
+  private static Map<String, SyncStateCodec> codecsByClassName(Collection<SyncStateCodec> codecs) {
+    Map<String, SyncStateCodec> result = Maps.newHashMap();
+    for (SyncStateCodec codec : codecs) {
+      result.put(codec.getStateClass().getName(), codec);
+    }
+    return result;
+  }
+
+  /**
+   * Buffers each section so it can be written with its length up front.
+   */
+  private static class SectionWriter {
+    private final DataOutputStream body;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(BUFFER_SIZE);
+    @Nullable private Map<Label, RuleIdeInfo> sharedRuleMap;
+    private ProjectDataOutput current;
+
+    SectionWriter(DataOutputStream body) {
+      this.body = body;
+    }
+
+    void shareRuleMap(Map<Label, RuleIdeInfo> ruleMap) {
+      this.sharedRuleMap = ruleMap;
+    }
+
+    ProjectDataOutput begin() {
+      buffer.reset();
+      current = new ProjectDataOutput(buffer, sharedRuleMap);
+      return current;
+    }
+
+    void end(String sectionName) throws IOException {
+      current.flush();
+      body.writeUTF(sectionName);
+      body.writeInt(buffer.size());
+      buffer.writeTo(body);
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.data;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterators;
+import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
+import com.google.idea.blaze.base.model.primitives.Label;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Read-only rule map backed by a memory-mapped {@link RuleMapIndex}.
+ *
+ * <p>All keys are held in memory. Lookups and scans of the entries or values decode one rule at a
+ * time and keep the most recently used ones, so the whole map is never resident at once. A rule
+ * that is still cached is returned as the same {@link RuleIdeInfo} instance; one that was evicted
+ * is decoded again.
+ */
+final class LazyRuleMap extends AbstractMap<Label, RuleIdeInfo> implements Serializable {
+  private static final int CACHE_SIZE = 4096;
+
+  private final ByteBuffer buffer;
+  private final ImmutableMap<Label, Integer> keys;
+  private final int[] recordOffsets;
+  private final int[] recordLengths;
+  private final Cache<Label, RuleIdeInfo> cache = CacheBuilder.newBuilder()
+    .maximumSize(CACHE_SIZE)
+    .build();
+
+  LazyRuleMap(ByteBuffer buffer,
+              ImmutableMap<Label, Integer> keys,
+              int[] recordOffsets,
+              int[] recordLengths) {
+    this.buffer = buffer;
+    this.keys = keys;
+    this.recordOffsets = recordOffsets;
+    this.recordLengths = recordLengths;
+  }
+
+  @Override
+  public int size() {
+    return keys.size();
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return keys.containsKey(key);
+  }
+
+  @Override
+  @Nullable
+  public RuleIdeInfo get(Object key) {
+    Integer index = keys.get(key);
+    if (index == null) {
+      return null;
+    }
+    return getCached((Label)key, index);
+  }
+
+  @Override
+  public Set<Label> keySet() {
+    return keys.keySet();
+  }
+
+  @Override
+  public Set<Entry<Label, RuleIdeInfo>> entrySet() {
+    return new AbstractSet<Entry<Label, RuleIdeInfo>>() {
+      @Override
+      public int size() {
+        return keys.size();
+      }
+
+      @Override
+      public boolean contains(Object o) {
+        if (!(o instanceof Entry)) {
+          return false;
+        }
+        Entry<?, ?> entry = (Entry<?, ?>)o;
+        Integer index = keys.get(entry.getKey());
+        return index != null && Objects.equals(getCached((Label)entry.getKey(), index), entry.getValue());
+      }
+
+      @Override
+      public Iterator<Entry<Label, RuleIdeInfo>> iterator() {
+        return Iterators.transform(
+          keys.entrySet().iterator(),
+          entry -> new SimpleImmutableEntry<>(entry.getKey(), getCached(entry.getKey(), entry.getValue()))
+        );
+      }
+    };
+  }
+
+  @Override
+  public Collection<RuleIdeInfo> values() {
+    return new AbstractCollection<RuleIdeInfo>() {
+      @Override
+      public int size() {
+        return keys.size();
+      }
+
+      @Override
+      public Iterator<RuleIdeInfo> iterator() {
+        return Iterators.transform(keys.entrySet().iterator(), entry -> getCached(entry.getKey(), entry.getValue()));
+      }
+    };
+  }
+
+  private RuleIdeInfo getCached(Label label, int index) {
+    RuleIdeInfo rule = cache.getIfPresent(label);
+    if (rule == null) {
+      rule = decode(index);
+      cache.put(label, rule);
+    }
+    return rule;
+  }
+
+  private RuleIdeInfo decode(int index) {
+    // Duplicate so concurrent readers don't share a position
+    ByteBuffer record = buffer.duplicate();
+    record.position(recordOffsets[index]);
+    byte[] bytes = new byte[recordLengths[index]];
+    record.get(bytes);
+    try {
+      ProjectDataInput in = new ProjectDataInput(new ByteArrayInputStream(bytes), ImmutableList.of(), null);
+      return RuleIdeInfoCodec.read(in);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException("Corrupt rule index record " + index, e);
+    }
+  }
+
+  /**
+   * The mapped file is not serializable, so serialize a copy of the contents instead.
+   */
+  private Object writeReplace() throws ObjectStreamException {
+    return ImmutableMap.copyOf(this);
+  }
+}
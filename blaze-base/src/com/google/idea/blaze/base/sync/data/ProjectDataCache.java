@@ -0,0 +1,42 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.data;
+
+import com.google.common.base.Function;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+
+/**
+ * A value derived from {@link BlazeProjectData}, computed on first use.
+ *
+ * <p>Values are keyed by the identity of the project data and held only as long as it is. Project
+ * data is immutable and replaced wholesale by each sync, so no explicit invalidation is needed.
+ */
+public final class ProjectDataCache<T> {
+  private final LoadingCache<BlazeProjectData, T> cache;
+
+  public ProjectDataCache(Function<BlazeProjectData, T> computeValue) {
+    this.cache = CacheBuilder.newBuilder()
+      .weakKeys()
+      .build(CacheLoader.from(computeValue));
+  }
+
+  public T get(BlazeProjectData projectData) {
+    return cache.getUnchecked(projectData);
+  }
+}
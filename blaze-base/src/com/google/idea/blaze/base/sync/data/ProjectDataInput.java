@@ -0,0 +1,209 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.data;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
+import com.google.idea.blaze.base.model.primitives.Label;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads one section of the binary project data format written by {@link ProjectDataOutput}.
+ */
+public final class ProjectDataInput {
+  private final DataInputStream in;
+  private final List<String> stringTable = Lists.newArrayList();
+  private final List<Label> labelTable = Lists.newArrayList();
+  private final Iterable<ClassLoader> classLoaders;
+  @Nullable private final Map<Label, RuleIdeInfo> sharedRuleMap;
+
+  ProjectDataInput(InputStream in,
+                   Iterable<ClassLoader> classLoaders,
+                   @Nullable Map<Label, RuleIdeInfo> sharedRuleMap) {
+    this.in = new DataInputStream(in);
+    this.classLoaders = classLoaders;
+    this.sharedRuleMap = sharedRuleMap;
+  }
+
+  public boolean readBoolean() throws IOException {
+    return in.readBoolean();
+  }
+
+  public int readInt() throws IOException {
+    return in.readInt();
+  }
+
+  public long readLong() throws IOException {
+    return in.readLong();
+  }
+
+  public int readVarInt() throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint");
+  }
+
+  @Nullable
+  public String readString() throws IOException {
+    int ref = readVarInt();
+    if (ref == ProjectDataOutput.NULL_REF) {
+      return null;
+    }
+    if (ref == ProjectDataOutput.NEW_REF) {
+      byte[] bytes = new byte[readVarInt()];
+      in.readFully(bytes);
+      String value = new String(bytes, StandardCharsets.UTF_8);
+      stringTable.add(value);
+      return value;
+    }
+    return tableEntry(stringTable, ref);
+  }
+
+  public ImmutableList<String> readStrings() throws IOException {
+    int size = readVarInt();
+    ImmutableList.Builder<String> builder = ImmutableList.builder();
+    for (int i = 0; i < size; ++i) {
+      builder.add(readNonNullString());
+    }
+    return builder.build();
+  }
+
+  @Nullable
+  public Label readLabel() throws IOException {
+    int ref = readVarInt();
+    if (ref == ProjectDataOutput.NULL_REF) {
+      return null;
+    }
+    if (ref == ProjectDataOutput.NEW_REF) {
+      Label label = Label.create(readNonNullString());
+      labelTable.add(label);
+      return label;
+    }
+    return tableEntry(labelTable, ref);
+  }
+
+  public ImmutableList<Label> readLabels() throws IOException {
+    int size = readVarInt();
+    ImmutableList.Builder<Label> builder = ImmutableList.builder();
+    for (int i = 0; i < size; ++i) {
+      Label label = readLabel();
+      if (label == null) {
+        throw new IOException("Unexpected null label");
+      }
+      builder.add(label);
+    }
+    return builder.build();
+  }
+
+  @Nullable
+  public File readFile() throws IOException {
+    String path = readString();
+    return path != null ? new File(path) : null;
+  }
+
+  @Nullable
+  public <E extends Enum<E>> E readEnum(Class<E> enumClass) throws IOException {
+    String name = readString();
+    if (name == null) {
+      return null;
+    }
+    try {
+      return Enum.valueOf(enumClass, name);
+    }
+    catch (IllegalArgumentException e) {
+      throw new IOException(e);
+    }
+  }
+
+  public Map<Label, RuleIdeInfo> readRuleMap() throws IOException {
+    boolean isShared = readBoolean();
+    if (isShared) {
+      if (sharedRuleMap == null) {
+        throw new IOException("Reference to the project rule map before it was read");
+      }
+      return sharedRuleMap;
+    }
+    int size = readVarInt();
+    ImmutableMap.Builder<Label, RuleIdeInfo> builder = ImmutableMap.builder();
+    for (int i = 0; i < size; ++i) {
+      RuleIdeInfo rule = RuleIdeInfoCodec.read(this);
+      builder.put(rule.label, rule);
+    }
+    return builder.build();
+  }
+
+  @Nullable
+  public Serializable readSerializable() throws IOException {
+    byte[] bytes = new byte[readVarInt()];
+    in.readFully(bytes);
+    try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(bytes)) {
+      @Override
+      protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+        String name = desc.getName();
+        for (ClassLoader loader : classLoaders) {
+          try {
+            return Class.forName(name, false, loader);
+          }
+          catch (ClassNotFoundException e) {
+            // Ignore - will throw eventually in super
+          }
+        }
+        return super.resolveClass(desc);
+      }
+    }) {
+      return (Serializable)objectInputStream.readObject();
+    }
+    catch (ClassNotFoundException | ClassCastException e) {
+      throw new IOException(e);
+    }
+  }
+
+  String readNonNullString() throws IOException {
+    String value = readString();
+    if (value == null) {
+      throw new IOException("Unexpected null string");
+    }
+    return value;
+  }
+
+  private static <T> T tableEntry(List<T> table, int ref) throws IOException {
+    int index = ref - ProjectDataOutput.FIRST_TABLE_REF;
+    if (index >= table.size()) {
+      throw new IOException("Dangling table reference: " + index);
+    }
+    return table.get(index);
+  }
+}
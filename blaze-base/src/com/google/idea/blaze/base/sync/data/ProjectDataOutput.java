@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.data;
+
+import com.google.common.collect.Maps;
+import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
+import com.google.idea.blaze.base.model.primitives.Label;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Writes one section of the binary project data format.
+ *
+ * <p>Strings and labels are written through per-section tables: the first occurrence is written
+ * inline, every later occurrence is a single varint back-reference. See {@link ProjectDataInput}.
+ */
+public final class ProjectDataOutput {
+  static final int NULL_REF = 0;
+  static final int NEW_REF = 1;
+  static final int FIRST_TABLE_REF = 2;
+
+  private final DataOutputStream out;
+  private final Map<String, Integer> stringTable = Maps.newHashMap();
+  private final Map<Label, Integer> labelTable = Maps.newHashMap();
+  @Nullable private final Map<Label, RuleIdeInfo> sharedRuleMap;
+
+  ProjectDataOutput(OutputStream out, @Nullable Map<Label, RuleIdeInfo> sharedRuleMap) {
+    this.out = new DataOutputStream(out);
+    this.sharedRuleMap = sharedRuleMap;
+  }
+
+  public void writeBoolean(boolean value) throws IOException {
+    out.writeBoolean(value);
+  }
+
+  public void writeInt(int value) throws IOException {
+    out.writeInt(value);
+  }
+
+  public void writeLong(long value) throws IOException {
+    out.writeLong(value);
+  }
+
+  /**
+   * Writes a non-negative int in 1-5 bytes.
+   */
+  public void writeVarInt(int value) throws IOException {
+    if (value < 0) {
+      throw new IllegalArgumentException("Negative varint: " + value);
+    }
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  public void writeString(@Nullable String value) throws IOException {
+    if (value == null) {
+      writeVarInt(NULL_REF);
+      return;
+    }
+    Integer index = stringTable.get(value);
+    if (index != null) {
+      writeVarInt(FIRST_TABLE_REF + index);
+      return;
+    }
+    stringTable.put(value, stringTable.size());
+    writeVarInt(NEW_REF);
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeVarInt(bytes.length);
+    out.write(bytes);
+  }
+
+  public void writeStrings(Collection<String> values) throws IOException {
+    writeVarInt(values.size());
+    for (String value : values) {
+      writeString(value);
+    }
+  }
+
+  public void writeLabel(@Nullable Label label) throws IOException {
+    if (label == null) {
+      writeVarInt(NULL_REF);
+      return;
+    }
+    Integer index = labelTable.get(label);
+    if (index != null) {
+      writeVarInt(FIRST_TABLE_REF + index);
+      return;
+    }
+    labelTable.put(label, labelTable.size());
+    writeVarInt(NEW_REF);
+    writeString(label.toString());
+  }
+
+  public void writeLabels(Collection<Label> labels) throws IOException {
+    writeVarInt(labels.size());
+    for (Label label : labels) {
+      writeLabel(label);
+    }
+  }
+
+  public void writeFile(@Nullable File file) throws IOException {
+    writeString(file != null ? file.getPath() : null);
+  }
+
+  public <E extends Enum<E>> void writeEnum(@Nullable E value) throws IOException {
+    writeString(value != null ? value.name() : null);
+  }
+
+  /**
+   * Writes a rule map. If it is the project's rule map instance, only a back-reference is written.
+   * Comparing contents instead would decode a lazily loaded rule map on every save.
+   */
+  public void writeRuleMap(Map<Label, RuleIdeInfo> ruleMap) throws IOException {
+    boolean isShared = sharedRuleMap != null && ruleMap == sharedRuleMap;
+    writeBoolean(isShared);
+    if (isShared) {
+      return;
+    }
+    writeVarInt(ruleMap.size());
+    for (RuleIdeInfo rule : ruleMap.values()) {
+      RuleIdeInfoCodec.write(this, rule);
+    }
+  }
+
+  /**
+   * Falls back to java serialization for objects without a dedicated encoding.
+   */
+  public void writeSerializable(@Nullable Serializable value) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(bytes)) {
+      objectOutputStream.writeObject(value);
+    }
+    writeVarInt(bytes.size());
+    bytes.writeTo(out);
+  }
+
+  void flush() throws IOException {
+    out.flush();
+  }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.data;
+
+import com.google.common.collect.ImmutableList;
+import com.google.idea.blaze.base.ideinfo.AndroidRuleIdeInfo;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.CRuleIdeInfo;
+import com.google.idea.blaze.base.ideinfo.CToolchainIdeInfo;
+import com.google.idea.blaze.base.ideinfo.JavaRuleIdeInfo;
+import com.google.idea.blaze.base.ideinfo.JavaToolchainIdeInfo;
+import com.google.idea.blaze.base.ideinfo.LibraryArtifact;
+import com.google.idea.blaze.base.ideinfo.ProtoLibraryLegacyInfo;
+import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TestIdeInfo;
+import com.google.idea.blaze.base.model.primitives.ExecutionRootPath;
+import com.google.idea.blaze.base.model.primitives.Kind;
+import com.google.idea.blaze.base.model.primitives.Label;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Binary encoding of {@link RuleIdeInfo} and its language-specific payloads.
+ *
+ * <p>Any change to the encoding must bump {@link BlazeProjectDataStore#FORMAT_VERSION}.
+ */
+final class RuleIdeInfoCodec {
+  private static final int HAS_C_RULE_INFO = 1;
+  private static final int HAS_C_TOOLCHAIN_INFO = 1 << 1;
+  private static final int HAS_JAVA_RULE_INFO = 1 << 2;
+  private static final int HAS_ANDROID_RULE_INFO = 1 << 3;
+  private static final int HAS_TEST_INFO = 1 << 4;
+  private static final int HAS_PROTO_LIBRARY_LEGACY_INFO = 1 << 5;
+  private static final int HAS_JAVA_TOOLCHAIN_INFO = 1 << 6;
+
+  private RuleIdeInfoCodec() {
+  }
+
+  static void write(ProjectDataOutput out, RuleIdeInfo rule) throws IOException {
+    out.writeLabel(rule.label);
+    out.writeString(rule.kind != null ? rule.kind.toString() : null);
+    writeArtifactLocation(out, rule.buildFile);
+    out.writeLabels(rule.dependencies);
+    out.writeLabels(rule.runtimeDeps);
+    out.writeStrings(rule.tags);
+    writeArtifactLocations(out, rule.sources);
+
+    int flags = 0;
+    flags |= rule.cRuleIdeInfo != null ? HAS_C_RULE_INFO : 0;
+    flags |= rule.cToolchainIdeInfo != null ? HAS_C_TOOLCHAIN_INFO : 0;
+    flags |= rule.javaRuleIdeInfo != null ? HAS_JAVA_RULE_INFO : 0;
+    flags |= rule.androidRuleIdeInfo != null ? HAS_ANDROID_RULE_INFO : 0;
+    flags |= rule.testIdeInfo != null ? HAS_TEST_INFO : 0;
+    flags |= rule.protoLibraryLegacyInfo != null ? HAS_PROTO_LIBRARY_LEGACY_INFO : 0;
+    flags |= rule.javaToolchainIdeInfo != null ? HAS_JAVA_TOOLCHAIN_INFO : 0;
+    out.writeVarInt(flags);
+
+    if (rule.cRuleIdeInfo != null) {
+      writeCRuleIdeInfo(out, rule.cRuleIdeInfo);
+    }
+    if (rule.cToolchainIdeInfo != null) {
+      writeCToolchainIdeInfo(out, rule.cToolchainIdeInfo);
+    }
+    if (rule.javaRuleIdeInfo != null) {
+      writeJavaRuleIdeInfo(out, rule.javaRuleIdeInfo);
+    }
+    if (rule.androidRuleIdeInfo != null) {
+      writeAndroidRuleIdeInfo(out, rule.androidRuleIdeInfo);
+    }
+    if (rule.testIdeInfo != null) {
+      out.writeEnum(rule.testIdeInfo.testSize);
+    }
+    if (rule.protoLibraryLegacyInfo != null) {
+      writeProtoLibraryLegacyInfo(out, rule.protoLibraryLegacyInfo);
+    }
+    if (rule.javaToolchainIdeInfo != null) {
+      out.writeString(rule.javaToolchainIdeInfo.sourceVersion);
+      out.writeString(rule.javaToolchainIdeInfo.targetVersion);
+    }
+  }
+
+  static RuleIdeInfo read(ProjectDataInput in) throws IOException {
+    Label label = in.readLabel();
+    if (label == null) {
+      throw new IOException("Rule without label");
+    }
+    String kindString = in.readString();
+    Kind kind = kindString != null ? Kind.fromString(kindString) : null;
+    ArtifactLocation buildFile = readArtifactLocation(in);
+    ImmutableList<Label> dependencies = in.readLabels();
+    ImmutableList<Label> runtimeDeps = in.readLabels();
+    ImmutableList<String> tags = in.readStrings();
+    ImmutableList<ArtifactLocation> sources = readArtifactLocations(in);
+
+    int flags = in.readVarInt();
+    CRuleIdeInfo cRuleIdeInfo = (flags & HAS_C_RULE_INFO) != 0 ? readCRuleIdeInfo(in) : null;
+    CToolchainIdeInfo cToolchainIdeInfo = (flags & HAS_C_TOOLCHAIN_INFO) != 0 ? readCToolchainIdeInfo(in) : null;
+    JavaRuleIdeInfo javaRuleIdeInfo = (flags & HAS_JAVA_RULE_INFO) != 0 ? readJavaRuleIdeInfo(in) : null;
+    AndroidRuleIdeInfo androidRuleIdeInfo = (flags & HAS_ANDROID_RULE_INFO) != 0 ? readAndroidRuleIdeInfo(in) : null;
+    TestIdeInfo testIdeInfo = (flags & HAS_TEST_INFO) != 0 ? new TestIdeInfo(in.readEnum(TestIdeInfo.TestSize.class)) : null;
+    ProtoLibraryLegacyInfo protoLibraryLegacyInfo = (flags & HAS_PROTO_LIBRARY_LEGACY_INFO) != 0
+                                                    ? readProtoLibraryLegacyInfo(in)
+                                                    : null;
+    JavaToolchainIdeInfo javaToolchainIdeInfo = (flags & HAS_JAVA_TOOLCHAIN_INFO) != 0
+                                                ? new JavaToolchainIdeInfo(in.readString(), in.readString())
+                                                : null;
+
+    return new RuleIdeInfo(
+      label,
+      kind,
+      buildFile,
+      dependencies,
+      runtimeDeps,
+      tags,
+      sources,
+      cRuleIdeInfo,
+      cToolchainIdeInfo,
+      javaRuleIdeInfo,
+      androidRuleIdeInfo,
+      testIdeInfo,
+      protoLibraryLegacyInfo,
+      javaToolchainIdeInfo
+    );
+  }
+
+  private static void writeArtifactLocation(ProjectDataOutput out, @Nullable ArtifactLocation location) throws IOException {
+    out.writeBoolean(location != null);
+    if (location == null) {
+      return;
+    }
+    out.writeString(location.rootPath);
+    out.writeString(location.rootExecutionPathFragment);
+    out.writeString(location.relativePath);
+    out.writeBoolean(location.isSource);
+  }
+
+  @Nullable
+  private static ArtifactLocation readArtifactLocation(ProjectDataInput in) throws IOException {
+    if (!in.readBoolean()) {
+      return null;
+    }
+    return ArtifactLocation.builder()
+      .setRootPath(in.readString())
+      .setRootExecutionPathFragment(in.readString())
+      .setRelativePath(in.readString())
+      .setIsSource(in.readBoolean())
+      .build();
+  }
+
+  private static void writeArtifactLocations(ProjectDataOutput out, Collection<ArtifactLocation> locations) throws IOException {
+    out.writeVarInt(locations.size());
+    for (ArtifactLocation location : locations) {
+      writeArtifactLocation(out, location);
+    }
+  }
+
+  private static ImmutableList<ArtifactLocation> readArtifactLocations(ProjectDataInput in) throws IOException {
+    int size = in.readVarInt();
+    ImmutableList.Builder<ArtifactLocation> builder = ImmutableList.builder();
+    for (int i = 0; i < size; ++i) {
+      ArtifactLocation location = readArtifactLocation(in);
+      if (location == null) {
+        throw new IOException("Unexpected null artifact location");
+      }
+      builder.add(location);
+    }
+    return builder.build();
+  }
+
+  private static void writeExecutionRootPath(ProjectDataOutput out, @Nullable ExecutionRootPath path) throws IOException {
+    out.writeFile(path != null ? path.getAbsoluteOrRelativeFile() : null);
+  }
+
+  @Nullable
+  private static ExecutionRootPath readExecutionRootPath(ProjectDataInput in) throws IOException {
+    String path = in.readString();
+    return path != null ? new ExecutionRootPath(path) : null;
+  }
+
+  private static void writeExecutionRootPaths(ProjectDataOutput out, Collection<ExecutionRootPath> paths) throws IOException {
+    out.writeVarInt(paths.size());
+    for (ExecutionRootPath path : paths) {
+      writeExecutionRootPath(out, path);
+    }
+  }
+
+  private static ImmutableList<ExecutionRootPath> readExecutionRootPaths(ProjectDataInput in) throws IOException {
+    int size = in.readVarInt();
+    ImmutableList.Builder<ExecutionRootPath> builder = ImmutableList.builder();
+    for (int i = 0; i < size; ++i) {
+      builder.add(new ExecutionRootPath(in.readNonNullString()));
+    }
+    return builder.build();
+  }
+
+  private static void writeLibraryArtifact(ProjectDataOutput out, @Nullable LibraryArtifact library) throws IOException {
+    out.writeBoolean(library != null);
+    if (library == null) {
+      return;
+    }
+    writeArtifactLocation(out, library.jar);
+    writeArtifactLocation(out, library.runtimeJar);
+    writeArtifactLocation(out, library.sourceJar);
+  }
+
+  @Nullable
+  private static LibraryArtifact readLibraryArtifact(ProjectDataInput in) throws IOException {
+    if (!in.readBoolean()) {
+      return null;
+    }
+    return new LibraryArtifact(readArtifactLocation(in), readArtifactLocation(in), readArtifactLocation(in));
+  }
+
+  private static void writeLibraryArtifacts(ProjectDataOutput out, Collection<LibraryArtifact> libraries) throws IOException {
+    out.writeVarInt(libraries.size());
+    for (LibraryArtifact library : libraries) {
+      writeLibraryArtifact(out, library);
+    }
+  }
+
+  private static ImmutableList<LibraryArtifact> readLibraryArtifacts(ProjectDataInput in) throws IOException {
+    int size = in.readVarInt();
+    ImmutableList.Builder<LibraryArtifact> builder = ImmutableList.builder();
+    for (int i = 0; i < size; ++i) {
+      LibraryArtifact library = readLibraryArtifact(in);
+      if (library == null) {
+        throw new IOException("Unexpected null library artifact");
+      }
+      builder.add(library);
+    }
+    return builder.build();
+  }
+
+  private static void writeCRuleIdeInfo(ProjectDataOutput out, CRuleIdeInfo info) throws IOException {
+    writeArtifactLocations(out, info.sources);
+    writeExecutionRootPaths(out, info.transitiveIncludeDirectories);
+    writeExecutionRootPaths(out, info.transitiveQuoteIncludeDirectories);
+    out.writeStrings(info.transitiveDefines);
+    writeExecutionRootPaths(out, info.transitiveSystemIncludeDirectories);
+  }
+
+  private static CRuleIdeInfo readCRuleIdeInfo(ProjectDataInput in) throws IOException {
+    return new CRuleIdeInfo(
+      readArtifactLocations(in),
+      readExecutionRootPaths(in),
+      readExecutionRootPaths(in),
+      in.readStrings(),
+      readExecutionRootPaths(in)
+    );
+  }
+
+  private static void writeCToolchainIdeInfo(ProjectDataOutput out, CToolchainIdeInfo info) throws IOException {
+    out.writeStrings(info.baseCompilerOptions);
+    out.writeStrings(info.cCompilerOptions);
+    out.writeStrings(info.cppCompilerOptions);
+    out.writeStrings(info.linkOptions);
+    writeExecutionRootPaths(out, info.builtInIncludeDirectories);
+    writeExecutionRootPath(out, info.cppExecutable);
+    writeExecutionRootPath(out, info.preprocessorExecutable);
+    out.writeString(info.targetName);
+    out.writeStrings(info.unfilteredCompilerOptions);
+    writeExecutionRootPaths(out, info.unfilteredToolchainSystemIncludes);
+  }
+
+  private static CToolchainIdeInfo readCToolchainIdeInfo(ProjectDataInput in) throws IOException {
+    return new CToolchainIdeInfo(
+      in.readStrings(),
+      in.readStrings(),
+      in.readStrings(),
+      in.readStrings(),
+      readExecutionRootPaths(in),
+      readExecutionRootPath(in),
+      readExecutionRootPath(in),
+      in.readString(),
+      in.readStrings(),
+      readExecutionRootPaths(in)
+    );
+  }
+
+  private static void writeJavaRuleIdeInfo(ProjectDataOutput out, JavaRuleIdeInfo info) throws IOException {
+    writeLibraryArtifacts(out, info.jars);
+    writeLibraryArtifacts(out, info.generatedJars);
+    writeArtifactLocation(out, info.packageManifest);
+    writeArtifactLocation(out, info.jdepsFile);
+  }
+
+  private static JavaRuleIdeInfo readJavaRuleIdeInfo(ProjectDataInput in) throws IOException {
+    return new JavaRuleIdeInfo(
+      readLibraryArtifacts(in),
+      readLibraryArtifacts(in),
+      readArtifactLocation(in),
+      readArtifactLocation(in)
+    );
+  }
+
+  private static void writeAndroidRuleIdeInfo(ProjectDataOutput out, AndroidRuleIdeInfo info) throws IOException {
+    writeArtifactLocations(out, info.resources);
+    out.writeString(info.resourceJavaPackage);
+    out.writeBoolean(info.generateResourceClass);
+    writeArtifactLocation(out, info.manifest);
+    writeLibraryArtifact(out, info.idlJar);
+    writeLibraryArtifact(out, info.resourceJar);
+    out.writeBoolean(info.hasIdlSources);
+    out.writeLabel(info.legacyResources);
+  }
+
+  private static AndroidRuleIdeInfo readAndroidRuleIdeInfo(ProjectDataInput in) throws IOException {
+    return new AndroidRuleIdeInfo(
+      readArtifactLocations(in),
+      in.readString(),
+      in.readBoolean(),
+      readArtifactLocation(in),
+      readLibraryArtifact(in),
+      readLibraryArtifact(in),
+      in.readBoolean(),
+      in.readLabel()
+    );
+  }
+
+  private static void writeProtoLibraryLegacyInfo(ProjectDataOutput out, ProtoLibraryLegacyInfo info) throws IOException {
+    out.writeEnum(info.apiFlavor);
+    writeLibraryArtifacts(out, info.jarsV1);
+    writeLibraryArtifacts(out, info.jarsMutable);
+    writeLibraryArtifacts(out, info.jarsImmutable);
+  }
+
+  private static ProtoLibraryLegacyInfo readProtoLibraryLegacyInfo(ProjectDataInput in) throws IOException {
+    return new ProtoLibraryLegacyInfo(
+      in.readEnum(ProtoLibraryLegacyInfo.ApiFlavor.class),
+      readLibraryArtifacts(in),
+      readLibraryArtifacts(in),
+      readLibraryArtifacts(in)
+    );
+  }
+}
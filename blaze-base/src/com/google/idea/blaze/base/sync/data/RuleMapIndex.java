@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.data;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
+import com.google.idea.blaze.base.model.primitives.Label;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * On-disk index of the project rule map, opened as a memory-mapped {@link LazyRuleMap}.
+ *
+ * <p>The file is a header, a key table and one independently decodable record per rule:
+ * <pre>
+ *   int magic, int version, long token, int ruleCount
+ *   ruleCount x (int labelLength, utf8 label, int recordOffset, int recordLength)
+ *   records
+ * </pre>
+ * Record offsets are relative to the start of the file. The token is recorded in the project data
+ * file so an index from a different save is never paired with it.
+ */
+final class RuleMapIndex {
+  private static final int MAGIC = 0x425a5249; // "BZRI"
+  static final int VERSION = 1;
+
+  private static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private RuleMapIndex() {
+  }
+
+  static void write(File file, Map<Label, RuleIdeInfo> ruleMap, long token) throws IOException {
+    int ruleCount = ruleMap.size();
+    byte[][] labels = new byte[ruleCount][];
+    int[] recordLengths = new int[ruleCount];
+    ByteArrayOutputStream records = new ByteArrayOutputStream(BUFFER_SIZE);
+
+    int i = 0;
+    for (Map.Entry<Label, RuleIdeInfo> entry : ruleMap.entrySet()) {
+      labels[i] = entry.getKey().toString().getBytes(StandardCharsets.UTF_8);
+      int start = records.size();
+      // Each record gets its own string tables so it can be decoded in isolation
+      ProjectDataOutput out = new ProjectDataOutput(records, null);
+      RuleIdeInfoCodec.write(out, entry.getValue());
+      out.flush();
+      recordLengths[i] = records.size() - start;
+      ++i;
+    }
+
+    long keyTableSize = 0;
+    for (byte[] label : labels) {
+      keyTableSize += 4 + label.length + 4 + 4;
+    }
+    long totalSize = HEADER_SIZE + keyTableSize + records.size();
+    if (totalSize > Integer.MAX_VALUE) {
+      throw new IOException("Rule map too large to index: " + totalSize + " bytes");
+    }
+
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(token);
+      out.writeInt(ruleCount);
+      int recordOffset = (int)(HEADER_SIZE + keyTableSize);
+      for (int j = 0; j < ruleCount; ++j) {
+        out.writeInt(labels[j].length);
+        out.write(labels[j]);
+        out.writeInt(recordOffset);
+        out.writeInt(recordLengths[j]);
+        recordOffset += recordLengths[j];
+      }
+      records.writeTo(out);
+    }
+  }
+
+  /**
+   * Maps the index into memory. Only the keys are read up front.
+   *
+   * @throws IOException if the file is malformed or was not written with the expected token
+   */
+  static LazyRuleMap open(File file, long expectedToken) throws IOException {
+    MappedByteBuffer buffer;
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+      FileChannel channel = randomAccessFile.getChannel();
+      // The mapping stays valid after the channel is closed
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    try {
+      if (buffer.getInt() != MAGIC) {
+        throw new IOException("Not a rule index file: " + file);
+      }
+      int version = buffer.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported rule index version: " + version);
+      }
+      long token = buffer.getLong();
+      if (token != expectedToken) {
+        throw new IOException("Rule index does not belong to this project data: " + file);
+      }
+      int ruleCount = buffer.getInt();
+      if (ruleCount < 0) {
+        throw new IOException("Malformed rule index: " + file);
+      }
+
+      ImmutableMap.Builder<Label, Integer> keys = ImmutableMap.builder();
+      int[] recordOffsets = new int[ruleCount];
+      int[] recordLengths = new int[ruleCount];
+      for (int i = 0; i < ruleCount; ++i) {
+        byte[] labelBytes = new byte[buffer.getInt()];
+        buffer.get(labelBytes);
+        keys.put(Label.create(new String(labelBytes, StandardCharsets.UTF_8)), i);
+        recordOffsets[i] = buffer.getInt();
+        recordLengths[i] = buffer.getInt();
+        if (recordOffsets[i] < 0 || recordLengths[i] < 0 || recordOffsets[i] > buffer.limit() - recordLengths[i]) {
+          throw new IOException("Malformed rule index: " + file);
+        }
+      }
+      return new LazyRuleMap(buffer, keys.build(), recordOffsets, recordLengths);
+    }
+    catch (BufferUnderflowException | IllegalArgumentException e) {
+      throw new IOException("Malformed rule index: " + file, e);
+    }
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.data;
+
+import com.intellij.openapi.extensions.ExtensionPointName;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Binary encoding for one part of the {@link com.google.idea.blaze.base.model.SyncState}.
+ *
+ * <p>Parts without a registered codec are stored with java serialization.
+ */
+public abstract class SyncStateCodec<T extends Serializable> {
+  public static final ExtensionPointName<SyncStateCodec> EP_NAME = ExtensionPointName.create("com.google.idea.blaze.SyncStateCodec");
+
+  private final Class<T> stateClass;
+
+  protected SyncStateCodec(Class<T> stateClass) {
+    this.stateClass = stateClass;
+  }
+
+  /**
+   * The class the part is stored under in the sync state.
+   */
+  public final Class<T> getStateClass() {
+    return stateClass;
+  }
+
+  /**
+   * Bump whenever the encoding changes. Parts written with a different version are dropped on load.
+   */
+  public abstract int getVersion();
+
+  public abstract void write(ProjectDataOutput out, T state) throws IOException;
+
+  @Nullable
+  public abstract T read(ProjectDataInput in) throws IOException;
+
+  @SuppressWarnings("unchecked")
+  final void writeUnchecked(ProjectDataOutput out, Serializable state) throws IOException {
+    write(out, (T)state);
+  }
+}
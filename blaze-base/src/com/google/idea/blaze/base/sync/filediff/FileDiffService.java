@@ -18,17 +18,25 @@ package com.google.idea.blaze.base.sync.filediff;
 import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.idea.blaze.base.async.executor.BlazeExecutor;
+import com.google.idea.blaze.base.experiments.BoolExperiment;
 import com.google.idea.blaze.base.io.FileAttributeProvider;
+import com.google.idea.blaze.base.io.FileStat;
+import com.google.idea.blaze.base.sync.data.ProjectDataInput;
+import com.google.idea.blaze.base.sync.data.ProjectDataOutput;
+import com.google.idea.blaze.base.util.PersistentMap;
 import com.intellij.openapi.diagnostic.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -36,13 +44,49 @@ import java.util.concurrent.Callable;
 
 /**
  * Provides a diffing service for a collection of files.
+ *
+ * <p>A file is unchanged if its modification time, size and identity all match the previous state.
+ * Files are stat-ed in batches of neighbouring files, one executor task per batch. With content
+ * hashing enabled, a file whose stat changed but whose size did not is also considered unchanged
+ * if its contents hash the same, as happens when blaze re-materializes an identical output.
  */
 public class FileDiffService {
   private static Logger LOG = Logger.getInstance(FileDiffService.class);
 
+  static final BoolExperiment CONTENT_HASH_FALLBACK = new BoolExperiment("filediff.content.hash", false);
+  private static final int BATCH_SIZE = 512;
+
   public static class State implements Serializable {
     private static final long serialVersionUID = 2L;
     Map<File, FileEntry> fileEntryMap;
+
+    public void write(ProjectDataOutput out) throws IOException {
+      out.writeVarInt(fileEntryMap.size());
+      for (FileEntry fileEntry : fileEntryMap.values()) {
+        out.writeFile(fileEntry.file);
+        out.writeLong(fileEntry.timestamp);
+        out.writeLong(fileEntry.size);
+        out.writeInt(fileEntry.fileKey);
+        out.writeLong(fileEntry.contentHash);
+      }
+    }
+
+    public static State read(ProjectDataInput in) throws IOException {
+      int size = in.readVarInt();
+      PersistentMap.Builder<File, FileEntry> fileMap = PersistentMap.builder();
+      for (int i = 0; i < size; ++i) {
+        FileEntry fileEntry = new FileEntry();
+        fileEntry.file = in.readFile();
+        fileEntry.timestamp = in.readLong();
+        fileEntry.size = in.readLong();
+        fileEntry.fileKey = in.readInt();
+        fileEntry.contentHash = in.readLong();
+        fileMap.put(fileEntry.file, fileEntry);
+      }
+      State state = new State();
+      state.fileEntryMap = fileMap.build();
+      return state;
+    }
   }
 
   static class FileEntry implements Serializable {
@@ -50,6 +94,16 @@ public class FileDiffService {
 
     public File file;
     public long timestamp;
+    public long size;
+    public int fileKey;
+    /**
+     * 0 if the contents were not hashed.
+     */
+    public long contentHash;
+
+    boolean hasSameStat(FileEntry other) {
+      return timestamp == other.timestamp && size == other.size && fileKey == other.fileKey;
+    }
 
     @Override
     public boolean equals(Object o) {
@@ -57,12 +111,32 @@ public class FileDiffService {
       if (o == null || getClass() != o.getClass()) return false;
       FileEntry fileEntry = (FileEntry)o;
       return Objects.equal(timestamp, fileEntry.timestamp) &&
+             Objects.equal(size, fileEntry.size) &&
+             Objects.equal(fileKey, fileEntry.fileKey) &&
+             Objects.equal(contentHash, fileEntry.contentHash) &&
              Objects.equal(file, fileEntry.file);
     }
 
     @Override
     public int hashCode() {
-      return Objects.hashCode(file, timestamp);
+      return Objects.hashCode(file, timestamp, size, fileKey, contentHash);
+    }
+  }
+
+  /**
+   * The stat of a single file, compared with a previous state.
+   */
+  public static class DiffResult {
+    final FileEntry fileEntry;
+    final boolean changed;
+
+    DiffResult(FileEntry fileEntry, boolean changed) {
+      this.fileEntry = fileEntry;
+      this.changed = changed;
+    }
+
+    public boolean isChanged() {
+      return changed;
     }
   }
 
@@ -71,24 +145,35 @@ public class FileDiffService {
                            @NotNull Iterable<File> files,
                            @NotNull List<File> updatedFiles,
                            @NotNull List<File> removedFiles) {
+    return updateFiles(oldState, files, updatedFiles, removedFiles, ImmutableMap.of());
+  }
+
+  /**
+   * @param knownDiffResults results of {@link #diff} against the same old state, for files that
+   *                         were already stat-ed. These files are not stat-ed again.
+   */
+  @Nullable
+  public State updateFiles(@Nullable State oldState,
+                           @NotNull Iterable<File> files,
+                           @NotNull List<File> updatedFiles,
+                           @NotNull List<File> removedFiles,
+                           @NotNull Map<File, DiffResult> knownDiffResults) {
     Map<File, FileEntry> oldFiles = oldState != null
                                     ? oldState.fileEntryMap
                                     : ImmutableMap.of();
 
-    List<FileEntry> fileEntryList = null;
+    List<DiffResult> diffResults = null;
     try {
-      fileEntryList = updateTimeStamps(files);
+      diffResults = diffFiles(oldFiles, files, knownDiffResults, CONTENT_HASH_FALLBACK.getValue());
     } catch (Exception e) {
       LOG.error(e);
       return null;
     }
 
     // Find changed/new
-    for (FileEntry newFile : fileEntryList) {
-      FileEntry oldFile = oldFiles.get(newFile.file);
-      final boolean isNew = oldFile == null || newFile.timestamp != oldFile.timestamp;
-      if (isNew) {
-        updatedFiles.add(newFile.file);
+    for (DiffResult diffResult : diffResults) {
+      if (diffResult.changed) {
+        updatedFiles.add(diffResult.fileEntry.file);
       }
     }
 
@@ -102,28 +187,154 @@ public class FileDiffService {
         removedFiles.add(file);
       }
     }
-    ImmutableMap.Builder<File, FileEntry> fileMap = ImmutableMap.builder();
-    for (FileEntry fileEntry : fileEntryList) {
-      fileMap.put(fileEntry.file, fileEntry);
+    PersistentMap.Builder<File, FileEntry> fileMap = PersistentMap.builder();
+    for (DiffResult diffResult : diffResults) {
+      fileMap.put(diffResult.fileEntry.file, diffResult.fileEntry);
+    }
+    State newState = new State();
+    newState.fileEntryMap = fileMap.build();
+    return newState;
+  }
+
+  /**
+   * Like {@link #updateFiles}, but only stats the given changed files. The entries of all other
+   * files are carried over from the old state, except for the removed files.
+   */
+  @Nullable
+  public State updateChangedFiles(@NotNull State oldState,
+                                  @NotNull Collection<File> changedFiles,
+                                  @NotNull Collection<File> removedFiles,
+                                  @NotNull List<File> updatedFiles) {
+    List<DiffResult> diffResults = null;
+    try {
+      diffResults = diffFiles(oldState.fileEntryMap, changedFiles, ImmutableMap.of(), CONTENT_HASH_FALLBACK.getValue());
+    } catch (Exception e) {
+      LOG.error(e);
+      return null;
+    }
+
+    PersistentMap.Builder<File, FileEntry> fileMap = PersistentMap.copyOf(oldState.fileEntryMap).toBuilder();
+    for (File file : removedFiles) {
+      fileMap.remove(file);
+    }
+    for (DiffResult diffResult : diffResults) {
+      if (diffResult.changed) {
+        updatedFiles.add(diffResult.fileEntry.file);
+      }
+      fileMap.put(diffResult.fileEntry.file, diffResult.fileEntry);
     }
     State newState = new State();
     newState.fileEntryMap = fileMap.build();
     return newState;
   }
 
-  private static List<FileEntry> updateTimeStamps(@NotNull Iterable<File> fileList) throws Exception {
+  /**
+   * Stats a single file and compares it with the given state, without computing a new state. Pass
+   * the result on to {@link #updateFiles} so the file is not stat-ed twice.
+   */
+  public DiffResult diff(@Nullable State oldState, @NotNull File file) {
+    FileEntry oldFile = oldState != null ? oldState.fileEntryMap.get(file) : null;
+    return diffFile(FileAttributeProvider.getInstance(), oldFile, file, CONTENT_HASH_FALLBACK.getValue());
+  }
+
+  private static List<DiffResult> diffFiles(@NotNull Map<File, FileEntry> oldFiles,
+                                            @NotNull Iterable<File> fileList,
+                                            @NotNull Map<File, DiffResult> knownDiffResults,
+                                            boolean hashContents) throws Exception {
     final FileAttributeProvider fileAttributeProvider = FileAttributeProvider.getInstance();
-    List<ListenableFuture<FileEntry>> futures = Lists.newArrayList();
+    List<DiffResult> result = Lists.newArrayList();
+    List<File> filesToStat = Lists.newArrayList();
     for (File file : fileList) {
+      DiffResult knownDiffResult = knownDiffResults.get(file);
+      if (knownDiffResult != null) {
+        result.add(knownDiffResult);
+      }
+      else {
+        filesToStat.add(file);
+      }
+    }
+    List<ListenableFuture<List<DiffResult>>> futures = Lists.newArrayList();
+    for (List<File> batch : batchByDirectory(filesToStat)) {
       futures.add(submit(() -> {
-                           FileEntry fileEntry = new FileEntry();
-                           fileEntry.file = file;
-                           fileEntry.timestamp = fileAttributeProvider.getFileModifiedTime(fileEntry.file);
-                           return fileEntry;
-                         }
-      ));
-    }
-    return Futures.allAsList(futures).get();
+        List<DiffResult> results = Lists.newArrayListWithCapacity(batch.size());
+        for (File file : batch) {
+          results.add(diffFile(fileAttributeProvider, oldFiles.get(file), file, hashContents));
+        }
+        return results;
+      }));
+    }
+    for (List<DiffResult> batchResult : Futures.allAsList(futures).get()) {
+      result.addAll(batchResult);
+    }
+    return result;
+  }
+
+  private static DiffResult diffFile(FileAttributeProvider fileAttributeProvider,
+                                     @Nullable FileEntry oldFile,
+                                     File file,
+                                     boolean hashContents) {
+    FileEntry fileEntry = new FileEntry();
+    fileEntry.file = file;
+    FileStat fileStat = fileAttributeProvider.getFileStat(file);
+    if (fileStat != null) {
+      fileEntry.timestamp = fileStat.modifiedTime;
+      fileEntry.size = fileStat.size;
+      fileEntry.fileKey = fileStat.fileKey;
+    }
+
+    boolean changed = oldFile == null || !fileEntry.hasSameStat(oldFile);
+    if (!hashContents || fileStat == null) {
+      return new DiffResult(fileEntry, changed);
+    }
+    if (!changed) {
+      fileEntry.contentHash = oldFile.contentHash;
+      return new DiffResult(fileEntry, false);
+    }
+    // Hash every changed file so the next sync has something to compare against
+    try {
+      fileEntry.contentHash = fileAttributeProvider.getContentHash(file);
+    }
+    catch (IOException e) {
+      return new DiffResult(fileEntry, true);
+    }
+    boolean sameContents = oldFile != null
+                           && oldFile.contentHash != 0
+                           && oldFile.size == fileEntry.size
+                           && oldFile.contentHash == fileEntry.contentHash;
+    return new DiffResult(fileEntry, !sameContents);
+  }
+
+  /**
+   * Groups files in the same directory together and splits them into batches, so each executor
+   * task stats a run of neighbouring files instead of a single one.
+   */
+  private static List<List<File>> batchByDirectory(@NotNull Iterable<File> files) {
+    Map<File, List<File>> filesByDirectory = Maps.newLinkedHashMap();
+    for (File file : files) {
+      File directory = file.getParentFile();
+      List<File> directoryFiles = filesByDirectory.get(directory);
+      if (directoryFiles == null) {
+        directoryFiles = Lists.newArrayList();
+        filesByDirectory.put(directory, directoryFiles);
+      }
+      directoryFiles.add(file);
+    }
+
+    List<List<File>> batches = Lists.newArrayList();
+    List<File> batch = Lists.newArrayListWithCapacity(BATCH_SIZE);
+    for (List<File> directoryFiles : filesByDirectory.values()) {
+      for (File file : directoryFiles) {
+        batch.add(file);
+        if (batch.size() == BATCH_SIZE) {
+          batches.add(batch);
+          batch = Lists.newArrayListWithCapacity(BATCH_SIZE);
+        }
+      }
+    }
+    if (!batch.isEmpty()) {
+      batches.add(batch);
+    }
+    return batches;
   }
 
   private static <T> ListenableFuture<T> submit(Callable<T> callable) {
@@ -16,9 +16,11 @@
 package com.google.idea.blaze.base.sync.projectview;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import com.google.idea.blaze.base.bazel.BuildSystemProvider;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.google.idea.blaze.base.model.primitives.WorkspacePath;
@@ -29,12 +31,15 @@ import com.google.idea.blaze.base.projectview.section.sections.DirectorySection;
 import com.google.idea.blaze.base.settings.Blaze.BuildSystem;
 
 import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * The roots to import. Derived from project view.
  */
 public final class ImportRoots {
+  private static final Splitter PATH_SPLITTER = Splitter.on('/');
+
   public static class Builder {
     private final ImmutableCollection.Builder<WorkspacePath> rootDirectoriesBuilder = ImmutableList.builder();
     private final ImmutableSet.Builder<WorkspacePath> excludeDirectoriesBuilder = ImmutableSet.builder();
@@ -88,6 +93,7 @@ public final class ImportRoots {
 
   private final ImmutableCollection<WorkspacePath> rootDirectories;
   private final ImmutableSet<WorkspacePath> excludeDirectories;
+  private final DirectoryTrie directoryTrie;
 
   public static Builder builder(WorkspaceRoot workspaceRoot, BuildSystem buildSystem) {
     return new Builder(workspaceRoot, buildSystem);
@@ -98,6 +104,7 @@ public final class ImportRoots {
     ImmutableSet<WorkspacePath> excludeDirectories) {
     this.rootDirectories = rootDirectories;
     this.excludeDirectories = excludeDirectories;
+    this.directoryTrie = new DirectoryTrie(rootDirectories, excludeDirectories);
   }
 
   public Collection<WorkspacePath> rootDirectories() {
@@ -115,31 +122,81 @@ public final class ImportRoots {
     return containsLabel(label);
   }
 
+  /**
+   * Returns true if the path is under a root directory and not under an exclude directory.
+   */
+  public boolean containsWorkspacePath(WorkspacePath workspacePath) {
+    return directoryTrie.contains(workspacePath.relativePath());
+  }
+
   private boolean containsLabel(Label label) {
-    boolean included = false;
-    boolean excluded = false;
-    for (WorkspacePath workspacePath : rootDirectories()) {
-      included = included || matchesLabel(workspacePath, label);
+    // Labels in other repositories are only matched by the workspace root
+    if (!label.toString().startsWith("//")) {
+      return directoryTrie.contains("");
     }
-    for (WorkspacePath workspacePath : excludeDirectories()) {
-      excluded = excluded || matchesLabel(workspacePath, label);
-    }
-    return included && !excluded;
+    return directoryTrie.contains(label.blazePackage().relativePath());
   }
 
-  private static boolean matchesLabel(WorkspacePath workspacePath, Label label) {
-    if (workspacePath.isWorkspaceRoot()) {
-      return true;
+  /**
+   * The root and exclude directories as a tree of path segments. A lookup walks the path once
+   * rather than comparing it against every directory, so it costs O(path depth).
+   */
+  private static final class DirectoryTrie {
+    private static final class Node {
+      final Map<String, Node> children = Maps.newHashMap();
+      boolean included;
+      boolean excluded;
     }
-    String moduleLabelStr = label.toString();
-    int packagePrefixLength = "//".length();
-    int nextCharIndex = workspacePath.relativePath().length() + packagePrefixLength;
-    if (moduleLabelStr.startsWith(workspacePath.relativePath(), packagePrefixLength)
-        && moduleLabelStr.length() >= nextCharIndex) {
-      char c = moduleLabelStr.charAt(nextCharIndex);
-      return c == '/' || c == ':';
+
+    private final Node root = new Node();
+
+    DirectoryTrie(Collection<WorkspacePath> rootDirectories, Collection<WorkspacePath> excludeDirectories) {
+      for (WorkspacePath directory : rootDirectories) {
+        getOrCreateNode(directory).included = true;
+      }
+      for (WorkspacePath directory : excludeDirectories) {
+        getOrCreateNode(directory).excluded = true;
+      }
+    }
+
+    private Node getOrCreateNode(WorkspacePath directory) {
+      Node node = root;
+      if (!directory.isWorkspaceRoot()) {
+        for (String segment : PATH_SPLITTER.split(directory.relativePath())) {
+          node = node.children.computeIfAbsent(segment, key -> new Node());
+        }
+      }
+      return node;
+    }
+
+    /**
+     * An exclude directory anywhere above the path wins, even over a more specific root directory.
+     */
+    boolean contains(String relativePath) {
+      Node node = root;
+      if (node.excluded) {
+        return false;
+      }
+      boolean included = node.included;
+      int length = relativePath.length();
+      int start = 0;
+      while (start < length) {
+        int end = relativePath.indexOf('/', start);
+        if (end < 0) {
+          end = length;
+        }
+        node = node.children.get(relativePath.substring(start, end));
+        if (node == null) {
+          break;
+        }
+        if (node.excluded) {
+          return false;
+        }
+        included = included || node.included;
+        start = end + 1;
+      }
+      return included;
     }
-    return false;
   }
 
 }
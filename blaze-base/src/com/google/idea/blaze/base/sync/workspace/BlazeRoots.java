@@ -23,6 +23,7 @@ import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.idea.blaze.base.command.info.BlazeInfo;
+import com.google.idea.blaze.base.command.info.BlazeInfoCache;
 import com.google.idea.blaze.base.io.FileAttributeProvider;
 import com.google.idea.blaze.base.model.primitives.ExecutionRootPath;
 import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
@@ -47,7 +48,7 @@ public class BlazeRoots implements Serializable {
   public static ListenableFuture<BlazeRoots> compute(Project project, WorkspaceRoot workspaceRoot, BlazeContext context) {
     BuildSystem buildSystem = Blaze.getBuildSystem(project);
     ListenableFuture<ImmutableMap<String, String>> blazeInfoDataFuture =
-      BlazeInfo.getInstance().runBlazeInfo(context, buildSystem, workspaceRoot, ImmutableList.of());
+      BlazeInfoCache.getInstance(project).getBlazeInfo(context, workspaceRoot, ImmutableList.of());
     return Futures.transform(
       blazeInfoDataFuture,
       new Function<ImmutableMap<String, String>, BlazeRoots>() {
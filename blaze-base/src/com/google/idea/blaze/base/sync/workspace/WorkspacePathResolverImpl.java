@@ -15,6 +15,7 @@
  */
 package com.google.idea.blaze.base.sync.workspace;
 
+import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableList;
 import com.google.idea.blaze.base.io.FileAttributeProvider;
 import com.google.idea.blaze.base.model.primitives.ExecutionRootPath;
@@ -72,4 +73,21 @@ public class WorkspacePathResolverImpl implements WorkspacePathResolver {
   public WorkspaceRoot getWorkspaceRoot() {
     return workspaceRoot;
   }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof WorkspacePathResolverImpl)) {
+      return false;
+    }
+    WorkspacePathResolverImpl that = (WorkspacePathResolverImpl)o;
+    return workspaceRoot.equals(that.workspaceRoot) && packagePaths.equals(that.packagePaths);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(workspaceRoot, packagePaths);
+  }
 }
@@ -0,0 +1,694 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.util;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable hash map with structural sharing (a hash array mapped trie).
+ *
+ * <p>{@link #plus} and {@link #minus} return a new map in O(log n), sharing everything but the
+ * modified path with the original. Use a {@link Builder} to apply many changes at once; it mutates
+ * the nodes it created itself in place and copies everything else on write. {@link #diff} skips
+ * subtrees shared between two versions, so comparing a map with its previous version costs time
+ * proportional to the number of changes.
+ *
+ * <p>Null keys and values are not permitted. Iteration order is unspecified.
+ */
+@Immutable
+public final class PersistentMap<K, V> extends AbstractMap<K, V> implements Serializable {
+  private static final PersistentMap<Object, Object> EMPTY = new PersistentMap<>(null, 0);
+  private static final Object NOT_FOUND = new Object();
+
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+  // Enough for a full 32 bit hash plus a collision node
+  private static final int MAX_DEPTH = 32 / BITS + 2;
+
+  @Nullable private final Node root;
+  private final int size;
+  @Nullable private transient Set<Entry<K, V>> entrySet;
+
+  private PersistentMap(@Nullable Node root, int size) {
+    this.root = root;
+    this.size = size;
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <K, V> PersistentMap<K, V> of() {
+    return (PersistentMap<K, V>)EMPTY;
+  }
+
+  /**
+   * Returns the map itself if it already is a {@link PersistentMap}.
+   */
+  @SuppressWarnings("unchecked")
+  public static <K, V> PersistentMap<K, V> copyOf(Map<? extends K, ? extends V> map) {
+    if (map instanceof PersistentMap) {
+      return (PersistentMap<K, V>)map;
+    }
+    return PersistentMap.<K, V>builder().putAll(map).build();
+  }
+
+  public static <K, V> Builder<K, V> builder() {
+    return new Builder<>(null, 0);
+  }
+
+  public Builder<K, V> toBuilder() {
+    return new Builder<>(root, size);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return key != null && root != null && root.find(0, hash(key), key) != NOT_FOUND;
+  }
+
+  @Override
+  @Nullable
+  @SuppressWarnings("unchecked")
+  public V get(Object key) {
+    if (key == null || root == null) {
+      return null;
+    }
+    Object value = root.find(0, hash(key), key);
+    return value != NOT_FOUND ? (V)value : null;
+  }
+
+  /**
+   * Returns a map with the given entry added or replaced.
+   */
+  public PersistentMap<K, V> plus(K key, V value) {
+    Preconditions.checkNotNull(key);
+    Preconditions.checkNotNull(value);
+    Box changedLeaf = new Box();
+    Node newRoot = (root != null ? root : BitmapNode.EMPTY).assoc(null, 0, hash(key), key, value, changedLeaf);
+    if (newRoot == root) {
+      return this;
+    }
+    return new PersistentMap<>(newRoot, changedLeaf.value ? size + 1 : size);
+  }
+
+  /**
+   * Returns a map without the given key.
+   */
+  public PersistentMap<K, V> minus(Object key) {
+    if (key == null || root == null) {
+      return this;
+    }
+    Box changedLeaf = new Box();
+    Node newRoot = root.without(null, 0, hash(key), key, changedLeaf);
+    if (!changedLeaf.value) {
+      return this;
+    }
+    return newRoot != null ? new PersistentMap<>(newRoot, size - 1) : of();
+  }
+
+  @Override
+  public Set<Entry<K, V>> entrySet() {
+    if (entrySet == null) {
+      entrySet = new AbstractSet<Entry<K, V>>() {
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+          return new EntryIterator<>(root);
+        }
+
+        @Override
+        public int size() {
+          return size;
+        }
+      };
+    }
+    return entrySet;
+  }
+
+  /**
+   * Receives the differences between two maps.
+   */
+  public interface DifferenceVisitor<K, V> {
+    void added(K key, V value);
+
+    void removed(K key, V value);
+
+    void changed(K key, V before, V after);
+  }
+
+  /**
+   * Reports every key that was added, removed or mapped to a different value going from
+   * {@code before} to {@code after}. Subtrees the two maps share are skipped without being visited.
+   */
+  public static <K, V> void diff(PersistentMap<K, V> before, PersistentMap<K, V> after, DifferenceVisitor<K, V> visitor) {
+    diffNodes(before.root, after.root, visitor);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K, V> void diffNodes(@Nullable Node before, @Nullable Node after, DifferenceVisitor<K, V> visitor) {
+    if (before == after) {
+      return;
+    }
+    if (before instanceof BitmapNode && after instanceof BitmapNode) {
+      BitmapNode beforeNode = (BitmapNode)before;
+      BitmapNode afterNode = (BitmapNode)after;
+      int bits = beforeNode.bitmap | afterNode.bitmap;
+      while (bits != 0) {
+        int bit = Integer.lowestOneBit(bits);
+        bits &= ~bit;
+        diffSlots(beforeNode, afterNode, bit, visitor);
+      }
+      return;
+    }
+    // Different shapes, e.g. a collision node that was split. These are tiny, compare them entry by entry.
+    Map<Object, Object> beforeEntries = collect(before);
+    Map<Object, Object> afterEntries = collect(after);
+    diffEntries(beforeEntries, afterEntries, visitor);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K, V> void diffSlots(BitmapNode before, BitmapNode after, int bit, DifferenceVisitor<K, V> visitor) {
+    boolean inBefore = (before.bitmap & bit) != 0;
+    boolean inAfter = (after.bitmap & bit) != 0;
+    Object beforeKey = inBefore ? before.array[2 * before.index(bit)] : null;
+    Object beforeValue = inBefore ? before.array[2 * before.index(bit) + 1] : null;
+    Object afterKey = inAfter ? after.array[2 * after.index(bit)] : null;
+    Object afterValue = inAfter ? after.array[2 * after.index(bit) + 1] : null;
+
+    if (inBefore && inAfter && beforeKey == null && afterKey == null) {
+      diffNodes((Node)beforeValue, (Node)afterValue, visitor);
+      return;
+    }
+    if (inBefore && inAfter && beforeKey != null && beforeKey.equals(afterKey)) {
+      if (!Objects.equal(beforeValue, afterValue)) {
+        visitor.changed((K)beforeKey, (V)beforeValue, (V)afterValue);
+      }
+      return;
+    }
+    Map<Object, Object> beforeEntries = Maps.newHashMap();
+    Map<Object, Object> afterEntries = Maps.newHashMap();
+    if (inBefore) {
+      collectSlot(beforeKey, beforeValue, beforeEntries);
+    }
+    if (inAfter) {
+      collectSlot(afterKey, afterValue, afterEntries);
+    }
+    diffEntries(beforeEntries, afterEntries, visitor);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K, V> void diffEntries(Map<Object, Object> before, Map<Object, Object> after, DifferenceVisitor<K, V> visitor) {
+    for (Entry<Object, Object> entry : before.entrySet()) {
+      Object afterValue = after.get(entry.getKey());
+      if (afterValue == null) {
+        visitor.removed((K)entry.getKey(), (V)entry.getValue());
+      }
+      else if (!Objects.equal(entry.getValue(), afterValue)) {
+        visitor.changed((K)entry.getKey(), (V)entry.getValue(), (V)afterValue);
+      }
+    }
+    for (Entry<Object, Object> entry : after.entrySet()) {
+      if (!before.containsKey(entry.getKey())) {
+        visitor.added((K)entry.getKey(), (V)entry.getValue());
+      }
+    }
+  }
+
+  private static Map<Object, Object> collect(@Nullable Node node) {
+    Map<Object, Object> result = Maps.newHashMap();
+    EntryIterator<Object, Object> iterator = new EntryIterator<>(node);
+    while (iterator.hasNext()) {
+      Entry<Object, Object> entry = iterator.next();
+      result.put(entry.getKey(), entry.getValue());
+    }
+    return result;
+  }
+
+  private static void collectSlot(@Nullable Object key, Object value, Map<Object, Object> result) {
+    if (key != null) {
+      result.put(key, value);
+    }
+    else {
+      result.putAll(collect((Node)value));
+    }
+  }
+
+  private static int hash(Object key) {
+    int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  private static int bitpos(int hash, int shift) {
+    return 1 << ((hash >>> shift) & MASK);
+  }
+
+  /**
+   * Accumulates changes to a map. Nodes created by the builder are updated in place until
+   * {@link #build} is called, after which they are frozen.
+   */
+  public static final class Builder<K, V> {
+    private Object edit = new Object();
+    @Nullable private Node root;
+    private int size;
+
+    private Builder(@Nullable Node root, int size) {
+      this.root = root;
+      this.size = size;
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+      if (key == null || root == null) {
+        return null;
+      }
+      Object value = root.find(0, hash(key), key);
+      return value != NOT_FOUND ? (V)value : null;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public Builder<K, V> put(K key, V value) {
+      Preconditions.checkNotNull(key);
+      Preconditions.checkNotNull(value);
+      Box changedLeaf = new Box();
+      root = (root != null ? root : BitmapNode.EMPTY).assoc(edit, 0, hash(key), key, value, changedLeaf);
+      if (changedLeaf.value) {
+        ++size;
+      }
+      return this;
+    }
+
+    public Builder<K, V> putAll(Map<? extends K, ? extends V> map) {
+      for (Entry<? extends K, ? extends V> entry : map.entrySet()) {
+        put(entry.getKey(), entry.getValue());
+      }
+      return this;
+    }
+
+    public Builder<K, V> remove(Object key) {
+      if (key == null || root == null) {
+        return this;
+      }
+      Box changedLeaf = new Box();
+      root = root.without(edit, 0, hash(key), key, changedLeaf);
+      if (changedLeaf.value) {
+        --size;
+      }
+      return this;
+    }
+
+    public PersistentMap<K, V> build() {
+      // Nodes owned by the old token can no longer be reached for editing
+      edit = new Object();
+      return root != null ? new PersistentMap<>(root, size) : of();
+    }
+  }
+
+  private static final class Box {
+    boolean value;
+  }
+
+  private interface Node {
+    /**
+     * Returns the value, or {@link #NOT_FOUND}.
+     */
+    Object find(int shift, int hash, Object key);
+
+    /**
+     * Sets {@code changedLeaf} if a new key was added.
+     */
+    Node assoc(@Nullable Object edit, int shift, int hash, Object key, Object value, Box changedLeaf);
+
+    /**
+     * Sets {@code changedLeaf} if the key was removed. Returns null if the node became empty.
+     */
+    @Nullable
+    Node without(@Nullable Object edit, int shift, int hash, Object key, Box changedLeaf);
+
+    /**
+     * Key/value pairs. A null key means the value is a child node.
+     */
+    Object[] array();
+
+    int arrayLength();
+  }
+
+  private static final class BitmapNode implements Node {
+    static final BitmapNode EMPTY = new BitmapNode(null, 0, new Object[0]);
+
+    @Nullable final Object edit;
+    int bitmap;
+    Object[] array;
+
+    BitmapNode(@Nullable Object edit, int bitmap, Object[] array) {
+      this.edit = edit;
+      this.bitmap = bitmap;
+      this.array = array;
+    }
+
+    int index(int bit) {
+      return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    @Override
+    public Object find(int shift, int hash, Object key) {
+      int bit = bitpos(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return NOT_FOUND;
+      }
+      int idx = index(bit);
+      Object keyOrNull = array[2 * idx];
+      Object valueOrNode = array[2 * idx + 1];
+      if (keyOrNull == null) {
+        return ((Node)valueOrNode).find(shift + BITS, hash, key);
+      }
+      return key.equals(keyOrNull) ? valueOrNode : NOT_FOUND;
+    }
+
+    @Override
+    public Node assoc(@Nullable Object edit, int shift, int hash, Object key, Object value, Box changedLeaf) {
+      int bit = bitpos(hash, shift);
+      int idx = index(bit);
+      if ((bitmap & bit) != 0) {
+        Object keyOrNull = array[2 * idx];
+        Object valueOrNode = array[2 * idx + 1];
+        if (keyOrNull == null) {
+          Node child = ((Node)valueOrNode).assoc(edit, shift + BITS, hash, key, value, changedLeaf);
+          return child == valueOrNode ? this : withSlot(edit, 2 * idx + 1, child);
+        }
+        if (key.equals(keyOrNull)) {
+          return value == valueOrNode ? this : withSlot(edit, 2 * idx + 1, value);
+        }
+        changedLeaf.value = true;
+        Node child = createNode(edit, shift + BITS, keyOrNull, valueOrNode, hash, key, value);
+        BitmapNode node = editable(edit);
+        node.array[2 * idx] = null;
+        node.array[2 * idx + 1] = child;
+        return node;
+      }
+
+      changedLeaf.value = true;
+      int count = Integer.bitCount(bitmap);
+      Object[] newArray = new Object[2 * (count + 1)];
+      System.arraycopy(array, 0, newArray, 0, 2 * idx);
+      newArray[2 * idx] = key;
+      newArray[2 * idx + 1] = value;
+      System.arraycopy(array, 2 * idx, newArray, 2 * (idx + 1), 2 * (count - idx));
+      if (isEditable(edit)) {
+        bitmap |= bit;
+        array = newArray;
+        return this;
+      }
+      return new BitmapNode(edit, bitmap | bit, newArray);
+    }
+
+    @Nullable
+    @Override
+    public Node without(@Nullable Object edit, int shift, int hash, Object key, Box changedLeaf) {
+      int bit = bitpos(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return this;
+      }
+      int idx = index(bit);
+      Object keyOrNull = array[2 * idx];
+      Object valueOrNode = array[2 * idx + 1];
+      if (keyOrNull == null) {
+        Node child = ((Node)valueOrNode).without(edit, shift + BITS, hash, key, changedLeaf);
+        if (child == valueOrNode) {
+          return this;
+        }
+        if (child != null) {
+          return withSlot(edit, 2 * idx + 1, child);
+        }
+      }
+      else if (!key.equals(keyOrNull)) {
+        return this;
+      }
+      else {
+        changedLeaf.value = true;
+      }
+
+      if (bitmap == bit) {
+        return null;
+      }
+      int count = Integer.bitCount(bitmap);
+      Object[] newArray = new Object[2 * (count - 1)];
+      System.arraycopy(array, 0, newArray, 0, 2 * idx);
+      System.arraycopy(array, 2 * (idx + 1), newArray, 2 * idx, 2 * (count - idx - 1));
+      if (isEditable(edit)) {
+        bitmap ^= bit;
+        array = newArray;
+        return this;
+      }
+      return new BitmapNode(edit, bitmap ^ bit, newArray);
+    }
+
+    @Override
+    public Object[] array() {
+      return array;
+    }
+
+    @Override
+    public int arrayLength() {
+      return 2 * Integer.bitCount(bitmap);
+    }
+
+    private boolean isEditable(@Nullable Object edit) {
+      return edit != null && edit == this.edit;
+    }
+
+    private BitmapNode editable(@Nullable Object edit) {
+      return isEditable(edit) ? this : new BitmapNode(edit, bitmap, array.clone());
+    }
+
+    private BitmapNode withSlot(@Nullable Object edit, int slot, Object value) {
+      BitmapNode node = editable(edit);
+      node.array[slot] = value;
+      return node;
+    }
+  }
+
+  /**
+   * Entries whose keys have the same full hash.
+   */
+  private static final class CollisionNode implements Node {
+    @Nullable final Object edit;
+    final int hash;
+    Object[] array;
+
+    CollisionNode(@Nullable Object edit, int hash, Object[] array) {
+      this.edit = edit;
+      this.hash = hash;
+      this.array = array;
+    }
+
+    private int indexOf(Object key) {
+      for (int i = 0; i < array.length; i += 2) {
+        if (key.equals(array[i])) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    public Object find(int shift, int hash, Object key) {
+      int idx = indexOf(key);
+      return idx >= 0 ? array[idx + 1] : NOT_FOUND;
+    }
+
+    @Override
+    public Node assoc(@Nullable Object edit, int shift, int hash, Object key, Object value, Box changedLeaf) {
+      if (hash != this.hash) {
+        // Push this node one level down and add the new key next to it
+        Node node = new BitmapNode(edit, bitpos(this.hash, shift), new Object[] {null, this});
+        return node.assoc(edit, shift, hash, key, value, changedLeaf);
+      }
+      int idx = indexOf(key);
+      Object[] newArray;
+      if (idx >= 0) {
+        if (array[idx + 1] == value) {
+          return this;
+        }
+        newArray = array.clone();
+        newArray[idx + 1] = value;
+      }
+      else {
+        changedLeaf.value = true;
+        newArray = new Object[array.length + 2];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        newArray[array.length] = key;
+        newArray[array.length + 1] = value;
+      }
+      if (edit != null && edit == this.edit) {
+        array = newArray;
+        return this;
+      }
+      return new CollisionNode(edit, hash, newArray);
+    }
+
+    @Nullable
+    @Override
+    public Node without(@Nullable Object edit, int shift, int hash, Object key, Box changedLeaf) {
+      int idx = indexOf(key);
+      if (idx < 0) {
+        return this;
+      }
+      changedLeaf.value = true;
+      if (array.length == 2) {
+        return null;
+      }
+      Object[] newArray = new Object[array.length - 2];
+      System.arraycopy(array, 0, newArray, 0, idx);
+      System.arraycopy(array, idx + 2, newArray, idx, array.length - idx - 2);
+      if (edit != null && edit == this.edit) {
+        array = newArray;
+        return this;
+      }
+      return new CollisionNode(edit, hash, newArray);
+    }
+
+    @Override
+    public Object[] array() {
+      return array;
+    }
+
+    @Override
+    public int arrayLength() {
+      return array.length;
+    }
+  }
+
+  private static Node createNode(@Nullable Object edit,
+                                 int shift,
+                                 Object key1,
+                                 Object value1,
+                                 int hash2,
+                                 Object key2,
+                                 Object value2) {
+    int hash1 = hash(key1);
+    if (hash1 == hash2) {
+      return new CollisionNode(edit, hash1, new Object[] {key1, value1, key2, value2});
+    }
+    Box changedLeaf = new Box();
+    return BitmapNode.EMPTY
+      .assoc(edit, shift, hash1, key1, value1, changedLeaf)
+      .assoc(edit, shift, hash2, key2, value2, changedLeaf);
+  }
+
+  private static final class EntryIterator<K, V> implements Iterator<Entry<K, V>> {
+    private final Object[][] arrays = new Object[MAX_DEPTH + 1][];
+    private final int[] positions = new int[MAX_DEPTH + 1];
+    private final int[] lengths = new int[MAX_DEPTH + 1];
+    private int depth = -1;
+    @Nullable private Entry<K, V> next;
+
+    EntryIterator(@Nullable Node root) {
+      if (root != null) {
+        push(root);
+      }
+      advance();
+    }
+
+    private void push(Node node) {
+      ++depth;
+      arrays[depth] = node.array();
+      positions[depth] = 0;
+      lengths[depth] = node.arrayLength();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void advance() {
+      next = null;
+      while (depth >= 0) {
+        if (positions[depth] >= lengths[depth]) {
+          arrays[depth] = null;
+          --depth;
+          continue;
+        }
+        Object[] array = arrays[depth];
+        int position = positions[depth];
+        positions[depth] += 2;
+        if (array[position] == null) {
+          push((Node)array[position + 1]);
+          continue;
+        }
+        next = new SimpleImmutableEntry<>((K)array[position], (V)array[position + 1]);
+        return;
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public Entry<K, V> next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      Entry<K, V> result = next;
+      advance();
+      return result;
+    }
+  }
+
+  private Object writeReplace() {
+    return new SerializedForm(this);
+  }
+
+  private static final class SerializedForm implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final Object[] keys;
+    private final Object[] values;
+
+    SerializedForm(PersistentMap<?, ?> map) {
+      keys = new Object[map.size()];
+      values = new Object[map.size()];
+      int i = 0;
+      for (Entry<?, ?> entry : map.entrySet()) {
+        keys[i] = entry.getKey();
+        values[i] = entry.getValue();
+        ++i;
+      }
+    }
+
+    private Object readResolve() {
+      Builder<Object, Object> builder = builder();
+      for (int i = 0; i < keys.length; ++i) {
+        builder.put(keys[i], values[i]);
+      }
+      return builder.build();
+    }
+  }
+}
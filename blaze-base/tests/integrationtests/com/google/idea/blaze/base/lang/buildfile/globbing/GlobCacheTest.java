@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.globbing;
+
+import com.google.common.collect.ImmutableList;
+import com.google.idea.blaze.base.lang.buildfile.BuildFileIntegrationTestCase;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.vfs.VirtualFile;
+
+import java.io.IOException;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests that cached glob results follow VFS changes.
+ */
+public class GlobCacheTest extends BuildFileIntegrationTestCase {
+
+  public void testMovedFileLeavesSourcePackage() {
+    VirtualFile source = createFile("java/com/source/BUILD").getParent();
+    VirtualFile target = createFile("java/com/target/BUILD").getParent();
+    VirtualFile foo = createFile("java/com/source/Foo.java");
+
+    assertThat(glob(source)).containsExactly(foo);
+    assertThat(glob(target)).isEmpty();
+
+    move(foo, target);
+    assertThat(glob(source)).isEmpty();
+    assertThat(glob(target)).containsExactly(foo);
+  }
+
+  public void testMovedDirectoryLeavesSourcePackage() {
+    VirtualFile source = createFile("java/com/source/BUILD").getParent();
+    VirtualFile target = createFile("java/com/target/BUILD").getParent();
+    VirtualFile foo = createFile("java/com/source/dir/Foo.java");
+
+    assertThat(glob(source)).containsExactly(foo);
+    assertThat(glob(target)).isEmpty();
+
+    move(foo.getParent(), target);
+    assertThat(glob(source)).isEmpty();
+    assertThat(glob(target)).containsExactly(foo);
+  }
+
+  private static List<VirtualFile> glob(VirtualFile packageDir) {
+    return GlobCache.getInstance().glob(packageDir, ImmutableList.of("**/*.java"), ImmutableList.of(), true);
+  }
+
+  private void move(VirtualFile file, VirtualFile newParent) {
+    ApplicationManager.getApplication().runWriteAction(() -> {
+      try {
+        file.move(this, newParent);
+      }
+      catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+  }
+}
@@ -19,6 +19,9 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 /**
@@ -55,6 +58,23 @@ public abstract class AbstractLexerTest {
     return tokens;
   }
 
+  /**
+   * Drains a lazily-tokenizing lexer, recording each token and the state reported for it.
+   */
+  protected List<String> lazyTokens(String input, int initialState, int offset) {
+    BuildLexerBase lexer = BuildLexerBase.createLazy(input.substring(offset), initialState, mode);
+    List<String> tokens = new ArrayList<>();
+    Token token;
+    while ((token = lexer.nextToken()) != null) {
+      tokens.add(describe(token, offset) + "@" + lexer.getTokenState());
+    }
+    return tokens;
+  }
+
+  protected static String describe(Token token, int offset) {
+    return token.kind.name() + "[" + (token.left + offset) + "," + (token.right + offset) + ")=" + token.value;
+  }
+
   /**
    * Both the syntax highlighter and the parser require every character be accounted for by
    * a lexical element.
@@ -268,4 +288,25 @@ public abstract class AbstractLexerTest {
     assertTrue(lexerFail.containsErrors());
     assertEquals("STRING(unterminated)", values(tokens(s)));
   }
+
+  @Test
+  public void testLazyTokensMatchEagerTokens() throws Exception {
+    String input = "load('/foo/bar', 'baz')\n" +
+                   "def fn(a,\n" +
+                   "       b = [1, 2]):\n" +
+                   "  if a: # comment\n" +
+                   "    return '''multi\n" +
+                   "line''' + \"x\\ty\"\n" +
+                   "\n" +
+                   "java_library(name = r'lib', srcs = glob(['*.java']))\n";
+    List<String> eager = new ArrayList<>();
+    for (Token token : createLexer(input).getTokens()) {
+      eager.add(describe(token, 0));
+    }
+    List<String> lazy = new ArrayList<>();
+    for (String token : lazyTokens(input, 0, 0)) {
+      lazy.add(token.substring(0, token.lastIndexOf('@')));
+    }
+    assertEquals(eager, lazy);
+  }
 }
@@ -19,6 +19,8 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.util.List;
+
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -172,4 +174,31 @@ public class HighlightingLexerTest extends AbstractLexerTest {
       positions(tokens("foo(bar, {1: 'quux'})")));
   }
 
+  @Test
+  public void testTokenStatesTrackParenDepth() throws Exception {
+    List<String> tokens = lazyTokens("f(a, [b])\nc", 0, 0);
+    assertEquals("IDENTIFIER[0,1)=f@0", tokens.get(0));
+    assertEquals("LPAREN[1,2)=null@0", tokens.get(1));
+    assertEquals("IDENTIFIER[2,3)=a@1", tokens.get(2));
+    assertEquals("IDENTIFIER[6,7)=b@2", tokens.get(6));
+    assertEquals("RPAREN[8,9)=null@1", tokens.get(8));
+    assertEquals("NEWLINE[9,10)=null@0", tokens.get(9));
+  }
+
+  @Test
+  public void testRestartingAtAnyTokenProducesSameTokens() throws Exception {
+    String input = "java_library(\n" +
+                   "    name = 'lib',  # comment\n" +
+                   "    srcs = glob([\"*.java\"]) + ['''a\n" +
+                   "b'''],\n" +
+                   ")\n" +
+                   "x = {'k': (1, 2)}\n";
+    List<String> tokens = lazyTokens(input, 0, 0);
+    for (int i = 0; i < tokens.size(); i++) {
+      String token = tokens.get(i);
+      int start = Integer.parseInt(token.substring(token.indexOf('[') + 1, token.indexOf(',')));
+      int state = Integer.parseInt(token.substring(token.lastIndexOf('@') + 1));
+      assertEquals(tokens.subList(i, tokens.size()), lazyTokens(input, state, start));
+    }
+  }
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.lang.buildfile.psi.stubs;
+
+import com.google.idea.blaze.base.lang.buildfile.BuildFileIntegrationTestCase;
+import com.google.idea.blaze.base.lang.buildfile.psi.BuildFile;
+import com.google.idea.blaze.base.lang.buildfile.psi.FuncallExpression;
+import com.google.idea.blaze.base.lang.buildfile.search.BlazePackage;
+import com.intellij.openapi.vfs.VirtualFileFilter;
+import com.intellij.psi.impl.PsiManagerEx;
+import com.intellij.psi.impl.source.PsiFileImpl;
+import com.intellij.psi.search.GlobalSearchScope;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests that rules, load statements and function definitions are available from stubs,
+ * without parsing the BUILD file.
+ */
+public class BuildFileStubTest extends BuildFileIntegrationTestCase {
+
+  private BuildFile createTestBuildFile() {
+    return createBuildFile(
+      "java/com/google/BUILD",
+      "load('//java/com/google:tools.bzl', 'gen_rule', 'other_rule')",
+      "java_library(name = 'lib')",
+      "java_library(",
+      "    name = 'other',",
+      "    deps = [':lib'],",
+      ")",
+      "exports_files(['a.txt'])",
+      "def helper():",
+      "    java_library(name = 'nested')");
+  }
+
+  public void testLookupsDoNotLoadAst() {
+    BuildFile file = createTestBuildFile();
+    PsiManagerEx.getInstanceEx(getProject()).setAssertOnFileLoadingFilter(VirtualFileFilter.ALL, getTestRootDisposable());
+
+    assertThat(ruleNames(file.getRules())).containsExactly("lib", "other").inOrder();
+    assertThat(file.findRule("other").getFunctionName()).isEqualTo("java_library");
+    assertThat(file.findRule("nested")).isNull();
+    assertThat(file.getImportedPaths()).asList().containsExactly("//java/com/google:tools.bzl");
+    assertThat(file.getLoadStatements()[0].getImportedSymbolNames()).asList()
+      .containsExactly("gen_rule", "other_rule")
+      .inOrder();
+    assertThat(file.findDeclaredFunction("helper")).isNotNull();
+    assertThat(((PsiFileImpl) file).isContentsLoaded()).isFalse();
+  }
+
+  public void testStubsMatchAst() {
+    BuildFile file = createTestBuildFile();
+    FuncallExpression fromStub = file.findRule("other");
+
+    file.getNode();
+
+    assertThat(file.findRule("other")).isEqualTo(fromStub);
+    assertThat(ruleNames(file.getRules())).containsExactly("lib", "other").inOrder();
+    assertThat(file.getImportedPaths()).asList().containsExactly("//java/com/google:tools.bzl");
+    assertThat(file.getFunctionDeclarations()).hasLength(1);
+  }
+
+  public void testRuleNameIndex() {
+    BuildFile foo = createBuildFile(
+      "java/com/google/foo/BUILD",
+      "java_library(name = 'lib')");
+    createBuildFile(
+      "java/com/google/bar/BUILD",
+      "java_library(name = 'lib')",
+      "java_library(name = 'bar')");
+
+    Collection<FuncallExpression> all = BuildRuleNameIndex.find(getProject(), "lib", GlobalSearchScope.allScope(getProject()));
+    assertThat(all).hasSize(2);
+
+    GlobalSearchScope fooPackage = BlazePackage.getContainingPackage(foo).getSearchScope(true);
+    assertThat(BuildRuleNameIndex.find(getProject(), "lib", fooPackage)).containsExactly(foo.findRule("lib"));
+    assertThat(BuildRuleNameIndex.getAllRuleNames(getProject())).containsAllOf("lib", "bar");
+  }
+
+  private static List<String> ruleNames(FuncallExpression[] rules) {
+    return Arrays.stream(rules).map(FuncallExpression::getName).collect(Collectors.toList());
+  }
+}
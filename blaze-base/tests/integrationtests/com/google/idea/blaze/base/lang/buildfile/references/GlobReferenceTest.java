@@ -157,6 +157,46 @@ public class GlobReferenceTest extends BuildFileIntegrationTestCase {
     assertThat(references).isEmpty();
   }
 
+  public void testNewFilesPickedUpAfterFirstResolve() {
+    PsiFile foo = createPsiFile("java/com/google/Foo.java");
+    BuildFile file = createBuildFile(
+      "java/com/google/BUILD",
+      "glob(['**/*.java'])");
+
+    GlobExpression glob = PsiUtils.findFirstChildOfClassRecursive(file, GlobExpression.class);
+    assertThat(multiResolve(glob)).containsExactly(foo);
+
+    PsiFile bar = createPsiFile("java/com/google/sub/Bar.java");
+    assertThat(multiResolve(glob)).containsExactly(foo, bar);
+  }
+
+  public void testNewSubpackageExcludedAfterFirstResolve() {
+    BuildFile pkg = createBuildFile(
+      "java/com/google/BUILD",
+      "glob(['**/*.java'])");
+    PsiFile other = createPsiFile("java/com/google/other/Other.java");
+
+    GlobExpression glob = PsiUtils.findFirstChildOfClassRecursive(pkg, GlobExpression.class);
+    assertThat(multiResolve(glob)).containsExactly(other);
+
+    createBuildFile("java/com/google/other/BUILD");
+    assertThat(multiResolve(glob)).isEmpty();
+  }
+
+  public void testRenamedSubpackageBuildFileIncludedAfterFirstResolve() {
+    BuildFile pkg = createBuildFile(
+      "java/com/google/BUILD",
+      "glob(['**/*.java'])");
+    BuildFile subpackage = createBuildFile("java/com/google/other/BUILD");
+    PsiFile other = createPsiFile("java/com/google/other/Other.java");
+
+    GlobExpression glob = PsiUtils.findFirstChildOfClassRecursive(pkg, GlobExpression.class);
+    assertThat(multiResolve(glob)).isEmpty();
+
+    renamePsiElement(subpackage, "BUILD.old");
+    assertThat(multiResolve(glob)).containsExactly(other);
+  }
+
   private List<PsiElement> multiResolve(GlobExpression glob) {
     ResolveResult[] result = glob.getReference().multiResolve(false);
     return Arrays.stream(result)
@@ -80,4 +80,45 @@ public class ImportRootsTest extends BlazeIntegrationTestCase {
     assertThat(importRoots.importAsSource(new Label("//foo/bar:target"))).isTrue();
   }
 
+  public void testExcludedDirectoriesWinOverNestedRoots() {
+    ImportRoots importRoots = ImportRoots.builder(workspaceRoot, BuildSystem.Blaze)
+      .add(new DirectoryEntry(new WorkspacePath("java"), true))
+      .add(new DirectoryEntry(new WorkspacePath("java/com/excluded"), false))
+      .add(new DirectoryEntry(new WorkspacePath("java/com/excluded/nested"), true))
+      .build();
+
+    assertThat(importRoots.importAsSource(new Label("//java:target"))).isTrue();
+    assertThat(importRoots.importAsSource(new Label("//java/com/included:target"))).isTrue();
+    assertThat(importRoots.importAsSource(new Label("//java/com/excluded:target"))).isFalse();
+    assertThat(importRoots.importAsSource(new Label("//java/com/excluded/nested:target"))).isFalse();
+    assertThat(importRoots.importAsSource(new Label("//javascript:target"))).isFalse();
+    assertThat(importRoots.importAsSource(new Label("//:target"))).isFalse();
+  }
+
+  public void testDirectoriesMatchWholePathSegments() {
+    ImportRoots importRoots = ImportRoots.builder(workspaceRoot, BuildSystem.Blaze)
+      .add(new DirectoryEntry(new WorkspacePath("foo/bar"), true))
+      .build();
+
+    assertThat(importRoots.importAsSource(new Label("//foo/bar:target"))).isTrue();
+    assertThat(importRoots.importAsSource(new Label("//foo/bar/baz:target"))).isTrue();
+    assertThat(importRoots.importAsSource(new Label("//foo/barbaz:target"))).isFalse();
+    assertThat(importRoots.importAsSource(new Label("//foo:bar"))).isFalse();
+    assertThat(importRoots.importAsSource(new Label("@repo//foo/bar:target"))).isFalse();
+
+    assertThat(importRoots.containsWorkspacePath(new WorkspacePath("foo/bar/Baz.java"))).isTrue();
+    assertThat(importRoots.containsWorkspacePath(new WorkspacePath("foo/barbaz"))).isFalse();
+    assertThat(importRoots.containsWorkspacePath(new WorkspacePath("foo"))).isFalse();
+  }
+
+  public void testExcludedWorkspaceRootExcludesEverything() {
+    ImportRoots importRoots = ImportRoots.builder(workspaceRoot, BuildSystem.Blaze)
+      .add(new DirectoryEntry(new WorkspacePath("foo"), true))
+      .add(new DirectoryEntry(new WorkspacePath(""), false))
+      .build();
+
+    assertThat(importRoots.importAsSource(new Label("//foo:target"))).isFalse();
+    assertThat(importRoots.importAsSource(new Label("@repo//foo:target"))).isFalse();
+  }
+
 }
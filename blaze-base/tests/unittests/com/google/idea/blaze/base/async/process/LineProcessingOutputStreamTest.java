@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.async.process;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link LineProcessingOutputStream}.
+ */
+@RunWith(JUnit4.class)
+public class LineProcessingOutputStreamTest {
+
+  private final List<String> lines = Lists.newArrayList();
+
+  private void write(LineProcessingOutputStream stream, String text) {
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    stream.write(bytes, 0, bytes.length);
+  }
+
+  @Test
+  public void testSplitsOnAllLineSeparators() {
+    LineProcessingOutputStream stream = LineProcessingOutputStream.of(lines::add);
+    write(stream, "a\nb\r\nc\rd\n\ne");
+    assertThat(lines).containsExactly("a", "b", "c", "d", "").inOrder();
+  }
+
+  @Test
+  public void testLinesSpanningWrites() {
+    LineProcessingOutputStream stream = LineProcessingOutputStream.of(lines::add);
+    write(stream, "hel");
+    write(stream, "lo\r");
+    write(stream, "\nwor");
+    write(stream, "ld\n");
+    assertThat(lines).containsExactly("hello", "world").inOrder();
+  }
+
+  @Test
+  public void testMultiByteCharactersSplitAcrossWrites() {
+    LineProcessingOutputStream stream = LineProcessingOutputStream.of(lines::add);
+    byte[] bytes = "café ✓\n".getBytes(StandardCharsets.UTF_8);
+    for (byte b : bytes) {
+      stream.write(new byte[] {b}, 0, 1);
+    }
+    assertThat(lines).containsExactly("café ✓");
+  }
+
+  @Test
+  public void testVeryLongLine() {
+    LineProcessingOutputStream stream = LineProcessingOutputStream.of(lines::add);
+    String longLine = Strings.repeat("0123456789", 100000);
+    write(stream, longLine + "\nshort\n");
+    assertThat(lines).containsExactly(longLine, "short").inOrder();
+  }
+
+  @Test
+  public void testLongLinesTruncated() {
+    LineProcessingOutputStream stream = LineProcessingOutputStream.of(5, lines::add);
+    write(stream, "abc\n0123456");
+    write(stream, "789\nxyz\n");
+    assertThat(lines).containsExactly("abc", "01234", "xyz").inOrder();
+  }
+
+  @Test
+  public void testProcessingStopsAtFirstProcessorReturningFalse() {
+    List<String> second = Lists.newArrayList();
+    LineProcessingOutputStream stream = LineProcessingOutputStream.of(
+      line -> {
+        lines.add(line);
+        return !line.equals("stop");
+      },
+      second::add);
+    write(stream, "go\nstop\n");
+    assertThat(lines).containsExactly("go", "stop").inOrder();
+    assertThat(second).containsExactly("go");
+  }
+
+  @Test
+  public void testNoOutputAfterClose() throws Exception {
+    LineProcessingOutputStream stream = LineProcessingOutputStream.of(lines::add);
+    write(stream, "a\n");
+    stream.close();
+    write(stream, "b\n");
+    assertThat(lines).containsExactly("a");
+  }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.command.info;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.io.FileAttributeProvider;
+import com.google.idea.blaze.base.io.FileStat;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
+import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.settings.Blaze.BuildSystem;
+import com.google.idea.blaze.base.settings.BlazeImportSettings;
+import com.google.idea.blaze.base.settings.BlazeImportSettingsManager;
+import com.google.idea.blaze.base.settings.BlazeUserSettings;
+import com.google.idea.blaze.base.sync.BlazeSyncPlugin;
+import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link BlazeInfoCache}.
+ */
+@RunWith(JUnit4.class)
+public class BlazeInfoCacheTest extends BlazeTestCase {
+  private static final WorkspaceRoot WORKSPACE_ROOT = new WorkspaceRoot(new File("/root"));
+  private static final ImmutableMap<String, String> BLAZE_INFO = ImmutableMap.of(
+    BlazeInfo.EXECUTION_ROOT_KEY, "/execroot/root",
+    BlazeInfo.PACKAGE_PATH_KEY, "%workspace%",
+    BlazeInfo.blazeBinKey(BuildSystem.Bazel), "/execroot/root/bazel-out/local-fastbuild/bin",
+    BlazeInfo.blazeGenfilesKey(BuildSystem.Bazel), "/execroot/root/bazel-out/local-fastbuild/genfiles",
+    BlazeInfo.BUILD_LANGUAGE, "build language");
+
+  private MockBlazeInfo blazeInfo;
+  private MockFileAttributeProvider fileAttributeProvider;
+  private BlazeInfoCache cache;
+
+  @Override
+  protected void initTest(@NotNull Container applicationServices, @NotNull Container projectServices) {
+    blazeInfo = new MockBlazeInfo();
+    fileAttributeProvider = new MockFileAttributeProvider();
+    BlazeUserSettings userSettings = new BlazeUserSettings();
+    userSettings.setBazelBinaryPath("/usr/bin/bazel");
+    applicationServices.register(BlazeInfo.class, blazeInfo);
+    applicationServices.register(FileAttributeProvider.class, fileAttributeProvider);
+    applicationServices.register(BlazeUserSettings.class, userSettings);
+
+    BlazeImportSettingsManager importSettingsManager = new BlazeImportSettingsManager(project);
+    importSettingsManager.setImportSettings(new BlazeImportSettings(
+      WORKSPACE_ROOT.toString(), "test", "/data", "hash", "/root/.bazelproject", BuildSystem.Bazel));
+    projectServices.register(BlazeImportSettingsManager.class, importSettingsManager);
+    projectServices.register(BlazeProjectDataManager.class, new MockBlazeProjectDataManager());
+
+    cache = new BlazeInfoCache(project);
+  }
+
+  @Test
+  public void testFetchesAllKeysInOneCall() throws Exception {
+    ImmutableMap<String, String> values = cache.getBlazeInfo(null, WORKSPACE_ROOT, ImmutableList.of()).get();
+
+    assertThat(values.keySet()).containsExactlyElementsIn(BlazeInfoCache.cachedKeys(BuildSystem.Bazel));
+    assertThat(blazeInfo.requests).containsExactly(BlazeInfoCache.cachedKeys(BuildSystem.Bazel));
+  }
+
+  @Test
+  public void testRepeatedCallsReuseResult() throws Exception {
+    cache.getBlazeInfo(null, WORKSPACE_ROOT, ImmutableList.of()).get();
+    String executionRoot = cache.getBlazeInfo(null, WORKSPACE_ROOT, ImmutableList.of(), BlazeInfo.EXECUTION_ROOT_KEY).get();
+
+    assertThat(executionRoot).isEqualTo("/execroot/root");
+    assertThat(blazeInfo.requests).hasSize(1);
+  }
+
+  @Test
+  public void testDifferentFlagsAreCachedSeparately() throws Exception {
+    cache.getBlazeInfo(null, WORKSPACE_ROOT, ImmutableList.of()).get();
+    cache.getBlazeInfo(null, WORKSPACE_ROOT, ImmutableList.of("--config=android")).get();
+    cache.getBlazeInfo(null, WORKSPACE_ROOT, ImmutableList.of()).get();
+    cache.getBlazeInfo(null, WORKSPACE_ROOT, ImmutableList.of("--config=android")).get();
+
+    assertThat(blazeInfo.requests).hasSize(2);
+  }
+
+  @Test
+  public void testChangedRcFileInvalidatesResult() throws Exception {
+    File bazelrc = new File(WORKSPACE_ROOT.directory(), ".bazelrc");
+    fileAttributeProvider.stats.put(bazelrc, new FileStat(1, 10, 0));
+    cache.getBlazeInfo(null, WORKSPACE_ROOT, ImmutableList.of()).get();
+    cache.getBlazeInfo(null, WORKSPACE_ROOT, ImmutableList.of()).get();
+    assertThat(blazeInfo.requests).hasSize(1);
+
+    fileAttributeProvider.stats.put(bazelrc, new FileStat(2, 12, 0));
+    cache.getBlazeInfo(null, WORKSPACE_ROOT, ImmutableList.of()).get();
+    assertThat(blazeInfo.requests).hasSize(2);
+  }
+
+  @Test
+  public void testChangedBazelVersionInvalidatesResult() throws Exception {
+    File bazelVersion = new File(WORKSPACE_ROOT.directory(), ".bazelversion");
+    fileAttributeProvider.stats.put(bazelVersion, new FileStat(1, 6, 0));
+    cache.getBlazeInfo(null, WORKSPACE_ROOT, ImmutableList.of()).get();
+
+    fileAttributeProvider.stats.put(bazelVersion, new FileStat(2, 6, 0));
+    cache.getBlazeInfo(null, WORKSPACE_ROOT, ImmutableList.of()).get();
+    assertThat(blazeInfo.requests).hasSize(2);
+  }
+
+  @Test
+  public void testChangedSystemRcFileInvalidatesResult() throws Exception {
+    cache.getBlazeInfo(null, WORKSPACE_ROOT, ImmutableList.of()).get();
+
+    fileAttributeProvider.stats.put(new File("/etc/bazel.bazelrc"), new FileStat(1, 10, 0));
+    cache.getBlazeInfo(null, WORKSPACE_ROOT, ImmutableList.of()).get();
+    assertThat(blazeInfo.requests).hasSize(2);
+  }
+
+  @Test
+  public void testChangedRcFileFromFlagsInvalidatesResult() throws Exception {
+    File rcFile = new File("/home/user/ci.bazelrc");
+    ImmutableList<String> blazeFlags = ImmutableList.of("--bazelrc=/home/user/ci.bazelrc");
+    fileAttributeProvider.stats.put(rcFile, new FileStat(1, 10, 0));
+    cache.getBlazeInfo(null, WORKSPACE_ROOT, blazeFlags).get();
+    cache.getBlazeInfo(null, WORKSPACE_ROOT, blazeFlags).get();
+    assertThat(blazeInfo.requests).hasSize(1);
+
+    fileAttributeProvider.stats.put(rcFile, new FileStat(2, 10, 0));
+    cache.getBlazeInfo(null, WORKSPACE_ROOT, blazeFlags).get();
+    assertThat(blazeInfo.requests).hasSize(2);
+  }
+
+  @Test
+  public void testRcFlagFiles() {
+    assertThat(BlazeInfoCache.getRcFlagFiles(BuildSystem.Bazel, WORKSPACE_ROOT, ImmutableList.of(
+      "--bazelrc=/etc/ci.bazelrc", "--config=android", "--bazelrc", "tools/local.bazelrc", "--blazerc=ignored")))
+      .containsExactly(new File("/etc/ci.bazelrc"), new File("/root/tools/local.bazelrc"))
+      .inOrder();
+    assertThat(BlazeInfoCache.getRcFlagFiles(BuildSystem.Bazel, WORKSPACE_ROOT, ImmutableList.of("--bazelrc"))).isEmpty();
+  }
+
+  @Test
+  public void testChangedBinaryInvalidatesResult() throws Exception {
+    File binary = new File("/usr/bin/bazel");
+    fileAttributeProvider.stats.put(binary, new FileStat(1, 100, 0));
+    cache.getBlazeInfo(null, WORKSPACE_ROOT, ImmutableList.of()).get();
+
+    fileAttributeProvider.stats.put(binary, new FileStat(1, 100, 1));
+    cache.getBlazeInfo(null, WORKSPACE_ROOT, ImmutableList.of()).get();
+    assertThat(blazeInfo.requests).hasSize(2);
+  }
+
+  @Test
+  public void testInvalidate() throws Exception {
+    cache.getBlazeInfo(null, WORKSPACE_ROOT, ImmutableList.of()).get();
+    cache.invalidate();
+    cache.getBlazeInfo(null, WORKSPACE_ROOT, ImmutableList.of()).get();
+
+    assertThat(blazeInfo.requests).hasSize(2);
+  }
+
+  @Test
+  public void testUncachedKeyIsFetchedEveryTime() throws Exception {
+    cache.getBlazeInfo(null, WORKSPACE_ROOT, ImmutableList.of(), BlazeInfo.BUILD_LANGUAGE).get();
+    String buildLanguage = cache.getBlazeInfo(null, WORKSPACE_ROOT, ImmutableList.of(), BlazeInfo.BUILD_LANGUAGE).get();
+
+    assertThat(buildLanguage).isEqualTo("build language");
+    assertThat(blazeInfo.requests).containsExactly(
+      ImmutableList.of(BlazeInfo.BUILD_LANGUAGE),
+      ImmutableList.of(BlazeInfo.BUILD_LANGUAGE));
+  }
+
+  private static class MockBlazeInfo extends BlazeInfo {
+    final List<List<String>> requests = Lists.newArrayList();
+
+    @Override
+    public ListenableFuture<String> runBlazeInfo(@Nullable BlazeContext context,
+                                                 BuildSystem buildSystem,
+                                                 WorkspaceRoot workspaceRoot,
+                                                 List<String> blazeFlags,
+                                                 String key) {
+      requests.add(ImmutableList.of(key));
+      return Futures.immediateFuture(BLAZE_INFO.get(key));
+    }
+
+    @Override
+    public ListenableFuture<byte[]> runBlazeInfoGetBytes(@Nullable BlazeContext context,
+                                                         BuildSystem buildSystem,
+                                                         WorkspaceRoot workspaceRoot,
+                                                         List<String> blazeFlags,
+                                                         String key) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ListenableFuture<ImmutableMap<String, String>> runBlazeInfo(@Nullable BlazeContext context,
+                                                                       BuildSystem buildSystem,
+                                                                       WorkspaceRoot workspaceRoot,
+                                                                       List<String> blazeFlags) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ListenableFuture<ImmutableMap<String, String>> runBlazeInfo(@Nullable BlazeContext context,
+                                                                       BuildSystem buildSystem,
+                                                                       WorkspaceRoot workspaceRoot,
+                                                                       List<String> blazeFlags,
+                                                                       Collection<String> keys) {
+      requests.add(ImmutableList.copyOf(keys));
+      ImmutableMap.Builder<String, String> values = ImmutableMap.builder();
+      for (String key : keys) {
+        values.put(key, BLAZE_INFO.get(key));
+      }
+      return Futures.immediateFuture(values.build());
+    }
+  }
+
+  private static class MockFileAttributeProvider extends FileAttributeProvider {
+    final Map<File, FileStat> stats = Maps.newHashMap();
+
+    @Nullable
+    @Override
+    public FileStat getFileStat(File file) {
+      return stats.get(file);
+    }
+
+    @Override
+    public boolean isFile(File file) {
+      return stats.containsKey(file);
+    }
+  }
+
+  private static class MockBlazeProjectDataManager implements BlazeProjectDataManager {
+    @Nullable
+    @Override
+    public BlazeProjectData getBlazeProjectData() {
+      return null;
+    }
+
+    @Override
+    public BlazeSyncPlugin.ModuleEditor editModules() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
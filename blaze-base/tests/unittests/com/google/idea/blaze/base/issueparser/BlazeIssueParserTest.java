@@ -15,6 +15,8 @@
  */
 package com.google.idea.blaze.base.issueparser;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import com.google.idea.blaze.base.BlazeTestCase;
 import com.google.idea.blaze.base.experiments.ExperimentService;
 import com.google.idea.blaze.base.experiments.MockExperimentService;
@@ -267,4 +269,33 @@ public class BlazeIssueParserTest extends BlazeTestCase {
     );
     assertNotNull(issue);
   }
+
+  @Test
+  public void testLinesWithoutKeywordsSkipAllParsers() {
+    BlazeIssueParser blazeIssueParser = new BlazeIssueParser(project, workspaceRoot);
+    assertNull(blazeIssueParser.parseIssue("INFO: Found 12 targets..."));
+    assertNull(blazeIssueParser.parseIssue("[1,234 / 5,678] Compiling java/com/google/Foo.java"));
+
+    for (BlazeIssueParser.ParserStats stats : blazeIssueParser.getParserStats()) {
+      assertThat(stats.hits).isEqualTo(0L);
+      assertThat(stats.misses).isEqualTo(0L);
+      assertThat(stats.skipped).isEqualTo(2L);
+    }
+  }
+
+  @Test
+  public void testParserStatsCountHitsAndMisses() {
+    BlazeIssueParser blazeIssueParser = new BlazeIssueParser(project, workspaceRoot);
+    assertNotNull(blazeIssueParser.parseIssue(
+      "ERROR: /home/plumpy/whatever:char offsets 1222--1229: name 'grubber' is not defined"
+    ));
+
+    ImmutableMap<String, BlazeIssueParser.ParserStats> stats = Maps.uniqueIndex(
+      blazeIssueParser.getParserStats().subList(0, 4), s -> s.parser);
+    assertThat(stats.get("CompileParser").skipped).isEqualTo(1L);
+    assertThat(stats.get("TracebackParser").skipped).isEqualTo(1L);
+    // matched the "ERROR: " keyword, but not the regex
+    assertThat(stats.get("BuildParser").misses).isEqualTo(1L);
+    assertThat(stats.get("LinelessBuildParser").hits).isEqualTo(1L);
+  }
 }
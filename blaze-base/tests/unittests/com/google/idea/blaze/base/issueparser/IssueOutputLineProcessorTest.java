@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.issueparser;
+
+import com.google.common.collect.Lists;
+import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
+import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.scope.OutputSink;
+import com.google.idea.blaze.base.scope.output.IssueOutput;
+import com.google.idea.blaze.base.scope.output.PrintOutput;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link IssueOutputLineProcessor}.
+ */
+@RunWith(JUnit4.class)
+public class IssueOutputLineProcessorTest {
+
+  private final List<Runnable> scheduled = Lists.newArrayList();
+  private final List<String> printed = Lists.newArrayList();
+  private final List<IssueOutput> issues = Lists.newArrayList();
+  private final BlazeContext context = new BlazeContext()
+    .addOutputSink(PrintOutput.class, output -> {
+      printed.add(output.getText());
+      return OutputSink.Propagation.Stop;
+    })
+    .addOutputSink(IssueOutput.class, output -> {
+      issues.add(output);
+      return OutputSink.Propagation.Stop;
+    });
+
+  private IssueOutputLineProcessor createProcessor() {
+    return new IssueOutputLineProcessor(null, context, new WorkspaceRoot(new File("/root")), scheduled::add);
+  }
+
+  @Test
+  public void testLinesParsedInBatchesOffTheCallingThread() {
+    IssueOutputLineProcessor processor = createProcessor();
+    processor.processLine("INFO: Found 1 target...");
+    processor.processLine("ERROR: /root/foo/BUILD:1:2: name 'bar' is not defined");
+    assertThat(printed).isEmpty();
+    // the second line joins the batch already scheduled
+    assertThat(scheduled).hasSize(1);
+
+    scheduled.get(0).run();
+    assertThat(printed).containsExactly(
+      "INFO: Found 1 target...",
+      "ERROR: /root/foo/BUILD:1:2: name 'bar' is not defined").inOrder();
+    assertThat(issues).hasSize(1);
+    assertThat(context.hasErrors()).isTrue();
+
+    processor.processLine("INFO: Elapsed time: 1.0s");
+    assertThat(scheduled).hasSize(2);
+  }
+
+  @Test
+  public void testCloseProcessesPendingLines() {
+    IssueOutputLineProcessor processor = createProcessor();
+    processor.processLine("a");
+    processor.processLine("b");
+    processor.close();
+    assertThat(printed).containsExactly("a", "b").inOrder();
+
+    // the scheduled batch finds nothing left to do
+    scheduled.get(0).run();
+    assertThat(printed).hasSize(2);
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.issueparser;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link KeywordMatcher}.
+ */
+@RunWith(JUnit4.class)
+public class KeywordMatcherTest {
+
+  private static final KeywordMatcher MATCHER = new KeywordMatcher(ImmutableList.of(
+    ImmutableList.of("he", "hers"),
+    ImmutableList.of("she"),
+    ImmutableList.of("his"),
+    ImmutableList.of("ERROR: ")));
+
+  @Test
+  public void testNoMatch() {
+    assertThat(MATCHER.match("")).isEqualTo(0L);
+    assertThat(MATCHER.match("INFO: Found 12 targets...")).isEqualTo(0L);
+  }
+
+  @Test
+  public void testOverlappingKeywords() {
+    // "ushers" contains "she", "he" and "hers", found through failure links
+    assertThat(MATCHER.match("ushers")).isEqualTo(0b011L);
+    assertThat(MATCHER.match("this")).isEqualTo(0b100L);
+    assertThat(MATCHER.match("ahishe")).isEqualTo(0b111L);
+  }
+
+  @Test
+  public void testKeywordAnywhereInLine() {
+    assertThat(MATCHER.match("ERROR: foo")).isEqualTo(0b1000L);
+    assertThat(MATCHER.match("blah ERROR: foo")).isEqualTo(0b1000L);
+    assertThat(MATCHER.match("ERROR:foo")).isEqualTo(0L);
+    assertThat(MATCHER.match("EERROR: ")).isEqualTo(0b1000L);
+  }
+
+  @Test
+  public void testNonAsciiBreaksMatch() {
+    assertThat(MATCHER.match("séhe")).isEqualTo(0b001L);
+    assertThat(MATCHER.match("ésheé")).isEqualTo(0b011L);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsNonAsciiKeywords() {
+    new KeywordMatcher(ImmutableList.of(ImmutableList.of("café")));
+  }
+}
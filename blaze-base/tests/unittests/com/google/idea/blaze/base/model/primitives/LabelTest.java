@@ -21,6 +21,11 @@ import com.google.idea.blaze.base.experiments.MockExperimentService;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import static com.google.common.truth.Truth.assertThat;
 
 public class LabelTest extends BlazeTestCase {
@@ -64,4 +69,38 @@ public class LabelTest extends BlazeTestCase {
     assertThat(Label.validate("foo")).isFalse();
     assertThat(Label.validate("foo:bar")).isFalse();
   }
+
+  @Test
+  public void testCreateSharesInstances() {
+    Label label = Label.create("//foo/bar:baz");
+    assertThat(Label.create(new String("//foo/bar:baz"))).isSameAs(label);
+    assertThat(Label.createIfValid("//foo/bar:baz")).isSameAs(label);
+    assertThat(TargetExpression.fromString("//foo/bar:baz")).isSameAs(label);
+    assertThat(Label.createIfValid("foo")).isNull();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCreateRejectsInvalidLabel() {
+    Label.create("//foo");
+  }
+
+  @Test
+  public void testPackageAndRuleNameAreParsedOnce() {
+    Label label = Label.create("//foo/bar:baz/qux");
+    assertThat(label.blazePackage()).isEqualTo(new WorkspacePath("foo/bar"));
+    assertThat(label.ruleName()).isEqualTo(RuleName.create("baz/qux"));
+    assertThat(label.blazePackage()).isSameAs(label.blazePackage());
+    assertThat(label.ruleName()).isSameAs(label.ruleName());
+  }
+
+  @Test
+  public void testDeserializedLabelIsInterned() throws Exception {
+    Label label = Label.create("//foo:bar");
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(new Label("//foo:bar"));
+    }
+    Object copy = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+    assertThat(copy).isSameAs(label);
+  }
 }
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.rulemaps;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.CToolchainIdeInfo;
+import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
+import com.google.idea.blaze.base.ideinfo.RuleMapBuilder;
+import com.google.idea.blaze.base.model.primitives.ExecutionRootPath;
+import com.google.idea.blaze.base.model.primitives.Kind;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.model.primitives.LanguageClass;
+import com.google.idea.blaze.base.sync.synthetic.SyntheticMonorepo;
+import com.google.idea.blaze.base.sync.synthetic.SyntheticMonorepo.Target;
+import org.junit.Test;
+
+import java.io.File;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link CToolchainLookupMap}.
+ */
+public class CToolchainLookupMapTest extends BlazeTestCase {
+  private static final CToolchainIdeInfo K8 = toolchain("k8");
+  private static final CToolchainIdeInfo ARM = toolchain("armeabi");
+
+  @Test
+  public void testToolchainPropagatesToReverseDependencies() {
+    // //c:a -> //c:b -> //tools:k8, //c:c -> //tools:k8, //c:d has no toolchain
+    ImmutableMap<Label, RuleIdeInfo> ruleMap = RuleMapBuilder.builder()
+      .addRule(toolchainRule("//tools:k8", K8))
+      .addRule(rule("//c:a").addDependency("//c:b"))
+      .addRule(rule("//c:b").addDependency("//tools:k8"))
+      .addRule(rule("//c:c").addDependency("//tools:k8"))
+      .addRule(rule("//c:d"))
+      .build();
+
+    ImmutableMap<Label, CToolchainIdeInfo> lookupMap = CToolchainLookupMap.create(ruleMap, TargetGraph.create(ruleMap));
+
+    assertThat(lookupMap).isEqualTo(ImmutableMap.of(
+      new Label("//c:a"), K8,
+      new Label("//c:b"), K8,
+      new Label("//c:c"), K8));
+  }
+
+  @Test
+  public void testSeveralToolchains() {
+    ImmutableMap<Label, RuleIdeInfo> ruleMap = RuleMapBuilder.builder()
+      .addRule(toolchainRule("//tools:k8", K8))
+      .addRule(toolchainRule("//tools:arm", ARM))
+      .addRule(rule("//c:host").addDependency("//tools:k8"))
+      .addRule(rule("//c:device").addDependency("//tools:arm"))
+      .addRule(rule("//c:app").addDependency("//c:device"))
+      .build();
+
+    ImmutableMap<Label, CToolchainIdeInfo> lookupMap = CToolchainLookupMap.create(ruleMap, TargetGraph.create(ruleMap));
+
+    assertThat(lookupMap).isEqualTo(ImmutableMap.of(
+      new Label("//c:host"), K8,
+      new Label("//c:device"), ARM,
+      new Label("//c:app"), ARM));
+  }
+
+  @Test
+  public void testToolchainDependenciesAndDiamondsAreHandled() {
+    // //tools:k8 -> //tools:crosstool, //c:top -> {//c:left, //c:right} -> //c:base -> //tools:k8
+    ImmutableMap<Label, RuleIdeInfo> ruleMap = RuleMapBuilder.builder()
+      .addRule(toolchainRule("//tools:k8", K8).addDependency("//tools:crosstool"))
+      .addRule(rule("//tools:crosstool"))
+      .addRule(rule("//c:base").addDependency("//tools:k8"))
+      .addRule(rule("//c:left").addDependency("//c:base"))
+      .addRule(rule("//c:right").addDependency("//c:base"))
+      .addRule(rule("//c:top").addDependency("//c:left").addDependency("//c:right"))
+      .build();
+
+    ImmutableMap<Label, CToolchainIdeInfo> lookupMap = CToolchainLookupMap.create(ruleMap, TargetGraph.create(ruleMap));
+
+    // Nothing flows down to what the toolchain itself depends on, and //c:top is reached twice
+    assertThat(lookupMap).isEqualTo(ImmutableMap.of(
+      new Label("//c:base"), K8,
+      new Label("//c:left"), K8,
+      new Label("//c:right"), K8,
+      new Label("//c:top"), K8));
+  }
+
+  @Test
+  public void testSyntheticMonorepo() {
+    SyntheticMonorepo monorepo = SyntheticMonorepo.builder()
+      .setPackageCount(2000)
+      .setTargetsPerPackage(10)
+      .setFanOut(8)
+      .setLanguageMix(1, 1, 0)
+      .setSeed(3)
+      .build(new File("/synthetic"));
+    ImmutableMap<Label, RuleIdeInfo> ruleMap = monorepo.createRuleMap();
+
+    ImmutableMap<Label, CToolchainIdeInfo> lookupMap = CToolchainLookupMap.create(ruleMap, TargetGraph.create(ruleMap));
+
+    int cppTargets = 0;
+    for (Target target : monorepo.getTargets()) {
+      if (target.kind.getLanguageClass() == LanguageClass.C && target.kind != Kind.CC_TOOLCHAIN) {
+        ++cppTargets;
+        assertThat(lookupMap).containsKey(target.label);
+      }
+    }
+    assertThat(cppTargets).isGreaterThan(0);
+    assertThat(lookupMap).hasSize(cppTargets);
+  }
+
+  private static CToolchainIdeInfo toolchain(String targetName) {
+    return CToolchainIdeInfo.builder()
+      .setTargetName(targetName)
+      .setCppExecutable(new ExecutionRootPath(targetName + "/gcc"))
+      .setPreprocessorExecutable(new ExecutionRootPath(targetName + "/cpp"))
+      .build();
+  }
+
+  private static RuleIdeInfo.Builder toolchainRule(String label, CToolchainIdeInfo toolchain) {
+    return RuleIdeInfo.builder()
+      .setBuildFile(sourceRoot("tools/BUILD"))
+      .setLabel(label)
+      .setKind(Kind.CC_TOOLCHAIN)
+      .setCToolchainInfo(toolchain);
+  }
+
+  private static RuleIdeInfo.Builder rule(String label) {
+    return RuleIdeInfo.builder()
+      .setBuildFile(sourceRoot("c/BUILD"))
+      .setLabel(label)
+      .setKind(Kind.CC_LIBRARY);
+  }
+
+  private static ArtifactLocation sourceRoot(String relativePath) {
+    return ArtifactLocation.builder()
+      .setRelativePath(relativePath)
+      .setIsSource(true)
+      .build();
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.rulemaps;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.model.primitives.Label;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link PreferredTargetMap}.
+ */
+@RunWith(JUnit4.class)
+public class PreferredTargetMapTest {
+  @Test
+  public void testEachFileMapsToItsTarget() {
+    ImmutableMap<File, Label> preferredTargets = PreferredTargetMap.create(ImmutableMap.of(
+      new Label("//a:a"), ImmutableList.of(source("a/a.cc"), source("a/a.h")),
+      new Label("//b:b"), ImmutableList.of(source("b/b.cc"))));
+
+    assertThat(preferredTargets).isEqualTo(ImmutableMap.of(
+      new File("/root/a/a.cc"), new Label("//a:a"),
+      new File("/root/a/a.h"), new Label("//a:a"),
+      new File("/root/b/b.cc"), new Label("//b:b")));
+  }
+
+  @Test
+  public void testSharedFileGoesToFirstLabelRegardlessOfOrder() {
+    ImmutableList<ArtifactLocation> shared = ImmutableList.of(source("c/shared.h"));
+    ImmutableMap<Label, ImmutableList<ArtifactLocation>> forward = ImmutableMap.of(
+      new Label("//c:a"), shared,
+      new Label("//c:b"), shared,
+      new Label("//c:c"), shared);
+    ImmutableMap<Label, ImmutableList<ArtifactLocation>> backward = ImmutableMap.of(
+      new Label("//c:c"), shared,
+      new Label("//c:b"), shared,
+      new Label("//c:a"), shared);
+
+    assertThat(PreferredTargetMap.create(forward).get(new File("/root/c/shared.h"))).isEqualTo(new Label("//c:a"));
+    assertThat(PreferredTargetMap.create(backward).get(new File("/root/c/shared.h"))).isEqualTo(new Label("//c:a"));
+  }
+
+  private static ArtifactLocation source(String relativePath) {
+    return ArtifactLocation.builder()
+      .setRootPath("/root")
+      .setRelativePath(relativePath)
+      .setIsSource(true)
+      .build();
+  }
+}
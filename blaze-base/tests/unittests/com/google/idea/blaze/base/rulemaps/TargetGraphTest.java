@@ -0,0 +1,266 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.rulemaps;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
+import com.google.idea.blaze.base.ideinfo.RuleMapBuilder;
+import com.google.idea.blaze.base.model.primitives.Label;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class TargetGraphTest extends BlazeTestCase {
+  @Override
+  protected void initTest(@NotNull Container applicationServices, @NotNull Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+  }
+
+  /**
+   * l1 -> l2 -> l4, l1 -> l3 -> l4, l5 -> l4, l2 -> //external:missing
+   */
+  private static ImmutableMap<Label, RuleIdeInfo> diamondRuleMap() {
+    return RuleMapBuilder.builder()
+      .addRule(rule("//l:l1")
+                 .addDependency("//l:l2")
+                 .addRuntimeDep("//l:l3")
+                 .addDependency("//l:l3"))
+      .addRule(rule("//l:l2")
+                 .addDependency("//l:l4")
+                 .addDependency("//external:missing"))
+      .addRule(rule("//l:l3")
+                 .addDependency("//l:l4"))
+      .addRule(rule("//l:l4"))
+      .addRule(rule("//l:l5")
+                 .addDependency("//l:l4"))
+      .build();
+  }
+
+  @Test
+  public void testEdges() {
+    TargetGraph graph = TargetGraph.create(diamondRuleMap());
+
+    assertThat(graph.size()).isEqualTo(5);
+    assertThat(graph.getReverseDependencies(new Label("//l:l4")))
+      .containsExactly(new Label("//l:l2"), new Label("//l:l3"), new Label("//l:l5"))
+      .inOrder();
+    // Listed as both a dependency and a runtime dependency, kept once
+    assertThat(graph.getReverseDependencies(new Label("//l:l3"))).containsExactly(new Label("//l:l1"));
+    assertThat(graph.getReverseDependencies(new Label("//l:l1"))).isEmpty();
+    assertThat(graph.getDependencies(new Label("//l:l1")))
+      .containsExactly(new Label("//l:l2"), new Label("//l:l3"))
+      .inOrder();
+    assertThat(graph.getDependencies(new Label("//l:l2"))).containsExactly(new Label("//l:l4"));
+    assertThat(graph.edgeCount()).isEqualTo(5);
+    assertThat(graph.contains(new Label("//external:missing"))).isFalse();
+    assertThat(graph.getReverseDependencies(new Label("//external:missing"))).isEmpty();
+  }
+
+  @Test
+  public void testReverseDependenciesOfSingleDep() {
+    TargetGraph graph = TargetGraph.create(RuleMapBuilder.builder()
+      .addRule(rule("//l:l1").addDependency("//l:l2"))
+      .addRule(rule("//l:l2"))
+      .build());
+
+    assertThat(graph.getReverseDependencies(new Label("//l:l2"))).containsExactly(new Label("//l:l1"));
+  }
+
+  @Test
+  public void testReverseDependenciesOfLabelDependingOnTwoLabels() {
+    TargetGraph graph = TargetGraph.create(RuleMapBuilder.builder()
+      .addRule(rule("//l:l1").addDependency("//l:l2").addDependency("//l:l3"))
+      .addRule(rule("//l:l2"))
+      .addRule(rule("//l:l3"))
+      .build());
+
+    assertThat(graph.getReverseDependencies(new Label("//l:l2"))).containsExactly(new Label("//l:l1"));
+    assertThat(graph.getReverseDependencies(new Label("//l:l3"))).containsExactly(new Label("//l:l1"));
+  }
+
+  @Test
+  public void testReverseDependenciesOfThreeLevelGraph() {
+    TargetGraph graph = TargetGraph.create(RuleMapBuilder.builder()
+      .addRule(rule("//l:l1").addDependency("//l:l3"))
+      .addRule(rule("//l:l2").addDependency("//l:l3"))
+      .addRule(rule("//l:l3"))
+      .addRule(rule("//l:l4").addDependency("//l:l3"))
+      .addRule(rule("//l:l5").addDependency("//l:l4"))
+      .build());
+
+    assertThat(graph.getReverseDependencies(new Label("//l:l3")))
+      .containsExactly(new Label("//l:l1"), new Label("//l:l2"), new Label("//l:l4"));
+    assertThat(graph.getReverseDependencies(new Label("//l:l4"))).containsExactly(new Label("//l:l5"));
+  }
+
+  @Test
+  public void testClosure() {
+    TargetGraph graph = TargetGraph.create(diamondRuleMap());
+
+    assertThat(graph.closure(ImmutableList.of(new Label("//l:l4")), TargetGraph.Direction.REVERSE_DEPENDENCIES))
+      .containsExactly(new Label("//l:l4"), new Label("//l:l2"), new Label("//l:l3"), new Label("//l:l5"), new Label("//l:l1"))
+      .inOrder();
+    assertThat(graph.closure(ImmutableList.of(new Label("//l:l2")), TargetGraph.Direction.DEPENDENCIES))
+      .containsExactly(new Label("//l:l2"), new Label("//l:l4"))
+      .inOrder();
+  }
+
+  @Test
+  public void testVisitorCanStopTraversal() {
+    TargetGraph graph = TargetGraph.create(diamondRuleMap());
+    List<Label> visited = Lists.newArrayList();
+    graph.breadthFirst(ImmutableList.of(new Label("//l:l4")), TargetGraph.Direction.REVERSE_DEPENDENCIES, id -> {
+      visited.add(graph.getLabel(id));
+      return !graph.getLabel(id).equals(new Label("//l:l2"));
+    });
+
+    // l1 is still reached through l3
+    assertThat(visited).containsExactly(
+      new Label("//l:l4"), new Label("//l:l2"), new Label("//l:l3"), new Label("//l:l5"), new Label("//l:l1"));
+
+    visited.clear();
+    graph.breadthFirst(ImmutableList.of(new Label("//l:l4")), TargetGraph.Direction.REVERSE_DEPENDENCIES, id -> {
+      visited.add(graph.getLabel(id));
+      return false;
+    });
+    assertThat(visited).containsExactly(new Label("//l:l4"));
+  }
+
+  @Test
+  public void testTopologicalOrderPutsDependenciesFirst() {
+    TargetGraph graph = TargetGraph.create(diamondRuleMap());
+    int[] order = graph.topologicalOrder();
+
+    assertThat(order.length).isEqualTo(graph.size());
+    int[] position = new int[graph.size()];
+    for (int i = 0; i < order.length; ++i) {
+      position[order[i]] = i;
+    }
+    for (int id = 0; id < graph.size(); ++id) {
+      for (int dependency : graph.getDependencyIds(id)) {
+        assertThat(position[dependency]).isLessThan(position[id]);
+      }
+    }
+  }
+
+  @Test
+  public void testTopologicalOrderKeepsCyclesTogether() {
+    // //l:d -> //l:a <-> //l:b -> //l:c
+    TargetGraph graph = TargetGraph.create(RuleMapBuilder.builder()
+      .addRule(rule("//l:d").addDependency("//l:a"))
+      .addRule(rule("//l:a").addDependency("//l:b"))
+      .addRule(rule("//l:b").addDependency("//l:a").addDependency("//l:c"))
+      .addRule(rule("//l:c"))
+      .build());
+
+    int[] componentIds = graph.componentIds();
+    int a = graph.getId(new Label("//l:a"));
+    int b = graph.getId(new Label("//l:b"));
+    int c = graph.getId(new Label("//l:c"));
+    int d = graph.getId(new Label("//l:d"));
+    assertThat(componentIds[a]).isEqualTo(componentIds[b]);
+    assertThat(componentIds[c]).isLessThan(componentIds[a]);
+    assertThat(componentIds[d]).isGreaterThan(componentIds[a]);
+    assertThat(graph.topologicalOrder()).asList().containsExactly(c, a, b, d).inOrder();
+  }
+
+  @Test
+  public void testLongChain() {
+    // t(i) depends on t(i - 1); deep enough that a recursive traversal would overflow the stack
+    int length = 100000;
+    RuleMapBuilder builder = RuleMapBuilder.builder().addRule(rule("//l:t0"));
+    for (int i = 1; i < length; ++i) {
+      builder.addRule(rule("//l:t" + i).addDependency("//l:t" + (i - 1)));
+    }
+    TargetGraph graph = TargetGraph.create(builder.build());
+    int[] depth = new int[graph.size()];
+    int[] edgesVisited = new int[1];
+
+    graph.propagate(new int[]{graph.getId(new Label("//l:t0"))}, TargetGraph.Direction.REVERSE_DEPENDENCIES, (from, to) -> {
+      depth[to] = depth[from] + 1;
+      ++edgesVisited[0];
+      return true;
+    });
+
+    assertThat(edgesVisited[0]).isEqualTo(length - 1);
+    assertThat(depth[graph.getId(new Label("//l:t" + (length - 1)))]).isEqualTo(length - 1);
+
+    int[] order = graph.topologicalOrder();
+    assertThat(order).hasLength(length);
+    for (int i = 0; i < length; ++i) {
+      assertThat(graph.getLabel(order[i])).isEqualTo(new Label("//l:t" + i));
+    }
+  }
+
+  @Test
+  public void testRecreateFromEdges() {
+    TargetGraph graph = TargetGraph.create(diamondRuleMap());
+    List<Label> labels = Lists.newArrayList();
+    List<int[]> dependencyIds = Lists.newArrayList();
+    for (int id = 0; id < graph.size(); ++id) {
+      labels.add(graph.getLabel(id));
+      dependencyIds.add(graph.getDependencyIds(id));
+    }
+
+    TargetGraph copy = TargetGraph.create(labels, dependencyIds);
+    assertThat(copy).isEqualTo(graph);
+    assertThat(copy.getReverseDependencies(new Label("//l:l4")))
+      .isEqualTo(graph.getReverseDependencies(new Label("//l:l4")));
+  }
+
+  @Test
+  public void testManyTargets() {
+    RuleMapBuilder builder = RuleMapBuilder.builder();
+    for (int i = 0; i < 5000; ++i) {
+      RuleIdeInfo.Builder rule = rule("//pkg" + (i % 37) + ":t" + i);
+      if (i > 0) {
+        rule.addDependency("//pkg" + ((i / 2) % 37) + ":t" + (i / 2));
+      }
+      builder.addRule(rule);
+    }
+    TargetGraph graph = TargetGraph.create(builder.build());
+
+    assertThat(graph.size()).isEqualTo(5000);
+    assertThat(graph.edgeCount()).isEqualTo(4999);
+    for (int id = 0; id < graph.size(); ++id) {
+      assertThat(graph.getId(graph.getLabel(id))).isEqualTo(id);
+    }
+    assertThat(graph.closure(ImmutableList.of(new Label("//pkg0:t0")), TargetGraph.Direction.REVERSE_DEPENDENCIES))
+      .hasSize(5000);
+  }
+
+  private static RuleIdeInfo.Builder rule(String label) {
+    return RuleIdeInfo.builder()
+      .setBuildFile(sourceRoot("test/BUILD"))
+      .setLabel(label)
+      .setKind("java_library");
+  }
+
+  private static ArtifactLocation sourceRoot(String relativePath) {
+    return ArtifactLocation.builder()
+      .setRootPath("/")
+      .setRelativePath(relativePath)
+      .setIsSource(true)
+      .build();
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.run.rulefinder;
+
+import com.google.common.collect.ForwardingMap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
+import com.google.idea.blaze.base.ideinfo.RuleMapBuilder;
+import com.google.idea.blaze.base.model.primitives.Kind;
+import com.google.idea.blaze.base.model.primitives.LanguageClass;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.model.primitives.WorkspacePath;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link RuleIndex}.
+ */
+@RunWith(JUnit4.class)
+public class RuleIndexTest {
+  private static ImmutableMap<Label, RuleIdeInfo> ruleMap() {
+    return RuleMapBuilder.builder()
+      .addRule(rule("//java/a:lib", Kind.JAVA_LIBRARY))
+      .addRule(rule("//java/a:test", Kind.JAVA_TEST))
+      .addRule(rule("//cc/b:lib", Kind.CC_LIBRARY))
+      .addRule(rule("//java/b:lib", Kind.JAVA_LIBRARY))
+      .addRule(rule("//java/a/sub:test", Kind.JAVA_TEST))
+      .build();
+  }
+
+  @Test
+  public void testLabelLookup() {
+    RuleIndex index = new RuleIndex(ruleMap());
+    assertThat(index.get(new Label("//cc/b:lib")).kind).isEqualTo(Kind.CC_LIBRARY);
+    assertThat(index.get(new Label("//cc/b:missing"))).isNull();
+  }
+
+  @Test
+  public void testRulesOfKinds() {
+    RuleIndex index = new RuleIndex(ruleMap());
+    assertThat(labels(index.rulesOfKinds(ImmutableList.of(Kind.JAVA_TEST))))
+      .containsExactly("//java/a:test", "//java/a/sub:test")
+      .inOrder();
+    assertThat(index.rulesOfKinds(ImmutableList.of(Kind.ANDROID_BINARY))).isEmpty();
+  }
+
+  @Test
+  public void testRulesOfSeveralKindsKeepRuleMapOrder() {
+    RuleIndex index = new RuleIndex(ruleMap());
+    assertThat(labels(index.rulesOfKinds(ImmutableList.of(Kind.JAVA_TEST, Kind.JAVA_LIBRARY, Kind.JAVA_TEST))))
+      .containsExactly("//java/a:lib", "//java/a:test", "//java/b:lib", "//java/a/sub:test")
+      .inOrder();
+  }
+
+  @Test
+  public void testResultsAreResolvedThroughRuleMap() {
+    // Stands in for a lazily loaded rule map, which may hand out a newly decoded rule per lookup
+    ImmutableMap<Label, RuleIdeInfo> original = ruleMap();
+    Map<Label, RuleIdeInfo> ruleMap = new ForwardingMap<Label, RuleIdeInfo>() {
+      @Override
+      protected Map<Label, RuleIdeInfo> delegate() {
+        return original;
+      }
+
+      @Override
+      public RuleIdeInfo get(Object key) {
+        RuleIdeInfo rule = original.get(key);
+        return rule != null ? rule(rule.label.toString(), rule.kind).build() : null;
+      }
+    };
+    RuleIndex index = new RuleIndex(ruleMap);
+    index.ensureIndexed();
+
+    RuleIdeInfo result = index.rulesOfLanguage(LanguageClass.C).get(0);
+
+    assertThat(result.label).isEqualTo(new Label("//cc/b:lib"));
+    assertThat(result).isNotSameAs(original.get(new Label("//cc/b:lib")));
+  }
+
+  @Test
+  public void testRulesOfLanguage() {
+    RuleIndex index = new RuleIndex(ruleMap());
+    assertThat(labels(index.rulesOfLanguage(LanguageClass.C))).containsExactly("//cc/b:lib");
+    assertThat(labels(index.rulesOfLanguage(LanguageClass.JAVA))).hasSize(4);
+  }
+
+  @Test
+  public void testRulesInPackage() {
+    RuleIndex index = new RuleIndex(ruleMap());
+    assertThat(labels(index.rulesInPackage(new WorkspacePath("java/a"))))
+      .containsExactly("//java/a:lib", "//java/a:test")
+      .inOrder();
+    assertThat(index.rulesInPackage(new WorkspacePath("java/c"))).isEmpty();
+  }
+
+  private static ImmutableList<String> labels(List<RuleIdeInfo> rules) {
+    ImmutableList.Builder<String> labels = ImmutableList.builder();
+    for (RuleIdeInfo rule : rules) {
+      labels.add(rule.label.toString());
+    }
+    return labels.build();
+  }
+
+  private static RuleIdeInfo.Builder rule(String label, Kind kind) {
+    return RuleIdeInfo.builder()
+      .setBuildFile(ArtifactLocation.builder()
+                      .setRootPath("/")
+                      .setRelativePath(new Label(label).blazePackage().relativePath() + "/BUILD")
+                      .setIsSource(true)
+                      .build())
+      .setLabel(label)
+      .setKind(kind);
+  }
+}
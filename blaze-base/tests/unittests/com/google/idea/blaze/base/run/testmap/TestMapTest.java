@@ -16,7 +16,6 @@
 package com.google.idea.blaze.base.run.testmap;
 
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableMultimap;
 import com.google.idea.blaze.base.BlazeTestCase;
 import com.google.idea.blaze.base.experiments.ExperimentService;
 import com.google.idea.blaze.base.experiments.MockExperimentService;
@@ -25,8 +24,9 @@ import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
 import com.google.idea.blaze.base.ideinfo.RuleMapBuilder;
 import com.google.idea.blaze.base.ideinfo.TestIdeInfo;
 import com.google.idea.blaze.base.model.primitives.Label;
-import com.google.idea.blaze.base.rulemaps.ReverseDependencyMap;
+import com.google.idea.blaze.base.rulemaps.TargetGraph;
 import com.google.idea.blaze.base.run.testmap.TestRuleFinderImpl.TestMap;
+import com.google.idea.blaze.base.util.PersistentMap;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Test;
 
@@ -54,9 +54,8 @@ public class TestMapTest extends BlazeTestCase {
                  .addSource(sourceRoot("test/Test.java")))
       .build();
 
-    TestMap testMap = new TestMap(project, ruleMap);
-    ImmutableMultimap<Label, Label> reverseDependencies = ReverseDependencyMap.createRdepsMap(ruleMap);
-    assertThat(testMap.testTargetsForSourceFile(reverseDependencies, new File("/test/Test.java"), null))
+    TestMap testMap = new TestMap(ruleMap, TargetGraph.create(ruleMap));
+    assertThat(testMap.findTestTargets(new File("/test/Test.java"), null))
       .containsExactly(new Label("//test:test"));
   }
 
@@ -75,9 +74,8 @@ public class TestMapTest extends BlazeTestCase {
                  .addSource(sourceRoot("test/Test.java")))
       .build();
 
-    TestMap testMap = new TestMap(project, ruleMap);
-    ImmutableMultimap<Label, Label> reverseDependencies = ReverseDependencyMap.createRdepsMap(ruleMap);
-    assertThat(testMap.testTargetsForSourceFile(reverseDependencies, new File("/test/Test.java"), null))
+    TestMap testMap = new TestMap(ruleMap, TargetGraph.create(ruleMap));
+    assertThat(testMap.findTestTargets(new File("/test/Test.java"), null))
       .containsExactly(new Label("//test:test"));
   }
 
@@ -101,9 +99,8 @@ public class TestMapTest extends BlazeTestCase {
                  .addSource(sourceRoot("test/Test.java")))
       .build();
 
-    TestMap testMap = new TestMap(project, ruleMap);
-    ImmutableMultimap<Label, Label> reverseDependencies = ReverseDependencyMap.createRdepsMap(ruleMap);
-    assertThat(testMap.testTargetsForSourceFile(reverseDependencies, new File("/test/Test.java"), null))
+    TestMap testMap = new TestMap(ruleMap, TargetGraph.create(ruleMap));
+    assertThat(testMap.findTestTargets(new File("/test/Test.java"), null))
       .containsExactly(new Label("//test:test"), new Label("//test:test2"));
   }
 
@@ -132,9 +129,8 @@ public class TestMapTest extends BlazeTestCase {
                  .addDependency("//test:lib"))
       .build();
 
-    TestMap testMap = new TestMap(project, ruleMap);
-    ImmutableMultimap<Label, Label> reverseDependencies = ReverseDependencyMap.createRdepsMap(ruleMap);
-    assertThat(testMap.testTargetsForSourceFile(reverseDependencies, new File("/test/Test.java"), null))
+    TestMap testMap = new TestMap(ruleMap, TargetGraph.create(ruleMap));
+    assertThat(testMap.findTestTargets(new File("/test/Test.java"), null))
       .containsExactly(new Label("//test:test"), new Label("//test:test2"))
       .inOrder();
   }
@@ -167,9 +163,8 @@ public class TestMapTest extends BlazeTestCase {
                  .addDependency("//test:lib"))
       .build();
 
-    TestMap testMap = new TestMap(project, ruleMap);
-    ImmutableMultimap<Label, Label> reverseDependencies = ReverseDependencyMap.createRdepsMap(ruleMap);
-    assertThat(testMap.testTargetsForSourceFile(reverseDependencies, new File("/test/Test.java"), TestIdeInfo.TestSize.LARGE))
+    TestMap testMap = new TestMap(ruleMap, TargetGraph.create(ruleMap));
+    assertThat(testMap.findTestTargets(new File("/test/Test.java"), TestIdeInfo.TestSize.LARGE))
       .containsExactly(new Label("//test:test2"))
       .inOrder();
   }
@@ -199,9 +194,8 @@ public class TestMapTest extends BlazeTestCase {
                  .addSource(sourceRoot("test/Test.java")))
       .build();
 
-    TestMap testMap = new TestMap(project, ruleMap);
-    ImmutableMultimap<Label, Label> reverseDependencies = ReverseDependencyMap.createRdepsMap(ruleMap);
-    assertThat(testMap.testTargetsForSourceFile(reverseDependencies, new File("/test/Test.java"), null))
+    TestMap testMap = new TestMap(ruleMap, TargetGraph.create(ruleMap));
+    assertThat(testMap.findTestTargets(new File("/test/Test.java"), null))
       .containsExactly(new Label("//test:test"), new Label("//test:test2"));
   }
 
@@ -226,12 +220,110 @@ public class TestMapTest extends BlazeTestCase {
                  .addSource(sourceRoot("test/Test.java")))
       .build();
 
-    TestMap testMap = new TestMap(project, ruleMap);
-    ImmutableMultimap<Label, Label> reverseDependencies = ReverseDependencyMap.createRdepsMap(ruleMap);
-    assertThat(testMap.testTargetsForSourceFile(reverseDependencies, new File("/test/Test.java"), null))
+    TestMap testMap = new TestMap(ruleMap, TargetGraph.create(ruleMap));
+    assertThat(testMap.findTestTargets(new File("/test/Test.java"), null))
       .containsExactly(new Label("//test:test"));
   }
 
+  @Test
+  public void testUnaffectedDirectoriesAreCarriedAcrossSyncs() throws Exception {
+    ImmutableMap<Label, RuleIdeInfo> ruleMap = RuleMapBuilder.builder()
+      .addRule(libraryWithTest("a"))
+      .addRule(testRule("a", TestIdeInfo.TestSize.SMALL))
+      .addRule(libraryWithTest("b"))
+      .addRule(testRule("b", TestIdeInfo.TestSize.SMALL))
+      .build();
+    TestMap oldTestMap = new TestMap(ruleMap, TargetGraph.create(ruleMap));
+    oldTestMap.findTestTargets(new File("/a/Lib.java"), null);
+    oldTestMap.findTestTargets(new File("/b/Lib.java"), null);
+
+    ImmutableMap<Label, RuleIdeInfo> newRuleMap = RuleMapBuilder.builder()
+      .addRule(libraryWithTest("a"))
+      .addRule(testRule("a", TestIdeInfo.TestSize.SMALL))
+      .addRule(libraryWithTest("b"))
+      .addRule(testRule("b", TestIdeInfo.TestSize.LARGE))
+      .build();
+    TestMap testMap = new TestMap(newRuleMap, TargetGraph.create(newRuleMap), oldTestMap.carryOver(newRuleMap));
+
+    assertThat(testMap.isDirectoryIndexed(new File("/a"))).isTrue();
+    assertThat(testMap.isDirectoryIndexed(new File("/b"))).isFalse();
+    assertThat(testMap.findTestTargets(new File("/a/Lib.java"), TestIdeInfo.TestSize.SMALL))
+      .containsExactly(new Label("//a:test"));
+    assertThat(testMap.findTestTargets(new File("/b/Lib.java"), TestIdeInfo.TestSize.SMALL))
+      .isEmpty();
+  }
+
+  @Test
+  public void testNewReverseDependencyInvalidatesDirectory() throws Exception {
+    ImmutableMap<Label, RuleIdeInfo> ruleMap = RuleMapBuilder.builder()
+      .addRule(libraryWithTest("a"))
+      .addRule(testRule("a", TestIdeInfo.TestSize.SMALL))
+      .build();
+    TestMap oldTestMap = new TestMap(ruleMap, TargetGraph.create(ruleMap));
+    assertThat(oldTestMap.findTestTargets(new File("/a/Lib.java"), null))
+      .containsExactly(new Label("//a:test"));
+
+    ImmutableMap<Label, RuleIdeInfo> newRuleMap = RuleMapBuilder.builder()
+      .addRule(libraryWithTest("a"))
+      .addRule(testRule("a", TestIdeInfo.TestSize.SMALL))
+      .addRule(RuleIdeInfo.builder()
+                 .setBuildFile(sourceRoot("c/BUILD"))
+                 .setLabel("//c:test")
+                 .setKind("java_test")
+                 .addDependency("//a:lib"))
+      .build();
+    TestMap testMap = new TestMap(newRuleMap, TargetGraph.create(newRuleMap), oldTestMap.carryOver(newRuleMap));
+
+    assertThat(testMap.isDirectoryIndexed(new File("/a"))).isFalse();
+    assertThat(testMap.findTestTargets(new File("/a/Lib.java"), null))
+      .containsExactly(new Label("//a:test"), new Label("//c:test"));
+  }
+
+  @Test
+  public void testCarryOverBetweenPersistentRuleMaps() throws Exception {
+    ImmutableMap<Label, RuleIdeInfo> rules = RuleMapBuilder.builder()
+      .addRule(libraryWithTest("a"))
+      .addRule(testRule("a", TestIdeInfo.TestSize.SMALL))
+      .addRule(libraryWithTest("b"))
+      .addRule(testRule("b", TestIdeInfo.TestSize.SMALL))
+      .addRule(libraryWithTest("c"))
+      .build();
+    PersistentMap<Label, RuleIdeInfo> ruleMap = PersistentMap.copyOf(rules);
+    TestMap oldTestMap = new TestMap(ruleMap, TargetGraph.create(ruleMap));
+    oldTestMap.findTestTargets(new File("/a/Lib.java"), null);
+    oldTestMap.findTestTargets(new File("/b/Lib.java"), null);
+    oldTestMap.findTestTargets(new File("/c/Lib.java"), null);
+
+    // The next sync changes one rule and removes another, sharing the rest of the map
+    PersistentMap<Label, RuleIdeInfo> newRuleMap = ruleMap
+      .plus(new Label("//b:test"), testRule("b", TestIdeInfo.TestSize.LARGE).build())
+      .minus(new Label("//c:lib"));
+    TestMap testMap = new TestMap(newRuleMap, TargetGraph.create(newRuleMap), oldTestMap.carryOver(newRuleMap));
+
+    assertThat(testMap.isDirectoryIndexed(new File("/a"))).isTrue();
+    assertThat(testMap.isDirectoryIndexed(new File("/b"))).isFalse();
+    assertThat(testMap.isDirectoryIndexed(new File("/c"))).isFalse();
+    assertThat(testMap.findTestTargets(new File("/b/Lib.java"), TestIdeInfo.TestSize.LARGE))
+      .containsExactly(new Label("//b:test"));
+  }
+
+  private RuleIdeInfo.Builder libraryWithTest(String pkg) {
+    return RuleIdeInfo.builder()
+      .setBuildFile(sourceRoot(pkg + "/BUILD"))
+      .setLabel("//" + pkg + ":lib")
+      .setKind("java_library")
+      .addSource(sourceRoot(pkg + "/Lib.java"));
+  }
+
+  private RuleIdeInfo.Builder testRule(String pkg, TestIdeInfo.TestSize testSize) {
+    return RuleIdeInfo.builder()
+      .setBuildFile(sourceRoot(pkg + "/BUILD"))
+      .setLabel("//" + pkg + ":test")
+      .setKind("java_test")
+      .setTestInfo(TestIdeInfo.builder().setTestSize(testSize))
+      .addDependency("//" + pkg + ":lib");
+  }
+
   private ArtifactLocation sourceRoot(String relativePath) {
     return ArtifactLocation.builder()
       .setRootPath("/")
@@ -0,0 +1,537 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.data;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.ideinfo.AndroidRuleIdeInfo;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.CRuleIdeInfo;
+import com.google.idea.blaze.base.ideinfo.CToolchainIdeInfo;
+import com.google.idea.blaze.base.ideinfo.JavaRuleIdeInfo;
+import com.google.idea.blaze.base.ideinfo.LibraryArtifact;
+import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
+import com.google.idea.blaze.base.ideinfo.RuleMapBuilder;
+import com.google.idea.blaze.base.ideinfo.TestIdeInfo;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.model.SyncState;
+import com.google.idea.blaze.base.model.primitives.ExecutionRootPath;
+import com.google.idea.blaze.base.model.primitives.Kind;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.model.primitives.LanguageClass;
+import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
+import com.google.idea.blaze.base.model.primitives.WorkspaceType;
+import com.google.idea.blaze.base.rulemaps.TargetGraph;
+import com.google.idea.blaze.base.sync.projectview.WorkspaceLanguageSettings;
+import com.google.idea.blaze.base.sync.workspace.BlazeRoots;
+import com.google.idea.blaze.base.sync.workspace.WorkspacePathResolverImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Round-trip tests for {@link BlazeProjectDataStore}.
+ */
+public class BlazeProjectDataStoreTest extends BlazeTestCase {
+  private static final List<ClassLoader> CLASS_LOADERS = ImmutableList.of(BlazeProjectDataStoreTest.class.getClassLoader());
+
+  private File tempDir;
+
+  @Before
+  public void createTempDir() throws IOException {
+    tempDir = Files.createTempDirectory("projectdata").toFile();
+  }
+
+  @After
+  public void deleteTempDir() {
+    File[] files = tempDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    tempDir.delete();
+  }
+
+  static class CodecPart implements Serializable {
+    final Map<Label, RuleIdeInfo> ruleMap;
+    final String value;
+
+    CodecPart(Map<Label, RuleIdeInfo> ruleMap, String value) {
+      this.ruleMap = ruleMap;
+      this.value = value;
+    }
+  }
+
+  static class SerializedPart implements Serializable {
+    final String value;
+
+    SerializedPart(String value) {
+      this.value = value;
+    }
+  }
+
+  static class CodecPartCodec extends SyncStateCodec<CodecPart> {
+    private final int version;
+
+    CodecPartCodec(int version) {
+      super(CodecPart.class);
+      this.version = version;
+    }
+
+    @Override
+    public int getVersion() {
+      return version;
+    }
+
+    @Override
+    public void write(ProjectDataOutput out, CodecPart state) throws IOException {
+      out.writeRuleMap(state.ruleMap);
+      out.writeString(state.value);
+    }
+
+    @Nullable
+    @Override
+    public CodecPart read(ProjectDataInput in) throws IOException {
+      return new CodecPart(in.readRuleMap(), in.readString());
+    }
+  }
+
+  @Test
+  public void testRoundTripIsLossless() throws Exception {
+    BlazeProjectData projectData = projectData(sampleRuleMap(), new SyncState.Builder().build());
+    List<SyncStateCodec> codecs = ImmutableList.of();
+
+    byte[] bytes = write(projectData, codecs, false);
+    BlazeProjectData loaded = read(bytes, codecs);
+
+    assertThat(write(loaded, codecs, false)).isEqualTo(bytes);
+    assertThat(loaded.syncTime).isEqualTo(projectData.syncTime);
+    assertThat(loaded.ruleMap.keySet()).containsExactlyElementsIn(projectData.ruleMap.keySet()).inOrder();
+    assertThat(loaded.targetGraph).isEqualTo(projectData.targetGraph);
+    assertThat(loaded.workspaceLanguageSettings).isEqualTo(projectData.workspaceLanguageSettings);
+    assertThat(loaded.blazeRoots.executionRoot).isEqualTo(projectData.blazeRoots.executionRoot);
+
+    RuleIdeInfo cRule = loaded.ruleMap.get(new Label("//c:lib"));
+    assertThat(cRule.kind).isEqualTo(Kind.CC_LIBRARY);
+    assertThat(cRule.cRuleIdeInfo.transitiveDefines).containsExactly("DEBUG", "VERSION=2").inOrder();
+    assertThat(cRule.cRuleIdeInfo.transitiveIncludeDirectories).containsExactly(new ExecutionRootPath("include"));
+
+    RuleIdeInfo toolchain = loaded.ruleMap.get(new Label("//c:toolchain"));
+    assertThat(toolchain.cToolchainIdeInfo).isEqualTo(projectData.ruleMap.get(new Label("//c:toolchain")).cToolchainIdeInfo);
+
+    RuleIdeInfo androidRule = loaded.ruleMap.get(new Label("//java/com/app:app"));
+    assertThat(androidRule.androidRuleIdeInfo.resourceJavaPackage).isEqualTo("com.app");
+    assertThat(androidRule.androidRuleIdeInfo.legacyResources).isEqualTo(new Label("//java/com/app:resources"));
+    assertThat(androidRule.javaRuleIdeInfo.jars).containsExactlyElementsIn(
+      projectData.ruleMap.get(new Label("//java/com/app:app")).javaRuleIdeInfo.jars);
+    assertThat(androidRule.testIdeInfo.testSize).isEqualTo(TestIdeInfo.TestSize.LARGE);
+  }
+
+  @Test
+  public void testCompressedRoundTrip() throws Exception {
+    BlazeProjectData projectData = projectData(sampleRuleMap(), new SyncState.Builder().build());
+    List<SyncStateCodec> codecs = ImmutableList.of();
+
+    byte[] uncompressed = write(projectData, codecs, false);
+    BlazeProjectData loaded = read(write(projectData, codecs, true), codecs);
+
+    assertThat(write(loaded, codecs, false)).isEqualTo(uncompressed);
+  }
+
+  @Test
+  public void testEqualLabelsShareOneInstance() throws Exception {
+    BlazeProjectData projectData = projectData(sampleRuleMap(), new SyncState.Builder().build());
+    List<SyncStateCodec> codecs = ImmutableList.of();
+
+    BlazeProjectData loaded = read(write(projectData, codecs, false), codecs);
+
+    Label fromRuleMap = loaded.ruleMap.get(new Label("//java/com/lib:lib")).label;
+    Label fromDependency = loaded.ruleMap.get(new Label("//java/com/app:app")).dependencies.iterator().next();
+    assertThat(fromDependency).isSameAs(fromRuleMap);
+  }
+
+  @Test
+  public void testSyncStatePartsWithAndWithoutCodec() throws Exception {
+    ImmutableMap<Label, RuleIdeInfo> ruleMap = sampleRuleMap();
+    SyncState syncState = new SyncState.Builder()
+      .put(CodecPart.class, new CodecPart(ruleMap, "codec"))
+      .put(SerializedPart.class, new SerializedPart("serialized"))
+      .build();
+    List<SyncStateCodec> codecs = ImmutableList.of(new CodecPartCodec(1));
+
+    BlazeProjectData loaded = read(write(projectData(ruleMap, syncState), codecs, false), codecs);
+
+    CodecPart codecPart = loaded.syncState.get(CodecPart.class);
+    assertThat(codecPart.value).isEqualTo("codec");
+    assertThat(codecPart.ruleMap).isSameAs(loaded.ruleMap);
+    assertThat(loaded.syncState.get(SerializedPart.class).value).isEqualTo("serialized");
+  }
+
+  @Test
+  public void testSharedRuleMapIsOnlyWrittenOnce() throws Exception {
+    ImmutableMap<Label, RuleIdeInfo> ruleMap = sampleRuleMap();
+    List<SyncStateCodec> codecs = ImmutableList.of(new CodecPartCodec(1));
+
+    byte[] withoutPart = write(projectData(ruleMap, new SyncState.Builder().build()), codecs, false);
+    byte[] withPart = write(projectData(ruleMap, new SyncState.Builder().put(CodecPart.class, new CodecPart(ruleMap, "")).build()),
+                            codecs, false);
+
+    assertThat(withPart.length - withoutPart.length).isLessThan(200);
+  }
+
+  @Test
+  public void testEqualRuleMapCopyIsWrittenSeparately() throws Exception {
+    ImmutableMap<Label, RuleIdeInfo> ruleMap = sampleRuleMap();
+    SyncState syncState = new SyncState.Builder()
+      .put(CodecPart.class, new CodecPart(Maps.newHashMap(ruleMap), "copy"))
+      .build();
+    List<SyncStateCodec> codecs = ImmutableList.of(new CodecPartCodec(1));
+
+    BlazeProjectData loaded = read(write(projectData(ruleMap, syncState), codecs, false), codecs);
+
+    CodecPart codecPart = loaded.syncState.get(CodecPart.class);
+    assertThat(codecPart.ruleMap).isNotSameAs(loaded.ruleMap);
+    assertThat(codecPart.ruleMap.keySet()).containsExactlyElementsIn(ruleMap.keySet());
+  }
+
+  @Test
+  public void testPartWithChangedCodecVersionIsDropped() throws Exception {
+    ImmutableMap<Label, RuleIdeInfo> ruleMap = sampleRuleMap();
+    SyncState syncState = new SyncState.Builder()
+      .put(CodecPart.class, new CodecPart(ruleMap, "codec"))
+      .put(SerializedPart.class, new SerializedPart("serialized"))
+      .build();
+
+    byte[] bytes = write(projectData(ruleMap, syncState), ImmutableList.of(new CodecPartCodec(1)), false);
+    BlazeProjectData loaded = read(bytes, ImmutableList.of(new CodecPartCodec(2)));
+
+    assertThat(loaded.syncState.get(CodecPart.class)).isNull();
+    assertThat(loaded.syncState.get(SerializedPart.class)).isNotNull();
+    assertThat(loaded.ruleMap).hasSize(ruleMap.size());
+  }
+
+  @Test
+  public void testPartWhoseCodecThrowsIsDropped() throws Exception {
+    ImmutableMap<Label, RuleIdeInfo> ruleMap = sampleRuleMap();
+    SyncState syncState = new SyncState.Builder()
+      .put(CodecPart.class, new CodecPart(ruleMap, "codec"))
+      .put(SerializedPart.class, new SerializedPart("serialized"))
+      .build();
+    CodecPartCodec throwingCodec = new CodecPartCodec(1) {
+      @Override
+      public CodecPart read(ProjectDataInput in) throws IOException {
+        throw new IllegalStateException("Corrupt part");
+      }
+    };
+
+    byte[] bytes = write(projectData(ruleMap, syncState), ImmutableList.of(new CodecPartCodec(1)), false);
+    BlazeProjectData loaded = read(bytes, ImmutableList.of(throwingCodec));
+
+    assertThat(loaded.syncState.get(CodecPart.class)).isNull();
+    assertThat(loaded.syncState.get(SerializedPart.class)).isNotNull();
+  }
+
+  @Test(expected = IOException.class)
+  public void testLegacyFileIsRejected() throws Exception {
+    BlazeProjectData projectData = projectData(sampleRuleMap(), new SyncState.Builder().build());
+    read(javaSerialize(projectData), ImmutableList.of());
+  }
+
+  @Test
+  public void testLegacyFileIsMigrated() throws Exception {
+    ImmutableMap<Label, RuleIdeInfo> ruleMap = sampleRuleMap();
+    BlazeProjectData projectData = projectData(ruleMap, new SyncState.Builder().put(SerializedPart.class, new SerializedPart("legacy")).build());
+    File legacyFile = new File(tempDir, "cache.dat");
+    Files.write(legacyFile.toPath(), javaSerialize(withoutTargetGraph(projectData)));
+
+    BlazeProjectData loaded = BlazeProjectDataStore.loadLegacy(legacyFile, CLASS_LOADERS);
+
+    assertThat(loaded.ruleMap.keySet()).isEqualTo(ruleMap.keySet());
+    assertThat(loaded.targetGraph).isEqualTo(projectData.targetGraph);
+    assertThat(loaded.syncState.get(SerializedPart.class).value).isEqualTo("legacy");
+    assertThat(BlazeProjectDataStore.loadLegacy(new File(tempDir, "missing.dat"), CLASS_LOADERS)).isNull();
+  }
+
+  @Test
+  public void testLegacySerialVersionIsKept() {
+    // Legacy caches were written with this version, a different one makes them unreadable
+    assertThat(ObjectStreamClass.lookup(BlazeProjectData.class).getSerialVersionUID()).isEqualTo(18L);
+  }
+
+  @Test(expected = IOException.class)
+  public void testTruncatedFileIsRejected() throws Exception {
+    BlazeProjectData projectData = projectData(sampleRuleMap(), new SyncState.Builder().build());
+    byte[] bytes = write(projectData, ImmutableList.of(), false);
+    byte[] truncated = new byte[bytes.length / 2];
+    System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+    read(truncated, ImmutableList.of());
+  }
+
+  @Test
+  public void testCompressedFileIsAnOrderOfMagnitudeSmallerThanJavaSerialization() throws Exception {
+    RuleMapBuilder builder = RuleMapBuilder.builder();
+    for (int i = 0; i < 2000; ++i) {
+      builder.addRule(javaRule("//java/com/pkg" + (i / 10) + ":target" + i, "//java/com/pkg" + (i / 20) + ":target" + (i / 2)));
+    }
+    BlazeProjectData projectData = projectData(builder.build(), new SyncState.Builder().build());
+
+    int javaSerializedSize = javaSerialize(projectData).length;
+    int binarySize = write(projectData, ImmutableList.of(), false).length;
+    int compressedSize = write(projectData, ImmutableList.of(), true).length;
+
+    // Project data is compressed by default. Java serialization also writes each interned label
+    // once, so without compression the file is only about half the size. Load times are compared in
+    // SerializationBenchmark.
+    assertThat(compressedSize).isLessThan(javaSerializedSize / 10);
+    assertThat(binarySize).isLessThan(javaSerializedSize * 2 / 3);
+  }
+
+  @Test
+  public void testSavedRuleMapIsLoadedLazily() throws Exception {
+    ImmutableMap<Label, RuleIdeInfo> ruleMap = sampleRuleMap();
+    SyncState syncState = new SyncState.Builder().put(CodecPart.class, new CodecPart(ruleMap, "codec")).build();
+    BlazeProjectData projectData = projectData(ruleMap, syncState);
+    List<SyncStateCodec> codecs = ImmutableList.of(new CodecPartCodec(1));
+    File file = new File(tempDir, "project.dat");
+
+    BlazeProjectDataStore.save(file, projectData, codecs, true);
+    BlazeProjectData loaded = BlazeProjectDataStore.load(file, codecs, CLASS_LOADERS);
+
+    assertThat(loaded.ruleMap).isInstanceOf(LazyRuleMap.class);
+    assertThat(loaded.ruleMap.keySet()).containsExactlyElementsIn(ruleMap.keySet()).inOrder();
+    assertThat(loaded.ruleMap.get(new Label("//not/a:rule"))).isNull();
+    assertThat(loaded.ruleMap.get(new Label("//c:lib"))).isSameAs(loaded.ruleMap.get(new Label("//c:lib")));
+    assertThat(loaded.syncState.get(CodecPart.class).ruleMap).isSameAs(loaded.ruleMap);
+    assertThat(write(loaded, codecs, false)).isEqualTo(write(projectData, codecs, false));
+  }
+
+  @Test
+  public void testLazyRuleMapScansReuseCachedRules() throws Exception {
+    File file = new File(tempDir, "project.dat");
+    BlazeProjectDataStore.save(file, projectData(sampleRuleMap(), new SyncState.Builder().build()), ImmutableList.of(), false);
+    BlazeProjectData loaded = BlazeProjectDataStore.load(file, ImmutableList.of(), CLASS_LOADERS);
+
+    RuleIdeInfo lookedUp = loaded.ruleMap.get(new Label("//c:lib"));
+    List<RuleIdeInfo> firstScan = ImmutableList.copyOf(loaded.ruleMap.values());
+    List<RuleIdeInfo> secondScan = ImmutableList.copyOf(loaded.ruleMap.values());
+
+    assertThat(firstScan).hasSize(loaded.ruleMap.size());
+    for (int i = 0; i < firstScan.size(); ++i) {
+      assertThat(secondScan.get(i)).isSameAs(firstScan.get(i));
+    }
+    assertThat(firstScan).contains(lookedUp);
+    assertThat(loaded.ruleMap.get(new Label("//c:lib"))).isSameAs(lookedUp);
+    assertThat(loaded.ruleMap.entrySet()).contains(Maps.immutableEntry(new Label("//c:lib"), lookedUp));
+  }
+
+  @Test
+  public void testLazyRuleMapSerializesAsCopy() throws Exception {
+    File file = new File(tempDir, "project.dat");
+    BlazeProjectDataStore.save(file, projectData(sampleRuleMap(), new SyncState.Builder().build()), ImmutableList.of(), false);
+    BlazeProjectData loaded = BlazeProjectDataStore.load(file, ImmutableList.of(), CLASS_LOADERS);
+
+    Object copy = new ObjectInputStream(new ByteArrayInputStream(javaSerialize((Serializable)loaded.ruleMap))).readObject();
+
+    assertThat(copy).isInstanceOf(ImmutableMap.class);
+    assertThat(((Map<?, ?>)copy).keySet()).containsExactlyElementsIn(loaded.ruleMap.keySet()).inOrder();
+  }
+
+  @Test
+  public void testStaleRuleIndexIsDeletedOnSave() throws Exception {
+    File file = new File(tempDir, "project.dat");
+    BlazeProjectData projectData = projectData(sampleRuleMap(), new SyncState.Builder().build());
+
+    BlazeProjectDataStore.save(file, projectData, ImmutableList.of(), false);
+    BlazeProjectDataStore.save(file, projectData, ImmutableList.of(), false);
+
+    String[] ruleIndexFiles = tempDir.list((dir, name) -> name.endsWith(".rules"));
+    assertThat(ruleIndexFiles).hasLength(1);
+  }
+
+  @Test(expected = IOException.class)
+  public void testMismatchedRuleIndexIsRejected() throws Exception {
+    File file = new File(tempDir, "project.dat");
+    BlazeProjectData projectData = projectData(sampleRuleMap(), new SyncState.Builder().build());
+    BlazeProjectDataStore.save(file, projectData, ImmutableList.of(), false);
+    File ruleIndexFile = tempDir.listFiles((dir, name) -> name.endsWith(".rules"))[0];
+
+    // Simulate an index left behind by a different save
+    byte[] bytes = Files.readAllBytes(ruleIndexFile.toPath());
+    bytes[8] ^= 1;
+    Files.write(ruleIndexFile.toPath(), bytes);
+
+    BlazeProjectDataStore.load(file, ImmutableList.of(), CLASS_LOADERS);
+  }
+
+  private static byte[] write(BlazeProjectData projectData, Collection<SyncStateCodec> codecs, boolean compress) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BlazeProjectDataStore.write(out, projectData, codecs, compress);
+    return out.toByteArray();
+  }
+
+  private static BlazeProjectData read(byte[] bytes, Collection<SyncStateCodec> codecs) throws IOException {
+    return BlazeProjectDataStore.read(new ByteArrayInputStream(bytes), codecs, CLASS_LOADERS);
+  }
+
+  private static byte[] javaSerialize(Serializable serializable) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(out)) {
+      objectOutputStream.writeObject(serializable);
+    }
+    return out.toByteArray();
+  }
+
+  private static BlazeProjectData projectData(ImmutableMap<Label, RuleIdeInfo> ruleMap, SyncState syncState) {
+    File executionRoot = new File("/root/execroot");
+    WorkspaceRoot workspaceRoot = new WorkspaceRoot(new File("/root/workspace"));
+    return new BlazeProjectData(
+      1234L,
+      ruleMap,
+      new BlazeRoots(
+        executionRoot,
+        ImmutableList.of(workspaceRoot.directory()),
+        new ExecutionRootPath("blaze-out/bin"),
+        new ExecutionRootPath("blaze-out/genfiles")
+      ),
+      null,
+      new WorkspacePathResolverImpl(workspaceRoot),
+      new WorkspaceLanguageSettings(WorkspaceType.JAVA, ImmutableSet.of(LanguageClass.JAVA, LanguageClass.C)),
+      syncState,
+      TargetGraph.create(ruleMap)
+    );
+  }
+
+  /**
+   * Legacy project data predates the target graph.
+   */
+  private static BlazeProjectData withoutTargetGraph(BlazeProjectData projectData) {
+    return new BlazeProjectData(
+      projectData.syncTime,
+      projectData.ruleMap,
+      projectData.blazeRoots,
+      projectData.workingSet,
+      projectData.workspacePathResolver,
+      projectData.workspaceLanguageSettings,
+      projectData.syncState,
+      null
+    );
+  }
+
+  private static ImmutableMap<Label, RuleIdeInfo> sampleRuleMap() {
+    return RuleMapBuilder.builder()
+      .addRule(RuleIdeInfo.builder()
+                 .setLabel("//java/com/lib:lib")
+                 .setKind("java_library")
+                 .setBuildFile(source("java/com/lib/BUILD"))
+                 .addSource(source("java/com/lib/Lib.java"))
+                 .setJavaInfo(JavaRuleIdeInfo.builder()
+                                .addJar(LibraryArtifact.builder()
+                                          .setJar(generated("java/com/lib/liblib-ijar.jar"))
+                                          .setRuntimeJar(generated("java/com/lib/liblib.jar"))
+                                          .setSourceJar(generated("java/com/lib/liblib-src.jar")))))
+      .addRule(RuleIdeInfo.builder()
+                 .setLabel("//java/com/app:app")
+                 .setKind("android_test")
+                 .setBuildFile(source("java/com/app/BUILD"))
+                 .addSource(source("java/com/app/App.java"))
+                 .addDependency("//java/com/lib:lib")
+                 .addRuntimeDep("//java/com/lib:lib")
+                 .addTag("manual")
+                 .setJavaInfo(JavaRuleIdeInfo.builder()
+                                .addJar(LibraryArtifact.builder().setJar(generated("java/com/app/app.jar")))
+                                .addGeneratedJar(LibraryArtifact.builder().setJar(generated("java/com/app/app-gen.jar"))))
+                 .setAndroidInfo(AndroidRuleIdeInfo.builder()
+                                   .setManifestFile(source("java/com/app/AndroidManifest.xml"))
+                                   .addResource(source("java/com/app/res"))
+                                   .setResourceJavaPackage("com.app")
+                                   .setGenerateResourceClass(true)
+                                   .setLegacyResources(new Label("//java/com/app:resources")))
+                 .setTestInfo(TestIdeInfo.builder().setTestSize(TestIdeInfo.TestSize.LARGE)))
+      .addRule(RuleIdeInfo.builder()
+                 .setLabel("//c:lib")
+                 .setKind("cc_library")
+                 .addDependency("//c:toolchain")
+                 .setCInfo(CRuleIdeInfo.builder()
+                             .addSources(ImmutableList.of(source("c/lib.cc")))
+                             .addTransitiveIncludeDirectories(ImmutableList.of(new ExecutionRootPath("include")))
+                             .addTransitiveDefines(ImmutableList.of("DEBUG", "VERSION=2"))))
+      .addRule(RuleIdeInfo.builder()
+                 .setLabel("//c:toolchain")
+                 .setKind("cc_toolchain")
+                 .setCToolchainInfo(CToolchainIdeInfo.builder()
+                                      .addBaseCompilerOptions(ImmutableList.of("-Wall"))
+                                      .addCppCompilerOptions(ImmutableList.of("-std=c++11"))
+                                      .addBuiltInIncludeDirectories(ImmutableList.of(new ExecutionRootPath("/usr/include")))
+                                      .setCppExecutable(new ExecutionRootPath("/usr/bin/gcc"))
+                                      .setPreprocessorExecutable(new ExecutionRootPath("/usr/bin/cpp"))
+                                      .setTargetName("k8")))
+      .addRule(RuleIdeInfo.builder()
+                 .setLabel("//unknown:kind")
+                 .setKind("unknown_kind"))
+      .build();
+  }
+
+  private static RuleIdeInfo.Builder javaRule(String label, String dependency) {
+    String path = label.substring(2).replace(':', '/');
+    return RuleIdeInfo.builder()
+      .setLabel(label)
+      .setKind("java_library")
+      .setBuildFile(source(path.substring(0, path.lastIndexOf('/')) + "/BUILD"))
+      .addSource(source(path + ".java"))
+      .addDependency(dependency)
+      .setJavaInfo(JavaRuleIdeInfo.builder()
+                     .addJar(LibraryArtifact.builder()
+                               .setJar(generated(path + "-ijar.jar"))
+                               .setRuntimeJar(generated(path + ".jar"))));
+  }
+
+  private static ArtifactLocation source(String relativePath) {
+    return ArtifactLocation.builder()
+      .setRootPath("/root/workspace")
+      .setRelativePath(relativePath)
+      .setIsSource(true)
+      .build();
+  }
+
+  private static ArtifactLocation generated(String relativePath) {
+    return ArtifactLocation.builder()
+      .setRootPath("/root/execroot/blaze-out/bin")
+      .setRootExecutionPathFragment("blaze-out/bin")
+      .setRelativePath(relativePath)
+      .setIsSource(false)
+      .build();
+  }
+}
@@ -18,16 +18,19 @@ package com.google.idea.blaze.base.sync.filediff;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.idea.blaze.base.BlazeTestCase;
 import com.google.idea.blaze.base.async.executor.BlazeExecutor;
 import com.google.idea.blaze.base.async.executor.MockBlazeExecutor;
 import com.google.idea.blaze.base.experiments.ExperimentService;
 import com.google.idea.blaze.base.experiments.MockExperimentService;
 import com.google.idea.blaze.base.io.FileAttributeProvider;
+import com.google.idea.blaze.base.io.FileStat;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -37,21 +40,41 @@ import static com.google.common.truth.Truth.assertThat;
  * Tests for FileDiffService
  */
 public class FileDiffServiceTest extends BlazeTestCase {
+  private MockExperimentService experimentService;
   private MockFileAttributeProvider fileModificationProvider;
   private FileDiffService fileDiffService;
 
   private static class MockFileAttributeProvider extends FileAttributeProvider {
-    List<Long> times = Lists.newArrayList();
+    List<FileStat> stats = Lists.newArrayList();
+    Map<File, Long> contentHashes = Maps.newHashMap();
     int index;
 
     public MockFileAttributeProvider add(long time) {
-      times.add(time);
+      return add(time, 0, 0);
+    }
+
+    public MockFileAttributeProvider add(long time, long size, int fileKey) {
+      stats.add(new FileStat(time, size, fileKey));
       return this;
     }
 
     @Override
     public long getFileModifiedTime(@NotNull File file) {
-      return times.get(index++);
+      return stats.get(index++).modifiedTime;
+    }
+
+    @Override
+    public FileStat getFileStat(@NotNull File file) {
+      return stats.get(index++);
+    }
+
+    @Override
+    public long getContentHash(@NotNull File file) throws IOException {
+      Long contentHash = contentHashes.get(file);
+      if (contentHash == null) {
+        throw new IOException("No contents for " + file);
+      }
+      return contentHash;
     }
   }
 
@@ -59,7 +82,8 @@ public class FileDiffServiceTest extends BlazeTestCase {
   protected void initTest(@NotNull Container applicationServices,
                           @NotNull Container projectServices) {
     super.initTest(applicationServices, projectServices);
-    applicationServices.register(ExperimentService.class, new MockExperimentService());
+    this.experimentService = new MockExperimentService();
+    applicationServices.register(ExperimentService.class, experimentService);
     applicationServices.register(BlazeExecutor.class, new MockBlazeExecutor());
 
     this.fileModificationProvider = new MockFileAttributeProvider();
@@ -92,6 +116,113 @@ public class FileDiffServiceTest extends BlazeTestCase {
     assertThat(removedFiles).containsExactly(new File("file3"));
   }
 
+  @Test
+  public void testSizeOrIdentityChangeWithSameTimestampIsDetected() throws Exception {
+    FileDiffService.FileEntry file1 = fileEntry("file1", 13);
+    file1.size = 100;
+    FileDiffService.FileEntry file2 = fileEntry("file2", 17);
+    file2.size = 200;
+    file2.fileKey = 5;
+    FileDiffService.FileEntry file3 = fileEntry("file3", 21);
+    file3.size = 300;
+    file3.fileKey = 7;
+    FileDiffService.State oldState = new FileDiffService.State();
+    oldState.fileEntryMap = fileMap(file1, file2, file3);
+    List<File> fileList = ImmutableList.of(new File("file1"), new File("file2"), new File("file3"));
+    fileModificationProvider
+      .add(13, 101, 0)
+      .add(17, 200, 6)
+      .add(21, 300, 7);
+
+    List<File> newFiles = Lists.newArrayList();
+    List<File> removedFiles = Lists.newArrayList();
+    FileDiffService.State newState = fileDiffService.updateFiles(oldState, fileList, newFiles, removedFiles);
+
+    assertThat(newFiles).containsExactly(new File("file1"), new File("file2"));
+    assertThat(removedFiles).isEmpty();
+    assertThat(newState.fileEntryMap.get(new File("file2")).fileKey).isEqualTo(6);
+  }
+
+  @Test
+  public void testContentHashKeepsRewrittenIdenticalFileUnchanged() throws Exception {
+    experimentService.setExperiment(FileDiffService.CONTENT_HASH_FALLBACK, true);
+    FileDiffService.FileEntry file1 = fileEntry("file1", 13);
+    file1.size = 100;
+    file1.contentHash = 42;
+    FileDiffService.FileEntry file2 = fileEntry("file2", 17);
+    file2.size = 200;
+    file2.contentHash = 43;
+    FileDiffService.State oldState = new FileDiffService.State();
+    oldState.fileEntryMap = fileMap(file1, file2);
+    List<File> fileList = ImmutableList.of(new File("file1"), new File("file2"), new File("file3"));
+    fileModificationProvider
+      .add(14, 100, 0)
+      .add(18, 200, 0)
+      .add(19, 300, 0);
+    fileModificationProvider.contentHashes.put(new File("file1"), 42L);
+    fileModificationProvider.contentHashes.put(new File("file2"), 99L);
+    fileModificationProvider.contentHashes.put(new File("file3"), 44L);
+
+    List<File> newFiles = Lists.newArrayList();
+    List<File> removedFiles = Lists.newArrayList();
+    FileDiffService.State newState = fileDiffService.updateFiles(oldState, fileList, newFiles, removedFiles);
+
+    assertThat(newFiles).containsExactly(new File("file2"), new File("file3"));
+    assertThat(newState.fileEntryMap.get(new File("file1")).timestamp).isEqualTo(14);
+    assertThat(newState.fileEntryMap.get(new File("file3")).contentHash).isEqualTo(44);
+  }
+
+  @Test
+  public void testKnownDiffResultsAreNotStatedAgain() throws Exception {
+    FileDiffService.State oldState = new FileDiffService.State();
+    oldState.fileEntryMap = fileMap(
+      fileEntry("file1", 13),
+      fileEntry("file2", 17)
+    );
+    fileModificationProvider.add(18).add(13);
+
+    FileDiffService.DiffResult diffResult = fileDiffService.diff(oldState, new File("file2"));
+    assertThat(diffResult.isChanged()).isTrue();
+
+    List<File> newFiles = Lists.newArrayList();
+    List<File> removedFiles = Lists.newArrayList();
+    FileDiffService.State newState = fileDiffService.updateFiles(
+      oldState,
+      ImmutableList.of(new File("file1"), new File("file2")),
+      newFiles,
+      removedFiles,
+      ImmutableMap.of(new File("file2"), diffResult)
+    );
+
+    assertThat(fileModificationProvider.index).isEqualTo(2);
+    assertThat(newFiles).containsExactly(new File("file2"));
+    assertThat(newState.fileEntryMap.get(new File("file2")).timestamp).isEqualTo(18);
+  }
+
+  @Test
+  public void testUpdateChangedFilesOnlyStatsChangedFiles() throws Exception {
+    FileDiffService.State oldState = new FileDiffService.State();
+    oldState.fileEntryMap = fileMap(
+      fileEntry("file1", 13),
+      fileEntry("file2", 17),
+      fileEntry("file3", 21)
+    );
+    fileModificationProvider.add(18).add(30);
+
+    List<File> newFiles = Lists.newArrayList();
+    FileDiffService.State newState = fileDiffService.updateChangedFiles(
+      oldState,
+      ImmutableList.of(new File("file2"), new File("file4")),
+      ImmutableList.of(new File("file3")),
+      newFiles
+    );
+
+    assertThat(fileModificationProvider.index).isEqualTo(2);
+    assertThat(newFiles).containsExactly(new File("file2"), new File("file4"));
+    assertThat(newState.fileEntryMap.keySet()).containsExactly(new File("file1"), new File("file2"), new File("file4"));
+    assertThat(newState.fileEntryMap.get(new File("file1")).timestamp).isEqualTo(13);
+  }
+
   static Map<File, FileDiffService.FileEntry> fileMap(FileDiffService.FileEntry... fileEntries) {
     ImmutableMap.Builder<File, FileDiffService.FileEntry> builder = ImmutableMap.builder();
     for (FileDiffService.FileEntry fileEntry : fileEntries) {
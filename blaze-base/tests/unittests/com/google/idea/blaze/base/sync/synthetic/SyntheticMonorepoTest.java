@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.synthetic;
+
+import com.google.common.collect.ImmutableList;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.model.primitives.Kind;
+import com.google.idea.blaze.base.sync.aspects.AspectStrategy;
+import com.google.idea.blaze.base.sync.synthetic.SyntheticMonorepo.Target;
+import com.google.repackaged.devtools.build.lib.ideinfo.androidstudio.AndroidStudioIdeInfo;
+import com.google.repackaged.devtools.build.lib.view.proto.Deps;
+import com.intellij.openapi.util.io.FileUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link SyntheticMonorepo}.
+ */
+public class SyntheticMonorepoTest extends BlazeTestCase {
+  private File tempDir;
+
+  @Before
+  public void createTempDir() throws IOException {
+    tempDir = Files.createTempDirectory("synthetic").toFile();
+  }
+
+  @After
+  public void deleteTempDir() {
+    FileUtil.delete(tempDir);
+  }
+
+  private SyntheticMonorepo.Builder mixedBuilder() {
+    return SyntheticMonorepo.builder()
+      .setPackageCount(30)
+      .setTargetsPerPackage(5)
+      .setFanOut(3)
+      .setLanguageMix(2, 1, 1)
+      .setSeed(7);
+  }
+
+  @Test
+  public void testGenerationIsDeterministic() {
+    SyntheticMonorepo first = mixedBuilder().build(tempDir);
+    SyntheticMonorepo second = mixedBuilder().build(tempDir);
+    SyntheticMonorepo otherSeed = mixedBuilder().setSeed(8).build(tempDir);
+
+    assertThat(second.createRuleProtos()).isEqualTo(first.createRuleProtos());
+    assertThat(otherSeed.createRuleProtos()).isNotEqualTo(first.createRuleProtos());
+  }
+
+  @Test
+  public void testTargetCounts() {
+    SyntheticMonorepo monorepo = mixedBuilder().build(tempDir);
+
+    int toolchains = 0;
+    int tests = 0;
+    for (Target target : monorepo.getTargets()) {
+      if (target.kind == Kind.CC_TOOLCHAIN) {
+        ++toolchains;
+      }
+      if (target.testSize != null) {
+        ++tests;
+      }
+    }
+    assertThat(toolchains).isEqualTo(1);
+    assertThat(monorepo.getTargets()).hasSize(30 * 5 + toolchains);
+    assertThat(tests).isGreaterThan(0);
+    assertThat(monorepo.createRuleMap()).hasSize(monorepo.getTargets().size());
+  }
+
+  @Test
+  public void testDependenciesPointBackToCompatibleLibraries() {
+    SyntheticMonorepo monorepo = mixedBuilder().build(tempDir);
+    List<Target> targets = monorepo.getTargets();
+
+    for (int i = 0; i < targets.size(); ++i) {
+      Target target = targets.get(i);
+      for (Target dependency : target.dependencies) {
+        assertThat(targets.indexOf(dependency)).isLessThan(i);
+        assertThat(dependency.testSize).isNull();
+        switch (target.kind) {
+          case CC_LIBRARY:
+          case CC_TEST:
+            assertThat(ImmutableList.of(Kind.CC_LIBRARY, Kind.CC_TOOLCHAIN)).contains(dependency.kind);
+            break;
+          case ANDROID_LIBRARY:
+            assertThat(ImmutableList.of(Kind.JAVA_LIBRARY, Kind.ANDROID_LIBRARY)).contains(dependency.kind);
+            break;
+          default:
+            assertThat(dependency.kind).isEqualTo(Kind.JAVA_LIBRARY);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testWrittenOutputsParseBack() throws IOException {
+    SyntheticMonorepo monorepo = mixedBuilder().build(tempDir);
+    monorepo.write();
+
+    for (Target target : monorepo.getTargets()) {
+      AndroidStudioIdeInfo.RuleIdeInfo expected = monorepo.createRuleProto(target);
+      assertThat(AspectStrategy.NATIVE_ASPECT.readAspectFile(monorepo.aspectOutputFile(target, AspectStrategy.NATIVE_ASPECT)))
+        .isEqualTo(expected);
+      assertThat(AspectStrategy.SKYLARK_ASPECT.readAspectFile(monorepo.aspectOutputFile(target, AspectStrategy.SKYLARK_ASPECT)))
+        .isEqualTo(expected);
+
+      if (expected.hasJavaRuleIdeInfo()) {
+        File jdepsFile = monorepo.getArtifactLocationDecoder().decode(expected.getJavaRuleIdeInfo().getJdeps()).getFile();
+        try (InputStream inputStream = new FileInputStream(jdepsFile)) {
+          assertThat(Deps.Dependencies.parseFrom(inputStream)).isEqualTo(monorepo.createJdeps(target));
+        }
+      }
+      File buildFile = new File(monorepo.getWorkspaceRoot().directory(), target.packagePath + "/BUILD");
+      assertThat(new String(Files.readAllBytes(buildFile.toPath()), "UTF-8")).contains("name = \"" + target.name + "\"");
+    }
+    assertThat(monorepo.getBlazeBinary().canExecute()).isTrue();
+  }
+}
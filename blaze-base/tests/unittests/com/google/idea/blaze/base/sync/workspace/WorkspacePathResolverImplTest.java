@@ -51,4 +51,18 @@ public class WorkspacePathResolverImplTest extends BlazeTestCase {
     );
     assertThat(files).containsExactly(new File("/path/to/root/blaze-out/crosstool/bin/tools/fast"));
   }
+
+  @Test
+  public void testEqualityFollowsWorkspaceAndPackagePaths() {
+    WorkspacePathResolver first = new WorkspacePathResolverImpl(WORKSPACE_ROOT, BLAZE_CITC_ROOTS);
+    WorkspacePathResolver second = new WorkspacePathResolverImpl(WORKSPACE_ROOT, ImmutableList.of(WORKSPACE_ROOT.directory()));
+    WorkspacePathResolver otherPackagePath = new WorkspacePathResolverImpl(
+      WORKSPACE_ROOT,
+      ImmutableList.of(WORKSPACE_ROOT.directory(), new File("/path/to/READONLY/root"))
+    );
+
+    assertThat(first).isEqualTo(second);
+    assertThat(first.hashCode()).isEqualTo(second.hashCode());
+    assertThat(first).isNotEqualTo(otherPackagePath);
+  }
 }
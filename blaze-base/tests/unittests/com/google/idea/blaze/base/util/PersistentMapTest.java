@@ -0,0 +1,195 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.util;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link PersistentMap}.
+ */
+@RunWith(JUnit4.class)
+public class PersistentMapTest {
+
+  /**
+   * Key with a controllable hash code, to force collisions.
+   */
+  static class Key implements Serializable {
+    final int hash;
+    final String name;
+
+    Key(int hash, String name) {
+      this.hash = hash;
+      this.name = name;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Key && ((Key)o).hash == hash && ((Key)o).name.equals(name);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public String toString() {
+      return name + "#" + hash;
+    }
+  }
+
+  @Test
+  public void testMatchesHashMapUnderRandomOperations() {
+    Random random = new Random(42);
+    Map<Key, Integer> expected = Maps.newHashMap();
+    PersistentMap<Key, Integer> map = PersistentMap.of();
+    for (int i = 0; i < 20000; ++i) {
+      // Few distinct hashes, so collision nodes are exercised as well
+      Key key = new Key(random.nextInt(500) * 0x10001, "k" + random.nextInt(3));
+      if (random.nextInt(3) == 0) {
+        expected.remove(key);
+        map = map.minus(key);
+      }
+      else {
+        expected.put(key, i);
+        map = map.plus(key, i);
+      }
+    }
+    assertThat(map).isEqualTo(expected);
+    assertThat(map.size()).isEqualTo(expected.size());
+    for (Key key : expected.keySet()) {
+      assertThat(map.get(key)).isEqualTo(expected.get(key));
+    }
+    assertThat(map.get(new Key(-1, "missing"))).isNull();
+  }
+
+  @Test
+  public void testOriginalIsUnchangedByUpdates() {
+    PersistentMap<String, Integer> original = PersistentMap.<String, Integer>builder()
+      .put("a", 1)
+      .put("b", 2)
+      .build();
+
+    PersistentMap<String, Integer> updated = original.plus("c", 3).minus("a");
+
+    assertThat(original).isEqualTo(ImmutableMap.of("a", 1, "b", 2));
+    assertThat(updated).isEqualTo(ImmutableMap.of("b", 2, "c", 3));
+  }
+
+  @Test
+  public void testNoOpUpdatesReturnSameInstance() {
+    PersistentMap<String, Integer> map = PersistentMap.<String, Integer>of().plus("a", 1);
+    Integer value = map.get("a");
+
+    assertThat(map.plus("a", value)).isSameAs(map);
+    assertThat(map.minus("b")).isSameAs(map);
+    assertThat(map.minus("a")).isSameAs(PersistentMap.of());
+  }
+
+  @Test
+  public void testBuilderDoesNotChangeBuiltMap() {
+    PersistentMap.Builder<Integer, Integer> builder = PersistentMap.builder();
+    for (int i = 0; i < 1000; ++i) {
+      builder.put(i, i);
+    }
+    PersistentMap<Integer, Integer> first = builder.build();
+    for (int i = 0; i < 1000; i += 2) {
+      builder.remove(i);
+    }
+    builder.put(5000, 5000);
+    PersistentMap<Integer, Integer> second = builder.build();
+
+    assertThat(first).hasSize(1000);
+    assertThat(first.get(0)).isEqualTo(0);
+    assertThat(second).hasSize(501);
+    assertThat(second.get(0)).isNull();
+    assertThat(second.get(5000)).isEqualTo(5000);
+  }
+
+  @Test
+  public void testDiffReportsOnlyChanges() {
+    PersistentMap.Builder<Key, Integer> builder = PersistentMap.builder();
+    for (int i = 0; i < 5000; ++i) {
+      builder.put(new Key(i % 2000, "k" + i), i);
+    }
+    PersistentMap<Key, Integer> before = builder.build();
+    PersistentMap<Key, Integer> after = before.toBuilder()
+      .remove(new Key(1, "k1"))
+      .put(new Key(2, "k2"), -2)
+      .put(new Key(7, "new"), 7)
+      .build();
+
+    List<String> changes = Lists.newArrayList();
+    PersistentMap.diff(before, after, new PersistentMap.DifferenceVisitor<Key, Integer>() {
+      @Override
+      public void added(Key key, Integer value) {
+        changes.add("+" + key);
+      }
+
+      @Override
+      public void removed(Key key, Integer value) {
+        changes.add("-" + key);
+      }
+
+      @Override
+      public void changed(Key key, Integer oldValue, Integer newValue) {
+        changes.add("~" + key + "=" + newValue);
+      }
+    });
+
+    assertThat(changes).containsExactly("-k1#1", "~k2#2=-2", "+new#7");
+  }
+
+  @Test
+  public void testCopyOfPersistentMapIsIdentity() {
+    PersistentMap<String, String> map = PersistentMap.<String, String>of().plus("a", "b");
+    assertThat(PersistentMap.copyOf(map)).isSameAs(map);
+  }
+
+  @Test
+  public void testSerialization() throws Exception {
+    PersistentMap.Builder<Key, String> builder = PersistentMap.builder();
+    for (int i = 0; i < 100; ++i) {
+      builder.put(new Key(i % 10, "k" + i), "v" + i);
+    }
+    PersistentMap<Key, String> map = builder.build();
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(map);
+    }
+    Object copy = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+    assertThat(copy).isInstanceOf(PersistentMap.class);
+    assertThat(copy).isEqualTo(map);
+  }
+}
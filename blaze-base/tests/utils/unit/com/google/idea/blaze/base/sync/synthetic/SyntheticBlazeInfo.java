@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.synthetic;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.idea.blaze.base.command.info.BlazeInfo;
+import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
+import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.settings.Blaze.BuildSystem;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Answers blaze info for a {@link SyntheticMonorepo} in process, without running its fake binary.
+ */
+public class SyntheticBlazeInfo extends BlazeInfo {
+  private final SyntheticMonorepo monorepo;
+
+  public SyntheticBlazeInfo(SyntheticMonorepo monorepo) {
+    this.monorepo = monorepo;
+  }
+
+  @Override
+  public ListenableFuture<String> runBlazeInfo(@Nullable BlazeContext context,
+                                               BuildSystem buildSystem,
+                                               WorkspaceRoot workspaceRoot,
+                                               List<String> blazeFlags,
+                                               String key) {
+    return Futures.immediateFuture(monorepo.getBlazeInfo(buildSystem).get(key));
+  }
+
+  @Override
+  public ListenableFuture<byte[]> runBlazeInfoGetBytes(@Nullable BlazeContext context,
+                                                       BuildSystem buildSystem,
+                                                       WorkspaceRoot workspaceRoot,
+                                                       List<String> blazeFlags,
+                                                       String key) {
+    String value = monorepo.getBlazeInfo(buildSystem).get(key);
+    return Futures.immediateFuture(value != null ? value.getBytes(StandardCharsets.UTF_8) : null);
+  }
+
+  @Override
+  public ListenableFuture<ImmutableMap<String, String>> runBlazeInfo(@Nullable BlazeContext context,
+                                                                     BuildSystem buildSystem,
+                                                                     WorkspaceRoot workspaceRoot,
+                                                                     List<String> blazeFlags) {
+    return Futures.immediateFuture(monorepo.getBlazeInfo(buildSystem));
+  }
+}
@@ -0,0 +1,740 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.synthetic;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.idea.blaze.base.command.info.BlazeInfo;
+import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
+import com.google.idea.blaze.base.model.primitives.ExecutionRootPath;
+import com.google.idea.blaze.base.model.primitives.Kind;
+import com.google.idea.blaze.base.model.primitives.LanguageClass;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.model.primitives.WorkspacePath;
+import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
+import com.google.idea.blaze.base.model.primitives.WorkspaceType;
+import com.google.idea.blaze.base.settings.Blaze.BuildSystem;
+import com.google.idea.blaze.base.sync.aspects.AspectStrategy;
+import com.google.idea.blaze.base.sync.aspects.IdeInfoFromProtobuf;
+import com.google.idea.blaze.base.sync.projectview.WorkspaceLanguageSettings;
+import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
+import com.google.idea.blaze.base.sync.workspace.BlazeRoots;
+import com.google.idea.blaze.base.sync.workspace.WorkspacePathResolverImpl;
+import com.google.repackaged.devtools.build.lib.ideinfo.androidstudio.AndroidStudioIdeInfo;
+import com.google.repackaged.devtools.build.lib.view.proto.Deps;
+import com.google.repackaged.protobuf.TextFormat;
+
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A deterministic synthetic blaze workspace, for scale tests and benchmarks.
+ *
+ * <p>The workspace has a number of packages with the same number of targets each. Every package
+ * holds targets of one language, picked by weight: java packages hold java_library rules, C++
+ * packages cc_library rules and android packages android_library rules. The last target of each
+ * java and C++ package is a test. Every target depends on up to {@code fanOut} earlier targets of a
+ * language it can depend on, so the graph is acyclic. C++ targets also depend on a single
+ * cc_toolchain.
+ *
+ * <p>{@link #write} lays the workspace out on disk together with everything a build of it would
+ * produce: aspect output in both the native and the skylark format, jdeps files, and a fake blaze
+ * binary that answers {@code blaze info} and prints the artifacts of a {@code blaze build}.
+ */
+public final class SyntheticMonorepo {
+  public static final String BIN_PATH = "blaze-out/k8-fastbuild/bin";
+  public static final String GENFILES_PATH = "blaze-out/k8-fastbuild/genfiles";
+  public static final Label TOOLCHAIN_LABEL = Label.create("//tools/cpp:toolchain");
+
+  private static final int PACKAGES_PER_GROUP = 100;
+  private static final List<AspectStrategy> ASPECT_STRATEGIES = ImmutableList.of(
+    AspectStrategy.NATIVE_ASPECT,
+    AspectStrategy.SKYLARK_ASPECT
+  );
+
+  /**
+   * Configures a {@link SyntheticMonorepo}.
+   */
+  public static final class Builder {
+    private int packageCount = 100;
+    private int targetsPerPackage = 10;
+    private int fanOut = 4;
+    private int javaWeight = 1;
+    private int cppWeight = 0;
+    private int androidWeight = 0;
+    private long seed = 0x5eed;
+
+    private Builder() {
+    }
+
+    public Builder setPackageCount(int packageCount) {
+      this.packageCount = packageCount;
+      return this;
+    }
+
+    public Builder setTargetsPerPackage(int targetsPerPackage) {
+      this.targetsPerPackage = targetsPerPackage;
+      return this;
+    }
+
+    public Builder setFanOut(int fanOut) {
+      this.fanOut = fanOut;
+      return this;
+    }
+
+    /**
+     * Sets the relative share of java, C++ and android packages.
+     */
+    public Builder setLanguageMix(int javaWeight, int cppWeight, int androidWeight) {
+      if (javaWeight < 0 || cppWeight < 0 || androidWeight < 0 || javaWeight + cppWeight + androidWeight == 0) {
+        throw new IllegalArgumentException("Invalid language mix");
+      }
+      this.javaWeight = javaWeight;
+      this.cppWeight = cppWeight;
+      this.androidWeight = androidWeight;
+      return this;
+    }
+
+    public Builder setSeed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    /**
+     * @param rootDirectory holds the workspace, the execution root and the fake blaze binary. It
+     *                      only has to exist once the monorepo is written.
+     */
+    public SyntheticMonorepo build(File rootDirectory) {
+      if (targetsPerPackage < 2) {
+        throw new IllegalArgumentException("Every package needs at least one library and one test");
+      }
+      return new SyntheticMonorepo(this, rootDirectory);
+    }
+  }
+
+  private enum PackageLanguage {
+    JAVA(Kind.JAVA_LIBRARY, Kind.JAVA_TEST),
+    CPP(Kind.CC_LIBRARY, Kind.CC_TEST),
+    ANDROID(Kind.ANDROID_LIBRARY, Kind.ANDROID_LIBRARY);
+
+    final Kind libraryKind;
+    final Kind lastKind;
+
+    PackageLanguage(Kind libraryKind, Kind lastKind) {
+      this.libraryKind = libraryKind;
+      this.lastKind = lastKind;
+    }
+  }
+
+  /**
+   * A generated target.
+   */
+  public static final class Target {
+    public final Label label;
+    public final Kind kind;
+    public final int packageIndex;
+    public final String name;
+    public final String packagePath;
+    public final ImmutableList<Target> dependencies;
+    @Nullable public final String testSize;
+
+    private Target(Label label,
+                   Kind kind,
+                   int packageIndex,
+                   String name,
+                   String packagePath,
+                   ImmutableList<Target> dependencies,
+                   @Nullable String testSize) {
+      this.label = label;
+      this.kind = kind;
+      this.packageIndex = packageIndex;
+      this.name = name;
+      this.packagePath = packagePath;
+      this.dependencies = dependencies;
+      this.testSize = testSize;
+    }
+
+    public boolean isJava() {
+      return kind.getLanguageClass() == LanguageClass.JAVA || kind.getLanguageClass() == LanguageClass.ANDROID;
+    }
+
+    @Override
+    public String toString() {
+      return label.toString();
+    }
+  }
+
+  private final File rootDirectory;
+  private final WorkspaceRoot workspaceRoot;
+  private final BlazeRoots blazeRoots;
+  private final ArtifactLocationDecoder decoder;
+  private final ImmutableList<PackageLanguage> packageLanguages;
+  private final ImmutableList<Target> targets;
+  private final ImmutableMap<Label, Target> targetsByLabel;
+
+  private SyntheticMonorepo(Builder builder, File rootDirectory) {
+    this.rootDirectory = rootDirectory;
+    this.workspaceRoot = new WorkspaceRoot(new File(rootDirectory, "workspace"));
+    this.blazeRoots = new BlazeRoots(
+      new File(rootDirectory, "execroot"),
+      ImmutableList.of(workspaceRoot.directory()),
+      new ExecutionRootPath(BIN_PATH),
+      new ExecutionRootPath(GENFILES_PATH)
+    );
+    this.decoder = new ArtifactLocationDecoder(blazeRoots, new WorkspacePathResolverImpl(workspaceRoot, blazeRoots));
+
+    Random random = new Random(builder.seed);
+    ImmutableList.Builder<PackageLanguage> packageLanguages = ImmutableList.builder();
+    int totalWeight = builder.javaWeight + builder.cppWeight + builder.androidWeight;
+    for (int i = 0; i < builder.packageCount; ++i) {
+      int value = random.nextInt(totalWeight);
+      if (value < builder.javaWeight) {
+        packageLanguages.add(PackageLanguage.JAVA);
+      }
+      else if (value < builder.javaWeight + builder.cppWeight) {
+        packageLanguages.add(PackageLanguage.CPP);
+      }
+      else {
+        packageLanguages.add(PackageLanguage.ANDROID);
+      }
+    }
+    this.packageLanguages = packageLanguages.build();
+    this.targets = createTargets(random, builder.targetsPerPackage, builder.fanOut);
+
+    ImmutableMap.Builder<Label, Target> targetsByLabel = ImmutableMap.builder();
+    for (Target target : targets) {
+      targetsByLabel.put(target.label, target);
+    }
+    this.targetsByLabel = targetsByLabel.build();
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private ImmutableList<Target> createTargets(Random random, int targetsPerPackage, int fanOut) {
+    ImmutableList.Builder<Target> result = ImmutableList.builder();
+    // Targets that later targets of each language may depend on
+    List<Target> javaLibraries = Lists.newArrayList();
+    List<Target> androidLibraries = Lists.newArrayList();
+    List<Target> ccLibraries = Lists.newArrayList();
+
+    Target toolchain = null;
+    if (packageLanguages.contains(PackageLanguage.CPP)) {
+      toolchain = new Target(TOOLCHAIN_LABEL, Kind.CC_TOOLCHAIN, -1, TOOLCHAIN_LABEL.ruleName().toString(),
+                             TOOLCHAIN_LABEL.blazePackage().relativePath(), ImmutableList.of(), null);
+      result.add(toolchain);
+    }
+
+    for (int pkg = 0; pkg < packageLanguages.size(); ++pkg) {
+      PackageLanguage language = packageLanguages.get(pkg);
+      String packagePath = packagePath(pkg);
+      for (int i = 0; i < targetsPerPackage; ++i) {
+        boolean last = i == targetsPerPackage - 1;
+        Kind kind = last ? language.lastKind : language.libraryKind;
+        boolean isTest = kind == Kind.JAVA_TEST || kind == Kind.CC_TEST;
+
+        Set<Target> dependencies = Sets.newLinkedHashSet();
+        if (toolchain != null && language == PackageLanguage.CPP) {
+          dependencies.add(toolchain);
+        }
+        for (int j = 0; j < fanOut; ++j) {
+          Target dependency = pickDependency(random, language, javaLibraries, androidLibraries, ccLibraries);
+          if (dependency != null) {
+            dependencies.add(dependency);
+          }
+        }
+
+        String name = "t" + i;
+        Target target = new Target(
+          Label.create("//" + packagePath + ":" + name),
+          kind,
+          pkg,
+          name,
+          packagePath,
+          ImmutableList.copyOf(dependencies),
+          isTest ? (random.nextBoolean() ? "small" : "medium") : null
+        );
+        result.add(target);
+
+        if (!isTest) {
+          switch (language) {
+            case JAVA:
+              javaLibraries.add(target);
+              break;
+            case CPP:
+              ccLibraries.add(target);
+              break;
+            case ANDROID:
+              androidLibraries.add(target);
+              break;
+          }
+        }
+      }
+    }
+    return result.build();
+  }
+
+  @Nullable
+  private static Target pickDependency(Random random,
+                                       PackageLanguage language,
+                                       List<Target> javaLibraries,
+                                       List<Target> androidLibraries,
+                                       List<Target> ccLibraries) {
+    switch (language) {
+      case JAVA:
+        return javaLibraries.isEmpty() ? null : javaLibraries.get(random.nextInt(javaLibraries.size()));
+      case CPP:
+        return ccLibraries.isEmpty() ? null : ccLibraries.get(random.nextInt(ccLibraries.size()));
+      case ANDROID:
+        int candidates = javaLibraries.size() + androidLibraries.size();
+        if (candidates == 0) {
+          return null;
+        }
+        int index = random.nextInt(candidates);
+        return index < javaLibraries.size() ? javaLibraries.get(index) : androidLibraries.get(index - javaLibraries.size());
+      default:
+        throw new AssertionError(language);
+    }
+  }
+
+  public File getRootDirectory() {
+    return rootDirectory;
+  }
+
+  public WorkspaceRoot getWorkspaceRoot() {
+    return workspaceRoot;
+  }
+
+  public BlazeRoots getBlazeRoots() {
+    return blazeRoots;
+  }
+
+  public ArtifactLocationDecoder getArtifactLocationDecoder() {
+    return decoder;
+  }
+
+  /**
+   * All targets, dependencies before their dependents.
+   */
+  public ImmutableList<Target> getTargets() {
+    return targets;
+  }
+
+  @Nullable
+  public Target getTarget(Label label) {
+    return targetsByLabel.get(label);
+  }
+
+  public int getPackageCount() {
+    return packageLanguages.size();
+  }
+
+  /**
+   * The workspace-relative directory of a package.
+   */
+  public String packagePath(int pkg) {
+    String group = "/g" + (pkg / PACKAGES_PER_GROUP) + "/p" + pkg;
+    return packageLanguages.get(pkg) == PackageLanguage.CPP ? "cc" + group : "java/com/example" + group;
+  }
+
+  /**
+   * The top-level directories of the workspace, as they would be listed in a project view.
+   */
+  public List<WorkspacePath> getRootDirectories() {
+    Set<WorkspacePath> result = Sets.newLinkedHashSet();
+    for (int pkg = 0; pkg < packageLanguages.size(); ++pkg) {
+      String packagePath = packagePath(pkg);
+      result.add(new WorkspacePath(packagePath.substring(0, packagePath.lastIndexOf('/'))));
+    }
+    return ImmutableList.copyOf(result);
+  }
+
+  /**
+   * Language settings under which every target of the workspace is imported.
+   */
+  public WorkspaceLanguageSettings getLanguageSettings() {
+    boolean hasCpp = packageLanguages.contains(PackageLanguage.CPP);
+    ImmutableSet.Builder<LanguageClass> languages = ImmutableSet.builder();
+    if (packageLanguages.contains(PackageLanguage.JAVA) || packageLanguages.contains(PackageLanguage.ANDROID)) {
+      languages.add(LanguageClass.JAVA);
+    }
+    if (hasCpp) {
+      languages.add(LanguageClass.C);
+    }
+    WorkspaceType workspaceType;
+    if (packageLanguages.contains(PackageLanguage.ANDROID)) {
+      languages.add(LanguageClass.ANDROID);
+      workspaceType = hasCpp ? WorkspaceType.ANDROID_NDK : WorkspaceType.ANDROID;
+    }
+    else {
+      workspaceType = packageLanguages.contains(PackageLanguage.JAVA) ? WorkspaceType.JAVA : WorkspaceType.C;
+    }
+    return new WorkspaceLanguageSettings(workspaceType, languages.build());
+  }
+
+  /**
+   * The results of {@code blaze info} for this workspace.
+   */
+  public ImmutableMap<String, String> getBlazeInfo(BuildSystem buildSystem) {
+    return ImmutableMap.of(
+      BlazeInfo.EXECUTION_ROOT_KEY, blazeRoots.executionRoot.getPath(),
+      BlazeInfo.PACKAGE_PATH_KEY, workspaceRoot.directory().getPath(),
+      BlazeInfo.blazeBinKey(buildSystem), new File(blazeRoots.executionRoot, BIN_PATH).getPath(),
+      BlazeInfo.blazeGenfilesKey(buildSystem), new File(blazeRoots.executionRoot, GENFILES_PATH).getPath()
+    );
+  }
+
+  /**
+   * The aspect output for every target.
+   */
+  public List<AndroidStudioIdeInfo.RuleIdeInfo> createRuleProtos() {
+    List<AndroidStudioIdeInfo.RuleIdeInfo> result = Lists.newArrayListWithCapacity(targets.size());
+    for (Target target : targets) {
+      result.add(createRuleProto(target));
+    }
+    return result;
+  }
+
+  public AndroidStudioIdeInfo.RuleIdeInfo createRuleProto(Target target) {
+    AndroidStudioIdeInfo.RuleIdeInfo.Builder builder = AndroidStudioIdeInfo.RuleIdeInfo.newBuilder()
+      .setLabel(target.label.toString())
+      .setKindString(target.kind.toString())
+      .setBuildFileArtifactLocation(sourceLocation(target.packagePath + "/BUILD"));
+    for (Target dependency : target.dependencies) {
+      builder.addDependencies(dependency.label.toString());
+    }
+    if (target.testSize != null) {
+      builder.setTestInfo(AndroidStudioIdeInfo.TestInfo.newBuilder().setSize(target.testSize));
+    }
+
+    if (target.kind == Kind.CC_TOOLCHAIN) {
+      builder.setCToolchainIdeInfo(AndroidStudioIdeInfo.CToolchainIdeInfo.newBuilder()
+                                     .setTargetName("k8")
+                                     .setCppExecutable("/usr/bin/g++")
+                                     .setPreprocessorExecutable("/usr/bin/cpp")
+                                     .addBaseCompilerOption("-Wall")
+                                     .addCppOption("-std=c++11")
+                                     .addBuiltInIncludeDirectory("/usr/include"));
+    }
+    else if (target.isJava()) {
+      builder.setJavaRuleIdeInfo(AndroidStudioIdeInfo.JavaRuleIdeInfo.newBuilder()
+                                   .addSources(sourceLocation(javaSourcePath(target)))
+                                   .addJars(AndroidStudioIdeInfo.LibraryArtifact.newBuilder()
+                                              .setJar(derivedLocation(jarPath(target)))
+                                              .setInterfaceJar(derivedLocation(interfaceJarPath(target))))
+                                   .setJdeps(derivedLocation(target.packagePath + "/" + target.name + ".jdeps")));
+      if (target.kind == Kind.ANDROID_LIBRARY) {
+        builder.setAndroidRuleIdeInfo(AndroidStudioIdeInfo.AndroidRuleIdeInfo.newBuilder()
+                                        .setManifest(sourceLocation(target.packagePath + "/AndroidManifest.xml"))
+                                        .addResources(sourceLocation(target.packagePath + "/res"))
+                                        .setJavaPackage(javaPackage(target))
+                                        .setGenerateResourceClass(true));
+      }
+    }
+    else {
+      builder.setCRuleIdeInfo(AndroidStudioIdeInfo.CRuleIdeInfo.newBuilder()
+                                .addSource(sourceLocation(target.packagePath + "/" + target.name + ".cc"))
+                                .addSource(sourceLocation(target.packagePath + "/" + target.name + ".h"))
+                                .addRuleDefine("TARGET_" + target.name.toUpperCase())
+                                .addTransitiveQuoteIncludeDirectory(".")
+                                .addTransitiveQuoteIncludeDirectory(GENFILES_PATH)
+                                .addTransitiveSystemIncludeDirectory("third_party/include"));
+    }
+    return builder.build();
+  }
+
+  /**
+   * The jdeps of a java or android target: the runtime jars of its direct dependencies.
+   */
+  public Deps.Dependencies createJdeps(Target target) {
+    Deps.Dependencies.Builder builder = Deps.Dependencies.newBuilder()
+      .setRuleLabel(target.label.toString())
+      .setSuccess(true);
+    for (Target dependency : target.dependencies) {
+      builder.addDependency(Deps.Dependency.newBuilder()
+                              .setPath(BIN_PATH + "/" + jarPath(dependency))
+                              .setKind(Deps.Dependency.Kind.EXPLICIT));
+    }
+    return builder.build();
+  }
+
+  /**
+   * The rule map a sync of this workspace produces under {@link #getLanguageSettings()}.
+   */
+  public ImmutableMap<Label, RuleIdeInfo> createRuleMap() {
+    return createRuleMap(getLanguageSettings());
+  }
+
+  /**
+   * The rule map a sync of this workspace produces. Rules of inactive languages are dropped.
+   */
+  public ImmutableMap<Label, RuleIdeInfo> createRuleMap(WorkspaceLanguageSettings languageSettings) {
+    ImmutableMap.Builder<Label, RuleIdeInfo> result = ImmutableMap.builder();
+    for (Target target : targets) {
+      RuleIdeInfo rule = IdeInfoFromProtobuf.makeRuleIdeInfo(languageSettings, decoder, createRuleProto(target));
+      if (rule != null) {
+        result.put(rule.label, rule);
+      }
+    }
+    return result.build();
+  }
+
+  /**
+   * The contents of a package's BUILD file.
+   */
+  public String createBuildFile(String packagePath) {
+    StringBuilder result = new StringBuilder();
+    for (Target target : targets) {
+      if (!target.packagePath.equals(packagePath)) {
+        continue;
+      }
+      result.append(target.kind).append("(\n");
+      result.append("    name = \"").append(target.name).append("\",\n");
+      if (target.kind == Kind.CC_TOOLCHAIN) {
+        result.append(")\n\n");
+        continue;
+      }
+      if (target.isJava()) {
+        result.append("    srcs = [\"").append(new File(javaSourcePath(target)).getName()).append("\"],\n");
+      }
+      else {
+        result.append("    srcs = [\"").append(target.name).append(".cc\"],\n");
+        result.append("    hdrs = [\"").append(target.name).append(".h\"],\n");
+      }
+      if (target.kind == Kind.ANDROID_LIBRARY) {
+        result.append("    manifest = \"AndroidManifest.xml\",\n");
+        result.append("    resource_files = glob([\"res/**\"]),\n");
+      }
+      if (target.testSize != null) {
+        result.append("    size = \"").append(target.testSize).append("\",\n");
+      }
+      List<String> dependencies = Lists.newArrayList();
+      for (Target dependency : target.dependencies) {
+        dependencies.add(dependency.packagePath.equals(packagePath)
+                         ? "\":" + dependency.name + "\""
+                         : "\"" + dependency.label + "\"");
+      }
+      if (!dependencies.isEmpty()) {
+        result.append("    deps = [\n        ");
+        Joiner.on(",\n        ").appendTo(result, dependencies);
+        result.append(",\n    ],\n");
+      }
+      result.append(")\n\n");
+    }
+    return result.toString();
+  }
+
+  /**
+   * Writes the workspace, the build outputs and the fake blaze binary under the root directory.
+   */
+  public void write() throws IOException {
+    writeWorkspace();
+    List<File> artifacts = writeBuildOutputs();
+    writeBlazeBinary(artifacts);
+  }
+
+  /**
+   * Writes every BUILD file and source file.
+   */
+  public void writeWorkspace() throws IOException {
+    Set<String> packagePaths = Sets.newLinkedHashSet();
+    for (Target target : targets) {
+      File directory = workspaceRoot.fileForPath(new WorkspacePath(target.packagePath));
+      if (packagePaths.add(target.packagePath)) {
+        mkdirs(directory);
+        writeString(new File(directory, "BUILD"), createBuildFile(target.packagePath));
+      }
+      if (target.kind == Kind.CC_TOOLCHAIN) {
+        continue;
+      }
+      if (target.isJava()) {
+        String className = new File(javaSourcePath(target)).getName().replace(".java", "");
+        writeString(workspaceRoot.fileForPath(new WorkspacePath(javaSourcePath(target))),
+                    "package " + javaPackage(target) + ";\n\npublic class " + className + " {}\n");
+      }
+      else {
+        String guard = target.packagePath.replace('/', '_').toUpperCase() + "_" + target.name.toUpperCase() + "_H_";
+        writeString(new File(directory, target.name + ".h"),
+                    "#ifndef " + guard + "\n#define " + guard + "\n\nint " + target.name + "();\n\n#endif\n");
+        writeString(new File(directory, target.name + ".cc"),
+                    "#include \"" + target.packagePath + "/" + target.name + ".h\"\n\nint " + target.name + "() { return 0; }\n");
+      }
+      if (target.kind == Kind.ANDROID_LIBRARY) {
+        writeString(new File(directory, "AndroidManifest.xml"),
+                    "<manifest xmlns:android=\"http://schemas.android.com/apk/res/android\" package=\""
+                    + javaPackage(target) + "\" />\n");
+        File values = new File(directory, "res/values");
+        mkdirs(values);
+        writeString(new File(values, "strings.xml"), "<resources />\n");
+      }
+    }
+  }
+
+  /**
+   * Writes the aspect output of every target in each aspect format, and the jdeps files.
+   *
+   * @return the aspect output files, as a build would list them
+   */
+  public List<File> writeBuildOutputs() throws IOException {
+    List<File> result = Lists.newArrayList();
+    for (Target target : targets) {
+      AndroidStudioIdeInfo.RuleIdeInfo proto = createRuleProto(target);
+      for (AspectStrategy aspectStrategy : ASPECT_STRATEGIES) {
+        File file = aspectOutputFile(target, aspectStrategy);
+        mkdirs(file.getParentFile());
+        if (aspectStrategy == AspectStrategy.SKYLARK_ASPECT) {
+          writeString(file, TextFormat.printToString(proto));
+        }
+        else {
+          try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            proto.writeTo(out);
+          }
+        }
+        result.add(file);
+      }
+      if (proto.hasJavaRuleIdeInfo()) {
+        File jdepsFile = decoder.decode(proto.getJavaRuleIdeInfo().getJdeps()).getFile();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(jdepsFile))) {
+          createJdeps(target).writeTo(out);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Where a build writes the aspect output of a target.
+   */
+  public File aspectOutputFile(Target target, AspectStrategy aspectStrategy) {
+    File directory = new File(new File(blazeRoots.executionRoot, BIN_PATH), target.packagePath);
+    return new File(directory, target.name + aspectStrategy.getAspectOutputFileExtension());
+  }
+
+  /**
+   * The fake blaze binary written by {@link #write}.
+   */
+  public File getBlazeBinary() {
+    return new File(rootDirectory, "blaze");
+  }
+
+  /**
+   * Writes a shell script standing in for blaze. {@code info} prints the results of
+   * {@link #getBlazeInfo}, or the value of a single key; {@code build} prints the artifacts the
+   * way --experimental_show_artifacts does. Every command succeeds.
+   */
+  private void writeBlazeBinary(List<File> artifacts) throws IOException {
+    File infoFile = new File(rootDirectory, "blaze-info.txt");
+    StringBuilder info = new StringBuilder();
+    for (BuildSystem buildSystem : BuildSystem.values()) {
+      for (Map.Entry<String, String> entry : getBlazeInfo(buildSystem).entrySet()) {
+        if (info.indexOf(entry.getKey() + ": ") < 0) {
+          info.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+      }
+    }
+    writeString(infoFile, info.toString());
+
+    File buildOutputFile = new File(rootDirectory, "build-output.txt");
+    StringBuilder buildOutput = new StringBuilder("Build artifacts:\n");
+    for (File artifact : artifacts) {
+      buildOutput.append(">>>").append(artifact.getPath()).append('\n');
+    }
+    writeString(buildOutputFile, buildOutput.toString());
+
+    File binary = getBlazeBinary();
+    writeString(binary, Joiner.on('\n').join(
+      "#!/bin/sh",
+      "case \"$1\" in",
+      "  info)",
+      "    shift",
+      "    for arg in \"$@\"; do",
+      "      case \"$arg\" in",
+      "        -*) ;;",
+      "        *) sed -n \"s|^$arg: ||p\" '" + infoFile.getPath() + "'; exit 0 ;;",
+      "      esac",
+      "    done",
+      "    cat '" + infoFile.getPath() + "'",
+      "    ;;",
+      "  build)",
+      "    cat '" + buildOutputFile.getPath() + "' >&2",
+      "    ;;",
+      "esac",
+      "exit 0",
+      ""
+    ));
+    if (!binary.setExecutable(true)) {
+      throw new IOException("Could not make " + binary + " executable");
+    }
+  }
+
+  private String javaSourcePath(Target target) {
+    return target.packagePath + "/Class" + target.name.toUpperCase() + ".java";
+  }
+
+  private static String javaPackage(Target target) {
+    return target.packagePath.substring("java/".length()).replace('/', '.');
+  }
+
+  private static String jarPath(Target target) {
+    return target.packagePath + "/lib" + target.name + ".jar";
+  }
+
+  private static String interfaceJarPath(Target target) {
+    return target.packagePath + "/lib" + target.name + "-ijar.jar";
+  }
+
+  private AndroidStudioIdeInfo.ArtifactLocation sourceLocation(String relativePath) {
+    return AndroidStudioIdeInfo.ArtifactLocation.newBuilder()
+      .setRootPath(workspaceRoot.directory().getPath())
+      .setRelativePath(relativePath)
+      .setIsSource(true)
+      .build();
+  }
+
+  private AndroidStudioIdeInfo.ArtifactLocation derivedLocation(String relativePath) {
+    return AndroidStudioIdeInfo.ArtifactLocation.newBuilder()
+      .setRootPath(new File(blazeRoots.executionRoot, BIN_PATH).getPath())
+      .setRootExecutionPathFragment(BIN_PATH)
+      .setRelativePath(relativePath)
+      .setIsSource(false)
+      .build();
+  }
+
+  private static void mkdirs(File directory) throws IOException {
+    if (!directory.mkdirs() && !directory.isDirectory()) {
+      throw new IOException("Could not create " + directory);
+    }
+  }
+
+  private static void writeString(File file, String contents) throws IOException {
+    Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+  }
+}
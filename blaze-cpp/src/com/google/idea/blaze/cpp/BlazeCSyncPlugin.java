@@ -63,7 +63,11 @@ public final class BlazeCSyncPlugin extends BlazeSyncPlugin.Adapter {
       OCWorkspace workspace = OCWorkspaceManager.getWorkspace(project);
       if (workspace instanceof BlazeCWorkspace) {
         BlazeCWorkspace blazeCWorkspace = (BlazeCWorkspace)workspace;
-        blazeCWorkspace.update(childContext, blazeProjectData);
+        // Without old project data this is a full sync, so rebuild everything and probe again
+        if (oldBlazeProjectData == null) {
+          CompilerProbeCache.getInstance().invalidate();
+        }
+        blazeCWorkspace.update(childContext, blazeProjectData, oldBlazeProjectData != null);
       }
     });
   }
@@ -62,14 +62,16 @@ public final class BlazeCWorkspace implements OCWorkspace {
     return ServiceManager.getService(project, BlazeCWorkspace.class);
   }
 
-  public void update(BlazeContext context, BlazeProjectData blazeProjectData) {
+  /**
+   * @param incremental whether configurations of unchanged targets may be kept from the last update
+   */
+  public void update(BlazeContext context, BlazeProjectData blazeProjectData, boolean incremental) {
     LOG.assertTrue(project != null);
     LOG.assertTrue(modTrackers != null);
     LOG.assertTrue(configurationResolver != null);
 
     long start = System.currentTimeMillis();
-    // Non-incremental update to our c configurations.
-    configurationResolver.update(context, blazeProjectData);
+    BlazeConfigurationResolver.Changes changes = configurationResolver.update(context, blazeProjectData, incremental);
     long end = System.currentTimeMillis();
 
     LOG.info(String.format("Blaze OCWorkspace update took: %d ms", (end - start)));
@@ -79,11 +81,16 @@ public final class BlazeCWorkspace implements OCWorkspace {
         return;
       }
 
-      // TODO(salguarnieri) Avoid bumping all of these trackers; figure out what has changed.
-      modTrackers.getProjectFilesListTracker().incModificationCount();
-      modTrackers.getSourceFilesListTracker().incModificationCount();
-      modTrackers.getBuildConfigurationChangesTracker().incModificationCount();
-      modTrackers.getBuildSettingsChangesTracker().incModificationCount();
+      // Only drop the CIDR caches that depend on what actually changed, so an incremental sync
+      // that leaves the C targets alone doesn't trigger a full symbol rebuild.
+      if (changes.sourceFilesChanged) {
+        modTrackers.getProjectFilesListTracker().incModificationCount();
+        modTrackers.getSourceFilesListTracker().incModificationCount();
+      }
+      if (changes.configurationsChanged) {
+        modTrackers.getBuildConfigurationChangesTracker().incModificationCount();
+        modTrackers.getBuildSettingsChangesTracker().incModificationCount();
+      }
     });
   }
 
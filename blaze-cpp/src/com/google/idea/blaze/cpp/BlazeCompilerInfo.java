@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.cpp;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.jetbrains.cidr.lang.OCLanguageKind;
+import com.jetbrains.cidr.lang.workspace.headerRoots.HeadersSearchRoot;
+import com.jetbrains.cidr.lang.workspace.headerRoots.IncludedHeadersRoot;
+import com.jetbrains.cidr.toolchains.CompilerInfoCache;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The compiler info of one resolve configuration, taken from the {@link CompilerProbeCache} when
+ * possible and from probing the compiler otherwise.
+ *
+ * <p>Our compiler switches don't depend on the source file, so the info is kept per language.
+ */
+final class BlazeCompilerInfo {
+  private static final Logger LOG = Logger.getInstance(BlazeCompilerInfo.class);
+
+  /**
+   * What the configuration needs from a compiler probe.
+   */
+  static final class Entry {
+    final String defines;
+    final Map<String, String> features;
+    final ImmutableList<HeadersSearchRoot> headerSearchPaths;
+
+    Entry(String defines, Map<String, String> features, ImmutableList<HeadersSearchRoot> headerSearchPaths) {
+      this.defines = defines;
+      this.features = features;
+      this.headerSearchPaths = headerSearchPaths;
+    }
+  }
+
+  private final Project project;
+  private final BlazeCompilerSettings compilerSettings;
+  /** The blaze compiler behind the wrapper script that CLion runs, which is what probes are keyed on. */
+  @Nullable private final File probedCompiler;
+  private final CompilerInfoCache compilerInfoCache = new CompilerInfoCache();
+  private final ConcurrentMap<OCLanguageKind, Entry> entries = Maps.newConcurrentMap();
+
+  BlazeCompilerInfo(Project project, BlazeCompilerSettings compilerSettings, @Nullable File probedCompiler) {
+    this.project = project;
+    this.compilerSettings = compilerSettings;
+    this.probedCompiler = probedCompiler;
+  }
+
+  /**
+   * @return null if the compiler could not be probed
+   */
+  @Nullable
+  Entry get(@Nullable OCLanguageKind languageKind, @Nullable VirtualFile sourceFile) {
+    if (languageKind == null) {
+      return probe(null, sourceFile);
+    }
+    Entry entry = entries.get(languageKind);
+    if (entry == null) {
+      entry = probe(languageKind, sourceFile);
+      if (entry != null) {
+        Entry existing = entries.putIfAbsent(languageKind, entry);
+        entry = existing != null ? existing : entry;
+      }
+    }
+    return entry;
+  }
+
+  @Nullable
+  private Entry probe(@Nullable OCLanguageKind languageKind, @Nullable VirtualFile sourceFile) {
+    CompilerProbeCache probeCache = CompilerProbeCache.getInstance();
+    CompilerProbeStore.Key key = probedCompiler != null && languageKind != null
+                                 ? probeCache.createKey(probedCompiler, languageKind, compilerSettings.getCompilerFlags(languageKind))
+                                 : null;
+    if (key != null) {
+      CompilerProbe probe = probeCache.get(key);
+      if (probe != null) {
+        return fromProbe(probe);
+      }
+    }
+
+    CompilerInfoCache.Entry compilerInfo =
+      compilerInfoCache.getCompilerInfoCache(project, compilerSettings, languageKind, sourceFile).getResult();
+    if (compilerInfo == null) {
+      return null;
+    }
+    if (key != null) {
+      CompilerProbe probe = toProbe(compilerInfo);
+      if (probe != null) {
+        probeCache.put(key, probe);
+      }
+    }
+    return new Entry(
+      compilerInfo.defines,
+      Collections.unmodifiableMap(Maps.newHashMap(compilerInfo.features)),
+      ImmutableList.copyOf(compilerInfo.headerSearchPaths));
+  }
+
+  private Entry fromProbe(CompilerProbe probe) {
+    ImmutableList.Builder<HeadersSearchRoot> headerSearchPaths = ImmutableList.builder();
+    for (CompilerProbe.HeaderRoot headerRoot : probe.headerRoots) {
+      VirtualFile vf = VfsUtil.findFileByIoFile(new File(headerRoot.path), true);
+      if (vf == null) {
+        LOG.debug(String.format("Compiler header root %s could not be converted to a virtual file", headerRoot.path));
+        continue;
+      }
+      headerSearchPaths.add(new IncludedHeadersRoot(project, vf, false /* recursive */, headerRoot.isUserHeader));
+    }
+    return new Entry(probe.defines, probe.features, headerSearchPaths.build());
+  }
+
+  /**
+   * @return null if the info holds something we can't write to disk, e.g. framework roots
+   */
+  @Nullable
+  private static CompilerProbe toProbe(CompilerInfoCache.Entry compilerInfo) {
+    ImmutableMap.Builder<String, String> features = ImmutableMap.builder();
+    for (Map.Entry<String, String> feature : compilerInfo.features.entrySet()) {
+      if (feature.getKey() == null || feature.getValue() == null) {
+        return null;
+      }
+      features.put(feature.getKey(), feature.getValue());
+    }
+    ImmutableList.Builder<CompilerProbe.HeaderRoot> headerRoots = ImmutableList.builder();
+    for (HeadersSearchRoot root : compilerInfo.headerSearchPaths) {
+      VirtualFile vf = root.getVirtualFile();
+      if (!(root instanceof IncludedHeadersRoot) || vf == null) {
+        return null;
+      }
+      headerRoots.add(new CompilerProbe.HeaderRoot(vf.getPath(), root.isUserHeaders()));
+    }
+    return new CompilerProbe(compilerInfo.defines, features.build(), headerRoots.build());
+  }
+}
@@ -19,35 +19,25 @@ import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
-import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
 import com.jetbrains.cidr.lang.preprocessor.OCInclusionContext;
 import com.jetbrains.cidr.lang.preprocessor.OCInclusionContextUtil;
-import com.jetbrains.cidr.lang.workspace.compiler.CidrCompilerResult;
 import com.jetbrains.cidr.lang.workspace.compiler.OCCompilerMacros;
-import com.jetbrains.cidr.lang.workspace.compiler.OCCompilerSettings;
-import com.jetbrains.cidr.toolchains.CompilerInfoCache;
 
 import java.util.Map;
 
 final class BlazeCompilerMacros extends OCCompilerMacros {
-  private final CompilerInfoCache compilerInfoCache;
+  private final BlazeCompilerInfo compilerInfo;
   private final ImmutableList<String> globalDefines;
   private final ImmutableMap<String, String> globalFeatures;
-  private final OCCompilerSettings compilerSettings;
-  private final Project project;
 
   public BlazeCompilerMacros(
-    Project project,
-    CompilerInfoCache compilerInfoCache,
-    OCCompilerSettings compilerSettings,
+    BlazeCompilerInfo compilerInfo,
     ImmutableList<String> defines,
     ImmutableMap<String, String> features
   ) {
-    this.project = project;
-    this.compilerInfoCache = compilerInfoCache;
-    this.compilerSettings = compilerSettings;
+    this.compilerInfo = compilerInfo;
     this.globalDefines = defines;
     this.globalFeatures = features;
   }
@@ -56,13 +46,7 @@ final class BlazeCompilerMacros extends OCCompilerMacros {
   protected void fillFileMacros(OCInclusionContext context, PsiFile sourceFile) {
     // Get the default compiler info for this file.
     VirtualFile vf = OCInclusionContextUtil.getVirtualFile(sourceFile);
-    CidrCompilerResult<CompilerInfoCache.Entry> compilerInfoProvider = compilerInfoCache.getCompilerInfoCache(
-      project,
-      compilerSettings,
-      context.getLanguageKind(),
-      vf
-    );
-    CompilerInfoCache.Entry compilerInfo = compilerInfoProvider.getResult();
+    BlazeCompilerInfo.Entry compilerInfo = this.compilerInfo.get(context.getLanguageKind(), vf);
 
     // Combine the info we got from Blaze with the info we get from IntelliJ's methods.
     UniqueListBuilder<String> allDefinesBuilder = new UniqueListBuilder<>();
@@ -83,14 +83,7 @@ final class BlazeCompilerSettings extends OCCompilerSettings {
 
   @Override
   public CidrCompilerSwitches getCompilerSwitches(OCLanguageKind lang, @Nullable VirtualFile sourceFile) {
-    final List<String> allCompilerFlags;
-    if (lang == OCLanguageKind.C) {
-      allCompilerFlags = cFlags;
-    } else if (lang == OCLanguageKind.CPP) {
-      allCompilerFlags = cppFlags;
-    } else {
-      allCompilerFlags = ImmutableList.of();
-    }
+    final List<String> allCompilerFlags = getCompilerFlags(lang);
 
     CidrSwitchBuilder builder = new CidrSwitchBuilder();
     // Because there can be both escaped and unescaped spaces in the flag, first unescape the spaces and then escape all of them.
@@ -101,5 +94,16 @@ final class BlazeCompilerSettings extends OCCompilerSettings {
 
     return builder.build();
   }
-}
 
+  /**
+   * The unescaped flags behind {@link #getCompilerSwitches}, which don't depend on the source file.
+   */
+  ImmutableList<String> getCompilerFlags(OCLanguageKind lang) {
+    if (lang == OCLanguageKind.C) {
+      return cFlags;
+    } else if (lang == OCLanguageKind.CPP) {
+      return cppFlags;
+    }
+    return ImmutableList.of();
+  }
+}
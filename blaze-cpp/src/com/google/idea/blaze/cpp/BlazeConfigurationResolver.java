@@ -19,12 +19,13 @@ import com.google.common.collect.*;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.idea.blaze.base.async.executor.BlazeExecutor;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.google.idea.blaze.base.ideinfo.CToolchainIdeInfo;
 import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
 import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.google.idea.blaze.base.model.primitives.LanguageClass;
-import com.google.idea.blaze.base.rulemaps.SourceToRuleMap;
+import com.google.idea.blaze.base.rulemaps.PreferredTargetMap;
 import com.google.idea.blaze.base.scope.BlazeContext;
 import com.google.idea.blaze.base.scope.Scope;
 import com.google.idea.blaze.base.scope.ScopedFunction;
@@ -49,63 +50,173 @@ import java.util.concurrent.ExecutionException;
 
 final class BlazeConfigurationResolver {
   private static final class MapEntry {
-    public final Label label;
+    public final BlazeResolveConfigurationData data;
     public final BlazeResolveConfiguration configuration;
 
-    public MapEntry(Label label, BlazeResolveConfiguration configuration) {
-      this.label = label;
+    public MapEntry(BlazeResolveConfigurationData data, BlazeResolveConfiguration configuration) {
+      this.data = data;
       this.configuration = configuration;
     }
   }
 
+  /**
+   * The result of an update, replaced as a whole so readers always see a consistent set of maps.
+   */
+  private static final class State {
+    static final State EMPTY = new State(ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of(), null);
+
+    final ImmutableMap<Label, BlazeResolveConfiguration> configurationsByTarget;
+    final ImmutableMap<BlazeResolveConfigurationData, BlazeResolveConfiguration> configurationsByData;
+    final ImmutableMap<Label, ImmutableList<ArtifactLocation>> sourcesByTarget;
+    /** The configuration each source file is shown in, see {@link #getConfigurationForFile}. */
+    final ImmutableMap<File, BlazeResolveConfiguration> configurationsBySourceFile;
+    @Nullable final WorkspacePathResolver workspacePathResolver;
+
+    State(ImmutableMap<Label, BlazeResolveConfiguration> configurationsByTarget,
+          ImmutableMap<BlazeResolveConfigurationData, BlazeResolveConfiguration> configurationsByData,
+          ImmutableMap<Label, ImmutableList<ArtifactLocation>> sourcesByTarget,
+          ImmutableMap<File, BlazeResolveConfiguration> configurationsBySourceFile,
+          @Nullable WorkspacePathResolver workspacePathResolver) {
+      this.configurationsByTarget = configurationsByTarget;
+      this.configurationsByData = configurationsByData;
+      this.sourcesByTarget = sourcesByTarget;
+      this.configurationsBySourceFile = configurationsBySourceFile;
+      this.workspacePathResolver = workspacePathResolver;
+    }
+  }
+
+  /**
+   * What an update changed, so only the affected CIDR caches need to be dropped.
+   */
+  static final class Changes {
+    static final Changes ALL = new Changes(true, true);
+
+    /** Targets or their source files were added or removed. */
+    final boolean sourceFilesChanged;
+    /** Some target now resolves with a different configuration (flags, defines or include roots). */
+    final boolean configurationsChanged;
+
+    Changes(boolean sourceFilesChanged, boolean configurationsChanged) {
+      this.sourceFilesChanged = sourceFilesChanged;
+      this.configurationsChanged = configurationsChanged;
+    }
+  }
+
   private static final Logger LOG = Logger.getInstance(BlazeConfigurationResolver.class);
   private final Project project;
 
-  private ImmutableMap<Label, BlazeResolveConfiguration> resolveConfigurations = ImmutableMap.of();
+  private volatile State state = State.EMPTY;
 
   public BlazeConfigurationResolver(Project project) {
     this.project = project;
   }
 
-  public void update(BlazeContext context, BlazeProjectData blazeProjectData) {
+  /**
+   * Rebuilds the configurations for the given project data.
+   *
+   * @param incremental whether configurations whose inputs haven't changed since the last update
+   *                    may be kept. Otherwise every configuration is recreated.
+   */
+  public Changes update(BlazeContext context, BlazeProjectData blazeProjectData, boolean incremental) {
     WorkspacePathResolver workspacePathResolver = blazeProjectData.workspacePathResolver;
     ImmutableMap<Label, CToolchainIdeInfo> toolchainLookupMap = BlazeResolveConfiguration.buildToolchainLookupMap(
       context,
-      blazeProjectData.ruleMap,
-      blazeProjectData.reverseDependencies
+      blazeProjectData
     );
-    resolveConfigurations = buildBlazeConfigurationMap(context, blazeProjectData, toolchainLookupMap, workspacePathResolver);
+    State oldState = state;
+    // Include roots are resolved against the workspace, so configurations can't outlive it
+    boolean reuseConfigurations = incremental && workspacePathResolver.equals(oldState.workspacePathResolver);
+    State newState = buildBlazeConfigurationMap(
+      context,
+      blazeProjectData,
+      toolchainLookupMap,
+      workspacePathResolver,
+      reuseConfigurations ? oldState.configurationsByData : ImmutableMap.of());
+    if (newState == null) {
+      return Changes.ALL;
+    }
+    state = newState;
+    if (!reuseConfigurations) {
+      return Changes.ALL;
+    }
+    return new Changes(
+      !newState.sourcesByTarget.equals(oldState.sourcesByTarget),
+      !sameConfigurations(oldState.configurationsByTarget, newState.configurationsByTarget));
+  }
+
+  /**
+   * Whether every target maps to the very same configuration object.
+   */
+  private static boolean sameConfigurations(Map<Label, BlazeResolveConfiguration> before,
+                                            Map<Label, BlazeResolveConfiguration> after) {
+    if (before.size() != after.size()) {
+      return false;
+    }
+    for (Map.Entry<Label, BlazeResolveConfiguration> entry : after.entrySet()) {
+      if (before.get(entry.getKey()) != entry.getValue()) {
+        return false;
+      }
+    }
+    return true;
   }
 
-  private ImmutableMap<Label, BlazeResolveConfiguration> buildBlazeConfigurationMap(
+  @Nullable
+  private State buildBlazeConfigurationMap(
     BlazeContext parentContext,
     BlazeProjectData blazeProjectData,
     ImmutableMap<Label, CToolchainIdeInfo> toolchainLookupMap,
-    WorkspacePathResolver workspacePathResolver
+    WorkspacePathResolver workspacePathResolver,
+    ImmutableMap<BlazeResolveConfigurationData, BlazeResolveConfiguration> oldConfigurations
   ) {
     // Type specification needed to avoid incorrect type inference during command line build.
-    return Scope.push(parentContext, (ScopedFunction<ImmutableMap<Label, BlazeResolveConfiguration>>)context -> {
+    return Scope.push(parentContext, (ScopedFunction<State>)context -> {
       context.push(new TimingScope("Build C configuration map"));
 
+      // Most targets share their toolchain, defines and include directories with many others,
+      // so group them and create only one configuration per distinct set of inputs.
+      Map<Label, BlazeResolveConfigurationData> targetToData = Maps.newHashMap();
+      Map<BlazeResolveConfigurationData, Label> dataToRepresentative = Maps.newHashMap();
+      ImmutableMap.Builder<Label, ImmutableList<ArtifactLocation>> sourcesByTarget = ImmutableMap.builder();
+      for (RuleIdeInfo rule : blazeProjectData.ruleMap.values()) {
+        if (rule.kind.getLanguageClass() != LanguageClass.C || rule.cRuleIdeInfo == null) {
+          continue;
+        }
+        CToolchainIdeInfo toolchainIdeInfo = toolchainLookupMap.get(rule.label);
+        if (toolchainIdeInfo == null) {
+          continue;
+        }
+        BlazeResolveConfigurationData data = BlazeResolveConfigurationData.create(rule.cRuleIdeInfo, toolchainIdeInfo);
+        targetToData.put(rule.label, data);
+        sourcesByTarget.put(rule.label, rule.cRuleIdeInfo.sources);
+        // Name each configuration after the first of its targets, so names are stable between syncs
+        Label representative = dataToRepresentative.get(data);
+        if (representative == null || rule.label.toString().compareTo(representative.toString()) < 0) {
+          dataToRepresentative.put(data, rule.label);
+        }
+      }
+
+      Map<BlazeResolveConfigurationData, BlazeResolveConfiguration> dataToConfiguration = Maps.newHashMap();
       ConcurrentMap<CToolchainIdeInfo, File> compilerWrapperCache = Maps.newConcurrentMap();
       List<ListenableFuture<MapEntry>> mapEntryFutures = Lists.newArrayList();
-
-      for (RuleIdeInfo rule : blazeProjectData.ruleMap.values()) {
-        if (rule.kind.getLanguageClass() == LanguageClass.C) {
-          ListenableFuture<MapEntry> future =
-            submit(
-              () -> createResolveConfiguration(
-                rule,
-                toolchainLookupMap,
-                compilerWrapperCache,
-                workspacePathResolver,
-                blazeProjectData)
-            );
-          mapEntryFutures.add(future);
+      for (Map.Entry<BlazeResolveConfigurationData, Label> entry : dataToRepresentative.entrySet()) {
+        BlazeResolveConfigurationData data = entry.getKey();
+        BlazeResolveConfiguration oldConfiguration = oldConfigurations.get(data);
+        if (oldConfiguration != null && canReuse(oldConfiguration, data, targetToData)) {
+          dataToConfiguration.put(data, oldConfiguration);
+          continue;
         }
+        ListenableFuture<MapEntry> future =
+          submit(
+            () -> createResolveConfiguration(
+              entry.getValue(),
+              data,
+              compilerWrapperCache,
+              workspacePathResolver)
+          );
+        mapEntryFutures.add(future);
       }
+      int reused = dataToConfiguration.size();
 
-      ImmutableMap.Builder<Label, BlazeResolveConfiguration> newResolveConfigurations = ImmutableMap.builder();
       List<MapEntry> mapEntries;
       try {
         mapEntries = Futures.allAsList(mapEntryFutures).get();
@@ -114,55 +225,91 @@ final class BlazeConfigurationResolver {
         Thread.currentThread().interrupt();
         LOG.warn("Could not build C resolve configurations", e);
         context.setCancelled();
-        return ImmutableMap.of();
+        return null;
       }
 
       for (MapEntry mapEntry : mapEntries) {
-        // Skip over labels that don't have C configuration data.
+        // Skip over configurations that couldn't be created.
         if (mapEntry != null) {
-          newResolveConfigurations.put(mapEntry.label, mapEntry.configuration);
+          dataToConfiguration.put(mapEntry.data, mapEntry.configuration);
+        }
+      }
+      LOG.info(String.format("%d C targets share %d resolve configurations, %d reused from the last sync",
+                             targetToData.size(), dataToConfiguration.size(), reused));
+
+      ImmutableMap.Builder<Label, BlazeResolveConfiguration> configurationsByTargetBuilder = ImmutableMap.builder();
+      for (Map.Entry<Label, BlazeResolveConfigurationData> entry : targetToData.entrySet()) {
+        BlazeResolveConfiguration configuration = dataToConfiguration.get(entry.getValue());
+        if (configuration != null) {
+          configurationsByTargetBuilder.put(entry.getKey(), configuration);
         }
       }
-      return newResolveConfigurations.build();
+      ImmutableMap<Label, BlazeResolveConfiguration> configurationsByTarget = configurationsByTargetBuilder.build();
+      ImmutableMap<Label, ImmutableList<ArtifactLocation>> sources = sourcesByTarget.build();
+      return new State(
+        configurationsByTarget,
+        ImmutableMap.copyOf(dataToConfiguration),
+        sources,
+        buildConfigurationsBySourceFile(configurationsByTarget, sources),
+        workspacePathResolver);
     });
   }
 
+  private static ImmutableMap<File, BlazeResolveConfiguration> buildConfigurationsBySourceFile(
+    ImmutableMap<Label, BlazeResolveConfiguration> configurationsByTarget,
+    ImmutableMap<Label, ImmutableList<ArtifactLocation>> sourcesByTarget
+  ) {
+    ImmutableMap<File, Label> preferredTargets =
+      PreferredTargetMap.create(Maps.filterKeys(sourcesByTarget, configurationsByTarget::containsKey));
+    ImmutableMap.Builder<File, BlazeResolveConfiguration> configurationsBySourceFile = ImmutableMap.builder();
+    for (Map.Entry<File, Label> entry : preferredTargets.entrySet()) {
+      configurationsBySourceFile.put(entry.getKey(), configurationsByTarget.get(entry.getValue()));
+    }
+    return configurationsBySourceFile.build();
+  }
+
+  /**
+   * A configuration is kept if the target it's named after still uses it, and none of its missing
+   * include directories has appeared since it was created.
+   */
+  private static boolean canReuse(BlazeResolveConfiguration configuration,
+                                  BlazeResolveConfigurationData data,
+                                  Map<Label, BlazeResolveConfigurationData> targetToData) {
+    return data.equals(targetToData.get(configuration.getLabel())) && !configuration.hasNewHeaderRoots();
+  }
+
   private static ListenableFuture<MapEntry> submit(Callable<MapEntry> callable) {
     return BlazeExecutor.getInstance().submit(callable);
   }
 
   @Nullable
   private MapEntry createResolveConfiguration(
-    RuleIdeInfo rule,
-    ImmutableMap<Label, CToolchainIdeInfo> toolchainLookupMap,
+    Label label,
+    BlazeResolveConfigurationData configurationData,
     ConcurrentMap<CToolchainIdeInfo, File> compilerWrapperCache,
-    WorkspacePathResolver workspacePathResolver,
-    BlazeProjectData blazeProjectData
+    WorkspacePathResolver workspacePathResolver
   ) {
-    Label label = rule.label;
     LOG.info("Resolving " + label.toString());
-    CToolchainIdeInfo toolchainIdeInfo = toolchainLookupMap.get(label);
-    if (toolchainIdeInfo != null) {
-      File compilerWrapper = findOrCreateCompilerWrapperScript(
-        compilerWrapperCache,
-        toolchainIdeInfo,
-        workspacePathResolver,
-        rule.label
-      );
-      if (compilerWrapper != null) {
-        BlazeResolveConfiguration config = BlazeResolveConfiguration.createConfigurationForTarget(
-          project,
-          workspacePathResolver,
-          blazeProjectData.ruleMap.get(label),
-          toolchainIdeInfo,
-          compilerWrapper
-        );
-        if (config != null) {
-          return new MapEntry(label, config);
-        }
-      }
+    File compilerWrapper = findOrCreateCompilerWrapperScript(
+      compilerWrapperCache,
+      configurationData.toolchainIdeInfo,
+      workspacePathResolver,
+      label
+    );
+    if (compilerWrapper == null) {
+      return null;
     }
-    return null;
+    File compilerExecutable = workspacePathResolver.resolveToFile(
+      configurationData.toolchainIdeInfo.cppExecutable.getAbsoluteOrRelativeFile().getPath());
+    BlazeResolveConfiguration config = BlazeResolveConfiguration.createConfiguration(
+      project,
+      workspacePathResolver,
+      label,
+      configurationData,
+      compilerWrapper,
+      compilerExecutable
+    );
+    return new MapEntry(configurationData, config);
   }
 
   @Nullable
@@ -243,25 +390,17 @@ final class BlazeConfigurationResolver {
     }
   }
 
+  /**
+   * If a source file is in two different targets, we can't possibly show how it will be interpreted
+   * in both contexts at the same time in the IDE, so the configuration of the first target by label
+   * is used. That choice is made once per update, since CLion asks for every file it resolves.
+   */
   @Nullable
   public OCResolveConfiguration getConfigurationForFile(VirtualFile sourceFile) {
-    SourceToRuleMap sourceToRuleMap = SourceToRuleMap.getInstance(project);
-    List<Label> targetsForSourceFile =
-      Lists.newArrayList(sourceToRuleMap.getTargetsForSourceFile(VfsUtilCore.virtualToIoFile(sourceFile)));
-    if (targetsForSourceFile.isEmpty()) {
-      return null;
-    }
-
-    // If a source file is in two different targets, we can't possibly show how it will be interpreted in both contexts at the same time
-    // in the IDE, so just pick the first target after we sort.
-    targetsForSourceFile.sort((o1, o2) -> o1.toString().compareTo(o2.toString()));
-    Label target = Iterables.getFirst(targetsForSourceFile, null);
-    assert(target != null);
-
-    return resolveConfigurations.get(target);
+    return state.configurationsBySourceFile.get(VfsUtilCore.virtualToIoFile(sourceFile));
   }
 
   public List<? extends OCResolveConfiguration> getAllConfigurations() {
-    return ImmutableList.copyOf(resolveConfigurations.values());
+    return state.configurationsByData.values().asList();
   }
 }
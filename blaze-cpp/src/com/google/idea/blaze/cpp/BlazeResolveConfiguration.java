@@ -16,10 +16,10 @@
 package com.google.idea.blaze.cpp;
 
 import com.google.common.collect.*;
-import com.google.idea.blaze.base.ideinfo.CRuleIdeInfo;
 import com.google.idea.blaze.base.ideinfo.CToolchainIdeInfo;
-import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
+import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.rulemaps.CToolchainLookupMap;
 import com.google.idea.blaze.base.scope.BlazeContext;
 import com.google.idea.blaze.base.scope.Scope;
 import com.google.idea.blaze.base.scope.scopes.TimingScope;
@@ -37,19 +37,15 @@ import com.jetbrains.cidr.lang.workspace.OCLanguageKindCalculator;
 import com.jetbrains.cidr.lang.workspace.OCResolveConfiguration;
 import com.jetbrains.cidr.lang.workspace.OCResolveRootAndConfiguration;
 import com.jetbrains.cidr.lang.workspace.OCWorkspaceUtil;
-import com.jetbrains.cidr.lang.workspace.compiler.CidrCompilerResult;
 import com.jetbrains.cidr.lang.workspace.compiler.OCCompilerMacros;
 import com.jetbrains.cidr.lang.workspace.compiler.OCCompilerSettings;
 import com.jetbrains.cidr.lang.workspace.headerRoots.HeaderRoots;
 import com.jetbrains.cidr.lang.workspace.headerRoots.HeadersSearchRoot;
 import com.jetbrains.cidr.lang.workspace.headerRoots.IncludedHeadersRoot;
-import com.jetbrains.cidr.toolchains.CompilerInfoCache;
 
 import javax.annotation.Nullable;
 import java.io.File;
 import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 
 
@@ -65,33 +61,40 @@ public final class BlazeResolveConfiguration extends UserDataHolderBase implemen
   private final ImmutableList<HeadersSearchRoot> cppLibraryIncludeRoots;
   private final HeaderRoots projectIncludeRoots;
 
-  private final CompilerInfoCache compilerInfoCache;
+  /** Include directories that didn't exist when the configuration was created. */
+  private final ImmutableSet<File> missingHeaderRoots;
+
+  private final BlazeCompilerInfo compilerInfo;
   private final BlazeCompilerMacros compilerMacros;
   private final BlazeCompilerSettings compilerSettings;
 
-  @Nullable
-  public static BlazeResolveConfiguration createConfigurationForTarget(
+  /**
+   * Creates the configuration shared by all targets with the given data.
+   *
+   * @param label the target the configuration is named after
+   * @param compilerWrapper the script CLion runs in place of the compiler
+   * @param compilerExecutable the compiler the wrapper runs
+   */
+  public static BlazeResolveConfiguration createConfiguration(
     Project project,
     WorkspacePathResolver workspacePathResolver,
-    RuleIdeInfo ruleIdeInfo,
-    CToolchainIdeInfo toolchainIdeInfo,
-    File compilerWrapper
+    Label label,
+    BlazeResolveConfigurationData configurationData,
+    File compilerWrapper,
+    File compilerExecutable
   ) {
-    CRuleIdeInfo cRuleIdeInfo = ruleIdeInfo.cRuleIdeInfo;
-    if (cRuleIdeInfo == null) {
-      return null;
-    }
+    CToolchainIdeInfo toolchainIdeInfo = configurationData.toolchainIdeInfo;
 
     UniqueListBuilder<ExecutionRootPath> systemIncludesBuilder = new UniqueListBuilder<>();
-    systemIncludesBuilder.addAll(cRuleIdeInfo.transitiveSystemIncludeDirectories);
+    systemIncludesBuilder.addAll(configurationData.transitiveSystemIncludeDirectories);
     systemIncludesBuilder.addAll(toolchainIdeInfo.builtInIncludeDirectories);
     systemIncludesBuilder.addAll(toolchainIdeInfo.unfilteredToolchainSystemIncludes);
 
     UniqueListBuilder<ExecutionRootPath> userIncludesBuilder = new UniqueListBuilder<>();
-    userIncludesBuilder.addAll(cRuleIdeInfo.transitiveIncludeDirectories);
+    userIncludesBuilder.addAll(configurationData.transitiveIncludeDirectories);
 
     UniqueListBuilder<ExecutionRootPath> userQuoteIncludesBuilder = new UniqueListBuilder<>();
-    userQuoteIncludesBuilder.addAll(cRuleIdeInfo.transitiveQuoteIncludeDirectories);
+    userQuoteIncludesBuilder.addAll(configurationData.transitiveQuoteIncludeDirectories);
 
     ImmutableList.Builder<String> cFlagsBuilder = ImmutableList.builder();
     cFlagsBuilder.addAll(toolchainIdeInfo.baseCompilerOptions);
@@ -108,16 +111,17 @@ public final class BlazeResolveConfiguration extends UserDataHolderBase implemen
     return new BlazeResolveConfiguration(
       project,
       workspacePathResolver,
-      ruleIdeInfo.label,
+      label,
       systemIncludesBuilder.build(),
       systemIncludesBuilder.build(),
       userQuoteIncludesBuilder.build(),
       userIncludesBuilder.build(),
       userIncludesBuilder.build(),
-      cRuleIdeInfo.transitiveDefines,
+      configurationData.transitiveDefines,
       features,
       compilerWrapper,
       compilerWrapper,
+      compilerExecutable,
       cFlagsBuilder.build(),
       cppFlagsBuilder.build()
     );
@@ -125,39 +129,11 @@ public final class BlazeResolveConfiguration extends UserDataHolderBase implemen
 
   public static ImmutableMap<Label, CToolchainIdeInfo> buildToolchainLookupMap(
     BlazeContext context,
-    ImmutableMap<Label, RuleIdeInfo> ruleMap,
-    ImmutableMultimap<Label, Label> reverseDependencies
+    BlazeProjectData blazeProjectData
   ) {
     return Scope.push(context, childContext -> {
       childContext.push(new TimingScope("Build toolchain lookup map"));
-
-      List<Label> seeds = Lists.newArrayList();
-      for (Map.Entry<Label, RuleIdeInfo> entry : ruleMap.entrySet()) {
-        CToolchainIdeInfo cToolchainIdeInfo = entry.getValue().cToolchainIdeInfo;
-        if (cToolchainIdeInfo != null) {
-          seeds.add(entry.getKey());
-        }
-      }
-
-      Map<Label, CToolchainIdeInfo> lookupTable = Maps.newHashMap();
-      for (Label seed : seeds) {
-        CToolchainIdeInfo toolchainInfo = ruleMap.get(seed).cToolchainIdeInfo;
-        LOG.assertTrue(toolchainInfo != null);
-        List<Label> worklist = Lists.newArrayList(reverseDependencies.get(seed));
-        while (!worklist.isEmpty()) {
-          // We should never see a label depend on two different toolchains.
-          Label l = worklist.remove(0);
-          CToolchainIdeInfo previousValue = lookupTable.putIfAbsent(l, toolchainInfo);
-          // Don't propagate the toolchain twice.
-          if (previousValue == null) {
-            worklist.addAll(reverseDependencies.get(l));
-          }
-          else {
-            LOG.assertTrue(previousValue.equals(toolchainInfo));
-          }
-        }
-      }
-      return ImmutableMap.copyOf(lookupTable);
+      return CToolchainLookupMap.get(blazeProjectData);
     });
   }
 
@@ -174,6 +150,7 @@ public final class BlazeResolveConfiguration extends UserDataHolderBase implemen
     ImmutableMap<String, String> features,
     File cCompilerExecutable,
     File cppCompilerExecutable,
+    @Nullable File probedCompilerExecutable,
     ImmutableList<String> cCompilerFlags,
     ImmutableList<String> cppCompilerFlags
   ) {
@@ -181,19 +158,21 @@ public final class BlazeResolveConfiguration extends UserDataHolderBase implemen
     this.project = project;
     this.label = label;
 
+    ImmutableSet.Builder<File> missingHeaderRootsBuilder = ImmutableSet.builder();
     ImmutableList.Builder<HeadersSearchRoot> cIncludeRootsBuilder = ImmutableList.builder();
-    collectHeaderRoots(cIncludeRootsBuilder, cIncludeDirs, true /* isUserHeader */);
-    collectHeaderRoots(cIncludeRootsBuilder, cSystemIncludeDirs, false /* isUserHeader */);
+    collectHeaderRoots(cIncludeRootsBuilder, missingHeaderRootsBuilder, cIncludeDirs, true /* isUserHeader */);
+    collectHeaderRoots(cIncludeRootsBuilder, missingHeaderRootsBuilder, cSystemIncludeDirs, false /* isUserHeader */);
     this.cLibraryIncludeRoots = cIncludeRootsBuilder.build();
 
     ImmutableList.Builder<HeadersSearchRoot> cppIncludeRootsBuilder = ImmutableList.builder();
-    collectHeaderRoots(cppIncludeRootsBuilder, cppIncludeDirs, true /* isUserHeader */);
-    collectHeaderRoots(cppIncludeRootsBuilder, cppSystemIncludeDirs, false /* isUserHeader */);
+    collectHeaderRoots(cppIncludeRootsBuilder, missingHeaderRootsBuilder, cppIncludeDirs, true /* isUserHeader */);
+    collectHeaderRoots(cppIncludeRootsBuilder, missingHeaderRootsBuilder, cppSystemIncludeDirs, false /* isUserHeader */);
     this.cppLibraryIncludeRoots = cppIncludeRootsBuilder.build();
 
     ImmutableList.Builder<HeadersSearchRoot> quoteIncludeRootsBuilder = ImmutableList.builder();
-    collectHeaderRoots(quoteIncludeRootsBuilder, quoteIncludeDirs, true /* isUserHeader */);
+    collectHeaderRoots(quoteIncludeRootsBuilder, missingHeaderRootsBuilder, quoteIncludeDirs, true /* isUserHeader */);
     this.projectIncludeRoots = new HeaderRoots(quoteIncludeRootsBuilder.build());
+    this.missingHeaderRoots = missingHeaderRootsBuilder.build();
 
     this.compilerSettings = new BlazeCompilerSettings(
       project,
@@ -203,16 +182,31 @@ public final class BlazeResolveConfiguration extends UserDataHolderBase implemen
       cppCompilerFlags
     );
 
-    this.compilerInfoCache = new CompilerInfoCache();
+    this.compilerInfo = new BlazeCompilerInfo(project, compilerSettings, probedCompilerExecutable);
     this.compilerMacros = new BlazeCompilerMacros(
-      project,
-      compilerInfoCache,
-      compilerSettings,
+      compilerInfo,
       defines,
       features
     );
   }
 
+  Label getLabel() {
+    return label;
+  }
+
+  /**
+   * Whether an include directory that was missing when this configuration was created has appeared
+   * since, e.g. because a build generated it.
+   */
+  boolean hasNewHeaderRoots() {
+    for (File file : missingHeaderRoots) {
+      if (file.exists()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   @Override
   public Project getProject() {
     return project;
@@ -292,13 +286,7 @@ public final class BlazeResolveConfiguration extends UserDataHolderBase implemen
       roots.addAll(cppLibraryIncludeRoots);
     }
 
-    CidrCompilerResult<CompilerInfoCache.Entry> compilerInfoCacheHolder = compilerInfoCache.getCompilerInfoCache(
-      project,
-      compilerSettings,
-      languageKind,
-      sourceFile
-    );
-    CompilerInfoCache.Entry compilerInfo = compilerInfoCacheHolder.getResult();
+    BlazeCompilerInfo.Entry compilerInfo = this.compilerInfo.get(languageKind, sourceFile);
     if (compilerInfo != null) {
       roots.addAll(compilerInfo.headerSearchPaths);
     }
@@ -308,6 +296,7 @@ public final class BlazeResolveConfiguration extends UserDataHolderBase implemen
 
   private void collectHeaderRoots(
     ImmutableList.Builder<HeadersSearchRoot> roots,
+    ImmutableSet.Builder<File> missingRoots,
     ImmutableList<ExecutionRootPath> paths,
     boolean isUserHeader
   ) {
@@ -317,6 +306,7 @@ public final class BlazeResolveConfiguration extends UserDataHolderBase implemen
         VirtualFile vf = getVirtualFile(f);
         if (vf == null) {
           LOG.debug(String.format("Header root %s could not be converted to a virtual file", f.getAbsolutePath()));
+          missingRoots.add(f);
         }
         else {
           roots.add(new IncludedHeadersRoot(project, vf, false /* recursive */, isUserHeader));
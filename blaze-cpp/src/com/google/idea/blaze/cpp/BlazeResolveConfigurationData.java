@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.cpp;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.idea.blaze.base.ideinfo.CRuleIdeInfo;
+import com.google.idea.blaze.base.ideinfo.CToolchainIdeInfo;
+import com.google.idea.blaze.base.model.primitives.ExecutionRootPath;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The inputs to a {@link BlazeResolveConfiguration}.
+ *
+ * <p>Targets with equal data are compiled the same way, so they share a single configuration (and
+ * a single set of compiler probes).
+ */
+@Immutable
+final class BlazeResolveConfigurationData {
+  final CToolchainIdeInfo toolchainIdeInfo;
+  final ImmutableList<ExecutionRootPath> transitiveIncludeDirectories;
+  final ImmutableList<ExecutionRootPath> transitiveQuoteIncludeDirectories;
+  final ImmutableList<String> transitiveDefines;
+  final ImmutableList<ExecutionRootPath> transitiveSystemIncludeDirectories;
+  private final int hashCode;
+
+  static BlazeResolveConfigurationData create(CRuleIdeInfo cRuleIdeInfo, CToolchainIdeInfo toolchainIdeInfo) {
+    return new BlazeResolveConfigurationData(
+      toolchainIdeInfo,
+      cRuleIdeInfo.transitiveIncludeDirectories,
+      cRuleIdeInfo.transitiveQuoteIncludeDirectories,
+      cRuleIdeInfo.transitiveDefines,
+      cRuleIdeInfo.transitiveSystemIncludeDirectories
+    );
+  }
+
+  private BlazeResolveConfigurationData(
+    CToolchainIdeInfo toolchainIdeInfo,
+    ImmutableList<ExecutionRootPath> transitiveIncludeDirectories,
+    ImmutableList<ExecutionRootPath> transitiveQuoteIncludeDirectories,
+    ImmutableList<String> transitiveDefines,
+    ImmutableList<ExecutionRootPath> transitiveSystemIncludeDirectories
+  ) {
+    this.toolchainIdeInfo = toolchainIdeInfo;
+    this.transitiveIncludeDirectories = transitiveIncludeDirectories;
+    this.transitiveQuoteIncludeDirectories = transitiveQuoteIncludeDirectories;
+    this.transitiveDefines = transitiveDefines;
+    this.transitiveSystemIncludeDirectories = transitiveSystemIncludeDirectories;
+    // Thousands of targets are hashed against a handful of configurations, so compute this once
+    this.hashCode = Objects.hashCode(
+      toolchainIdeInfo,
+      transitiveIncludeDirectories,
+      transitiveQuoteIncludeDirectories,
+      transitiveDefines,
+      transitiveSystemIncludeDirectories
+    );
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof BlazeResolveConfigurationData)) {
+      return false;
+    }
+    BlazeResolveConfigurationData that = (BlazeResolveConfigurationData)o;
+    return
+      hashCode == that.hashCode &&
+      Objects.equal(transitiveIncludeDirectories, that.transitiveIncludeDirectories) &&
+      Objects.equal(transitiveQuoteIncludeDirectories, that.transitiveQuoteIncludeDirectories) &&
+      Objects.equal(transitiveDefines, that.transitiveDefines) &&
+      Objects.equal(transitiveSystemIncludeDirectories, that.transitiveSystemIncludeDirectories) &&
+      Objects.equal(toolchainIdeInfo, that.toolchainIdeInfo);
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+}
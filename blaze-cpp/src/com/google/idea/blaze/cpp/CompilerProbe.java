@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.cpp;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.Objects;
+
+/**
+ * What probing a compiler told us: its predefined macros, language features and built-in include
+ * directories.
+ */
+@Immutable
+final class CompilerProbe {
+  /** Predefined macros, as "#define NAME VALUE" lines. */
+  final String defines;
+  final ImmutableMap<String, String> features;
+  final ImmutableList<HeaderRoot> headerRoots;
+
+  /**
+   * A built-in include directory of the compiler.
+   */
+  @Immutable
+  static final class HeaderRoot {
+    final String path;
+    final boolean isUserHeader;
+
+    HeaderRoot(String path, boolean isUserHeader) {
+      this.path = path;
+      this.isUserHeader = isUserHeader;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof HeaderRoot)) {
+        return false;
+      }
+      HeaderRoot that = (HeaderRoot)o;
+      return isUserHeader == that.isUserHeader && path.equals(that.path);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(path, isUserHeader);
+    }
+  }
+
+  CompilerProbe(String defines, ImmutableMap<String, String> features, ImmutableList<HeaderRoot> headerRoots) {
+    this.defines = defines;
+    this.features = features;
+    this.headerRoots = headerRoots;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof CompilerProbe)) {
+      return false;
+    }
+    CompilerProbe that = (CompilerProbe)o;
+    return defines.equals(that.defines) && features.equals(that.features) && headerRoots.equals(that.headerRoots);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(defines, features, headerRoots);
+  }
+}
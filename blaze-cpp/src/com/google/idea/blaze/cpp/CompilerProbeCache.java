@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.cpp;
+
+import com.google.common.collect.Maps;
+import com.google.idea.blaze.base.io.FileAttributeProvider;
+import com.google.idea.blaze.base.io.FileStat;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.jetbrains.cidr.lang.OCLanguageKind;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Compiler probe results shared by all resolve configurations and kept on disk between IDE
+ * sessions.
+ *
+ * <p>Probing runs the compiler once per language, which used to happen for every resolve
+ * configuration and again after every restart, even though most configurations share a toolchain.
+ *
+ * <p>Compilers are often wrapper scripts whose probes depend on files we don't track, so a full
+ * sync drops all cached probes.
+ */
+public class CompilerProbeCache implements Disposable {
+  private static final Logger LOG = Logger.getInstance(CompilerProbeCache.class);
+  private static final String CACHE_FILE_NAME = "compiler_probes.dat";
+
+  private final File file;
+  private final AtomicBoolean saveScheduled = new AtomicBoolean();
+  /** Content hashes of compiler binaries, valid while their stat is unchanged. */
+  private final Map<String, ContentHash> contentHashes = Maps.newConcurrentMap();
+  @Nullable private CompilerProbeStore store;
+
+  public CompilerProbeCache() {
+    this(new File(new File(PathManager.getSystemPath(), "blaze"), CACHE_FILE_NAME).getAbsoluteFile());
+  }
+
+  CompilerProbeCache(File file) {
+    this.file = file;
+  }
+
+  public static CompilerProbeCache getInstance() {
+    return ServiceManager.getService(CompilerProbeCache.class);
+  }
+
+  /**
+   * @return null if the compiler can't be read, in which case its probes aren't cached
+   */
+  @Nullable
+  CompilerProbeStore.Key createKey(File compiler, OCLanguageKind languageKind, List<String> flags) {
+    FileAttributeProvider fileAttributeProvider = FileAttributeProvider.getInstance();
+    FileStat stat = fileAttributeProvider.getFileStat(compiler);
+    if (stat == null) {
+      return null;
+    }
+    // Every configuration asks for a key, so only hash the binary again once its stat changes
+    ContentHash contentHash = contentHashes.get(compiler.getPath());
+    if (contentHash == null || !contentHash.matches(stat)) {
+      try {
+        contentHash = new ContentHash(stat, fileAttributeProvider.getContentHash(compiler));
+      }
+      catch (IOException e) {
+        LOG.info("Could not hash compiler " + compiler + ": " + e.getMessage());
+        return null;
+      }
+      contentHashes.put(compiler.getPath(), contentHash);
+    }
+    return new CompilerProbeStore.Key(compiler.getPath(), stat, contentHash.hash, languageKind.name(), flags);
+  }
+
+  /**
+   * Drops all cached probes, in memory and on disk.
+   */
+  void invalidate() {
+    contentHashes.clear();
+    CompilerProbeStore store = getStore();
+    store.clear();
+    scheduleSave(store);
+  }
+
+  @Nullable
+  CompilerProbe get(CompilerProbeStore.Key key) {
+    return getStore().get(key);
+  }
+
+  void put(CompilerProbeStore.Key key, CompilerProbe probe) {
+    CompilerProbeStore store = getStore();
+    store.put(key, probe);
+    scheduleSave(store);
+  }
+
+  private void scheduleSave(CompilerProbeStore store) {
+    if (store.isDirty() && saveScheduled.compareAndSet(false, true)) {
+      // Probes usually arrive in bursts right after a sync, so one save covers all of them
+      ApplicationManager.getApplication().executeOnPooledThread(() -> {
+        saveScheduled.set(false);
+        save();
+      });
+    }
+  }
+
+  private synchronized CompilerProbeStore getStore() {
+    if (store == null) {
+      try {
+        store = CompilerProbeStore.load(file);
+      }
+      catch (IOException e) {
+        LOG.info("Discarding compiler probe cache: " + e.getMessage());
+        store = new CompilerProbeStore();
+      }
+    }
+    return store;
+  }
+
+  private void save() {
+    CompilerProbeStore store;
+    synchronized (this) {
+      store = this.store;
+    }
+    if (store == null || !store.isDirty()) {
+      return;
+    }
+    try {
+      store.save(file);
+    }
+    catch (IOException e) {
+      LOG.warn("Could not save compiler probe cache", e);
+    }
+  }
+
+  @Override
+  public void dispose() {
+    save();
+  }
+
+  private static final class ContentHash {
+    final FileStat stat;
+    final long hash;
+
+    ContentHash(FileStat stat, long hash) {
+      this.stat = stat;
+      this.hash = hash;
+    }
+
+    boolean matches(FileStat stat) {
+      return this.stat.modifiedTime == stat.modifiedTime
+             && this.stat.size == stat.size
+             && this.stat.fileKey == stat.fileKey;
+    }
+  }
+}
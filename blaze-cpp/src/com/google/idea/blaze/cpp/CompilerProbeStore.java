@@ -0,0 +1,311 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.cpp;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.idea.blaze.base.io.FileStat;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The most recently used compiler probes, keyed by compiler binary, language and flags, with a
+ * simple on-disk format:
+ * <pre>
+ *   int magic, int version, int probeCount
+ *   probeCount x (key, probe)
+ * </pre>
+ * Probes are written least recently used first, so loading a file restores the eviction order.
+ */
+final class CompilerProbeStore {
+  private static final int MAGIC = 0x425a4350; // "BZCP"
+  static final int VERSION = 2;
+
+  static final int MAX_PROBES = 256;
+  private static final int MAX_STRING_LENGTH = 16 * 1024 * 1024;
+
+  /**
+   * Identifies a compiler probe. The binary's stat and content hash are part of the key, so
+   * upgrading the compiler in place orphans its old probes instead of reusing them. The stat alone
+   * misses upgrades that preserve size and modification time.
+   */
+  @Immutable
+  static final class Key {
+    final String compilerPath;
+    final long modifiedTime;
+    final long size;
+    final int fileKey;
+    final long contentHash;
+    final String language;
+    final ImmutableList<String> flags;
+    private final int hashCode;
+
+    Key(String compilerPath, FileStat compilerStat, long contentHash, String language, List<String> flags) {
+      this(compilerPath, compilerStat.modifiedTime, compilerStat.size, compilerStat.fileKey, contentHash, language, flags);
+    }
+
+    private Key(String compilerPath,
+                long modifiedTime,
+                long size,
+                int fileKey,
+                long contentHash,
+                String language,
+                List<String> flags) {
+      this.compilerPath = compilerPath;
+      this.modifiedTime = modifiedTime;
+      this.size = size;
+      this.fileKey = fileKey;
+      this.contentHash = contentHash;
+      this.language = language;
+      this.flags = ImmutableList.copyOf(flags);
+      this.hashCode = Objects.hash(compilerPath, modifiedTime, size, fileKey, contentHash, language, this.flags);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key that = (Key)o;
+      return hashCode == that.hashCode
+             && modifiedTime == that.modifiedTime
+             && size == that.size
+             && fileKey == that.fileKey
+             && contentHash == that.contentHash
+             && compilerPath.equals(that.compilerPath)
+             && language.equals(that.language)
+             && flags.equals(that.flags);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  private final LinkedHashMap<Key, CompilerProbe> probes = new LinkedHashMap<Key, CompilerProbe>(16, 0.75f, true /* accessOrder */) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, CompilerProbe> eldest) {
+      return size() > MAX_PROBES;
+    }
+  };
+  private boolean dirty;
+
+  @Nullable
+  synchronized CompilerProbe get(Key key) {
+    return probes.get(key);
+  }
+
+  synchronized void put(Key key, CompilerProbe probe) {
+    if (!probe.equals(probes.put(key, probe))) {
+      dirty = true;
+    }
+  }
+
+  synchronized void clear() {
+    if (!probes.isEmpty()) {
+      probes.clear();
+      dirty = true;
+    }
+  }
+
+  synchronized int size() {
+    return probes.size();
+  }
+
+  /**
+   * Whether probes were added since the store was loaded or last saved.
+   */
+  synchronized boolean isDirty() {
+    return dirty;
+  }
+
+  void save(File file) throws IOException {
+    List<Map.Entry<Key, CompilerProbe>> entries;
+    synchronized (this) {
+      entries = Lists.newArrayList(probes.entrySet());
+      dirty = false;
+    }
+    File parent = file.getParentFile();
+    if (parent != null && !parent.exists() && !parent.mkdirs()) {
+      throw new IOException("Could not create directory " + parent);
+    }
+    // Write to a temporary file first so a crash never leaves a truncated store behind
+    File tempFile = new File(file.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(entries.size());
+      for (Map.Entry<Key, CompilerProbe> entry : entries) {
+        writeKey(out, entry.getKey());
+        writeProbe(out, entry.getValue());
+      }
+    }
+    if (!tempFile.renameTo(file)) {
+      // Windows doesn't replace existing files on rename
+      if (!file.delete() || !tempFile.renameTo(file)) {
+        throw new IOException("Could not replace " + file);
+      }
+    }
+  }
+
+  /**
+   * @throws IOException if the file is malformed or from a different version. A missing file gives
+   *                     an empty store.
+   */
+  static CompilerProbeStore load(File file) throws IOException {
+    CompilerProbeStore store = new CompilerProbeStore();
+    if (!file.exists()) {
+      return store;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a compiler probe file: " + file);
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported compiler probe file version: " + version);
+      }
+      int count = readCount(in);
+      for (int i = 0; i < count; ++i) {
+        Key key = readKey(in);
+        store.probes.put(key, readProbe(in));
+      }
+    }
+    catch (EOFException e) {
+      throw new IOException("Truncated compiler probe file: " + file, e);
+    }
+    return store;
+  }
+
+  private static void writeKey(DataOutputStream out, Key key) throws IOException {
+    writeString(out, key.compilerPath);
+    out.writeLong(key.modifiedTime);
+    out.writeLong(key.size);
+    out.writeInt(key.fileKey);
+    out.writeLong(key.contentHash);
+    writeString(out, key.language);
+    writeStrings(out, key.flags);
+  }
+
+  private static Key readKey(DataInputStream in) throws IOException {
+    String compilerPath = readString(in);
+    long modifiedTime = in.readLong();
+    long size = in.readLong();
+    int fileKey = in.readInt();
+    long contentHash = in.readLong();
+    String language = readString(in);
+    ImmutableList<String> flags = readStrings(in);
+    return new Key(compilerPath, modifiedTime, size, fileKey, contentHash, language, flags);
+  }
+
+  private static void writeProbe(DataOutputStream out, CompilerProbe probe) throws IOException {
+    writeString(out, probe.defines);
+    out.writeInt(probe.features.size());
+    for (Map.Entry<String, String> feature : probe.features.entrySet()) {
+      writeString(out, feature.getKey());
+      writeString(out, feature.getValue());
+    }
+    out.writeInt(probe.headerRoots.size());
+    for (CompilerProbe.HeaderRoot headerRoot : probe.headerRoots) {
+      writeString(out, headerRoot.path);
+      out.writeBoolean(headerRoot.isUserHeader);
+    }
+  }
+
+  private static CompilerProbe readProbe(DataInputStream in) throws IOException {
+    String defines = readString(in);
+    int featureCount = readCount(in);
+    ImmutableMap.Builder<String, String> features = ImmutableMap.builder();
+    for (int i = 0; i < featureCount; ++i) {
+      features.put(readString(in), readString(in));
+    }
+    int headerRootCount = readCount(in);
+    ImmutableList.Builder<CompilerProbe.HeaderRoot> headerRoots = ImmutableList.builder();
+    for (int i = 0; i < headerRootCount; ++i) {
+      headerRoots.add(new CompilerProbe.HeaderRoot(readString(in), in.readBoolean()));
+    }
+    try {
+      return new CompilerProbe(defines, features.build(), headerRoots.build());
+    }
+    catch (IllegalArgumentException e) {
+      throw new IOException("Malformed compiler probe", e);
+    }
+  }
+
+  private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+    out.writeInt(strings.size());
+    for (String string : strings) {
+      writeString(out, string);
+    }
+  }
+
+  private static ImmutableList<String> readStrings(DataInputStream in) throws IOException {
+    int count = readCount(in);
+    ImmutableList.Builder<String> strings = ImmutableList.builder();
+    for (int i = 0; i < count; ++i) {
+      strings.add(readString(in));
+    }
+    return strings.build();
+  }
+
+  /**
+   * Strings are length-prefixed UTF-8 rather than {@link DataOutputStream#writeUTF}, which can't
+   * hold the predefined macros of some compilers.
+   */
+  private static void writeString(DataOutputStream out, String string) throws IOException {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int length = readCount(in);
+    if (length > MAX_STRING_LENGTH) {
+      throw new IOException("Malformed compiler probe file");
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static int readCount(DataInputStream in) throws IOException {
+    int count = in.readInt();
+    if (count < 0) {
+      throw new IOException("Malformed compiler probe file");
+    }
+    return count;
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.cpp;
+
+import com.google.common.collect.ImmutableList;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.CRuleIdeInfo;
+import com.google.idea.blaze.base.ideinfo.CToolchainIdeInfo;
+import com.google.idea.blaze.base.model.primitives.ExecutionRootPath;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link BlazeResolveConfigurationData}.
+ */
+@RunWith(JUnit4.class)
+public class BlazeResolveConfigurationDataTest {
+  private static final CToolchainIdeInfo TOOLCHAIN = CToolchainIdeInfo.builder()
+    .setTargetName("k8")
+    .setCppExecutable(new ExecutionRootPath("bin/gcc"))
+    .setPreprocessorExecutable(new ExecutionRootPath("bin/cpp"))
+    .addBaseCompilerOptions(ImmutableList.of("-Wall"))
+    .build();
+
+  @Test
+  public void testTargetsWithSameInputsShareData() {
+    CRuleIdeInfo first = cRule("a.cc", "-DFOO");
+    CRuleIdeInfo second = cRule("b.cc", "-DFOO");
+
+    BlazeResolveConfigurationData firstData = BlazeResolveConfigurationData.create(first, TOOLCHAIN);
+    BlazeResolveConfigurationData secondData = BlazeResolveConfigurationData.create(second, TOOLCHAIN);
+
+    // Sources don't affect how a target is resolved
+    assertThat(firstData).isEqualTo(secondData);
+    assertThat(firstData.hashCode()).isEqualTo(secondData.hashCode());
+  }
+
+  @Test
+  public void testDifferentDefinesGiveDifferentData() {
+    BlazeResolveConfigurationData first = BlazeResolveConfigurationData.create(cRule("a.cc", "-DFOO"), TOOLCHAIN);
+    BlazeResolveConfigurationData second = BlazeResolveConfigurationData.create(cRule("a.cc", "-DBAR"), TOOLCHAIN);
+
+    assertThat(first).isNotEqualTo(second);
+  }
+
+  @Test
+  public void testDifferentToolchainsGiveDifferentData() {
+    CToolchainIdeInfo otherToolchain = CToolchainIdeInfo.builder()
+      .setTargetName("armeabi")
+      .setCppExecutable(new ExecutionRootPath("bin/arm-gcc"))
+      .setPreprocessorExecutable(new ExecutionRootPath("bin/arm-cpp"))
+      .build();
+
+    BlazeResolveConfigurationData first = BlazeResolveConfigurationData.create(cRule("a.cc", "-DFOO"), TOOLCHAIN);
+    BlazeResolveConfigurationData second = BlazeResolveConfigurationData.create(cRule("a.cc", "-DFOO"), otherToolchain);
+
+    assertThat(first).isNotEqualTo(second);
+  }
+
+  private static CRuleIdeInfo cRule(String source, String define) {
+    return CRuleIdeInfo.builder()
+      .addSources(ImmutableList.of(ArtifactLocation.builder()
+        .setRootPath("/root")
+        .setRelativePath(source)
+        .setIsSource(true)
+        .build()))
+      .addTransitiveIncludeDirectories(ImmutableList.of(new ExecutionRootPath("include")))
+      .addTransitiveQuoteIncludeDirectories(ImmutableList.of(new ExecutionRootPath(".")))
+      .addTransitiveSystemIncludeDirectories(ImmutableList.of(new ExecutionRootPath("third_party/include")))
+      .addTransitiveDefines(ImmutableList.of(define))
+      .build();
+  }
+}
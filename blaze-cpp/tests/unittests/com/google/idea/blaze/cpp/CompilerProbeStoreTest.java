@@ -0,0 +1,190 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.cpp;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.idea.blaze.base.io.FileStat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link CompilerProbeStore}.
+ */
+@RunWith(JUnit4.class)
+public class CompilerProbeStoreTest {
+  private static final FileStat GCC_STAT = new FileStat(1000L, 4096L, 7);
+  private static final long GCC_HASH = 0x1234L;
+
+  private File tempDir;
+
+  @Before
+  public void createTempDir() throws IOException {
+    tempDir = Files.createTempDirectory("compilerprobes").toFile();
+  }
+
+  @After
+  public void deleteTempDir() {
+    File[] files = tempDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    tempDir.delete();
+  }
+
+  private static CompilerProbeStore.Key key(String language, String... flags) {
+    return new CompilerProbeStore.Key("/usr/bin/gcc", GCC_STAT, GCC_HASH, language, ImmutableList.copyOf(flags));
+  }
+
+  private static CompilerProbe probe(String defines) {
+    return new CompilerProbe(
+      defines,
+      ImmutableMap.of("cxx_exceptions", "1"),
+      ImmutableList.of(
+        new CompilerProbe.HeaderRoot("/usr/include", false),
+        new CompilerProbe.HeaderRoot("/usr/include/c++/4.9", false)));
+  }
+
+  @Test
+  public void testProbesSurviveSaveAndLoad() throws IOException {
+    CompilerProbeStore store = new CompilerProbeStore();
+    store.put(key("C", "-Wall"), probe("#define __GNUC__ 4"));
+    store.put(key("CPP", "-Wall"), probe("#define __cplusplus 201103L"));
+    // Predefined macros can exceed the 64k limit of DataOutput.writeUTF
+    String longDefines = Strings.repeat("#define X 1\n", 10000);
+    store.put(key("CPP", "-O2"), probe(longDefines));
+    assertThat(store.isDirty()).isTrue();
+
+    File file = new File(tempDir, "probes.dat");
+    store.save(file);
+    assertThat(store.isDirty()).isFalse();
+
+    CompilerProbeStore loaded = CompilerProbeStore.load(file);
+    assertThat(loaded.size()).isEqualTo(3);
+    assertThat(loaded.isDirty()).isFalse();
+    assertThat(loaded.get(key("C", "-Wall"))).isEqualTo(probe("#define __GNUC__ 4"));
+    assertThat(loaded.get(key("CPP", "-Wall"))).isEqualTo(probe("#define __cplusplus 201103L"));
+    assertThat(loaded.get(key("CPP", "-O2"))).isEqualTo(probe(longDefines));
+  }
+
+  @Test
+  public void testKeyDependsOnCompilerStatContentLanguageAndFlags() {
+    CompilerProbeStore store = new CompilerProbeStore();
+    store.put(key("C", "-Wall"), probe("#define A 1"));
+
+    assertThat(store.get(key("C", "-Wall"))).isNotNull();
+    assertThat(store.get(key("CPP", "-Wall"))).isNull();
+    assertThat(store.get(key("C", "-Wall", "-O2"))).isNull();
+    FileStat upgraded = new FileStat(2000L, 4096L, 7);
+    assertThat(store.get(new CompilerProbeStore.Key("/usr/bin/gcc", upgraded, GCC_HASH, "C", ImmutableList.of("-Wall")))).isNull();
+    assertThat(store.get(new CompilerProbeStore.Key("/usr/bin/clang", GCC_STAT, GCC_HASH, "C", ImmutableList.of("-Wall")))).isNull();
+    // A wrapper script rewritten in place can keep its size and modification time
+    assertThat(store.get(new CompilerProbeStore.Key("/usr/bin/gcc", GCC_STAT, 0x5678L, "C", ImmutableList.of("-Wall")))).isNull();
+  }
+
+  @Test
+  public void testStoringSameProbeAgainDoesNotDirtyStore() throws IOException {
+    CompilerProbeStore store = new CompilerProbeStore();
+    store.put(key("C"), probe("#define A 1"));
+    store.save(new File(tempDir, "probes.dat"));
+
+    store.put(key("C"), probe("#define A 1"));
+
+    assertThat(store.isDirty()).isFalse();
+  }
+
+  @Test
+  public void testLeastRecentlyUsedProbesAreEvictedAcrossSaves() throws IOException {
+    CompilerProbeStore store = new CompilerProbeStore();
+    for (int i = 0; i < CompilerProbeStore.MAX_PROBES; ++i) {
+      store.put(key("C", "-D" + i), probe("#define A " + i));
+    }
+    // Touch the oldest probe so the second oldest is evicted instead
+    assertThat(store.get(key("C", "-D0"))).isNotNull();
+    File file = new File(tempDir, "probes.dat");
+    store.save(file);
+
+    CompilerProbeStore loaded = CompilerProbeStore.load(file);
+    loaded.put(key("C", "-Dnew"), probe("#define A new"));
+
+    assertThat(loaded.size()).isEqualTo(CompilerProbeStore.MAX_PROBES);
+    assertThat(loaded.get(key("C", "-D0"))).isNotNull();
+    assertThat(loaded.get(key("C", "-D1"))).isNull();
+    assertThat(loaded.get(key("C", "-Dnew"))).isNotNull();
+  }
+
+  @Test
+  public void testClearedStoreSavesEmpty() throws IOException {
+    CompilerProbeStore store = new CompilerProbeStore();
+    store.put(key("C", "-Wall"), probe("#define A 1"));
+    File file = new File(tempDir, "probes.dat");
+    store.save(file);
+
+    store.clear();
+    assertThat(store.isDirty()).isTrue();
+    store.save(file);
+
+    assertThat(CompilerProbeStore.load(file).size()).isEqualTo(0);
+  }
+
+  @Test
+  public void testMissingFileGivesEmptyStore() throws IOException {
+    CompilerProbeStore store = CompilerProbeStore.load(new File(tempDir, "missing.dat"));
+    assertThat(store.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void testMalformedFilesAreRejected() throws IOException {
+    CompilerProbeStore store = new CompilerProbeStore();
+    store.put(key("C", "-Wall"), probe("#define A 1"));
+    File file = new File(tempDir, "probes.dat");
+    store.save(file);
+    byte[] bytes = Files.readAllBytes(file.toPath());
+
+    File truncated = new File(tempDir, "truncated.dat");
+    try (FileOutputStream out = new FileOutputStream(truncated)) {
+      out.write(bytes, 0, bytes.length - 5);
+    }
+    File garbage = new File(tempDir, "garbage.dat");
+    try (FileOutputStream out = new FileOutputStream(garbage)) {
+      out.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+    }
+
+    for (File malformed : ImmutableList.of(truncated, garbage)) {
+      try {
+        CompilerProbeStore.load(malformed);
+        fail("Expected an IOException for " + malformed.getName());
+      }
+      catch (IOException expected) {
+        // Expected
+      }
+    }
+  }
+}
@@ -16,7 +16,6 @@
 package com.google.idea.blaze.java.sync;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.idea.blaze.base.experiments.BoolExperiment;
@@ -57,6 +56,7 @@ import com.google.idea.blaze.java.sync.model.BlazeLibrary;
 import com.google.idea.blaze.java.sync.projectstructure.Jdks;
 import com.google.idea.blaze.java.sync.projectstructure.LibraryEditor;
 import com.google.idea.blaze.java.sync.projectstructure.SourceFolderEditor;
+import com.google.idea.blaze.java.sync.source.JavaPackageCache;
 import com.google.idea.blaze.java.sync.workingset.JavaWorkingSet;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
@@ -76,6 +76,7 @@ import javax.annotation.Nullable;
 import java.io.File;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -119,7 +120,7 @@ public class BlazeJavaSyncPlugin extends BlazeSyncPlugin.Adapter {
                               BlazeRoots blazeRoots,
                               @Nullable WorkingSet workingSet,
                               WorkspacePathResolver workspacePathResolver,
-                              ImmutableMap<Label, RuleIdeInfo> ruleMap,
+                              Map<Label, RuleIdeInfo> ruleMap,
                               @Deprecated @Nullable File androidPlatformDirectory,
                               SyncState.Builder syncStateBuilder,
                               @Nullable SyncState previousSyncState) {
@@ -129,6 +130,9 @@ public class BlazeJavaSyncPlugin extends BlazeSyncPlugin.Adapter {
     }
 
     JdepsMap jdepsMap = jdepsFileReader.loadJdepsFiles(context, ruleMap, syncStateBuilder, previousSyncState);
+    JavaPackageCache.Builder packageCache = JavaPackageCache.builder(
+      previousSyncState != null ? previousSyncState.get(JavaPackageCache.class) : null
+    );
 
     BlazeJavaWorkspaceImporter blazeJavaWorkspaceImporter = new BlazeJavaWorkspaceImporter(
       project,
@@ -137,7 +141,8 @@ public class BlazeJavaSyncPlugin extends BlazeSyncPlugin.Adapter {
       ruleMap,
       jdepsMap,
       javaWorkingSet,
-      new ArtifactLocationDecoder(blazeRoots, workspacePathResolver)
+      new ArtifactLocationDecoder(blazeRoots, workspacePathResolver),
+      packageCache
     );
     BlazeJavaImportResult importResult = Scope.push(context, (childContext) -> {
       childContext.push(new TimingScope("JavaWorkspaceImporter"));
@@ -158,6 +163,7 @@ public class BlazeJavaSyncPlugin extends BlazeSyncPlugin.Adapter {
       BlazeUserSettings.getInstance().getAttachSourcesByDefault()
     );
     syncStateBuilder.put(BlazeJavaSyncData.class, syncData);
+    syncStateBuilder.put(JavaPackageCache.class, packageCache.build());
   }
 
   @Override
@@ -34,6 +34,7 @@ import com.google.idea.blaze.java.sync.model.BlazeContentEntry;
 import com.google.idea.blaze.java.sync.model.BlazeJavaImportResult;
 import com.google.idea.blaze.java.sync.model.BlazeLibrary;
 import com.google.idea.blaze.java.sync.model.LibraryKey;
+import com.google.idea.blaze.java.sync.source.JavaPackageCache;
 import com.google.idea.blaze.java.sync.source.SourceArtifact;
 import com.google.idea.blaze.java.sync.source.SourceDirectoryCalculator;
 import com.google.idea.blaze.java.sync.workingset.JavaWorkingSet;
@@ -57,11 +58,12 @@ public final class BlazeJavaWorkspaceImporter {
   private final Project project;
   private final WorkspaceRoot workspaceRoot;
   private final ImportRoots importRoots;
-  private final ImmutableMap<Label, RuleIdeInfo> ruleMap;
+  private final Map<Label, RuleIdeInfo> ruleMap;
   private final SourceTestConfig sourceTestConfig;
   private final JdepsMap jdepsMap;
   @Nullable private final JavaWorkingSet workingSet;
   private final ArtifactLocationDecoder artifactLocationDecoder;
+  private final JavaPackageCache.Builder packageCache;
   private final ProjectViewRuleImportFilter importFilter;
   private final DuplicateSourceDetector duplicateSourceDetector = new DuplicateSourceDetector();
 
@@ -73,6 +75,31 @@ public final class BlazeJavaWorkspaceImporter {
     JdepsMap jdepsMap,
     @Nullable JavaWorkingSet workingSet,
     ArtifactLocationDecoder artifactLocationDecoder) {
+    this(project, workspaceRoot, projectViewSet, ruleMap, jdepsMap, workingSet, artifactLocationDecoder,
+         JavaPackageCache.builder(null));
+  }
+
+  public BlazeJavaWorkspaceImporter(
+    Project project,
+    WorkspaceRoot workspaceRoot,
+    ProjectViewSet projectViewSet,
+    Map<Label, RuleIdeInfo> ruleMap,
+    JdepsMap jdepsMap,
+    @Nullable JavaWorkingSet workingSet,
+    ArtifactLocationDecoder artifactLocationDecoder) {
+    this(project, workspaceRoot, projectViewSet, ruleMap, jdepsMap, workingSet, artifactLocationDecoder,
+         JavaPackageCache.builder(null));
+  }
+
+  public BlazeJavaWorkspaceImporter(
+    Project project,
+    WorkspaceRoot workspaceRoot,
+    ProjectViewSet projectViewSet,
+    Map<Label, RuleIdeInfo> ruleMap,
+    JdepsMap jdepsMap,
+    @Nullable JavaWorkingSet workingSet,
+    ArtifactLocationDecoder artifactLocationDecoder,
+    JavaPackageCache.Builder packageCache) {
     this.project = project;
     this.workspaceRoot = workspaceRoot;
     this.importRoots = ImportRoots.builder(workspaceRoot, Blaze.getBuildSystem(project))
@@ -82,6 +109,7 @@ public final class BlazeJavaWorkspaceImporter {
     this.jdepsMap = jdepsMap;
     this.workingSet = workingSet;
     this.artifactLocationDecoder = artifactLocationDecoder;
+    this.packageCache = packageCache;
     this.importFilter = new ProjectViewRuleImportFilter(project, workspaceRoot, projectViewSet);
     this.sourceTestConfig = new SourceTestConfig(projectViewSet);
   }
@@ -119,7 +147,7 @@ public final class BlazeJavaWorkspaceImporter {
       addRuleAsSource(workspaceBuilder, rule);
     }
 
-    SourceDirectoryCalculator sourceDirectoryCalculator = new SourceDirectoryCalculator();
+    SourceDirectoryCalculator sourceDirectoryCalculator = new SourceDirectoryCalculator(packageCache);
     ImmutableList<BlazeContentEntry> contentEntries = sourceDirectoryCalculator.calculateContentEntries(
       context,
       workspaceRoot,
@@ -350,7 +378,7 @@ public final class BlazeJavaWorkspaceImporter {
   }
 
   @Nullable
-  private String findSourceVersion(ImmutableMap<Label, RuleIdeInfo> ruleMap) {
+  private String findSourceVersion(Map<Label, RuleIdeInfo> ruleMap) {
     for (RuleIdeInfo rule : ruleMap.values()) {
       if (rule.javaToolchainIdeInfo != null) {
         return rule.javaToolchainIdeInfo.sourceVersion;
@@ -17,7 +17,7 @@ package com.google.idea.blaze.java.sync.jdeps;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.idea.blaze.base.async.FutureUtil;
@@ -32,14 +32,20 @@ import com.google.idea.blaze.base.scope.BlazeContext;
 import com.google.idea.blaze.base.scope.Scope;
 import com.google.idea.blaze.base.scope.output.PrintOutput;
 import com.google.idea.blaze.base.scope.scopes.TimingScope;
+import com.google.idea.blaze.base.sync.data.ProjectDataInput;
+import com.google.idea.blaze.base.sync.data.ProjectDataOutput;
+import com.google.idea.blaze.base.sync.data.SyncStateCodec;
 import com.google.idea.blaze.base.sync.filediff.FileDiffService;
+import com.google.idea.blaze.base.util.PersistentMap;
 import com.google.repackaged.devtools.build.lib.view.proto.Deps;
 import com.intellij.openapi.diagnostic.Logger;
 
 import javax.annotation.Nullable;
 import java.io.*;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicLong;
@@ -54,8 +60,77 @@ public class JdepsFileReader {
   static class JdepsState implements Serializable {
     private static final long serialVersionUID = 2L;
     private FileDiffService.State fileState = null;
-    private Map<File, Label> fileToLabelMap = Maps.newHashMap();
-    private Map<Label, List<String>> labelToJdeps = Maps.newHashMap();
+    private PersistentMap<File, Label> fileToLabelMap = PersistentMap.of();
+    private PersistentMap<Label, List<String>> labelToJdeps = PersistentMap.of();
+    /**
+     * The rule map the jdeps were loaded for. Not persisted, so the first sync after a restart
+     * checks every jdeps file again.
+     */
+    @Nullable private transient Map<Label, RuleIdeInfo> ruleMap;
+
+    /**
+     * Only used for legacy java-serialized project data, which stored plain hash maps.
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+      ObjectInputStream.GetField fields = in.readFields();
+      fileState = (FileDiffService.State)fields.get("fileState", null);
+      fileToLabelMap = PersistentMap.copyOf((Map<File, Label>)fields.get("fileToLabelMap", PersistentMap.of()));
+      labelToJdeps = PersistentMap.copyOf((Map<Label, List<String>>)fields.get("labelToJdeps", PersistentMap.of()));
+    }
+  }
+
+  /**
+   * Binary encoding of {@link JdepsState}.
+   */
+  public static class JdepsStateCodec extends SyncStateCodec<JdepsState> {
+    public JdepsStateCodec() {
+      super(JdepsState.class);
+    }
+
+    @Override
+    public int getVersion() {
+      return 3;
+    }
+
+    @Override
+    public void write(ProjectDataOutput out, JdepsState state) throws IOException {
+      out.writeBoolean(state.fileState != null);
+      if (state.fileState != null) {
+        state.fileState.write(out);
+      }
+      out.writeVarInt(state.fileToLabelMap.size());
+      for (Map.Entry<File, Label> entry : state.fileToLabelMap.entrySet()) {
+        out.writeFile(entry.getKey());
+        out.writeLabel(entry.getValue());
+      }
+      out.writeVarInt(state.labelToJdeps.size());
+      for (Map.Entry<Label, List<String>> entry : state.labelToJdeps.entrySet()) {
+        out.writeLabel(entry.getKey());
+        out.writeStrings(entry.getValue());
+      }
+    }
+
+    @Override
+    public JdepsState read(ProjectDataInput in) throws IOException {
+      JdepsState state = new JdepsState();
+      if (in.readBoolean()) {
+        state.fileState = FileDiffService.State.read(in);
+      }
+      int fileToLabelSize = in.readVarInt();
+      PersistentMap.Builder<File, Label> fileToLabelMap = PersistentMap.builder();
+      for (int i = 0; i < fileToLabelSize; ++i) {
+        fileToLabelMap.put(in.readFile(), in.readLabel());
+      }
+      int labelToJdepsSize = in.readVarInt();
+      PersistentMap.Builder<Label, List<String>> labelToJdeps = PersistentMap.builder();
+      for (int i = 0; i < labelToJdepsSize; ++i) {
+        labelToJdeps.put(in.readLabel(), in.readStrings());
+      }
+      state.fileToLabelMap = fileToLabelMap.build();
+      state.labelToJdeps = labelToJdeps.build();
+      return state;
+    }
   }
 
   private static class Result {
@@ -77,6 +152,17 @@ public class JdepsFileReader {
                                  ImmutableMap<Label, RuleIdeInfo> ruleMap,
                                  SyncState.Builder syncStateBuilder,
                                  @Nullable SyncState previousSyncState) {
+    return loadJdepsFiles(parentContext, (Map<Label, RuleIdeInfo>)ruleMap, syncStateBuilder, previousSyncState);
+  }
+
+  /**
+   * Loads any updated jdeps files since the last invocation of this method.
+   */
+  @Nullable
+  public JdepsMap loadJdepsFiles(BlazeContext parentContext,
+                                 Map<Label, RuleIdeInfo> ruleMap,
+                                 SyncState.Builder syncStateBuilder,
+                                 @Nullable SyncState previousSyncState) {
     JdepsState oldState = previousSyncState != null ? previousSyncState.get(JdepsState.class) : null;
     JdepsState jdepsState = Scope.push(parentContext, (context) -> {
       context.push(new TimingScope("LoadJdepsFiles"));
@@ -91,27 +177,57 @@ public class JdepsFileReader {
 
   private JdepsState doLoadJdepsFiles(BlazeContext context,
                                       @Nullable JdepsState oldState,
-                                      ImmutableMap<Label, RuleIdeInfo> ruleMap) {
+                                      Map<Label, RuleIdeInfo> ruleMap) {
     JdepsState state = new JdepsState();
+    // Only the entries for changed files are copied, the rest is shared with the old state
+    PersistentMap.Builder<Label, List<String>> labelToJdeps = PersistentMap.builder();
+    PersistentMap.Builder<File, Label> fileToLabelMap = PersistentMap.builder();
     if (oldState != null) {
-      state.labelToJdeps = Maps.newHashMap(oldState.labelToJdeps);
-      state.fileToLabelMap = Maps.newHashMap(oldState.fileToLabelMap);
-    }
-
-    List<File> files = Lists.newArrayList();
-    for (RuleIdeInfo ruleIdeInfo : ruleMap.values()) {
-      JavaRuleIdeInfo javaRuleIdeInfo = ruleIdeInfo.javaRuleIdeInfo;
-      if (javaRuleIdeInfo != null) {
-        ArtifactLocation jdepsFile = javaRuleIdeInfo.jdepsFile;
-        if (jdepsFile != null) {
-          files.add(jdepsFile.getFile());
-        }
-      }
+      labelToJdeps = oldState.labelToJdeps.toBuilder();
+      fileToLabelMap = oldState.fileToLabelMap.toBuilder();
     }
 
     List<File> updatedFiles = Lists.newArrayList();
     List<File> removedFiles = Lists.newArrayList();
-    state.fileState = fileDiffService.updateFiles(oldState != null ? oldState.fileState : null, files, updatedFiles, removedFiles);
+    if (oldState != null
+        && oldState.fileState != null
+        && oldState.ruleMap instanceof PersistentMap
+        && ruleMap instanceof PersistentMap) {
+      // Consecutive syncs share most of the persistent rule map, so only the jdeps files of the
+      // changed targets are checked
+      Set<File> changedFiles = Sets.newHashSet();
+      Set<File> oldFiles = Sets.newHashSet();
+      PersistentMap.diff(
+        (PersistentMap<Label, RuleIdeInfo>)oldState.ruleMap,
+        (PersistentMap<Label, RuleIdeInfo>)ruleMap,
+        new PersistentMap.DifferenceVisitor<Label, RuleIdeInfo>() {
+          @Override
+          public void added(Label label, RuleIdeInfo rule) {
+            addJdepsFile(rule, changedFiles);
+          }
+
+          @Override
+          public void removed(Label label, RuleIdeInfo rule) {
+            addJdepsFile(rule, oldFiles);
+          }
+
+          @Override
+          public void changed(Label label, RuleIdeInfo oldRule, RuleIdeInfo newRule) {
+            addJdepsFile(oldRule, oldFiles);
+            addJdepsFile(newRule, changedFiles);
+          }
+        });
+      removedFiles.addAll(Sets.difference(oldFiles, changedFiles));
+      state.fileState = fileDiffService.updateChangedFiles(oldState.fileState, changedFiles, removedFiles, updatedFiles);
+    }
+    else {
+      List<File> files = Lists.newArrayList();
+      for (RuleIdeInfo ruleIdeInfo : ruleMap.values()) {
+        addJdepsFile(ruleIdeInfo, files);
+      }
+      state.fileState = fileDiffService.updateFiles(oldState != null ? oldState.fileState : null, files, updatedFiles, removedFiles);
+    }
+    state.ruleMap = ruleMap;
 
     ListenableFuture<?> fetchFuture = PrefetchService.getInstance().prefetchFiles(updatedFiles, true);
     if (!FutureUtil.waitForFuture(context, fetchFuture)
@@ -122,9 +238,10 @@ public class JdepsFileReader {
     }
 
     for (File removedFile : removedFiles) {
-      Label label = state.fileToLabelMap.remove(removedFile);
+      Label label = fileToLabelMap.get(removedFile);
       if (label != null) {
-        state.labelToJdeps.remove(label);
+        fileToLabelMap.remove(removedFile);
+        labelToJdeps.remove(label);
       }
     }
 
@@ -138,7 +255,7 @@ public class JdepsFileReader {
           Deps.Dependencies dependencies = Deps.Dependencies.parseFrom(inputStream);
           if (dependencies != null) {
             if (dependencies.hasRuleLabel()) {
-              Label label = new Label(dependencies.getRuleLabel());
+              Label label = Label.create(dependencies.getRuleLabel());
               List<String> dependencyStringList = Lists.newArrayList();
               for (Deps.Dependency dependency : dependencies.getDependencyList()) {
                 dependencyStringList.add(dependency.getPath());
@@ -155,10 +272,12 @@ public class JdepsFileReader {
     try {
       for (Result result : Futures.allAsList(futures).get()) {
         if (result != null) {
-          state.fileToLabelMap.put(result.file, result.label);
-          state.labelToJdeps.put(result.label, result.dependencies);
+          fileToLabelMap.put(result.file, result.label);
+          labelToJdeps.put(result.label, result.dependencies);
         }
       }
+      state.fileToLabelMap = fileToLabelMap.build();
+      state.labelToJdeps = labelToJdeps.build();
       context.output(new PrintOutput(String.format(
         "Loaded %d jdeps files, total size %dkB", updatedFiles.size(), totalSizeLoaded.get() / 1024
       )));
@@ -170,6 +289,16 @@ public class JdepsFileReader {
     return state;
   }
 
+  private static void addJdepsFile(RuleIdeInfo ruleIdeInfo, Collection<File> files) {
+    JavaRuleIdeInfo javaRuleIdeInfo = ruleIdeInfo.javaRuleIdeInfo;
+    if (javaRuleIdeInfo != null) {
+      ArtifactLocation jdepsFile = javaRuleIdeInfo.jdepsFile;
+      if (jdepsFile != null) {
+        files.add(jdepsFile.getFile());
+      }
+    }
+  }
+
   private static <T> ListenableFuture<T> submit(Callable<T> callable) {
     return BlazeExecutor.getInstance().submit(callable);
   }
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.java.sync.source;
+
+import com.google.idea.blaze.base.io.FileAttributeProvider;
+import com.google.idea.blaze.base.io.FileStat;
+import com.google.idea.blaze.base.scope.BlazeContext;
+
+import javax.annotation.Nullable;
+import java.io.File;
+
+/**
+ * Consults a {@link JavaPackageCache} before reading the package from the source file.
+ */
+class CachedJavaPackageReader extends JavaPackageReader {
+  private final JavaPackageReader delegate;
+  private final JavaPackageCache.Builder packageCache;
+
+  CachedJavaPackageReader(JavaPackageReader delegate, JavaPackageCache.Builder packageCache) {
+    this.delegate = delegate;
+    this.packageCache = packageCache;
+  }
+
+  @Override
+  @Nullable
+  String getDeclaredPackageOfJavaFile(BlazeContext context, SourceArtifact sourceArtifact) {
+    if (sourceArtifact.artifactLocation.isGenerated()) {
+      return delegate.getDeclaredPackageOfJavaFile(context, sourceArtifact);
+    }
+    File sourceFile = sourceArtifact.artifactLocation.getFile();
+    // Stat before reading, so a concurrent edit leaves a stale timestamp rather than a stale package
+    FileStat fileStat = FileAttributeProvider.getInstance().getFileStat(sourceFile);
+    if (fileStat == null) {
+      return delegate.getDeclaredPackageOfJavaFile(context, sourceArtifact);
+    }
+    String declaredPackage = packageCache.get(sourceFile, fileStat);
+    if (declaredPackage != null) {
+      return declaredPackage;
+    }
+    declaredPackage = delegate.getDeclaredPackageOfJavaFile(context, sourceArtifact);
+    if (declaredPackage != null) {
+      packageCache.put(sourceFile, fileStat, declaredPackage);
+    }
+    return declaredPackage;
+  }
+}
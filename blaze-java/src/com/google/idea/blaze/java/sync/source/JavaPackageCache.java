@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.java.sync.source;
+
+import com.google.common.collect.Maps;
+import com.google.idea.blaze.base.io.FileStat;
+import com.google.idea.blaze.base.sync.data.ProjectDataInput;
+import com.google.idea.blaze.base.sync.data.ProjectDataOutput;
+import com.google.idea.blaze.base.sync.data.SyncStateCodec;
+import com.google.idea.blaze.base.util.PersistentMap;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * Declared packages of java sources from the previous sync, stored in the sync state so unchanged
+ * sources are not read again. An entry is reused while the file's modification time and size match.
+ */
+public final class JavaPackageCache implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  static final class Entry implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final long modifiedTime;
+    final long size;
+    final String declaredPackage;
+
+    Entry(long modifiedTime, long size, String declaredPackage) {
+      this.modifiedTime = modifiedTime;
+      this.size = size;
+      this.declaredPackage = declaredPackage;
+    }
+
+    boolean matches(FileStat fileStat) {
+      return modifiedTime == fileStat.modifiedTime && size == fileStat.size;
+    }
+  }
+
+  private final PersistentMap<File, Entry> entries;
+
+  private JavaPackageCache(PersistentMap<File, Entry> entries) {
+    this.entries = entries;
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  @Nullable
+  Entry get(File file) {
+    return entries.get(file);
+  }
+
+  /**
+   * Starts a new cache, reusing entries of the previous one as they are looked up.
+   * Sources not looked up during this sync are dropped.
+   */
+  public static Builder builder(@Nullable JavaPackageCache previousCache) {
+    return new Builder(previousCache);
+  }
+
+  /**
+   * Thread-safe; packages are read in parallel.
+   */
+  public static final class Builder {
+    @Nullable private final JavaPackageCache previousCache;
+    private final Map<File, Entry> entries = Maps.newConcurrentMap();
+
+    Builder(@Nullable JavaPackageCache previousCache) {
+      this.previousCache = previousCache;
+    }
+
+    /**
+     * Returns the cached package if the file is unchanged since the previous sync, and carries
+     * the entry over to the new cache.
+     */
+    @Nullable
+    String get(File file, FileStat fileStat) {
+      Entry entry = previousCache != null ? previousCache.get(file) : null;
+      if (entry == null || !entry.matches(fileStat)) {
+        return null;
+      }
+      entries.put(file, entry);
+      return entry.declaredPackage;
+    }
+
+    void put(File file, FileStat fileStat, String declaredPackage) {
+      entries.put(file, new Entry(fileStat.modifiedTime, fileStat.size, declaredPackage));
+    }
+
+    public JavaPackageCache build() {
+      PersistentMap.Builder<File, Entry> builder = PersistentMap.builder();
+      builder.putAll(entries);
+      return new JavaPackageCache(builder.build());
+    }
+  }
+
+  /**
+   * Binary encoding of {@link JavaPackageCache}.
+   */
+  public static class Codec extends SyncStateCodec<JavaPackageCache> {
+    public Codec() {
+      super(JavaPackageCache.class);
+    }
+
+    @Override
+    public int getVersion() {
+      return 1;
+    }
+
+    @Override
+    public void write(ProjectDataOutput out, JavaPackageCache cache) throws IOException {
+      out.writeVarInt(cache.entries.size());
+      for (Map.Entry<File, Entry> entry : cache.entries.entrySet()) {
+        out.writeFile(entry.getKey());
+        out.writeLong(entry.getValue().modifiedTime);
+        out.writeLong(entry.getValue().size);
+        out.writeString(entry.getValue().declaredPackage);
+      }
+    }
+
+    @Override
+    public JavaPackageCache read(ProjectDataInput in) throws IOException {
+      int size = in.readVarInt();
+      PersistentMap.Builder<File, Entry> entries = PersistentMap.builder();
+      for (int i = 0; i < size; ++i) {
+        File file = in.readFile();
+        long modifiedTime = in.readLong();
+        long fileSize = in.readLong();
+        entries.put(file, new Entry(modifiedTime, fileSize, in.readString()));
+      }
+      return new JavaPackageCache(entries.build());
+    }
+  }
+}
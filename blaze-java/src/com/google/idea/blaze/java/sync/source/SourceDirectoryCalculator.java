@@ -21,8 +21,7 @@ import com.google.common.collect.*;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
-import com.google.common.util.concurrent.MoreExecutors;
-import com.google.idea.blaze.base.async.executor.TransientExecutor;
+import com.google.idea.blaze.base.async.executor.BlazeExecutor;
 import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.google.idea.blaze.base.model.primitives.WorkspacePath;
@@ -61,8 +60,19 @@ public final class SourceDirectoryCalculator {
     (o1, o2) -> o1.relativePath().compareTo(o2.relativePath());
 
   private static final JavaPackageReader generatedFileJavaPackageReader = new FilePathJavaPackageReader();
-  private final ListeningExecutorService executorService = MoreExecutors.sameThreadExecutor();
-  private final ListeningExecutorService packageReaderExecutorService = MoreExecutors.listeningDecorator(new TransientExecutor(16));
+  private final JavaPackageCache.Builder packageCache;
+
+  public SourceDirectoryCalculator() {
+    this(JavaPackageCache.builder(null));
+  }
+
+  /**
+   * @param packageCache receives the declared packages read from sources, and supplies the ones
+   *                     unchanged since the previous sync
+   */
+  public SourceDirectoryCalculator(JavaPackageCache.Builder packageCache) {
+    this.packageCache = packageCache;
+  }
 
   public ImmutableList<BlazeContentEntry> calculateContentEntries(
     BlazeContext context,
@@ -79,14 +89,14 @@ public final class SourceDirectoryCalculator {
         childContext,
         artifactLocationDecoder,
         javaPackageManifests,
-        packageReaderExecutorService
+        BlazeExecutor.getInstance().getExecutor()
       );
       return new ManifestFilePackageReader(manifestMap);
     });
 
     final List<JavaPackageReader> javaPackageReaders = Lists.newArrayList(
       manifestFilePackageReader,
-      JavaSourcePackageReader.getInstance(),
+      new CachedJavaPackageReader(JavaSourcePackageReader.getInstance(), packageCache),
       generatedFileJavaPackageReader);
 
     Collection<SourceArtifact> nonGeneratedSources = filterGeneratedArtifacts(sources);
@@ -212,7 +222,8 @@ public final class SourceDirectoryCalculator {
 
     List<SourceRoot> sourceRootsPerFile = Lists.newArrayList();
 
-    // Get java sources
+    // Get java sources. Reading the package declarations is mostly file IO, so do it in parallel.
+    ListeningExecutorService executorService = BlazeExecutor.getInstance().getExecutor();
     List<ListenableFuture<SourceRoot>> sourceRootFutures = Lists.newArrayList();
     for (final SourceArtifact sourceArtifact : javaArtifacts) {
       ListenableFuture<SourceRoot> future = executorService.submit(() -> sourceRootForJavaSource(
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.java.sync;
+
+import com.google.common.collect.Lists;
+import com.google.idea.blaze.base.command.info.BlazeInfo;
+import com.google.idea.blaze.base.io.FileAttributeProvider;
+import com.google.idea.blaze.base.io.InputStreamProvider;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.model.primitives.WorkspacePath;
+import com.google.idea.blaze.base.settings.Blaze.BuildSystem;
+import com.google.idea.blaze.base.settings.BlazeImportSettings;
+import com.google.idea.blaze.base.settings.BlazeUserSettings;
+import com.google.idea.blaze.base.sync.BlazeSyncIntegrationTestCase;
+import com.google.idea.blaze.base.sync.BlazeSyncParams;
+import com.google.idea.blaze.base.sync.aspects.BlazeIdeInterface;
+import com.google.idea.blaze.base.sync.aspects.BlazeIdeInterfaceAspectsImpl;
+import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
+import com.google.idea.blaze.base.sync.synthetic.SyntheticBlazeInfo;
+import com.google.idea.blaze.base.sync.synthetic.SyntheticMonorepo;
+import com.google.idea.blaze.java.sync.model.BlazeJavaSyncData;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.io.FileUtil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Syncs a synthetic java workspace through the real aspect output, jdeps and blaze info code
+ * paths, with a fake blaze binary standing in for the build.
+ *
+ * <p>Set the system property {@code blaze.synthetic.packages} to sync a larger workspace.
+ */
+public class SyntheticMonorepoSyncTest extends BlazeSyncIntegrationTestCase {
+  private static final int PACKAGE_COUNT = Integer.getInteger("blaze.synthetic.packages", 100);
+
+  private SyntheticMonorepo monorepo;
+
+  @Override
+  protected void doSetup() throws IOException {
+    super.doSetup();
+
+    File rootDirectory = FileUtil.createTempDirectory("synthetic", null);
+    Disposer.register(getTestRootDisposable(), () -> FileUtil.delete(rootDirectory));
+    monorepo = SyntheticMonorepo.builder()
+      .setPackageCount(PACKAGE_COUNT)
+      .build(rootDirectory);
+    monorepo.write();
+
+    // The fake blaze binary runs in, and reports files from, the real file system
+    workspaceRoot = monorepo.getWorkspaceRoot();
+    File projectDataDirectory = new File(rootDirectory, "project-data-dir");
+    FileUtil.createDirectory(new File(projectDataDirectory, ".blaze/modules"));
+    setBlazeImportSettings(new BlazeImportSettings(
+      workspaceRoot.toString(),
+      "synthetic-project",
+      projectDataDirectory.getPath(),
+      "location-hash",
+      workspaceRoot + "/project-view-file",
+      BuildSystem.Blaze
+    ));
+
+    registerApplicationService(FileAttributeProvider.class, new FileAttributeProvider());
+    registerApplicationService(InputStreamProvider.class, FileInputStream::new);
+    registerApplicationService(BlazeInfo.class, new SyntheticBlazeInfo(monorepo));
+    registerApplicationService(BlazeIdeInterface.class, new BlazeIdeInterfaceAspectsImpl());
+
+    BlazeUserSettings userSettings = BlazeUserSettings.getInstance();
+    String oldBlazeBinaryPath = userSettings.getBlazeBinaryPath();
+    userSettings.setBlazeBinaryPath(monorepo.getBlazeBinary().getPath());
+    Disposer.register(getTestRootDisposable(), () -> userSettings.setBlazeBinaryPath(oldBlazeBinaryPath));
+  }
+
+  public void testSyncImportsEveryTarget() throws Exception {
+    List<String> projectView = Lists.newArrayList("directories:");
+    for (WorkspacePath directory : monorepo.getRootDirectories()) {
+      projectView.add("  " + directory);
+    }
+    projectView.add("targets:");
+    projectView.add("  //java/...");
+    projectView.add("workspace_type: java");
+    setProjectView(projectView.toArray(new String[projectView.size()]));
+
+    BlazeSyncParams syncParams = new BlazeSyncParams.Builder("Full Sync", BlazeSyncParams.SyncMode.FULL).build();
+    runBlazeSync(syncParams);
+
+    assertNoErrors();
+
+    BlazeProjectData blazeProjectData = BlazeProjectDataManager.getInstance(getProject()).getBlazeProjectData();
+    assertThat(blazeProjectData).isNotNull();
+    assertThat(blazeProjectData.ruleMap.keySet()).isEqualTo(monorepo.createRuleMap().keySet());
+    assertThat(blazeProjectData.ruleMap).hasSize(monorepo.getTargets().size());
+
+    BlazeJavaSyncData javaSyncData = blazeProjectData.syncState.get(BlazeJavaSyncData.class);
+    assertThat(javaSyncData).isNotNull();
+    assertThat(javaSyncData.importResult.contentEntries).isNotEmpty();
+  }
+}
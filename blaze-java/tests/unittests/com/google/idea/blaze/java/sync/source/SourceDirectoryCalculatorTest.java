@@ -26,6 +26,7 @@ import com.google.idea.blaze.base.experiments.ExperimentService;
 import com.google.idea.blaze.base.experiments.MockExperimentService;
 import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.google.idea.blaze.base.io.FileAttributeProvider;
+import com.google.idea.blaze.base.io.FileStat;
 import com.google.idea.blaze.base.io.InputStreamProvider;
 import com.google.idea.blaze.base.model.primitives.ExecutionRootPath;
 import com.google.idea.blaze.base.model.primitives.Label;
@@ -179,6 +180,53 @@ public class SourceDirectoryCalculatorTest extends BlazeTestCase {
     issues.assertNoIssues();
   }
 
+  @Test
+  public void testUnchangedSourcesAreNotReadAgain() throws Exception {
+    mockInputStreamProvider
+      .addFile("/root/java/com/google/Bla.java",
+               "package com.google;\n public class Bla {}");
+    List<SourceArtifact> sourceArtifacts = ImmutableList.of(
+      SourceArtifact.builder(LABEL)
+        .setArtifactLocation(ArtifactLocation.builder()
+                               .setRelativePath("java/com/google/Bla.java")
+                               .setRootPath("/root")
+                               .setIsSource(true))
+        .build());
+    JavaPackageCache.Builder firstSync = JavaPackageCache.builder(null);
+    new SourceDirectoryCalculator(firstSync).calculateContentEntries(
+      context,
+      workspaceRoot,
+      new TestSourceImportConfig(false),
+      decoder,
+      ImmutableList.of(new WorkspacePath("java/com")),
+      sourceArtifacts,
+      NO_MANIFESTS
+    );
+    JavaPackageCache packageCache = firstSync.build();
+    assertThat(packageCache.size()).isEqualTo(1);
+
+    // The mock input stream has been consumed, so a second read would find no package
+    JavaPackageCache.Builder secondSync = JavaPackageCache.builder(packageCache);
+    ImmutableList<BlazeContentEntry> result = new SourceDirectoryCalculator(secondSync).calculateContentEntries(
+      context,
+      workspaceRoot,
+      new TestSourceImportConfig(false),
+      decoder,
+      ImmutableList.of(new WorkspacePath("java/com")),
+      sourceArtifacts,
+      NO_MANIFESTS
+    );
+    assertThat(result).containsExactly(
+      BlazeContentEntry.builder("/root/java/com")
+        .addSource(BlazeSourceDirectory.builder("/root/java/com")
+                     .setPackagePrefix("com")
+                     .build())
+        .build()
+    );
+    issues.assertNoIssues();
+    assertThat(secondSync.build().size()).isEqualTo(1);
+  }
+
   @Test
   public void testSourcesToSourceDirectories_testReturnsTest() throws Exception {
     mockInputStreamProvider
@@ -1098,5 +1146,10 @@ public class SourceDirectoryCalculatorTest extends BlazeTestCase {
     public long getFileModifiedTime(@NotNull File file) {
       return 0;
     }
+
+    @Override
+    public FileStat getFileStat(@NotNull File file) {
+      return new FileStat(0, 0, 0);
+    }
   }
 }
\ No newline at end of file
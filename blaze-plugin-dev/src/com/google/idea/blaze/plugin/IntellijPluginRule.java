@@ -15,8 +15,14 @@
  */
 package com.google.idea.blaze.plugin;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
 import com.google.idea.blaze.base.model.primitives.Kind;
+import com.google.idea.blaze.base.run.rulefinder.RuleFinder;
+import com.intellij.openapi.project.Project;
+
+import java.util.List;
 
 /**
  * Utility methods for intellij_plugin blaze rules
@@ -28,4 +34,9 @@ public class IntellijPluginRule {
   public static boolean isPluginRule(RuleIdeInfo rule) {
     return rule.kindIsOneOf(Kind.JAVA_IMPORT) && rule.tags.contains(RULE_TAG_IJ_PLUGIN);
   }
+
+  public static ImmutableList<RuleIdeInfo> findPluginRules(Project project) {
+    List<RuleIdeInfo> javaImports = RuleFinder.getInstance().rulesOfKinds(project, Kind.JAVA_IMPORT);
+    return ImmutableList.copyOf(Iterables.filter(javaImports, IntellijPluginRule::isPluginRule));
+  }
 }
@@ -356,7 +356,7 @@ public class BlazeIntellijPluginConfiguration extends LocatableConfigurationBase
 
   @Override
   public BlazeIntellijPluginConfigurationSettingsEditor getConfigurationEditor() {
-    List<RuleIdeInfo> javaRules = RuleFinder.getInstance().findRules(getProject(), IntellijPluginRule::isPluginRule);
+    List<RuleIdeInfo> javaRules = IntellijPluginRule.findPluginRules(getProject());
     List<Label> javaLabels = Lists.newArrayList();
     for (RuleIdeInfo rule : javaRules) {
       javaLabels.add(rule.label);
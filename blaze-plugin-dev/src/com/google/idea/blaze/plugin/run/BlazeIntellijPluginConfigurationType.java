@@ -15,10 +15,10 @@
  */
 package com.google.idea.blaze.plugin.run;
 
+import com.google.common.collect.Iterables;
 import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
 import com.google.idea.blaze.base.model.primitives.WorkspaceType;
 import com.google.idea.blaze.base.run.BlazeRuleConfigurationFactory;
-import com.google.idea.blaze.base.run.rulefinder.RuleFinder;
 import com.google.idea.blaze.base.settings.Blaze;
 import com.google.idea.blaze.base.sync.projectview.WorkspaceLanguageSettings;
 import com.google.idea.blaze.plugin.IntellijPluginRule;
@@ -72,7 +72,7 @@ public class BlazeIntellijPluginConfigurationType implements ConfigurationType {
         project,
         this,
         "Unnamed",
-        RuleFinder.getInstance().findFirstRule(project, IntellijPluginRule::isPluginRule)
+        Iterables.getFirst(IntellijPluginRule.findPluginRules(project), null)
       );
     }
 
@@ -15,7 +15,6 @@
  */
 package com.google.idea.blaze.ijwb.android;
 
-import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.idea.blaze.base.ideinfo.RuleIdeInfo;
 import com.google.idea.blaze.base.model.SyncState;
@@ -36,6 +35,7 @@ import com.intellij.openapi.project.Project;
 
 import javax.annotation.Nullable;
 import java.io.File;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -63,7 +63,7 @@ public class BlazeAndroidLiteSyncPlugin extends BlazeSyncPlugin.Adapter {
                               BlazeRoots blazeRoots,
                               @Nullable WorkingSet workingSet,
                               WorkspacePathResolver workspacePathResolver,
-                              ImmutableMap<Label, RuleIdeInfo> ruleMap,
+                              Map<Label, RuleIdeInfo> ruleMap,
                               @Deprecated @Nullable File androidPlatformDirectory,
                               SyncState.Builder syncStateBuilder,
                               @Nullable SyncState previousSyncState) {
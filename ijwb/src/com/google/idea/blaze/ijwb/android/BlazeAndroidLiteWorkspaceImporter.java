@@ -32,6 +32,7 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -42,7 +43,7 @@ public final class BlazeAndroidLiteWorkspaceImporter {
 
   private final Project project;
   private final BlazeContext context;
-  private final ImmutableMap<Label, RuleIdeInfo> ruleMap;
+  private final Map<Label, RuleIdeInfo> ruleMap;
   private final ProjectViewRuleImportFilter importFilter;
 
   public BlazeAndroidLiteWorkspaceImporter(
@@ -51,6 +52,15 @@ public final class BlazeAndroidLiteWorkspaceImporter {
     BlazeContext context,
     ProjectViewSet projectViewSet,
     ImmutableMap<Label, RuleIdeInfo> ruleMap) {
+    this(project, workspaceRoot, context, projectViewSet, (Map<Label, RuleIdeInfo>)ruleMap);
+  }
+
+  public BlazeAndroidLiteWorkspaceImporter(
+    Project project,
+    WorkspaceRoot workspaceRoot,
+    BlazeContext context,
+    ProjectViewSet projectViewSet,
+    Map<Label, RuleIdeInfo> ruleMap) {
     this.project = project;
     this.context = context;
     this.ruleMap = ruleMap;
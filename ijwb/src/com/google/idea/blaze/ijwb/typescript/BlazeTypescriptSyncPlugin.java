@@ -16,7 +16,6 @@
 package com.google.idea.blaze.ijwb.typescript;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.idea.blaze.base.async.process.ExternalTask;
 import com.google.idea.blaze.base.async.process.LineProcessingOutputStream;
@@ -54,6 +53,7 @@ import com.intellij.util.PlatformUtils;
 
 import java.io.File;
 import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.Nullable;
@@ -79,7 +79,7 @@ public class BlazeTypescriptSyncPlugin extends BlazeSyncPlugin.Adapter {
                               BlazeRoots blazeRoots,
                               @Nullable WorkingSet workingSet,
                               WorkspacePathResolver workspacePathResolver,
-                              ImmutableMap<Label, RuleIdeInfo> ruleMap,
+                              Map<Label, RuleIdeInfo> ruleMap,
                               @Deprecated @Nullable File androidPlatformDirectory,
                               SyncState.Builder syncStateBuilder,
                               @Nullable SyncState previousSyncState) {